@@ -291,7 +291,7 @@ public abstract class AbstractSEPAGV extends HBCIJobImpl
     	// Die XML in den baos schreiben, ggf fehler behandeln
     	try
     	{
-            boolean validate = HBCIUtils.getParam("sepa.schema.validation","0").equals("1");
+            boolean validate = HBCIUtils.getConfig().isSepaSchemaValidation();
             HBCIUtils.log("schema validation enabled: " + validate,HBCIUtils.LOG_DEBUG);
     	    gen.generate(this.sepaParams, o, validate);
     	}
@@ -23,7 +23,6 @@ package org.kapott.hbci.GV;
 
 import java.io.ByteArrayInputStream;
 import java.util.ArrayList;
-import java.util.Enumeration;
 import java.util.List;
 import java.util.Properties;
 
@@ -38,6 +37,8 @@ import org.kapott.hbci.manager.LogFilter;
 import org.kapott.hbci.sepa.SepaVersion;
 import org.kapott.hbci.sepa.SepaVersion.Type;
 import org.kapott.hbci.status.HBCIMsgStatus;
+import org.kapott.hbci.status.ResultNode;
+import org.kapott.hbci.status.ResultVisitor;
 import org.kapott.hbci.structures.Konto;
 import org.kapott.hbci.structures.Value;
 
@@ -101,24 +102,24 @@ public final class GVDauerSEPAList extends AbstractSEPAGV
     @Override
     protected void extractResults(HBCIMsgStatus msgstatus,String header,int idx)
     {
-        Properties result=msgstatus.getData();
+        ResultNode result=msgstatus.getResult(header);
         GVRDauerList.Dauer entry=new GVRDauerList.Dauer();
         
-        HBCIUtils.log("parsing SEPA standing orders from msg data [size: " + result.size() + "]",HBCIUtils.LOG_INFO);
+        HBCIUtils.log("parsing SEPA standing orders from msg data [size: " + result.getChildren().size() + "]",HBCIUtils.LOG_INFO);
 
         entry.my=new Konto();
-        entry.my.country=result.getProperty(header+".My.KIK.country");
-        entry.my.blz=result.getProperty(header+".My.KIK.blz");
-        entry.my.number=result.getProperty(header+".My.number");
-        entry.my.subnumber=result.getProperty(header+".My.subnumber");
-        entry.my.iban = result.getProperty(header+".My.iban");
-        entry.my.bic = result.getProperty(header+".My.bic");
+        entry.my.country=result.getValue("My.KIK.country");
+        entry.my.blz=result.getValue("My.KIK.blz");
+        entry.my.number=result.getValue("My.number");
+        entry.my.subnumber=result.getValue("My.subnumber");
+        entry.my.iban = result.getValue("My.iban");
+        entry.my.bic = result.getValue("My.bic");
         getMainPassport().fillAccountInfo(entry.my);
 
         entry.other=new Konto();
         
-        final String sepadescr    = result.getProperty(header+".sepadescr");
-        final String pain         = result.getProperty(header+".sepapain");
+        final String sepadescr    = result.getValue("sepadescr");
+        final String pain         = result.getValue("sepapain");
         final SepaVersion version = SepaVersion.choose(sepadescr,pain);
         
         ISEPAParser<List<Properties>> parser = SEPAParserFactory.get(version);
@@ -126,7 +127,7 @@ public final class GVDauerSEPAList extends AbstractSEPAGV
         try
         {
             // Encoding siehe GVTermUebSEPAList
-            HBCIUtils.log("  parsing sepa data: " + pain,HBCIUtils.LOG_DEBUG2);
+            HBCIUtils.log("  parsing sepa data: ",pain,HBCIUtils.LOG_DEBUG2);
             parser.parse(new ByteArrayInputStream(pain.getBytes(Comm.ENCODING)),sepaResults);
             HBCIUtils.log("  parsed sepa data, entries: " + sepaResults.size(),HBCIUtils.LOG_INFO);
         }
@@ -154,49 +155,58 @@ public final class GVDauerSEPAList extends AbstractSEPAGV
         entry.addUsage(sepaResult.getProperty("usage"));
  
         String st;
-        entry.orderid=result.getProperty(header+".orderid");
+        entry.orderid=result.getValue("orderid");
 
-        entry.firstdate=HBCIUtils.string2DateISO(result.getProperty(header+".DauerDetails.firstdate"));
-        entry.timeunit=result.getProperty(header+".DauerDetails.timeunit");
-        entry.turnus=Integer.parseInt(result.getProperty(header+".DauerDetails.turnus"));
-        entry.execday=Integer.parseInt(result.getProperty(header+".DauerDetails.execday"));
-        if ((st=result.getProperty(header+".DauerDetails.lastdate"))!=null)
+        entry.firstdate=HBCIUtils.string2DateISO(result.getValue("DauerDetails.firstdate"));
+        entry.timeunit=result.getValue("DauerDetails.timeunit");
+        entry.turnus=Integer.parseInt(result.getValue("DauerDetails.turnus"));
+        entry.execday=Integer.parseInt(result.getValue("DauerDetails.execday"));
+        if ((st=result.getValue("DauerDetails.lastdate"))!=null)
             entry.lastdate=HBCIUtils.string2DateISO(st);
 
-        entry.aus_available=result.getProperty(header+".Aussetzung.annual")!=null;
+        entry.aus_available=result.getValue("Aussetzung.annual")!=null;
         if (entry.aus_available) {
-            entry.aus_annual=result.getProperty(header+".Aussetzung.annual").equals("J");
-            if ((st=result.getProperty(header+".Aussetzung.startdate"))!=null)
+            entry.aus_annual=result.getValue("Aussetzung.annual").equals("J");
+            if ((st=result.getValue("Aussetzung.startdate"))!=null)
                 entry.aus_start=HBCIUtils.string2DateISO(st);
-            if ((st=result.getProperty(header+".Aussetzung.enddate"))!=null)
+            if ((st=result.getValue("Aussetzung.enddate"))!=null)
                 entry.aus_end=HBCIUtils.string2DateISO(st);
-            entry.aus_breakcount=result.getProperty(header+".Aussetzung.number");
-            if ((st=result.getProperty(header+".Aussetzung.newvalue.value"))!=null) {
+            entry.aus_breakcount=result.getValue("Aussetzung.number");
+            if ((st=result.getValue("Aussetzung.newvalue.value"))!=null) {
                 entry.aus_newvalue=new Value(
                     st,
-                    result.getProperty(header+".Aussetzung.newvalue.curr"));
+                    result.getValue("Aussetzung.newvalue.curr"));
             }
         }
         
-        entry.can_change = result.getProperty(header+".canchange")==null || result.getProperty(header+".canchange").equals("J");
-        entry.can_skip = result.getProperty(header+".canskip")==null || result.getProperty(header+".canskip").equals("J");
-        entry.can_delete = result.getProperty(header+".candel")==null || result.getProperty(header+".candel").equals("J");
+        entry.can_change = result.getValue("canchange")==null || result.getValue("canchange").equals("J");
+        entry.can_skip = result.getValue("canskip")==null || result.getValue("canskip").equals("J");
+        entry.can_delete = result.getValue("candel")==null || result.getValue("candel").equals("J");
 
         ((GVRDauerList)(jobResult)).addEntry(entry);
 
         if (entry.orderid!=null && entry.orderid.length()!=0) {
-            Properties p2=new Properties();
-
-            for (Enumeration e=result.propertyNames();e.hasMoreElements();) {
-                String key=(String)e.nextElement();
-
-                if (key.startsWith(header+".") && 
-                    !key.startsWith(header+".SegHead.") &&
-                    !key.endsWith(".orderid")) {
-                    p2.setProperty(key.substring(header.length()+1),
-                                   result.getProperty(key));
+            final Properties p2=new Properties();
+            final int        skip=result.getPath().length()+1;
+
+            result.accept(new ResultVisitor() {
+                public boolean visit(ResultNode node)
+                {
+                    String key=node.getPath();
+                    if (key.length()<skip) {
+                        return true;
+                    }
+
+                    key=key.substring(skip);
+                    if (key.equals("SegHead")) {
+                        return false;
+                    }
+                    if (node.getValue()!=null && !key.equals("orderid") && !key.endsWith(".orderid")) {
+                        p2.setProperty(key,node.getValue());
+                    }
+                    return true;
                 }
-            }
+            });
 
             getMainPassport().setPersistentData("dauer_"+entry.orderid,p2);
         }
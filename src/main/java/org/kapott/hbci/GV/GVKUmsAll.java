@@ -22,13 +22,13 @@
 package org.kapott.hbci.GV;
 
 
-import java.util.Properties;
 
 import org.kapott.hbci.GV_Result.GVRKUms;
 import org.kapott.hbci.manager.HBCIHandler;
 import org.kapott.hbci.manager.HBCIUtils;
 import org.kapott.hbci.manager.LogFilter;
 import org.kapott.hbci.status.HBCIMsgStatus;
+import org.kapott.hbci.status.ResultNode;
 import org.kapott.hbci.swift.Swift;
 
 /**
@@ -108,23 +108,21 @@ public class GVKUmsAll extends HBCIJobImpl
 
     protected void extractResults(HBCIMsgStatus msgstatus,String header,int idx)
     {
-        Properties result=msgstatus.getData();
+        ResultNode result=msgstatus.getResult(header);
         GVRKUms    umsResult=(GVRKUms)jobResult; 
         
-        StringBuffer paramName = new StringBuffer(header).append(".booked");
-        String       rawData = result.getProperty(paramName.toString());
+        String rawData = result.getValue("booked");
         if (rawData!=null) {
             umsResult.appendMT940Data(Swift.decodeUmlauts(rawData));
         }
         
-        paramName = new StringBuffer(header).append(".notbooked");
-        rawData = result.getProperty(paramName.toString());
+        rawData = result.getValue("notbooked");
         if (rawData!=null) {
             umsResult.appendMT942Data(Swift.decodeUmlauts(rawData));
         }
         
         // TODO: this is for compatibility reasons only
-        jobResult.storeResult("notbooked",result.getProperty(header+".notbooked"));
+        jobResult.storeResult("notbooked",rawData);
     }
     
     /**
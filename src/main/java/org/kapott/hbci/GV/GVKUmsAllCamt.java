@@ -155,10 +155,11 @@ public class GVKUmsAllCamt extends AbstractSEPAGV
                 final SepaVersion version = SepaVersion.choose(format,booked);
                 ISEPAParser<List<BTag>> parser = SEPAParserFactory.get(version);
                 
-                HBCIUtils.log("  parsing camt data: " + booked,HBCIUtils.LOG_DEBUG2);
+                HBCIUtils.log("  parsing camt data: ",booked,HBCIUtils.LOG_DEBUG2);
                 result.camtBooked.add(booked);
                 parser.parse(new ByteArrayInputStream(booked.getBytes(Comm.ENCODING)),result.getDataPerDay());
-                HBCIUtils.log("  parsed camt data, entries: " + result.getFlatData().size(),HBCIUtils.LOG_DEBUG);
+                if (HBCIUtils.isLogEnabled(HBCIUtils.LOG_DEBUG))
+                    HBCIUtils.log("  parsed camt data, entries: " + result.getFlatData().size(),HBCIUtils.LOG_DEBUG);
             }
             catch (Exception e)
             {
@@ -175,10 +176,11 @@ public class GVKUmsAllCamt extends AbstractSEPAGV
                 final SepaVersion version = SepaVersion.choose(format,notbooked);
                 ISEPAParser<List<BTag>> parser = SEPAParserFactory.get(version);
                 
-                HBCIUtils.log("  parsing unbooked camt data: " + notbooked,HBCIUtils.LOG_DEBUG2);
+                HBCIUtils.log("  parsing unbooked camt data: ",notbooked,HBCIUtils.LOG_DEBUG2);
                 result.camtNotBooked.add(notbooked);
                 parser.parse(new ByteArrayInputStream(notbooked.getBytes(Comm.ENCODING)),result.getDataPerDayUnbooked());
-                HBCIUtils.log("  parsed unbooked camt data, entries: " + result.getFlatDataUnbooked().size(),HBCIUtils.LOG_DEBUG);
+                if (HBCIUtils.isLogEnabled(HBCIUtils.LOG_DEBUG))
+                    HBCIUtils.log("  parsed unbooked camt data, entries: " + result.getFlatDataUnbooked().size(),HBCIUtils.LOG_DEBUG);
             }
             catch (Exception e)
             {
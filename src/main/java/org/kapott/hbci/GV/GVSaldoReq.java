@@ -21,14 +21,12 @@
 
 package org.kapott.hbci.GV;
 
-
-import java.util.Properties;
-
 import org.kapott.hbci.GV_Result.GVRSaldoReq;
 import org.kapott.hbci.manager.HBCIHandler;
 import org.kapott.hbci.manager.HBCIUtils;
 import org.kapott.hbci.manager.LogFilter;
 import org.kapott.hbci.status.HBCIMsgStatus;
+import org.kapott.hbci.status.ResultNode;
 import org.kapott.hbci.structures.Konto;
 import org.kapott.hbci.structures.Saldo;
 import org.kapott.hbci.structures.Value;
@@ -61,59 +59,59 @@ public class GVSaldoReq
     
     protected void extractResults(HBCIMsgStatus msgstatus,String header,int idx)
     {
-        Properties result=msgstatus.getData();
+        ResultNode result=msgstatus.getResult(header);
         GVRSaldoReq.Info info=new GVRSaldoReq.Info();
 
         info.konto=new Konto();
-        info.konto.country=result.getProperty(header+".KTV.KIK.country");
-        info.konto.blz=result.getProperty(header+".KTV.KIK.blz");
-        info.konto.number=result.getProperty(header+".KTV.number");
-        info.konto.subnumber=result.getProperty(header+".KTV.subnumber");
-        info.konto.bic=result.getProperty(header+".KTV.bic");
-        info.konto.iban=result.getProperty(header+".KTV.iban");
-        info.konto.type=result.getProperty(header+".kontobez");
-        info.konto.curr=result.getProperty(header+".curr");
+        info.konto.country=result.getValue("KTV.KIK.country");
+        info.konto.blz=result.getValue("KTV.KIK.blz");
+        info.konto.number=result.getValue("KTV.number");
+        info.konto.subnumber=result.getValue("KTV.subnumber");
+        info.konto.bic=result.getValue("KTV.bic");
+        info.konto.iban=result.getValue("KTV.iban");
+        info.konto.type=result.getValue("kontobez");
+        info.konto.curr=result.getValue("curr");
         getMainPassport().fillAccountInfo(info.konto);
         
         info.ready=new Saldo();
-        String cd=result.getProperty(header+".booked.CreditDebit");
-        String st=(cd.equals("D")?"-":"") + result.getProperty(header+".booked.BTG.value","0");
+        String cd=result.getValue("booked.CreditDebit");
+        String st=(cd.equals("D")?"-":"") + result.getValue("booked.BTG.value","0");
         info.ready.value=new Value(
             st,
-            result.getProperty(header+".booked.BTG.curr"));
-        info.ready.timestamp=HBCIUtils.strings2DateTimeISO(result.getProperty(header+".booked.date"),
-                                                           result.getProperty(header+".booked.time"));
+            result.getValue("booked.BTG.curr"));
+        info.ready.timestamp=HBCIUtils.strings2DateTimeISO(result.getValue("booked.date"),
+                                                           result.getValue("booked.time"));
         
-        cd=result.getProperty(header+".pending.CreditDebit");
+        cd=result.getValue("pending.CreditDebit");
         if (cd!=null) {
-            st=(cd.equals("D")?"-":"") + result.getProperty(header+".pending.BTG.value", "0");
+            st=(cd.equals("D")?"-":"") + result.getValue("pending.BTG.value", "0");
             info.unready=new Saldo();
             info.unready.value=new Value(
                 st,
-                result.getProperty(header+".pending.BTG.curr"));
-            info.unready.timestamp=HBCIUtils.strings2DateTimeISO(result.getProperty(header+".pending.date"),
-                                                                  result.getProperty(header+".pending.time"));
+                result.getValue("pending.BTG.curr"));
+            info.unready.timestamp=HBCIUtils.strings2DateTimeISO(result.getValue("pending.date"),
+                                                                  result.getValue("pending.time"));
         }
         
-        st=result.getProperty(header+".kredit.value");
+        st=result.getValue("kredit.value");
         if (st!=null) {
             info.kredit=new Value(
                 st,
-                result.getProperty(header+".kredit.curr"));
+                result.getValue("kredit.curr"));
         }
         
-        st=result.getProperty(header+".available.value");
+        st=result.getValue("available.value");
         if (st!=null) {
             info.available=new Value(
                 st,
-                result.getProperty(header+".available.curr"));
+                result.getValue("available.curr"));
         }
         
-        st=result.getProperty(header+".used.value");
+        st=result.getValue("used.value");
         if (st!=null) {
             info.used=new Value(
                 st,
-                result.getProperty(header+".used.curr"));
+                result.getValue("used.curr"));
         }
         
         ((GVRSaldoReq)(jobResult)).store(info);
@@ -40,6 +40,7 @@ import org.kapott.hbci.exceptions.HBCI_Exception;
 import org.kapott.hbci.exceptions.InvalidArgumentException;
 import org.kapott.hbci.exceptions.InvalidUserDataException;
 import org.kapott.hbci.exceptions.JobNotSupportedException;
+import org.kapott.hbci.manager.HBCIContext;
 import org.kapott.hbci.manager.HBCIHandler;
 import org.kapott.hbci.manager.HBCIUtils;
 import org.kapott.hbci.manager.HBCIUtilsInternal;
@@ -53,6 +54,8 @@ import org.kapott.hbci.protocol.SyntaxElement;
 import org.kapott.hbci.protocol.factory.SEGFactory;
 import org.kapott.hbci.status.HBCIMsgStatus;
 import org.kapott.hbci.status.HBCIRetVal;
+import org.kapott.hbci.status.ResultNode;
+import org.kapott.hbci.status.ResultVisitor;
 import org.kapott.hbci.structures.Konto;
 import org.kapott.hbci.structures.Value;
 
@@ -512,7 +515,7 @@ public abstract class HBCIJobImpl
         SEG seg=null;
         try {
             MsgGen gen=getParentHandler().getMsgGen();
-            seg=SEGFactory.getInstance().createSEG(getName(),getName(),null,0,gen.getSyntax());
+            seg=SEGFactory.getInstance().createSEG(getName(),getName(),null,0,gen.getSyntaxSpec());
             for (Enumeration e=getLowlevelParams().propertyNames();e.hasMoreElements();) {
                 String key=(String)e.nextElement();
                 String value=getLowlevelParams().getProperty(key);
@@ -682,45 +685,51 @@ public abstract class HBCIJobImpl
     @Override
     public void setParam(String paramName,Integer index,String value)
     {
-    	// wenn der Parameter einen LogFilter-Level gesetzt hat, dann den
-    	// betreffenden Wert zum Logfilter hinzufügen
-    	Integer logFilterLevel=logFilterLevels.get(paramName);
-    	if (logFilterLevel!=null && logFilterLevel.intValue()!=0) {
-    		LogFilter.getInstance().addSecretData(value,"X",logFilterLevel.intValue());
-    	}
-
-        String[][]           destinations=constraints.get(paramName);
-        HBCIPassportInternal passport=getMainPassport();
+        // secrets für den log-filter im kontext des handlers registrieren
+        HBCIContext old=parentHandler.getContext().bind();
+        try {
+        	// wenn der Parameter einen LogFilter-Level gesetzt hat, dann den
+        	// betreffenden Wert zum Logfilter hinzufügen
+        	Integer logFilterLevel=logFilterLevels.get(paramName);
+        	if (logFilterLevel!=null && logFilterLevel.intValue()!=0) {
+        		LogFilter.getInstance().addSecretData(value,"X",logFilterLevel.intValue());
+        	}
+
+            String[][]           destinations=constraints.get(paramName);
+            HBCIPassportInternal passport=getMainPassport();
         
-        if (destinations==null) {
-            String msg=HBCIUtilsInternal.getLocMsg("EXCMSG_PARAM_NOTNEEDED",new String[] {paramName,getName()});
-            if (!HBCIUtilsInternal.ignoreError(passport,"client.errors.ignoreWrongJobDataErrors",msg))
-                throw new InvalidUserDataException(msg);
-            destinations=new String[0][];
-        }
+            if (destinations==null) {
+                String msg=HBCIUtilsInternal.getLocMsg("EXCMSG_PARAM_NOTNEEDED",new String[] {paramName,getName()});
+                if (!HBCIUtilsInternal.ignoreError(passport,"client.errors.ignoreWrongJobDataErrors",msg))
+                    throw new InvalidUserDataException(msg);
+                destinations=new String[0][];
+            }
         
-        if (value==null || value.length()==0) {
-            String msg=HBCIUtilsInternal.getLocMsg("EXCMSG_PARAM_EMPTY",new String[] {paramName,getName()});
-            if (!HBCIUtilsInternal.ignoreError(passport,"client.errors.ignoreWrongJobDataErrors",msg))
-                throw new InvalidUserDataException(msg);
-            value="";
-        }
+            if (value==null || value.length()==0) {
+                String msg=HBCIUtilsInternal.getLocMsg("EXCMSG_PARAM_EMPTY",new String[] {paramName,getName()});
+                if (!HBCIUtilsInternal.ignoreError(passport,"client.errors.ignoreWrongJobDataErrors",msg))
+                    throw new InvalidUserDataException(msg);
+                value="";
+            }
         
-        if (index!=null && !indexedConstraints.contains(paramName)) {
-            String msg=HBCIUtilsInternal.getLocMsg("EXCMSG_PARAM_NOTINDEXED",new String[] {paramName,getName()});
-            if (!HBCIUtilsInternal.ignoreError(passport,"client.errors.ignoreWrongJobDataErrors",msg))
-                throw new InvalidUserDataException(msg);
-        }
+            if (index!=null && !indexedConstraints.contains(paramName)) {
+                String msg=HBCIUtilsInternal.getLocMsg("EXCMSG_PARAM_NOTINDEXED",new String[] {paramName,getName()});
+                if (!HBCIUtilsInternal.ignoreError(passport,"client.errors.ignoreWrongJobDataErrors",msg))
+                    throw new InvalidUserDataException(msg);
+            }
 
-        for (int i=0;i<destinations.length;i++) {
-            String[] valuePair=destinations[i];
-            String   lowlevelname=valuePair[0];
+            for (int i=0;i<destinations.length;i++) {
+                String[] valuePair=destinations[i];
+                String   lowlevelname=valuePair[0];
 
-            if (index != null && indexedConstraints.contains(paramName)) {
-                lowlevelname = insertIndex(lowlevelname, index);
-            }
+                if (index != null && indexedConstraints.contains(paramName)) {
+                    lowlevelname = insertIndex(lowlevelname, index);
+                }
             
-            setLowlevelParam(lowlevelname,value);
+                setLowlevelParam(lowlevelname,value);
+            }
+        } finally {
+            HBCIContext.restore(old);
         }
     }
     
@@ -813,7 +822,7 @@ public abstract class HBCIJobImpl
     {
         try {
             executed=true;
-            Properties result=status.getData();
+            ResultNode result=status.getResult();
 
             // nachsehen, welche antwortsegmente ueberhaupt
             // zu diesem task gehoeren
@@ -821,27 +830,28 @@ public abstract class HBCIJobImpl
             // res-num --> segmentheader (wird für sortierung der 
             // antwort-segmente benötigt)
             Hashtable<Integer,String> keyHeaders=new Hashtable<Integer, String>();
-            for (Enumeration i=result.keys();i.hasMoreElements();) {
-                String key=(String)(i.nextElement());
-                if (key.startsWith("GVRes")&&
-                    key.endsWith(".SegHead.ref")) {
-                    
-                    String segref=result.getProperty(key);
-                    if ((Integer.parseInt(segref))-offset==idx) {
+            for (Iterator<ResultNode> i=result.getChildren().iterator();i.hasNext();) {
+                ResultNode gvres=i.next();
+                String     gvresName=gvres.getName();
+                if (!gvresName.startsWith("GVRes"))
+                    continue;
+
+                for (Iterator<ResultNode> j=gvres.getChildren().iterator();j.hasNext();) {
+                    ResultNode seg=j.next();
+                    String     segref=seg.getValue("SegHead.ref");
+                    if (segref!=null && (Integer.parseInt(segref))-offset==idx) {
                         // nummer des antwortsegments ermitteln
                         int resnum=0;
-                        if (key.startsWith("GVRes_")) {
-                            resnum=Integer.parseInt(key.substring(key.indexOf('_')+1,key.indexOf('.')));
+                        if (gvresName.startsWith("GVRes_")) {
+                            resnum=Integer.parseInt(gvresName.substring(gvresName.indexOf('_')+1));
                         }
                         
-                        keyHeaders.put(
-                            new Integer(resnum),
-                            key.substring(0,key.length()-(".SegHead.ref").length()));
+                        keyHeaders.put(new Integer(resnum),seg.getPath());
                     }
                 }
             }
             
-            saveBasicValues(result,idx+offset);
+            saveBasicValues(status,idx+offset);
             saveReturnValues(status,idx+offset);
             
             // segment-header-namen der antwortsegmente in der reihenfolge des
@@ -871,16 +881,16 @@ public abstract class HBCIJobImpl
     /* wenn wenigstens ein HBCI-Rückgabewert für den aktuellen GV gefunden wurde,
        so werden im outStore zusätzlich die entsprechenden Dialog-Parameter
        gespeichert (Property @c basic.*) */
-    private void saveBasicValues(Properties result,int ref)
+    private void saveBasicValues(HBCIMsgStatus status,int ref)
     {
         // wenn noch keine basic-daten gespeichert sind
         if (jobResult.getDialogId()==null) {
             // Pfad des originalen MsgHead-Segmentes holen und um "orig_" ergaenzen,
             // um den Key fuer die entsprechenden Daten in das result-Property zu erhalten
-            String msgheadName="orig_"+result.getProperty("1");
+            String msgheadName="orig_"+status.getProperty("1");
             
-            jobResult.storeResult("basic.dialogid",result.getProperty(msgheadName+".dialogid"));
-            jobResult.storeResult("basic.msgnum",result.getProperty(msgheadName+".msgnum"));
+            jobResult.storeResult("basic.dialogid",status.getProperty(msgheadName+".dialogid"));
+            jobResult.storeResult("basic.msgnum",status.getProperty(msgheadName+".msgnum"));
             jobResult.storeResult("basic.segnum",Integer.toString(ref));
 
             HBCIUtils.log("basic values for " + getName() + " set to "
@@ -928,15 +938,21 @@ public abstract class HBCIJobImpl
 
     private void extractPlaintextResults(HBCIMsgStatus status,String header,int idx)
     {
-        Properties result=status.getData();
-        for (Enumeration e=result.keys();e.hasMoreElements();) {
-            String key=(String)(e.nextElement());
-            if (key.startsWith(header+".")) {
-                jobResult.storeResult(HBCIUtilsInternal.withCounter("content",idx)+
-                                      "."+
-                                      key.substring(header.length()+1),result.getProperty(key));
+        ResultNode seg=status.getResult(header);
+        if (seg==null)
+            return;
+
+        final String prefix=HBCIUtilsInternal.withCounter("content",idx)+".";
+        final int    skip=seg.getPath().length()+1;
+        seg.accept(new ResultVisitor() {
+            public boolean visit(ResultNode node)
+            {
+                if (node.getValue()!=null) {
+                    jobResult.storeResult(prefix+node.getPath().substring(skip),node.getValue());
+                }
+                return true;
             }
-        }
+        });
     }
 
     public HBCIJobResult getJobResult()
@@ -796,7 +796,7 @@ public class GVRKUms
             // HBCIUtils.log("Parsing of MT940 ok until now; unparsed data: "+buffer,HBCIUtils.LOG_DEBUG2);
         } catch (Exception e) {
             HBCIUtils.log("There is unparsed MT94x data - an exception occured while parsing",HBCIUtils.LOG_ERR);
-            HBCIUtils.log("current MT94x buffer: "+buffer,HBCIUtils.LOG_DEBUG2);
+            HBCIUtils.log("current MT94x buffer: ",buffer,HBCIUtils.LOG_DEBUG2);
             throw new HBCI_Exception(e);
         } finally {
             rest.setLength(0);
@@ -24,6 +24,7 @@ package org.kapott.hbci.callback;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 
+import org.kapott.hbci.manager.LogDispatcher;
 import org.kapott.hbci.passport.HBCIPassport;
 
 /** Diese Klasse dient als Basisklasse für allen Callback-Klassen. Eine Anwendung sollte
@@ -50,11 +51,13 @@ public abstract class AbstractHBCICallback
         SimpleDateFormat df=new SimpleDateFormat("yyyy.MM.dd HH:mm:ss.SSS");
         ret.append("[").append(df.format(date)).append("] ");
         
-        Thread thread=Thread.currentThread();
-        ret.append("[").append(thread.getThreadGroup().getName());
+        // bei asynchroner ausgabe der thread, der die meldung erzeugt hat
+        Thread thread=LogDispatcher.getSourceThread();
+        ThreadGroup group=thread.getThreadGroup();
+        ret.append("[").append((group!=null)?group.getName():"");
         ret.append("/").append(thread.getName()).append("] ");
         
-        String classname=trace.getClassName();
+        String classname=(trace!=null)?trace.getClassName():null;
         String hbciname="org.kapott.hbci.";
         if (classname!=null && classname.startsWith(hbciname))
             ret.append(classname.substring((hbciname).length())).append(": ");
@@ -80,11 +83,22 @@ public abstract class AbstractHBCICallback
         return ret.toString();
     }
 
-    public synchronized final void status(HBCIPassport passport,int statusTag,Object o)
+    public final void status(HBCIPassport passport,int statusTag,Object o)
     {
         status(passport,statusTag,new Object[] {o});
     }
     
+    /** Gibt an, ob dieses Callback-Objekt Status-Meldungen mit dem Tag
+     * <code>statusTag</code> überhaupt auswertet. Die Daten für aufwändig zu
+     * erzeugende Status-Meldungen (z.B. {@link #STATUS_MSG_RAW_SEND} mit der
+     * kompletten Nachricht) werden vom Kernel nur dann erzeugt, wenn hier
+     * <code>true</code> zurückgegeben wird. Standard-Verhalten - gibt für alle
+     * Status-Tags <code>true</code> zurück. */
+    public boolean isStatusWanted(int statusTag)
+    {
+        return true;
+    }
+    
     /** Standard-Verhalten - gibt für alle Callbacks <code>false</code> (= asynchrone
      * Callback-Behandlung) zurück.*/
     public boolean useThreadedCallback(HBCIPassport passport,int reason,String msg,
@@ -0,0 +1,202 @@
+/*  This file is part of HBCI4Java
+    Copyright (C) 2001-2008  Stefan Palme
+
+    HBCI4Java is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    HBCI4Java is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package org.kapott.hbci.callback;
+
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.kapott.hbci.exceptions.HBCI_Exception;
+import org.kapott.hbci.manager.HBCIUtils;
+import org.kapott.hbci.manager.HBCIUtilsInternal;
+import org.kapott.hbci.passport.HBCIPassport;
+
+/** <p>Wrapper-Klasse für die asynchrone Behandlung von Callbacks, die Eingaben
+ * des Benutzers erfordern (z.B. PIN oder TAN). Gedacht für die Verwendung mit
+ * {@link org.kapott.hbci.manager.HBCIHandler#executeAsync(java.util.concurrent.Executor)}.</p>
+ * <p>Für welche Callbacks das gilt, wird wie beim threaded-callback-Mechanismus
+ * über {@link HBCICallback#useThreadedCallback(HBCIPassport, int, String, int, StringBuffer)}
+ * des "normalen" Callback-Objektes entschieden. Diese Callbacks werden als
+ * {@link Request} an {@link #callbackAsync(Request)} übergeben, die Anwendung
+ * beantwortet sie später (aus einem beliebigen Thread) mit
+ * {@link Request#complete(String)}. Kein Thread der Anwendung muss dabei auf den
+ * HBCI-Dialog warten, lediglich der HBCI-Dialog selbst wartet (höchstens
+ * <code>kernel.threaded.maxwaittime</code> Sekunden) auf die Antwort.</p>
+ * <p>Alle anderen Callbacks sowie Log- und Status-Meldungen werden an das
+ * "normale" Callback-Objekt weitergereicht.</p> */
+public abstract class HBCICallbackAsync
+    extends AbstractHBCICallback
+{
+    /** Ein noch zu beantwortender Callback. */
+    public final static class Request
+    {
+        private final HBCIPassport passport;
+        private final int          reason;
+        private final String       msg;
+        private final int          datatype;
+        private final String       preset;
+
+        private final CountDownLatch done=new CountDownLatch(1);
+        private final AtomicBoolean  completed=new AtomicBoolean(false);
+        private volatile String      response;
+        private volatile Exception   error;
+
+        Request(HBCIPassport passport,int reason,String msg,int datatype,String preset)
+        {
+            this.passport=passport;
+            this.reason=reason;
+            this.msg=msg;
+            this.datatype=datatype;
+            this.preset=preset;
+        }
+
+        /** @return das Passport, für das der Callback erzeugt wurde */
+        public HBCIPassport getPassport()
+        {
+            return passport;
+        }
+
+        /** @return Ursache des Callbacks (<code>HBCICallback.NEED_*</code>) */
+        public int getReason()
+        {
+            return reason;
+        }
+
+        /** @return Text, der dem Benutzer angezeigt werden kann */
+        public String getMessage()
+        {
+            return msg;
+        }
+
+        /** @return erwarteter Datentyp der Antwort (<code>HBCICallback.TYPE_*</code>) */
+        public int getDataType()
+        {
+            return datatype;
+        }
+
+        /** @return Daten, die der Kernel mit dem Callback übergibt (z.B.
+                    die Challenge bei <code>NEED_PT_TAN</code>) */
+        public String getData()
+        {
+            return preset;
+        }
+
+        /** Beantwortet den Callback. Weitere Aufrufe werden ignoriert.
+            @param response die Antwort (entspricht <code>retData</code>) */
+        public void complete(String response)
+        {
+            if (completed.compareAndSet(false,true)) {
+                this.response=response;
+                done.countDown();
+            }
+        }
+
+        /** Bricht den Callback mit einem Fehler ab, der HBCI-Dialog wird
+            daraufhin mit einer Exception beendet. */
+        public void fail(Exception e)
+        {
+            if (completed.compareAndSet(false,true)) {
+                this.error=e;
+                done.countDown();
+            }
+        }
+
+        /** @return <code>true</code>, wenn der Callback bereits beantwortet wurde */
+        public boolean isDone()
+        {
+            return done.getCount()==0;
+        }
+
+        String await(long seconds)
+        {
+            try {
+                if (!done.await(seconds,TimeUnit.SECONDS)) {
+                    fail(new HBCI_Exception("no callback data received - timeout"));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail(e);
+            }
+
+            if (error!=null) {
+                throw new HBCI_Exception("*** async callback failed",error);
+            }
+            return response;
+        }
+    }
+
+    private HBCICallback realCallback;
+
+    /** @param realCallback das "normale" Callback-Objekt */
+    public HBCICallbackAsync(HBCICallback realCallback)
+    {
+        this.realCallback=realCallback;
+    }
+
+    /** Wird für jeden Callback aufgerufen, der eine Eingabe des Benutzers
+     * erfordert. Die Methode soll nicht blockieren, sondern den Callback z.B.
+     * an die Benutzeroberfläche weiterreichen, die ihn später mit
+     * {@link Request#complete(String)} beantwortet.
+     * @param request der zu beantwortende Callback */
+    protected abstract void callbackAsync(Request request);
+
+    /** Aufruf wird an das "normale" Callback-Objekt weitergereicht. */
+    public void log(String msg,int level,Date date,StackTraceElement trace)
+    {
+        realCallback.log(msg,level,date,trace);
+    }
+
+    /** Aufruf wird an das "normale" Callback-Objekt weitergereicht. */
+    public boolean isStatusWanted(int statusTag)
+    {
+        return HBCIUtilsInternal.isStatusWanted(realCallback,statusTag);
+    }
+
+    /** Callbacks, die laut dem "normalen" Callback-Objekt eine Eingabe des
+     * Benutzers erfordern, werden an {@link #callbackAsync(Request)} übergeben.
+     * Der HBCI-Dialog wartet anschließend auf die Antwort. */
+    public void callback(HBCIPassport passport,int reason,String msg,
+                         int datatype,StringBuffer retData)
+    {
+        if (!realCallback.useThreadedCallback(passport,reason,msg,datatype,retData)) {
+            realCallback.callback(passport,reason,msg,datatype,retData);
+            return;
+        }
+
+        HBCIUtils.log("passing callback "+reason+" to async handler",HBCIUtils.LOG_DEBUG);
+        Request request=new Request(passport,reason,msg,datatype,(retData!=null)?retData.toString():null);
+        callbackAsync(request);
+
+        String response=request.await(HBCIUtils.getConfig().getMaxWaitTime());
+        HBCIUtils.log("got response for async callback "+reason,HBCIUtils.LOG_DEBUG);
+        if (retData!=null) {
+            retData.setLength(0);
+            if (response!=null) {
+                retData.append(response);
+            }
+        }
+    }
+
+    /** Aufruf wird an das "normale" Callback-Objekt weitergereicht. */
+    public void status(HBCIPassport passport,int statusTag,Object[] o)
+    {
+        realCallback.status(passport,statusTag,o);
+    }
+}
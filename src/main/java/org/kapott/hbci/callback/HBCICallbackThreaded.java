@@ -26,6 +26,7 @@ import java.util.Hashtable;
 import java.util.Properties;
 
 import org.kapott.hbci.manager.HBCIUtils;
+import org.kapott.hbci.manager.HBCIUtilsInternal;
 import org.kapott.hbci.manager.ThreadSyncer;
 import org.kapott.hbci.passport.HBCIPassport;
 import org.kapott.hbci.passport.HBCIPassportInternal;
@@ -64,6 +65,12 @@ public final class HBCICallbackThreaded
         realCallback.log(msg,level,date,trace);
     }
 
+    /** Aufruf wird an das "normale" Callback-Objekt weitergereicht. */
+    public boolean isStatusWanted(int statusTag)
+    {
+        return HBCIUtilsInternal.isStatusWanted(realCallback,statusTag);
+    }
+
     /** Für asynchron zu behandelnde Callbacks wird der Aufruf an das "normale"
      * Callback-Objekt weitergereicht. Synchron zu behandelnde Callbacks werden
      * von dieser Methode behandelt, in dem der entsprechende Aufruf von
@@ -116,7 +123,7 @@ public final class HBCICallbackThreaded
                 // im normalfall dient dieses wait() dazu, auf die callback-daten von
                 // der anwendung zu warten (via hbci.continueThreaded())
                 HBCIUtils.log("hbci thread: callback: waiting for callback response from main thread;",HBCIUtils.LOG_DEBUG);
-                sync_hbci.startWaiting(Integer.parseInt(HBCIUtils.getParam("kernel.threaded.maxwaittime","300")), "no callback data received from main thread - timeout");
+                sync_hbci.startWaiting(HBCIUtils.getConfig().getMaxWaitTime(), "no callback data received from main thread - timeout");
                 HBCIUtils.log("hbci thread: callback: got response from main thread - returning callback answer to kernel",HBCIUtils.LOG_DEBUG);
                 
                 if (retData!=null) {
@@ -0,0 +1,68 @@
+/*  This file is part of HBCI4Java
+    Copyright (C) 2001-2008  Stefan Palme
+
+    HBCI4Java is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    HBCI4Java is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package org.kapott.hbci.comm;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.kapott.hbci.exceptions.HBCI_Exception;
+import org.kapott.hbci.manager.HBCIConfig;
+import org.kapott.hbci.manager.HBCIUtils;
+
+/** Wartezeiten zwischen zwei Versuchen nach einem vorübergehenden Fehler.
+    Die Wartezeit verdoppelt sich mit jedem Versuch (ausgehend von
+    <code>client.retry.delay</code>, höchstens <code>client.retry.maxdelay</code>)
+    und wird zufällig um bis zu 50% verkürzt, damit viele Clients nach einer
+    Störung nicht alle gleichzeitig wieder bei der Bank anklopfen. */
+public final class Backoff
+{
+    private Backoff()
+    {
+    }
+
+    /** @param config die Kernel-Parameter
+        @param attempt Nummer des fehlgeschlagenen Versuchs (ab 0)
+        @return die Wartezeit vor dem nächsten Versuch in Millisekunden */
+    public static long getDelay(HBCIConfig config,int attempt)
+    {
+        long max=config.getRetryMaxDelay();
+        long delay=config.getRetryDelay();
+        for (int i=0;i<attempt && delay<max;i++) {
+            delay<<=1;
+        }
+        delay=Math.min(delay,max);
+
+        long half=delay/2;
+        return half+((delay-half>0)?ThreadLocalRandom.current().nextLong(delay-half+1):0);
+    }
+
+    /** Wartet vor dem nächsten Versuch.
+        @param attempt Nummer des fehlgeschlagenen Versuchs (ab 0)
+        @throws HBCI_Exception wenn der Thread beim Warten unterbrochen wurde */
+    public static void sleep(int attempt)
+    {
+        long delay=getDelay(HBCIUtils.getConfig(),attempt);
+        HBCIUtils.log("waiting "+delay+" ms before retry #"+(attempt+1),HBCIUtils.LOG_INFO);
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new HBCI_Exception("*** interrupted while waiting for retry",e);
+        }
+    }
+}
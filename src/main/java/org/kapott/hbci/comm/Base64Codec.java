@@ -0,0 +1,168 @@
+/*  This file is part of HBCI4Java
+    Copyright (C) 2001-2008  Stefan Palme
+
+    HBCI4Java is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    HBCI4Java is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+
+package org.kapott.hbci.comm;
+
+import java.util.Arrays;
+
+import org.kapott.hbci.protocol.MsgBuffer;
+
+/** <p>Tabellengesteuerte Base64-Kodierung (RFC 2045, ohne Zeilenumbrüche).
+    Je drei Bytes werden in einem Schritt zu vier Zeichen kodiert bzw. beim
+    Dekodieren über eine Tabelle wieder zusammengesetzt, gearbeitet wird
+    direkt auf Byte-Arrays.</p>
+    <p>Beim Dekodieren werden Zeichen außerhalb des Base64-Alphabets (z.B.
+    Zeilenumbrüche) überlesen, mit dem ersten Füllzeichen <code>'='</code>
+    endet die Nachricht. Das entspricht dem Verhalten von
+    {@link org.kapott.hbci.manager.HBCIUtils#decodeBase64(String)}.</p>
+    <p>Für die Kodierung beim Schreiben bzw. die Dekodierung beim Lesen gibt
+    es {@link Base64OutputStream} und {@link Base64InputStream}.</p> */
+public final class Base64Codec
+{
+    final static byte[] ALPHABET=new byte[64];
+
+    /* wert jedes zeichens im alphabet */
+    final static byte[] VALUES=new byte[256];
+
+    /* markierung für zeichen, die überlesen werden */
+    final static byte   SKIP=-1;
+
+    /* markierung für das füllzeichen */
+    final static byte   PAD=-2;
+
+    static
+    {
+        String alphabet="ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        Arrays.fill(VALUES,SKIP);
+        for (int i=0;i<64;i++) {
+            ALPHABET[i]=(byte)alphabet.charAt(i);
+            VALUES[alphabet.charAt(i)]=(byte)i;
+        }
+        VALUES['=']=PAD;
+    }
+
+    private Base64Codec()
+    {
+    }
+
+    /** @param len Anzahl der zu kodierenden Bytes
+        @return Länge der Base64-Kodierung */
+    public static int encodedLength(int len)
+    {
+        return ((len+2)/3)*4;
+    }
+
+    /** Kodiert <code>len</code> Bytes aus <code>src</code> ab
+        <code>off</code> nach <code>dst</code> ab <code>dstOff</code>. Dort muss
+        Platz für {@link #encodedLength(int)} Bytes sein.
+        @return Anzahl der geschriebenen Bytes */
+    public static int encode(byte[] src,int off,int len,byte[] dst,int dstOff)
+    {
+        byte[] a=ALPHABET;
+        int    end=off+len-(len%3);
+        int    d=dstOff;
+        int    s=off;
+
+        while (s<end) {
+            int v=((src[s]&0xff)<<16)|((src[s+1]&0xff)<<8)|(src[s+2]&0xff);
+            s+=3;
+            dst[d++]=a[v>>>18];
+            dst[d++]=a[(v>>>12)&0x3f];
+            dst[d++]=a[(v>>>6)&0x3f];
+            dst[d++]=a[v&0x3f];
+        }
+
+        int rest=off+len-s;
+        if (rest>0) {
+            int v=(src[s]&0xff)<<16;
+            if (rest==2) {
+                v|=(src[s+1]&0xff)<<8;
+            }
+            dst[d++]=a[v>>>18];
+            dst[d++]=a[(v>>>12)&0x3f];
+            dst[d++]=(rest==2)?a[(v>>>6)&0x3f]:(byte)'=';
+            dst[d++]=(byte)'=';
+        }
+        return d-dstOff;
+    }
+
+    /** @return die Base64-Kodierung von <code>len</code> Bytes aus
+                <code>src</code> ab <code>off</code> */
+    public static byte[] encode(byte[] src,int off,int len)
+    {
+        byte[] ret=new byte[encodedLength(len)];
+        encode(src,off,len,ret,0);
+        return ret;
+    }
+
+    /** @return die Base64-Kodierung des Pufferinhaltes als neuer Puffer */
+    public static MsgBuffer encode(MsgBuffer raw)
+    {
+        return new MsgBuffer(encode(raw.getBuffer(),0,raw.length()));
+    }
+
+    /** Dekodiert <code>len</code> Zeichen aus <code>src</code> ab
+        <code>off</code> nach <code>dst</code> ab <code>dstOff</code>. Dort muss
+        Platz für <code>len*3/4</code> Bytes sein. Da aus je vier Zeichen drei
+        Bytes werden, kann auch im selben Array dekodiert werden, solange
+        <code>dstOff&lt;=off</code> ist.
+        @return Anzahl der geschriebenen Bytes */
+    public static int decode(byte[] src,int off,int len,byte[] dst,int dstOff)
+    {
+        byte[] values=VALUES;
+        int    end=off+len;
+        int    d=dstOff;
+        int    bits=0;
+        int    nbits=0;
+
+        for (int s=off;s<end;s++) {
+            int v=values[src[s]&0xff];
+            if (v<0) {
+                if (v==PAD) {
+                    break;
+                }
+                continue;
+            }
+            bits=((bits<<6)|v)&0xffff;
+            nbits+=6;
+            if (nbits>=8) {
+                nbits-=8;
+                dst[d++]=(byte)(bits>>nbits);
+            }
+        }
+        return d-dstOff;
+    }
+
+    /** @return die dekodierten Daten aus <code>len</code> Zeichen von
+                <code>src</code> ab <code>off</code> */
+    public static byte[] decode(byte[] src,int off,int len)
+    {
+        byte[] ret=new byte[(int)(len*3L/4)];
+        int    n=decode(src,off,len,ret,0);
+        return (n==ret.length)?ret:Arrays.copyOf(ret,n);
+    }
+
+    /** Dekodiert den Pufferinhalt direkt im Puffer.
+        @return <code>raw</code> */
+    public static MsgBuffer decode(MsgBuffer raw)
+    {
+        raw.setLength(decode(raw.getBuffer(),0,raw.length(),raw.getBuffer(),0));
+        return raw;
+    }
+}
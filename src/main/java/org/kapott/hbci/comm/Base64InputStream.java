@@ -0,0 +1,135 @@
+/*  This file is part of HBCI4Java
+    Copyright (C) 2001-2008  Stefan Palme
+
+    HBCI4Java is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    HBCI4Java is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+
+package org.kapott.hbci.comm;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/** Liest Base64-kodierte Daten aus dem Quell-Stream und liefert sie
+    dekodiert. Zeichen außerhalb des Base64-Alphabets werden überlesen, mit
+    dem ersten Füllzeichen <code>'='</code> ist der Stream zu Ende (dahinter
+    stehende Daten werden nicht mehr gelesen). */
+public class Base64InputStream
+    extends InputStream
+{
+    private final static int CHUNK=4*1024;
+
+    private InputStream targetInputStream;
+    private byte[]      raw=new byte[CHUNK];
+
+    /* bereits dekodierte, aber noch nicht abgeholte bytes */
+    private byte[]      decoded=new byte[CHUNK];
+    private int         pos;
+    private int         limit;
+
+    /* noch nicht verbrauchte bits des letzten zeichens */
+    private int         bits;
+    private int         nbits;
+    private boolean     eof;
+
+    public Base64InputStream(InputStream target)
+    {
+        this.targetInputStream=target;
+    }
+
+    /** füllt den puffer mit dekodierten daten
+        @return <code>false</code>, wenn keine daten mehr kommen */
+    private boolean fill()
+        throws IOException
+    {
+        pos=0;
+        limit=0;
+        while (limit==0 && !eof) {
+            int num=targetInputStream.read(raw,0,raw.length);
+            if (num<0) {
+                eof=true;
+                break;
+            }
+
+            // die bits werden über die blockgrenzen hinweg mitgenommen, daher
+            // wird hier (und nicht in Base64Codec) dekodiert
+            byte[] values=Base64Codec.VALUES;
+            for (int i=0;i<num;i++) {
+                int v=values[raw[i]&0xff];
+                if (v<0) {
+                    if (v==Base64Codec.PAD) {
+                        eof=true;
+                        break;
+                    }
+                    continue;
+                }
+                bits=((bits<<6)|v)&0xffff;
+                nbits+=6;
+                if (nbits>=8) {
+                    nbits-=8;
+                    decoded[limit++]=(byte)(bits>>nbits);
+                }
+            }
+        }
+        return limit>0;
+    }
+
+    public int read()
+        throws IOException
+    {
+        if (pos==limit && !fill()) {
+            return -1;
+        }
+        return decoded[pos++]&0xff;
+    }
+
+    public int read(byte[] b,int off,int len)
+        throws IOException
+    {
+        if (len==0) {
+            return 0;
+        }
+        if (pos==limit && !fill()) {
+            return -1;
+        }
+        int num=Math.min(len,limit-pos);
+        System.arraycopy(decoded,pos,b,off,num);
+        pos+=num;
+        return num;
+    }
+
+    public long skip(long n)
+        throws IOException
+    {
+        long ret=0;
+        while (ret<n && (pos<limit || fill())) {
+            int num=(int)Math.min(n-ret,limit-pos);
+            pos+=num;
+            ret+=num;
+        }
+        return ret;
+    }
+
+    public int available()
+    {
+        return limit-pos;
+    }
+
+    public void close()
+        throws IOException
+    {
+        targetInputStream.close();
+    }
+}
@@ -0,0 +1,112 @@
+/*  This file is part of HBCI4Java
+    Copyright (C) 2001-2008  Stefan Palme
+
+    HBCI4Java is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    HBCI4Java is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+
+package org.kapott.hbci.comm;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/** Kodiert alle geschriebenen Daten mit Base64 und schreibt sie in den
+    Ziel-Stream. Die Daten werden in Blöcken kodiert, ohne sie vollständig
+    im Speicher zu halten. Die Kodierung ist erst mit {@link #finish()} bzw.
+    {@link #close()} abgeschlossen, erst dann werden die letzten (höchstens
+    zwei) Bytes samt Füllzeichen geschrieben. */
+public class Base64OutputStream
+    extends OutputStream
+{
+    private final static int CHUNK=3*1024;
+
+    private OutputStream targetOutputStream;
+    private byte[]       rest=new byte[3];
+    private int          restLen;
+    private byte[]       encoded=new byte[Base64Codec.encodedLength(CHUNK)];
+    private boolean      finished;
+
+    public Base64OutputStream(OutputStream target)
+    {
+        this.targetOutputStream=target;
+    }
+
+    public void write(int b)
+        throws IOException
+    {
+        write(new byte[] {(byte)b},0,1);
+    }
+
+    public void write(byte[] b,int off,int len)
+        throws IOException
+    {
+        if (finished)
+            throw new IOException("stream already finished");
+
+        // angefangene dreiergruppe vervollständigen
+        while (restLen>0 && restLen<3 && len>0) {
+            rest[restLen++]=b[off++];
+            len--;
+        }
+        if (restLen==3) {
+            int n=Base64Codec.encode(rest,0,3,encoded,0);
+            targetOutputStream.write(encoded,0,n);
+            restLen=0;
+        }
+
+        // ganze dreiergruppen blockweise kodieren
+        while (len>=3) {
+            int count=Math.min(len-(len%3),CHUNK);
+            int n=Base64Codec.encode(b,off,count,encoded,0);
+            targetOutputStream.write(encoded,0,n);
+            off+=count;
+            len-=count;
+        }
+
+        // den rest für den nächsten aufruf merken
+        while (len>0) {
+            rest[restLen++]=b[off++];
+            len--;
+        }
+    }
+
+    /** schreibt die letzten bytes samt füllzeichen. danach dürfen keine
+        daten mehr geschrieben werden, der ziel-stream bleibt aber offen */
+    public void finish()
+        throws IOException
+    {
+        if (!finished) {
+            finished=true;
+            if (restLen>0) {
+                int n=Base64Codec.encode(rest,0,restLen,encoded,0);
+                targetOutputStream.write(encoded,0,n);
+                restLen=0;
+            }
+        }
+    }
+
+    public void flush()
+        throws IOException
+    {
+        targetOutputStream.flush();
+    }
+
+    public void close()
+        throws IOException
+    {
+        finish();
+        targetOutputStream.close();
+    }
+}
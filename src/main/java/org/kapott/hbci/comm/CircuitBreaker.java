@@ -0,0 +1,218 @@
+/*  This file is part of HBCI4Java
+    Copyright (C) 2001-2008  Stefan Palme
+
+    HBCI4Java is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    HBCI4Java is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package org.kapott.hbci.comm;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.kapott.hbci.exceptions.HBCI_Exception;
+import org.kapott.hbci.manager.HBCIConfig;
+import org.kapott.hbci.manager.HBCIUtils;
+
+/** <p>Circuit-Breaker für einen HBCI-Server. Schlägt die Kommunikation mit
+    einem Server <code>client.retry.breaker.threshold</code> mal in Folge
+    wegen eines vorübergehenden Fehlers fehl (Server nicht erreichbar,
+    HTTP-Status 5xx, Timeout), werden weitere Verbindungen zu diesem Server
+    für <code>client.retry.breaker.timeout</code> Sekunden sofort mit einer
+    Exception abgelehnt, statt die (vermutlich ohnehin gestörte) Bank weiter
+    zu belasten. Danach wird eine einzelne Probe-Verbindung zugelassen -
+    gelingt sie, wird der Server wieder normal verwendet.</p>
+    <p>Die Objekte sind global (über alle {@link org.kapott.hbci.manager.HBCIContext}s
+    hinweg) je Server eindeutig. Über {@link #getInstances()} kann der
+    Zustand aller Server z.B. für ein Monitoring abgefragt werden.</p> */
+public final class CircuitBreaker
+{
+    /** Zustand eines Circuit-Breakers */
+    public static enum State
+    {
+        /** Normalbetrieb */
+        CLOSED,
+        /** Server gestört, Verbindungen werden abgelehnt */
+        OPEN,
+        /** Wartezeit abgelaufen, eine Probe-Verbindung ist zugelassen */
+        HALF_OPEN
+    }
+
+    private final static ConcurrentMap<String,CircuitBreaker> instances=new ConcurrentHashMap<String,CircuitBreaker>();
+
+    private final String host;
+
+    private State   state=State.CLOSED;
+    private boolean probing;
+    private long    probeStarted;
+    private long    openedAt;
+    private int     consecutiveFailures;
+    private long    successes;
+    private long    failures;
+    private long    rejected;
+    private long    opened;
+
+    private CircuitBreaker(String host)
+    {
+        this.host=host;
+    }
+
+    /** @param host der Server
+        @return der Circuit-Breaker für diesen Server */
+    public static CircuitBreaker getInstance(String host)
+    {
+        String key=host.toLowerCase();
+        CircuitBreaker ret=instances.get(key);
+        if (ret==null) {
+            CircuitBreaker created=new CircuitBreaker(key);
+            ret=instances.putIfAbsent(key,created);
+            if (ret==null) {
+                ret=created;
+            }
+        }
+        return ret;
+    }
+
+    /** @return alle bisher verwendeten Circuit-Breaker, sortiert nach Server */
+    public static Map<String,CircuitBreaker> getInstances()
+    {
+        return Collections.unmodifiableMap(new TreeMap<String,CircuitBreaker>(instances));
+    }
+
+    /** Muss vor jeder Verbindung zum Server aufgerufen werden.
+        @throws HBCI_Exception wenn der Server derzeit als gestört gilt */
+    public void checkRequest()
+    {
+        HBCIConfig config=HBCIUtils.getConfig();
+        synchronized (this) {
+            if (state==State.CLOSED) {
+                return;
+            }
+
+            long now=System.currentTimeMillis();
+            long timeout=config.getBreakerTimeout()*1000L;
+            if (state==State.OPEN && now-openedAt>=timeout) {
+                HBCIUtils.log("circuit breaker for "+host+" is half open - allowing one probe connection",HBCIUtils.LOG_INFO);
+                state=State.HALF_OPEN;
+                probing=false;
+            }
+
+            // kam die probe-verbindung zu keinem ergebnis (z.b. wegen eines
+            // anderen fehlers), wird nach der wartezeit eine weitere zugelassen
+            if (state==State.HALF_OPEN && (!probing || now-probeStarted>=timeout)) {
+                probing=true;
+                probeStarted=now;
+                return;
+            }
+
+            rejected++;
+        }
+
+        HBCI_Exception e=new HBCI_Exception("*** server "+host+" is not available (circuit breaker open after "
+                                            +config.getBreakerThreshold()+" failures) - not connecting");
+        e.setFatal(true);
+        throw e;
+    }
+
+    /** Meldet eine erfolgreiche Kommunikation mit dem Server. */
+    public synchronized void success()
+    {
+        successes++;
+        consecutiveFailures=0;
+        if (state!=State.CLOSED) {
+            HBCIUtils.log("circuit breaker for "+host+" closed",HBCIUtils.LOG_INFO);
+            state=State.CLOSED;
+            probing=false;
+        }
+    }
+
+    /** Meldet einen vorübergehenden Fehler bei der Kommunikation mit dem Server. */
+    public void failure()
+    {
+        int threshold=HBCIUtils.getConfig().getBreakerThreshold();
+        synchronized (this) {
+            failures++;
+            consecutiveFailures++;
+            if (threshold==0) {
+                return;
+            }
+            if (state==State.HALF_OPEN || (state==State.CLOSED && consecutiveFailures>=threshold)) {
+                HBCIUtils.log("circuit breaker for "+host+" opened after "+consecutiveFailures+" failures",HBCIUtils.LOG_WARN);
+                state=State.OPEN;
+                probing=false;
+                openedAt=System.currentTimeMillis();
+                opened++;
+            }
+        }
+    }
+
+    /** Setzt den Circuit-Breaker in den Normalbetrieb zurück. */
+    public synchronized void reset()
+    {
+        state=State.CLOSED;
+        probing=false;
+        consecutiveFailures=0;
+    }
+
+    /** @return der Server */
+    public String getHost()
+    {
+        return host;
+    }
+
+    /** @return der aktuelle Zustand */
+    public synchronized State getState()
+    {
+        return state;
+    }
+
+    /** @return Anzahl der Fehler seit der letzten erfolgreichen Kommunikation */
+    public synchronized int getConsecutiveFailures()
+    {
+        return consecutiveFailures;
+    }
+
+    /** @return Anzahl der erfolgreichen Nachrichtenaustausche */
+    public synchronized long getSuccesses()
+    {
+        return successes;
+    }
+
+    /** @return Anzahl der vorübergehenden Fehler insgesamt */
+    public synchronized long getFailures()
+    {
+        return failures;
+    }
+
+    /** @return Anzahl der wegen des Zustands <code>OPEN</code> abgelehnten Verbindungen */
+    public synchronized long getRejected()
+    {
+        return rejected;
+    }
+
+    /** @return wie oft der Circuit-Breaker bisher geöffnet wurde */
+    public synchronized long getOpened()
+    {
+        return opened;
+    }
+
+    public synchronized String toString()
+    {
+        return host+": "+state+" (failures="+consecutiveFailures+"/"+failures
+               +", successes="+successes+", rejected="+rejected+", opened="+opened+")";
+    }
+}
@@ -22,8 +22,6 @@
 package org.kapott.hbci.comm;
 
 import java.lang.reflect.Constructor;
-import java.util.ArrayList;
-import java.util.StringTokenizer;
 
 import org.kapott.hbci.callback.HBCICallback;
 import org.kapott.hbci.exceptions.CanNotParseMessageException;
@@ -35,8 +33,11 @@ import org.kapott.hbci.manager.IHandlerData;
 import org.kapott.hbci.manager.MsgGen;
 import org.kapott.hbci.passport.HBCIPassportInternal;
 import org.kapott.hbci.protocol.MSG;
+import org.kapott.hbci.protocol.MsgBuffer;
+import org.kapott.hbci.protocol.SyntaxDef;
+import org.kapott.hbci.protocol.SyntaxSpec;
 import org.kapott.hbci.protocol.factory.MSGFactory;
-import org.kapott.hbci.rewrite.Rewrite;
+import org.kapott.hbci.rewrite.RewriteChain;
 
 public abstract class Comm
 {
@@ -48,8 +49,8 @@ public abstract class Comm
     protected Filter               filter;
     private   HBCIPassportInternal parentPassport;
     
-    protected abstract void ping(MSG msg);
-    protected abstract StringBuffer pong(MsgGen gen);
+    protected abstract void ping(MsgBuffer raw);
+    protected abstract String pong(MsgGen gen);
     protected abstract void closeConnection();
         
     protected Comm(HBCIPassportInternal parentPassport)
@@ -62,63 +63,80 @@ public abstract class Comm
     }
 
     public MSG pingpong(String msgName, MSG msg)
+    {
+        return pingpong(msgName,msg.toBytes());
+    }
+
+    /** versendet die bereits in ihre übertragungsform gebrachte nachricht
+        <code>raw</code> und empfängt die antwortnachricht */
+    public MSG pingpong(String msgName, MsgBuffer raw)
     {
         IHandlerData handler=getParentPassport().getParentHandlerData();
         MsgGen       gen=handler.getMsgGen();
         
         // ausgehende nachricht versenden
         HBCIUtilsInternal.getCallback().status(getParentPassport(),HBCICallback.STATUS_MSG_SEND,null);
-        HBCIUtilsInternal.getCallback().status(getParentPassport(),HBCICallback.STATUS_MSG_RAW_SEND,msg.toString(0));
-        ping(msg);
+        if (HBCIUtilsInternal.isStatusWanted(HBCICallback.STATUS_MSG_RAW_SEND)) {
+            HBCIUtilsInternal.getCallback().status(getParentPassport(),HBCICallback.STATUS_MSG_RAW_SEND,raw.toString());
+        }
+        
+        // der austausch wird nur bei fehlern wiederholt, bei denen die
+        // nachricht sicher nicht verarbeitet wurde (keine verbindung, HTTP 503).
+        // bei allen anderen fehlern koennte ein auftrag sonst doppelt
+        // ausgefuehrt werden
+        String st;
+        int    retryMax=HBCIUtils.getConfig().getRetryMax();
+        for (int attempt=0;;attempt++) {
+            try {
+                ping(raw);
 
-        // nachricht empfangen
-        HBCIUtilsInternal.getCallback().status(getParentPassport(),HBCICallback.STATUS_MSG_RECV,null);
-        String st = pong(gen).toString();
+                // nachricht empfangen
+                HBCIUtilsInternal.getCallback().status(getParentPassport(),HBCICallback.STATUS_MSG_RECV,null);
+                st=pong(gen);
+                break;
+            } catch (HBCI_Exception e) {
+                if (!e.isRetryable() || attempt>=retryMax) {
+                    throw e;
+                }
+                HBCIUtils.log("temporary communication error: "+HBCIUtils.exception2StringShort(e)+" - retrying",HBCIUtils.LOG_WARN);
+                Backoff.sleep(attempt);
+            }
+        }
         HBCIUtilsInternal.getCallback().status(getParentPassport(),HBCICallback.STATUS_MSG_RAW_RECV_ENCRYPTED,st);
 
-        HBCIUtils.log("received message: "+st,HBCIUtils.LOG_DEBUG2);
+        HBCIUtils.log("received message: ",st,HBCIUtils.LOG_DEBUG2);
         MSG retmsg=null;
 
         try {
-            // erzeugen der liste aller rewriter
-            String rewriters_st=HBCIUtils.getParam("kernel.rewriter");
-            ArrayList<Rewrite> al=new ArrayList<Rewrite>();
-            StringTokenizer tok=new StringTokenizer(rewriters_st,",");
-            while (tok.hasMoreTokens()) {
-                String rewriterName=tok.nextToken().trim();
-                if (rewriterName.length()!=0) {
-                    Class cl=this.getClass().getClassLoader().loadClass("org.kapott.hbci.rewrite.R"+
-                                                                        rewriterName);
-                    Constructor con=cl.getConstructor((Class[])null);
-                    Rewrite rewriter=(Rewrite)(con.newInstance((Object[])null));
-                    al.add(rewriter);
-                }
-            }
-            Rewrite[] rewriters= al.toArray(new Rewrite[al.size()]);
+            // die (einmal pro konfiguration erzeugte) rewriter-kette holen
+            RewriteChain rewriters=RewriteChain.getInstance().forMessage();
     
             // alle rewriter für verschlüsselte nachricht durchlaufen
-            for (int i=0;i<rewriters.length;i++) {
-                st=rewriters[i].incomingCrypted(st,gen);
-            }
+            st=rewriters.incomingCrypted(st,gen);
             
-            // versuche, nachricht als verschlüsselte nachricht zu parsen
-            HBCIUtilsInternal.getCallback().status(getParentPassport(),HBCICallback.STATUS_MSG_PARSE,"CryptedRes");
-            try {
-                HBCIUtils.log("trying to parse message as crypted message",HBCIUtils.LOG_DEBUG);
-                retmsg = MSGFactory.getInstance().createMSG("CryptedRes",st,st.length(),gen,MSG.DONT_CHECK_SEQ);
-            } catch (ParseErrorException e) {
-                // wenn das schiefgeht...
-                HBCIUtils.log("message seems not to be encrypted; tring to parse it as "+msgName+"Res message",HBCIUtils.LOG_DEBUG);
-
-                // alle rewriter durchlaufen, um nachricht evtl. als unverschlüsselte msg zu parsen
-                gen.set("_origSignedMsg",st);
-                for (int i=0;i<rewriters.length;i++) {
-                    st=rewriters[i].incomingClearText(st,gen);
+            // anhand der segmentcodes erkennen, ob die antwort in einen
+            // verschlüsselungs-umschlag verpackt ist - dann muss sie nur einmal
+            // (als CryptedRes bzw. als klartext-nachricht) geparst werden
+            if (isCrypted(st,gen)) {
+                try {
+                    retmsg=parseCrypted(st,gen);
+                } catch (ParseErrorException e) {
+                    HBCIUtils.log("message seems not to be encrypted; tring to parse it as "+msgName+"Res message",HBCIUtils.LOG_DEBUG);
+                    retmsg=parseClearText(msgName,st,rewriters,gen);
+                }
+            } else {
+                try {
+                    retmsg=parseClearText(msgName,st,rewriters,gen);
+                } catch (ParseErrorException e) {
+                    // fallback für banken, deren nachrichten sich nicht an
+                    // der segmentfolge erkennen lassen
+                    HBCIUtils.log("message can not be parsed as "+msgName+"Res message; trying to parse it as crypted message",HBCIUtils.LOG_DEBUG);
+                    try {
+                        retmsg=parseCrypted(st,gen);
+                    } catch (ParseErrorException e2) {
+                        throw e;
+                    }
                 }
-                
-                // versuch, nachricht als unverschlüsselte msg zu parsen
-                HBCIUtilsInternal.getCallback().status(getParentPassport(),HBCICallback.STATUS_MSG_PARSE,msgName+"Res");
-                retmsg = MSGFactory.getInstance().createMSG(msgName+"Res",st,st.length(),gen);
             }
         } catch (Exception ex) {
             throw new CanNotParseMessageException(HBCIUtilsInternal.getLocMsg("EXCMSG_CANTPARSE"),st,ex);
@@ -127,6 +145,72 @@ public abstract class Comm
         return retmsg;
     }
     
+    private MSG parseCrypted(String st,MsgGen gen)
+    {
+        HBCIUtilsInternal.getCallback().status(getParentPassport(),HBCICallback.STATUS_MSG_PARSE,"CryptedRes");
+        HBCIUtils.log("trying to parse message as crypted message",HBCIUtils.LOG_DEBUG);
+        return MSGFactory.getInstance().createMSG("CryptedRes",st,st.length(),gen,MSG.DONT_CHECK_SEQ);
+    }
+    
+    private MSG parseClearText(String msgName,String st,RewriteChain rewriters,MsgGen gen)
+    {
+        // alle rewriter durchlaufen, um nachricht evtl. als unverschlüsselte msg zu parsen
+        gen.set("_origSignedMsg",st);
+        st=rewriters.incomingClearText(st,gen);
+        
+        // versuch, nachricht als unverschlüsselte msg zu parsen
+        HBCIUtilsInternal.getCallback().status(getParentPassport(),HBCICallback.STATUS_MSG_PARSE,msgName+"Res");
+        return MSGFactory.getInstance().createMSG(msgName+"Res",st,st.length(),gen);
+    }
+    
+    /** Prüft anhand der Segmentcodes, ob die Nachricht <code>st</code> eine
+        verschlüsselte Nachricht ist, d.h. ob direkt auf den Nachrichtenkopf
+        (HNHBK) der Verschlüsselungskopf (HNVSK) folgt. Die Segmentcodes werden
+        der Definition der Nachricht "CryptedRes" aus der Syntaxbeschreibung
+        entnommen. Die Nachricht wird dazu nicht geparst, sondern nur bis zum
+        Ende des ersten Segmentes durchsucht.
+        @param st die empfangene Nachricht
+        @param gen der Nachrichtengenerator mit der Syntaxbeschreibung
+        @return <code>true</code>, wenn es sich um eine verschlüsselte Nachricht handelt */
+    public static boolean isCrypted(String st,MsgGen gen)
+    {
+        SyntaxSpec syntax=gen.getSyntaxSpec();
+        SyntaxDef  def=syntax.getDef("CryptedRes");
+        if (def==null || def.getChildren().length<2)
+            return false;
+        
+        SyntaxDef headDef=syntax.getDef(def.getChildren()[0].getType());
+        SyntaxDef cryptDef=syntax.getDef(def.getChildren()[1].getType());
+        if (headDef==null || cryptDef==null)
+            return false;
+        
+        String headCode=headDef.getSegCode();
+        String cryptCode=cryptDef.getSegCode();
+        if (headCode.length()==0 || cryptCode.length()==0)
+            return false;
+        
+        int len=st.length();
+        if (!st.startsWith(headCode) || len<=headCode.length() || st.charAt(headCode.length())!=':')
+            return false;
+        
+        // ende des nachrichtenkopfes suchen (escapte delimiter überspringen)
+        int pos=headCode.length();
+        while (pos<len) {
+            char ch=st.charAt(pos);
+            if (ch=='?') {
+                pos++;
+            } else if (ch=='\'') {
+                break;
+            }
+            pos++;
+        }
+        pos++;
+        
+        return st.startsWith(cryptCode,pos) 
+            && len>pos+cryptCode.length() 
+            && st.charAt(pos+cryptCode.length())==':';
+    }
+    
     public static Comm getInstance(String name,HBCIPassportInternal passport)
     {
         try {
@@ -32,7 +32,7 @@ import org.kapott.hbci.manager.HBCIUtils;
 import org.kapott.hbci.manager.HBCIUtilsInternal;
 import org.kapott.hbci.manager.MsgGen;
 import org.kapott.hbci.passport.HBCIPassportInternal;
-import org.kapott.hbci.protocol.MSG;
+import org.kapott.hbci.protocol.MsgBuffer;
 
 public final class CommStandard
     extends Comm
@@ -86,19 +86,19 @@ public final class CommStandard
         }
     }
 
-    protected void ping(MSG msg)
+    protected void ping(MsgBuffer raw)
     {
         try {
-            byte[] b=filter.encode(msg.toString(0));
+            MsgBuffer b=filter.encode(raw);
 
-            o.write(b);
+            b.writeTo(o);
             o.flush();
         } catch (Exception ex) {
             throw new HBCI_Exception(HBCIUtilsInternal.getLocMsg("EXCMSG_SENDERR"),ex);
         }
     }
 
-    protected StringBuffer pong(MsgGen gen)
+    protected String pong(MsgGen gen)
     {
         int          num;
         byte[]       b = new byte[1024];
@@ -141,7 +141,7 @@ public final class CommStandard
             // fo.write(ret.toString().getBytes(ENCODING));
             // fo.close();
 
-            return new StringBuffer(filter.decode(ret.toString()));
+            return filter.decode(ret.toString());
         } catch (Exception ex) {
             throw new HBCI_Exception(HBCIUtilsInternal.getLocMsg("EXCMSG_RECVERR"),ex);
         }
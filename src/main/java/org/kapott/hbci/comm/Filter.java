@@ -21,15 +21,109 @@
 
 package org.kapott.hbci.comm;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
 import java.lang.reflect.Constructor;
 
 import org.kapott.hbci.exceptions.HBCI_Exception;
 import org.kapott.hbci.manager.HBCIUtilsInternal;
+import org.kapott.hbci.protocol.MsgBuffer;
 
 public abstract class Filter
 {
     public abstract byte[] encode(String st);
     public abstract String decode(String st);
+
+    /** kodiert die bereits in ihre übertragungsform gebrachte nachricht
+        <code>raw</code>. die default-implementierung benutzt
+        {@link #encode(String)}; filter, die die daten nicht verändern,
+        können <code>raw</code> direkt zurückgeben */
+    public MsgBuffer encode(MsgBuffer raw)
+    {
+        return new MsgBuffer(encode(raw.toString()));
+    }
+
+    /** dekodiert die empfangene nachricht <code>raw</code>. die
+        default-implementierung benutzt {@link #decode(String)}; filter
+        können die daten auch direkt im puffer dekodieren und <code>raw</code>
+        zurückgeben */
+    public MsgBuffer decode(MsgBuffer raw)
+    {
+        try {
+            return new MsgBuffer(decode(raw.toString()).getBytes(Comm.ENCODING));
+        } catch (UnsupportedEncodingException e) {
+            throw new HBCI_Exception(HBCIUtilsInternal.getLocMsg("EXCMSG_ISOERR"),e);
+        }
+    }
+
+    /** liefert einen stream, der die hineingeschriebenen daten kodiert und nach
+        <code>out</code> schreibt. die kodierung ist erst mit <code>close()</code>
+        abgeschlossen, dabei wird auch <code>out</code> geschlossen. die
+        default-implementierung sammelt die daten und kodiert sie dann mit
+        {@link #encode(MsgBuffer)}; filter, die blockweise kodieren können,
+        sollten die methode überschreiben */
+    public OutputStream encode(final OutputStream out)
+    {
+        return new ByteArrayOutputStream() {
+            private boolean closed;
+
+            public void close()
+                throws IOException
+            {
+                if (!closed) {
+                    closed=true;
+                    encode(new MsgBuffer(toByteArray())).writeTo(out);
+                    out.close();
+                }
+            }
+        };
+    }
+
+    /** liefert einen stream, der die aus <code>in</code> gelesenen daten
+        dekodiert. die default-implementierung liest <code>in</code> beim
+        ersten zugriff vollständig und dekodiert es mit
+        {@link #decode(MsgBuffer)}; filter, die blockweise dekodieren können,
+        sollten die methode überschreiben */
+    public InputStream decode(final InputStream in)
+    {
+        return new InputStream() {
+            private InputStream decoded;
+
+            private InputStream decoded()
+                throws IOException
+            {
+                if (decoded==null) {
+                    MsgBuffer raw=new MsgBuffer();
+                    raw.readFrom(in,-1);
+                    raw=decode(raw);
+                    decoded=new ByteArrayInputStream(raw.getBuffer(),0,raw.length());
+                }
+                return decoded;
+            }
+
+            public int read()
+                throws IOException
+            {
+                return decoded().read();
+            }
+
+            public int read(byte[] b,int off,int len)
+                throws IOException
+            {
+                return decoded().read(b,off,len);
+            }
+
+            public void close()
+                throws IOException
+            {
+                in.close();
+            }
+        };
+    }
         
     public static Filter getInstance(String filter)
     {
@@ -1,7 +1,4 @@
-
-/*  $Id: FilterBase64.java,v 1.1 2011/05/04 22:37:51 willuhn Exp $
-
-    This file is part of HBCI4Java
+/*  This file is part of HBCI4Java
     Copyright (C) 2001-2008  Stefan Palme
 
     HBCI4Java is free software; you can redistribute it and/or modify
@@ -19,11 +16,16 @@
     Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
 */
 
+
 package org.kapott.hbci.comm;
 
+import java.io.InputStream;
+import java.io.OutputStream;
+
 import org.kapott.hbci.exceptions.HBCI_Exception;
 import org.kapott.hbci.manager.HBCIUtils;
 import org.kapott.hbci.manager.HBCIUtilsInternal;
+import org.kapott.hbci.protocol.MsgBuffer;
 
 public final class FilterBase64
     extends Filter
@@ -36,7 +38,9 @@ public final class FilterBase64
     public String decode(String st)
     {
         try {
-            return new String(HBCIUtils.decodeBase64(st),Comm.ENCODING);
+            byte[] data=st.getBytes(Comm.ENCODING);
+            int    len=Base64Codec.decode(data,0,data.length,data,0);
+            return new String(data,0,len,Comm.ENCODING);
         } catch (Exception e) {
             throw new HBCI_Exception(HBCIUtilsInternal.getLocMsg("EXCMSG_B64DECODEERR"),e);
         }
@@ -45,9 +49,32 @@ public final class FilterBase64
     public byte[] encode(String st)
     {
         try {
-            return HBCIUtils.encodeBase64(st.getBytes(Comm.ENCODING)).getBytes(Comm.ENCODING);
+            byte[] data=st.getBytes(Comm.ENCODING);
+            return Base64Codec.encode(data,0,data.length);
         } catch (Exception ex) {
             throw new HBCI_Exception(HBCIUtilsInternal.getLocMsg("EXCMSG_B64ENCODEERR"),ex);
         }
     }
+
+    /** dekodiert die nachricht direkt im puffer von <code>raw</code>, siehe
+        {@link Base64Codec#decode(MsgBuffer)} */
+    public MsgBuffer decode(MsgBuffer raw)
+    {
+        return Base64Codec.decode(raw);
+    }
+
+    public MsgBuffer encode(MsgBuffer raw)
+    {
+        return Base64Codec.encode(raw);
+    }
+
+    public OutputStream encode(OutputStream out)
+    {
+        return new Base64OutputStream(out);
+    }
+
+    public InputStream decode(InputStream in)
+    {
+        return new Base64InputStream(in);
+    }
 }
@@ -21,9 +21,13 @@
 
 package org.kapott.hbci.comm;
 
+import java.io.InputStream;
+import java.io.OutputStream;
+
 import org.kapott.hbci.exceptions.HBCI_Exception;
 import org.kapott.hbci.manager.HBCIUtils;
 import org.kapott.hbci.manager.HBCIUtilsInternal;
+import org.kapott.hbci.protocol.MsgBuffer;
 
 public final class FilterNone
     extends Filter
@@ -42,8 +46,28 @@ public final class FilterNone
         }
     }
     
+    public MsgBuffer encode(MsgBuffer raw)
+    {
+        return raw;
+    }
+    
     public String decode(String st)
     {
         return st;
     }
+    
+    public MsgBuffer decode(MsgBuffer raw)
+    {
+        return raw;
+    }
+    
+    public OutputStream encode(OutputStream out)
+    {
+        return out;
+    }
+    
+    public InputStream decode(InputStream in)
+    {
+        return in;
+    }
 }
@@ -0,0 +1,187 @@
+/*  This file is part of HBCI4Java
+    Copyright (C) 2001-2008  Stefan Palme
+
+    HBCI4Java is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    HBCI4Java is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package org.kapott.hbci.comm;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.HostnameVerifier;
+
+/** <p>Gemeinsame HTTPS-Verbindungen zu einem PIN/TAN-Server.</p>
+    <p>Die Verbindungen selbst verwaltet der Keep-Alive-Cache von
+    {@link java.net.HttpURLConnection}: nach einer vollständig gelesenen
+    Antwort wird die Verbindung dort abgelegt und für die nächste Nachricht an
+    denselben Server wiederverwendet. Verbindungen, die länger als vom Server
+    vorgegeben (ohne Vorgabe 5 Sekunden) unbenutzt waren, werden vom JRE
+    geschlossen. Die Anzahl der je Server vorgehaltenen Verbindungen kann über
+    die System-Property <code>http.maxConnections</code> festgelegt werden.</p>
+    <p>Der Cache verwendet eine Verbindung aber nur dann wieder, wenn sie mit
+    derselben Socket-Factory erzeugt wurde. Daher verwenden alle Passports, die
+    mit demselben Server kommunizieren, über diese Klasse dieselbe
+    {@link PinTanSSLSocketFactory}. Den SSL-Kontext teilen sich die Factories
+    aller Server mit derselben Trust-Konfiguration (siehe
+    {@link PinTanSSLContext}), so dass auch neue Verbindungen eine vorhandene
+    TLS-Session wiederaufnehmen können.
+    Nebenbei wird gezählt, wie viele Verbindungen und TLS-Handshakes
+    tatsächlich nötig waren.</p> */
+public final class PinTanConnectionPool
+{
+    private final static ConcurrentMap<String,PinTanConnectionPool> instances=new ConcurrentHashMap<String,PinTanConnectionPool>();
+
+    /* wird nur verwendet, wenn zertifikate nicht geprüft werden - ist zustandslos */
+    private final static HostnameVerifier hostnameVerifier=new PinTanSSLHostnameVerifier();
+
+    private final String host;
+
+    /* je trust-konfiguration eine factory */
+    private final ConcurrentMap<String,PinTanSSLSocketFactory> factories=new ConcurrentHashMap<String,PinTanSSLSocketFactory>();
+
+    private final AtomicLong requests=new AtomicLong();
+    private final AtomicLong connections=new AtomicLong();
+    private final AtomicLong handshakes=new AtomicLong();
+    private final AtomicLong resumed=new AtomicLong();
+
+    private PinTanConnectionPool(String host)
+    {
+        this.host=host;
+    }
+
+    /** @param host der Server
+        @return der Pool für diesen Server */
+    public static PinTanConnectionPool getInstance(String host)
+    {
+        String key=host.toLowerCase();
+        PinTanConnectionPool ret=instances.get(key);
+        if (ret==null) {
+            PinTanConnectionPool created=new PinTanConnectionPool(key);
+            ret=instances.putIfAbsent(key,created);
+            if (ret==null) {
+                ret=created;
+            }
+        }
+        return ret;
+    }
+
+    /** @return alle bisher verwendeten Pools, sortiert nach Server */
+    public static Map<String,PinTanConnectionPool> getInstances()
+    {
+        return Collections.unmodifiableMap(new TreeMap<String,PinTanConnectionPool>(instances));
+    }
+
+    /** @param checkCert <code>true</code>, wenn das Server-Zertifikat geprüft werden soll
+        @return die gemeinsame Socket-Factory für diesen Server */
+    public PinTanSSLSocketFactory getSocketFactory(boolean checkCert)
+    {
+        return getSocketFactory(checkCert,null);
+    }
+
+    /** @param checkCert <code>true</code>, wenn das Server-Zertifikat geprüft werden soll
+        @param certFile Truststore mit den vertrauenswürdigen Zertifikaten
+               oder <code>null</code> für den Truststore der JVM
+        @return die gemeinsame Socket-Factory für diesen Server */
+    public PinTanSSLSocketFactory getSocketFactory(boolean checkCert,String certFile)
+    {
+        PinTanSSLContext context=PinTanSSLContext.getInstance(checkCert,certFile);
+        PinTanSSLSocketFactory ret=factories.get(context.getKey());
+        if (ret==null) {
+            PinTanSSLSocketFactory created=new PinTanSSLSocketFactory(context,this);
+            ret=factories.putIfAbsent(context.getKey(),created);
+            if (ret==null) {
+                ret=created;
+            }
+        }
+        return ret;
+    }
+
+    /** @return der Hostname-Verifier für Verbindungen ohne Zertifikatsprüfung */
+    public HostnameVerifier getHostnameVerifier()
+    {
+        return hostnameVerifier;
+    }
+
+    void request()
+    {
+        requests.incrementAndGet();
+    }
+
+    void connection()
+    {
+        connections.incrementAndGet();
+    }
+
+    void handshake(boolean sessionResumed)
+    {
+        handshakes.incrementAndGet();
+        if (sessionResumed) {
+            resumed.incrementAndGet();
+        }
+    }
+
+    /** @return der Server */
+    public String getHost()
+    {
+        return host;
+    }
+
+    /** @return Anzahl der gesendeten Nachrichten */
+    public long getRequests()
+    {
+        return requests.get();
+    }
+
+    /** @return Anzahl der neu aufgebauten Verbindungen */
+    public long getConnections()
+    {
+        return connections.get();
+    }
+
+    /** @return Anzahl der TLS-Handshakes */
+    public long getHandshakes()
+    {
+        return handshakes.get();
+    }
+
+    /** @return Anzahl der TLS-Handshakes, bei denen eine vorhandene Session
+                wiederaufgenommen wurde */
+    public long getResumedSessions()
+    {
+        return resumed.get();
+    }
+
+    /** @return Anteil der Nachrichten, die über eine bereits bestehende
+                Verbindung gesendet wurden (0 bis 1) */
+    public double getHitRate()
+    {
+        long req=requests.get();
+        if (req==0) {
+            return 0d;
+        }
+        return Math.max(0d,(req-connections.get())/(double)req);
+    }
+
+    public String toString()
+    {
+        return host+": requests="+getRequests()+", connections="+getConnections()
+               +", handshakes="+getHandshakes()+" (resumed="+getResumedSessions()+")";
+    }
+}
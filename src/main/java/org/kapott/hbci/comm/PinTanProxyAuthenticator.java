@@ -31,20 +31,68 @@ import org.kapott.hbci.manager.LogFilter;
 import org.kapott.hbci.passport.AbstractPinTanPassport;
 import org.kapott.hbci.passport.HBCIPassportInternal;
 
+/* Ohne festes Passport (siehe install()) werden die Zugangsdaten des Passports
+ * verwendet, das im aktuellen Thread gerade eine Verbindung aufbaut (siehe
+ * bind()). Damit koennen verschiedene Passports verschiedene Proxies bzw.
+ * Proxy-Zugangsdaten verwenden, obwohl es nur einen globalen Authenticator gibt. */
 public class PinTanProxyAuthenticator 
 extends Authenticator 
 {
+    private final static ThreadLocal<AbstractPinTanPassport> current=new ThreadLocal<AbstractPinTanPassport>();
+    private static volatile boolean installed=false;
+    
     AbstractPinTanPassport passport;
 
     public PinTanProxyAuthenticator(HBCIPassportInternal passport)
     {
         this.passport=(AbstractPinTanPassport)passport;
     }
+    
+    private PinTanProxyAuthenticator()
+    {
+        this.passport=null;
+    }
+    
+    /** Installiert (einmalig) den globalen Authenticator, der die Zugangsdaten
+        des mit {@link #bind(AbstractPinTanPassport)} aktivierten Passports liefert. */
+    public static synchronized void install()
+    {
+        if (!installed) {
+            Authenticator.setDefault(new PinTanProxyAuthenticator());
+            installed=true;
+        }
+    }
+    
+    /** Legt fest, fuer welches Passport im aktuellen Thread Proxy-Zugangsdaten
+        geliefert werden.
+        @return das bisher aktivierte Passport, muss an {@link #restore(AbstractPinTanPassport)}
+                uebergeben werden */
+    public static AbstractPinTanPassport bind(AbstractPinTanPassport passport)
+    {
+        AbstractPinTanPassport old=current.get();
+        current.set(passport);
+        return old;
+    }
+    
+    public static void restore(AbstractPinTanPassport old)
+    {
+        if (old==null) {
+            current.remove();
+        } else {
+            current.set(old);
+        }
+    }
 
     protected PasswordAuthentication getPasswordAuthentication() 
     {
         HBCIUtils.log("need proxy authentication", HBCIUtils.LOG_DEBUG);
         
+        AbstractPinTanPassport passport=(this.passport!=null)?this.passport:current.get();
+        if (passport==null || getRequestorType()!=RequestorType.PROXY) {
+            // keine verbindung von HBCI4Java
+            return null;
+        }
+        
         String       user=passport.getProxyUser();
         String       pass=passport.getProxyPass();
         HBCICallback callback=HBCIUtilsInternal.getCallback();
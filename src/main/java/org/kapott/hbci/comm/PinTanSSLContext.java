@@ -0,0 +1,268 @@
+/*  This file is part of HBCI4Java
+    Copyright (C) 2001-2008  Stefan Palme
+
+    HBCI4Java is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    HBCI4Java is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+
+package org.kapott.hbci.comm;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.security.KeyStore;
+import java.security.SecureRandom;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+
+import org.kapott.hbci.exceptions.HBCI_Exception;
+import org.kapott.hbci.manager.HBCIUtils;
+
+/** <p>Gemeinsamer SSL-Kontext für alle PIN/TAN-Verbindungen mit derselben
+    Trust-Konfiguration (Zertifikatsprüfung ja/nein, Truststore). Das Erzeugen
+    eines Kontextes (Laden des Truststores, Initialisieren des
+    Zufallsgenerators) ist teuer, vor allem aber hat jeder Kontext seinen
+    eigenen Session-Cache: nur Verbindungen über denselben Kontext können eine
+    bereits ausgehandelte TLS-Session wiederaufnehmen und sparen so den
+    vollständigen Handshake. Daher gibt es je Trust-Konfiguration genau einen
+    Kontext im ganzen Prozess, den sich die {@link PinTanSSLSocketFactory}s
+    aller Server und Passports teilen.</p>
+    <p>Wird das Zertifikat mit dem Truststore der JVM geprüft, wird wie bisher
+    die Standard-Socket-Factory von {@link HttpsURLConnection} verwendet,
+    deren Kontext ohnehin von der ganzen JVM geteilt wird.</p>
+    <p>Ob der Datenverkehr mitgeschnitten wird (<code>log.ssl.enable</code>),
+    entscheidet die Socket-Factory je Verbindung, es ist daher nicht Teil der
+    Trust-Konfiguration.</p> */
+public final class PinTanSSLContext
+{
+    private final static ConcurrentMap<String,PinTanSSLContext> instances=new ConcurrentHashMap<String,PinTanSSLContext>();
+
+    private final String           key;
+    private final SSLContext       context;
+    private final SSLSocketFactory socketFactory;
+
+    private final AtomicLong sockets=new AtomicLong();
+    private final AtomicLong handshakes=new AtomicLong();
+    private final AtomicLong resumed=new AtomicLong();
+
+    private PinTanSSLContext(String key,boolean checkCert,String certFile)
+    {
+        this.key=key;
+        try {
+            if (checkCert && certFile!=null) {
+                HBCIUtils.log(
+                    "creating ssl context with truststore "+certFile,
+                    HBCIUtils.LOG_DEBUG);
+                
+                // nur fuer diesen kontext statt global ueber javax.net.ssl.trustStore
+                KeyStore trustStore=KeyStore.getInstance(KeyStore.getDefaultType());
+                InputStream in=new FileInputStream(certFile);
+                try {
+                    trustStore.load(in,null);
+                } finally {
+                    in.close();
+                }
+                TrustManagerFactory tmf=TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+                tmf.init(trustStore);
+                
+                this.context=SSLContext.getInstance("TLS");
+                this.context.init(null,tmf.getTrustManagers(),new SecureRandom());
+                
+            } else if (!checkCert) {
+                HBCIUtils.log(
+                    "creating ssl context with disabled cert checking",
+                    HBCIUtils.LOG_WARN);
+                
+                this.context=SSLContext.getInstance("TLS");
+                this.context.init(null,
+                    new TrustManager[] {new PinTanSSLTrustManager()},
+                    new SecureRandom());
+                
+            } else {
+                HBCIUtils.log("using system socket factory",HBCIUtils.LOG_DEBUG);
+                this.context=null;
+            }
+        } catch (Exception e) {
+            throw new HBCI_Exception("*** can not create ssl context for "+key,e);
+        }
+
+        if (context!=null) {
+            this.socketFactory=context.getSocketFactory();
+
+            // session-cache einstellen. die defaults der JVM (20480 sessions,
+            // 24 stunden) gelten, wenn nichts angegeben ist
+            SSLSessionContext sessions=context.getClientSessionContext();
+            int size=Integer.parseInt(HBCIUtils.getParam("client.passport.PinTan.sslsessions.size","0").trim());
+            int timeout=Integer.parseInt(HBCIUtils.getParam("client.passport.PinTan.sslsessions.timeout","0").trim());
+            if (size>0) {
+                sessions.setSessionCacheSize(size);
+            }
+            if (timeout>0) {
+                sessions.setSessionTimeout(timeout);
+            }
+            HBCIUtils.log("ssl session cache: size="+sessions.getSessionCacheSize()
+                          +", timeout="+sessions.getSessionTimeout()+"s",HBCIUtils.LOG_DEBUG);
+        } else {
+            this.socketFactory=HttpsURLConnection.getDefaultSSLSocketFactory();
+        }
+    }
+
+    /** @param checkCert <code>true</code>, wenn das Server-Zertifikat geprüft werden soll
+        @param certFile Truststore mit den vertrauenswürdigen Zertifikaten
+               oder <code>null</code> für den Truststore der JVM
+        @return der gemeinsame Kontext für diese Trust-Konfiguration */
+    public static PinTanSSLContext getInstance(boolean checkCert,String certFile)
+    {
+        if (!checkCert || (certFile!=null && certFile.length()==0)) {
+            certFile=null;
+        }
+        String key=(checkCert?"checked":"unchecked")+((certFile!=null)?("|"+certFile):"");
+        PinTanSSLContext ret=instances.get(key);
+        if (ret==null) {
+            // das erzeugen ist teuer, daher nicht mehrfach parallel
+            synchronized (instances) {
+                ret=instances.get(key);
+                if (ret==null) {
+                    ret=new PinTanSSLContext(key,checkCert,certFile);
+                    instances.put(key,ret);
+                }
+            }
+        }
+        return ret;
+    }
+
+    /** @return alle bisher erzeugten Kontexte, sortiert nach Trust-Konfiguration */
+    public static Map<String,PinTanSSLContext> getInstances()
+    {
+        return Collections.unmodifiableMap(new TreeMap<String,PinTanSSLContext>(instances));
+    }
+
+    /** Erzeugt den Kontext für die in den Kernel-Parametern
+        <code>client.passport.PinTan.checkcert</code> und
+        <code>client.passport.PinTan.certfile</code> angegebene
+        Trust-Konfiguration und initialisiert die SSL-Implementierung, damit
+        das nicht beim Versand der ersten Nachricht geschieht. Wird bei
+        <code>client.passport.PinTan.sslwarmup=1</code> von
+        {@link HBCIUtils#init(java.util.Properties,org.kapott.hbci.callback.HBCICallback)}
+        aufgerufen.
+        @return der Kontext */
+    public static PinTanSSLContext warmUp()
+    {
+        long start=System.currentTimeMillis();
+        boolean checkCert=HBCIUtils.getParam("client.passport.PinTan.checkcert","1").equals("1");
+        PinTanSSLContext ret=getInstance(checkCert,HBCIUtils.getParam("client.passport.PinTan.certfile"));
+
+        // laedt und initialisiert die cipher suites und die protokoll-implementierung
+        ret.socketFactory.getDefaultCipherSuites();
+        if (ret.context!=null) {
+            ret.context.createSSLEngine().getSupportedProtocols();
+        }
+        HBCIUtils.log("ssl context "+ret.key+" initialized in "+(System.currentTimeMillis()-start)+"ms",HBCIUtils.LOG_DEBUG);
+        return ret;
+    }
+
+    /** @return die (unveränderte) Socket-Factory des Kontextes */
+    public SSLSocketFactory getSocketFactory()
+    {
+        return socketFactory;
+    }
+
+    /** @return der Session-Cache oder <code>null</code>, wenn die
+                Standard-Socket-Factory der JVM verwendet wird */
+    public SSLSessionContext getSessionContext()
+    {
+        return (context!=null)?context.getClientSessionContext():null;
+    }
+
+    void socket()
+    {
+        sockets.incrementAndGet();
+    }
+
+    void handshake(boolean sessionResumed)
+    {
+        handshakes.incrementAndGet();
+        if (sessionResumed) {
+            resumed.incrementAndGet();
+        }
+    }
+
+    /** @return die Trust-Konfiguration */
+    public String getKey()
+    {
+        return key;
+    }
+
+    /** @return Anzahl der über diesen Kontext erzeugten Verbindungen */
+    public long getSockets()
+    {
+        return sockets.get();
+    }
+
+    /** @return Anzahl der TLS-Handshakes */
+    public long getHandshakes()
+    {
+        return handshakes.get();
+    }
+
+    /** @return Anzahl der TLS-Handshakes, bei denen eine vorhandene Session
+                wiederaufgenommen wurde */
+    public long getResumedSessions()
+    {
+        return resumed.get();
+    }
+
+    /** @return Anteil der wiederaufgenommenen Sessions an allen Handshakes (0 bis 1) */
+    public double getResumptionRate()
+    {
+        long hs=handshakes.get();
+        if (hs==0) {
+            return 0d;
+        }
+        return resumed.get()/(double)hs;
+    }
+
+    /** @return Anzahl der Sessions im Cache oder <code>-1</code>, wenn die
+                Standard-Socket-Factory der JVM verwendet wird */
+    public int getCachedSessions()
+    {
+        SSLSessionContext sessions=getSessionContext();
+        if (sessions==null) {
+            return -1;
+        }
+        int ret=0;
+        for (Enumeration<byte[]> e=sessions.getIds();e.hasMoreElements();e.nextElement()) {
+            ret++;
+        }
+        return ret;
+    }
+
+    public String toString()
+    {
+        return key+": sockets="+getSockets()+", handshakes="+getHandshakes()
+               +" (resumed="+getResumedSessions()+"), cached sessions="+getCachedSessions();
+    }
+}
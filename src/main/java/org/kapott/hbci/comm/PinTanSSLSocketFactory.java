@@ -27,13 +27,12 @@ import java.io.UnsupportedEncodingException;
 import java.net.InetAddress;
 import java.net.Socket;
 import java.net.UnknownHostException;
-import java.security.SecureRandom;
 import java.util.Date;
 
-import javax.net.ssl.HttpsURLConnection;
-import javax.net.ssl.SSLContext;
+import javax.net.ssl.HandshakeCompletedEvent;
+import javax.net.ssl.HandshakeCompletedListener;
+import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
-import javax.net.ssl.TrustManager;
 
 import org.kapott.hbci.manager.HBCIUtils;
 import org.kapott.hbci.passport.AbstractPinTanPassport;
@@ -46,7 +45,12 @@ import org.kapott.hbci.passport.AbstractPinTanPassport;
  *       (because in this case we have to create "LoggingSockets" instead of
  *       standard Java sockets)
  *       
- * If none of this applies, Java's standard factory will be used.
+ * If none of this applies, the factory just delegates to Java's standard
+ * factory. CommPinTan always uses an instance shared per server (see
+ * PinTanConnectionPool), because HttpURLConnection only reuses keep-alive
+ * connections created by the same factory. The underlying SSLContext is
+ * shared by all factories with the same trust configuration (see
+ * PinTanSSLContext), so TLS sessions can be resumed across passports.
  *    
  * This socket factory works as a Delegator by creating a java standard socket
  * first and then delegating all relevant API calls to the standard socket
@@ -58,31 +62,29 @@ import org.kapott.hbci.passport.AbstractPinTanPassport;
 public class PinTanSSLSocketFactory
     extends SSLSocketFactory
 {
-    private SSLSocketFactory realSocketFactory;
+    private SSLSocketFactory     realSocketFactory;
+    private PinTanSSLContext     context;
+    private PinTanConnectionPool pool;
 
     public PinTanSSLSocketFactory(AbstractPinTanPassport passport)
     {
-        try {
-            if (!passport.getCheckCert()) {
-                HBCIUtils.log(
-                    "creating socket factory with disabled cert checking",
-                    HBCIUtils.LOG_WARN);
-                
-                SSLContext sslContext = SSLContext.getInstance("SSL");
-                sslContext.init(null,
-                    new TrustManager[] {new PinTanSSLTrustManager()},
-                    new SecureRandom());
-                this.realSocketFactory = sslContext.getSocketFactory();
-                
-            } else {
-                HBCIUtils.log("using system socket factory", HBCIUtils.LOG_DEBUG);
-                this.realSocketFactory = HttpsURLConnection.getDefaultSSLSocketFactory();
-            }
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
+        this(PinTanSSLContext.getInstance(passport.getCheckCert(),passport.getCertFile()),null);
+    }
+
+    /* pool kann null sein, sonst werden dort verbindungen und handshakes
+     * (zusaetzlich zum kontext) je server gezaehlt */
+    PinTanSSLSocketFactory(PinTanSSLContext context,PinTanConnectionPool pool)
+    {
+        this.context=context;
+        this.pool=pool;
+        this.realSocketFactory=context.getSocketFactory();
     }
     
+    /** @return der gemeinsam genutzte SSL-Kontext */
+    public PinTanSSLContext getContext()
+    {
+        return context;
+    }
     
     public boolean debug()
     {
@@ -118,28 +120,47 @@ public class PinTanSSLSocketFactory
         return result;
     }
 
-    
-    public Socket createSocket()
-        throws IOException
+    /* zaehlt die neue verbindung und aktiviert ggf. das logging */
+    private Socket prepare(Socket sock)
     {
-        HBCIUtils.log("createSocket()", HBCIUtils.LOG_DEBUG2);
-        Socket sock=this.realSocketFactory.createSocket();
+        if (this.pool!=null) {
+            this.pool.connection();
+        }
+        this.context.socket();
+        if (sock instanceof SSLSocket) {
+            final long created=System.currentTimeMillis();
+            ((SSLSocket)sock).addHandshakeCompletedListener(new HandshakeCompletedListener() {
+                public void handshakeCompleted(HandshakeCompletedEvent event)
+                {
+                    // eine wiederaufgenommene session ist aelter als der socket
+                    boolean resumed=event.getSession().getCreationTime()<created;
+                    context.handshake(resumed);
+                    if (pool!=null) {
+                        pool.handshake(resumed);
+                    }
+                }
+            });
+        }
+        
         if (debug()) {
             sock=new LoggingSocket(sock, getLogger());
         }
         return sock;
     }
+    
+    public Socket createSocket()
+        throws IOException
+    {
+        HBCIUtils.log("createSocket()", HBCIUtils.LOG_DEBUG2);
+        return prepare(this.realSocketFactory.createSocket());
+    }
 
     
     public Socket createSocket(Socket sock, String host, int port, boolean autoClose)
         throws IOException
     {
         HBCIUtils.log("createSocket(sock,host,port,autoClose)", HBCIUtils.LOG_DEBUG2);
-        Socket result=this.realSocketFactory.createSocket(sock, host, port, autoClose);
-        if (debug()) {
-            result=new LoggingSocket(result, getLogger());
-        }
-        return result;
+        return prepare(this.realSocketFactory.createSocket(sock, host, port, autoClose));
     }
 
     public String[] getDefaultCipherSuites()
@@ -156,43 +177,27 @@ public class PinTanSSLSocketFactory
         throws IOException, UnknownHostException
     {
         HBCIUtils.log("createSocket(host,port)", HBCIUtils.LOG_DEBUG2);
-        Socket sock=this.realSocketFactory.createSocket(host, port);
-        if (debug()) {
-            sock=new LoggingSocket(sock, getLogger());
-        }
-        return sock;
+        return prepare(this.realSocketFactory.createSocket(host, port));
     }
 
     public Socket createSocket(InetAddress addr, int port)
         throws IOException
     {
         HBCIUtils.log("createSocket(addr,port)", HBCIUtils.LOG_DEBUG2);
-        Socket sock=this.realSocketFactory.createSocket(addr, port);
-        if (debug()) {
-            sock=new LoggingSocket(sock, getLogger());
-        }
-        return sock;
+        return prepare(this.realSocketFactory.createSocket(addr, port));
     }
 
     public Socket createSocket(String host, int port, InetAddress localHost, int localPort)
         throws IOException, UnknownHostException
     {
         HBCIUtils.log("createSocket(host,port,localHost,localPort)", HBCIUtils.LOG_DEBUG2);
-        Socket sock=this.realSocketFactory.createSocket(host, port, localHost, localPort);
-        if (debug()) {
-            sock=new LoggingSocket(sock, getLogger());
-        }
-        return sock;
+        return prepare(this.realSocketFactory.createSocket(host, port, localHost, localPort));
     }
 
     public Socket createSocket(InetAddress addr, int port, InetAddress localHost, int localPort)
         throws IOException
     {
         HBCIUtils.log("createSocket(addr,port,localHost,localPort)", HBCIUtils.LOG_DEBUG2);
-        Socket sock=this.realSocketFactory.createSocket(addr, port, localHost, localPort);
-        if (debug()) {
-            sock=new LoggingSocket(sock, getLogger());
-        }
-        return sock;
+        return prepare(this.realSocketFactory.createSocket(addr, port, localHost, localPort));
     }
 }
@@ -0,0 +1,91 @@
+/*  This file is part of HBCI4Java
+    Copyright (C) 2001-2008  Stefan Palme
+
+    HBCI4Java is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    HBCI4Java is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package org.kapott.hbci.comm;
+
+import java.lang.reflect.Constructor;
+import java.net.URL;
+
+import org.kapott.hbci.exceptions.HBCI_Exception;
+import org.kapott.hbci.passport.AbstractPinTanPassport;
+import org.kapott.hbci.protocol.MsgBuffer;
+
+/** <p>Schnittstelle für die Übertragung von PIN/TAN-Nachrichten zum Server.
+    {@link CommPinTan} kümmert sich um Filter und Parsen der Nachrichten, der
+    Transport nur um den eigentlichen HTTP-Austausch. Welcher Transport
+    verwendet wird, legt {@link AbstractPinTanPassport#getTransport()} fest
+    (Kernel-Parameter <code>client.passport.PinTan.transport</code>).</p>
+    <p>Implementierungen benötigen einen öffentlichen Konstruktor mit den
+    Parametern <code>(AbstractPinTanPassport,URL)</code>. Sie erhalten dort
+    das Passport, dessen Einstellungen (Proxy, Zertifikatsprüfung usw.) für
+    die Verbindungen gelten sollen.</p> */
+public abstract class Transport
+{
+    private final AbstractPinTanPassport passport;
+    private final URL                    url;
+
+    protected Transport(AbstractPinTanPassport passport,URL url)
+    {
+        this.passport=passport;
+        this.url=url;
+    }
+
+    /** Sendet eine (bereits gefilterte) Nachricht an den Server und liefert
+        dessen Antwort (noch ungefiltert). Die Übertragung findet synchron im
+        aufrufenden Thread statt, die Methode kehrt erst nach Empfang der
+        Antwort zurück.
+        Fehler werden als {@link HBCI_Exception} geworfen, bei vorübergehenden
+        Fehlern mit {@link HBCI_Exception#setRetryable(boolean)}.
+        @param request die zu sendende Nachricht
+        @return die Antwort des Servers */
+    public abstract MsgBuffer send(MsgBuffer request);
+
+    /** Wird aufgerufen, wenn die Verbindung zum Server nicht mehr benötigt
+        wird. Die Default-Implementierung tut nichts. */
+    public void close()
+    {
+    }
+
+    protected AbstractPinTanPassport getPassport()
+    {
+        return passport;
+    }
+
+    protected URL getURL()
+    {
+        return url;
+    }
+
+    /** Erzeugt einen Transport.
+        @param name Name der Klasse ohne das Präfix "org.kapott.hbci.comm.Transport"
+               (z.B. "Http") oder voll qualifizierter Klassenname
+        @param passport das Passport
+        @param url die URL des Servers
+        @return der Transport */
+    public static Transport getInstance(String name,AbstractPinTanPassport passport,URL url)
+    {
+        try {
+            String className=(name.indexOf('.')!=-1)?name:"org.kapott.hbci.comm.Transport"+name;
+            Class<? extends Transport> cl=Class.forName(className).asSubclass(Transport.class);
+            Constructor<? extends Transport> cons=cl.getConstructor(AbstractPinTanPassport.class,URL.class);
+            return cons.newInstance(passport,url);
+        } catch (Exception e) {
+            throw new HBCI_Exception("*** can not create transport "+name,e);
+        }
+    }
+}
@@ -0,0 +1,295 @@
+/*  This file is part of HBCI4Java
+    Copyright (C) 2001-2008  Stefan Palme
+
+    HBCI4Java is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    HBCI4Java is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package org.kapott.hbci.comm;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.NoRouteToHostException;
+import java.net.Proxy;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+
+import javax.net.ssl.HttpsURLConnection;
+
+import org.kapott.hbci.exceptions.HBCI_Exception;
+import org.kapott.hbci.manager.HBCIUtils;
+import org.kapott.hbci.manager.HBCIUtilsInternal;
+import org.kapott.hbci.passport.AbstractPinTanPassport;
+import org.kapott.hbci.protocol.MsgBuffer;
+
+/** <p>Standard-Transport über {@link HttpURLConnection}. Die Nachricht wird
+    im aufrufenden Thread übertragen, {@link #send(MsgBuffer)} kehrt also erst
+    nach Empfang der Antwort zurück.</p>
+    <p>Proxy und Zertifikatsprüfung werden je Passport eingestellt, es werden
+    keine System-Properties mehr verändert. Lediglich für die
+    Proxy-Authentifizierung muss (einmalig) ein globaler {@link java.net.Authenticator}
+    installiert werden, siehe {@link PinTanProxyAuthenticator#install()}.</p> */
+public class TransportHttp
+    extends Transport
+{
+    /**
+     * Timeout fuer HTTP connect in Millisekunden.
+     */
+    private final static int HTTP_CONNECT_TIMEOUT = 60 * 1000;
+
+    /**
+     * Timeout fuer HTTP Read in Millisekunden.
+     */
+    private final static int HTTP_READ_TIMEOUT    = 5 * HTTP_CONNECT_TIMEOUT;
+
+    /**
+     * Maximale Groesse des Empfangspuffers, der anhand von Content-Length vorab angelegt wird.
+     */
+    protected final static int MAX_PREALLOC = 1024 * 1024;
+
+    private final boolean              checkCert;
+    private final boolean              keepAlive;
+    private final long                 maxResponseSize;
+    private final Proxy                proxy;
+    private final CircuitBreaker       breaker;
+    private final PinTanConnectionPool pool;
+
+    // die socket factory, die in jedem fall benutzt wird. sie wird von allen
+    // passports fuer denselben server gemeinsam verwendet, damit die
+    // keep-alive-verbindungen wiederverwendet werden koennen
+    private final PinTanSSLSocketFactory mySocketFactory;
+
+    public TransportHttp(AbstractPinTanPassport passport,URL url)
+    {
+        super(passport,url);
+
+        this.checkCert=passport.getCheckCert();
+        this.keepAlive=!HBCIUtils.getParam("client.passport.PinTan.keepalive","1").equals("0");
+        this.maxResponseSize=Long.parseLong(HBCIUtils.getParam("client.passport.PinTan.maxresponsesize","0").trim());
+        this.breaker=CircuitBreaker.getInstance(url.getHost());
+        this.pool=PinTanConnectionPool.getInstance(url.getHost());
+        this.mySocketFactory=pool.getSocketFactory(checkCert,checkCert?passport.getCertFile():null);
+
+        String[] proxyData=passport.getProxy().split(":");
+        if (proxyData.length==2) {
+            HBCIUtils.log(
+                "HTTPS connections will be made using proxy "+
+                proxyData[0]+ "(Port "+proxyData[1]+")",
+                HBCIUtils.LOG_INFO);
+            this.proxy=new Proxy(Proxy.Type.HTTP,
+                                 InetSocketAddress.createUnresolved(proxyData[0],Integer.parseInt(proxyData[1].trim())));
+
+            HBCIUtils.log("initializing HBCI4Java proxy authentication callback", HBCIUtils.LOG_DEBUG);
+            PinTanProxyAuthenticator.install();
+        } else {
+            this.proxy=null;
+        }
+    }
+
+    public MsgBuffer send(MsgBuffer request)
+    {
+        AbstractPinTanPassport passport=getPassport();
+        AbstractPinTanPassport oldPassport=(proxy!=null)?PinTanProxyAuthenticator.bind(passport):null;
+        try {
+            HttpURLConnection conn=ping(request);
+            return pong(conn);
+        } finally {
+            if (proxy!=null) {
+                PinTanProxyAuthenticator.restore(oldPassport);
+            }
+        }
+    }
+
+    private HttpURLConnection ping(MsgBuffer b)
+    {
+        // bei gestörtem server gar nicht erst verbinden
+        breaker.checkRequest();
+
+        HttpURLConnection conn=null;
+        boolean connected=false;
+        boolean reused=false;
+        try {
+            HBCIUtils.log("connecting to server",HBCIUtils.LOG_DEBUG);
+            URL url=getURL();
+            conn=(HttpURLConnection)((proxy!=null)?url.openConnection(proxy):url.openConnection());
+            conn.setConnectTimeout(HTTP_CONNECT_TIMEOUT);
+            conn.setReadTimeout(HTTP_READ_TIMEOUT);
+
+            // die socket factory wird immer gesetzt - nur verbindungen, die mit
+            // derselben factory erzeugt wurden, werden wiederverwendet. Sie
+            // deaktiviert ggf. die zertifikatspruefung bzw. aktiviert das ssl-logging
+            HttpsURLConnection connSSL=(HttpsURLConnection)conn;
+            boolean debugging=mySocketFactory.debug();
+            HBCIUtils.log("using shared socket factory for"
+                +" checkCert="+checkCert+" and debugging="+debugging,
+                HBCIUtils.LOG_DEBUG);
+            connSSL.setSSLSocketFactory(mySocketFactory);
+
+            if (!checkCert) {
+                // checkcert=0 --> use dummy hostname verifier that always succeeds
+                HBCIUtils.log("activating modified hostname verifier because cert checking is disabled",
+                    HBCIUtils.LOG_DEBUG);
+                connSSL.setHostnameVerifier(pool.getHostnameVerifier());
+            }
+            pool.request();
+
+            conn.setDoOutput(true);
+            conn.setRequestMethod("POST");
+            conn.setRequestProperty("Content-Type", "application/octet-stream");
+            conn.setFixedLengthStreamingMode(b.length());
+
+            long connections=pool.getConnections();
+            conn.connect();
+            connected=true;
+
+            // wurde keine neue verbindung erzeugt, kommt sie aus dem keep-alive-cache
+            reused=(pool.getConnections()==connections);
+            OutputStream out=conn.getOutputStream();
+
+            HBCIUtils.log("writing data to output stream", HBCIUtils.LOG_DEBUG);
+            b.writeTo(out);
+            out.flush();
+
+            HBCIUtils.log("closing output stream", HBCIUtils.LOG_DEBUG);
+            out.close();
+            return conn;
+        } catch (Exception e) {
+            HBCI_Exception he = new HBCI_Exception(HBCIUtilsInternal.getLocMsg("EXCMSG_SENDERR"),e);
+            he.setFatal(true); // Abbruch. Auch dann, wenn es ein anonymer BPD-Abruf war
+
+            // konnte keine verbindung aufgebaut werden, ist die nachricht
+            // nicht beim server angekommen - dann kann sie wiederholt werden
+            if (e instanceof ConnectException ||
+                e instanceof NoRouteToHostException ||
+                (e instanceof SocketTimeoutException && !connected))
+            {
+                breaker.failure();
+                he.setRetryable(true);
+            } else if (reused && e instanceof IOException) {
+                // der server hat die wiederverwendete verbindung geschlossen,
+                // bevor die nachricht vollstaendig gesendet war - mit einer
+                // neuen verbindung nochmal versuchen
+                he.setRetryable(true);
+            }
+            if (conn!=null) {
+                conn.disconnect();
+            }
+            throw he;
+        }
+    }
+
+    private MsgBuffer pong(HttpURLConnection conn)
+    {
+        try {
+            HBCIUtils.log(HBCIUtilsInternal.getLocMsg("STATUS_MSG_RECV"),HBCIUtils.LOG_INFO);
+
+            int msgsize=conn.getContentLength();
+            if (msgsize!=-1) {
+                HBCIUtils.log("found messagesize: "+msgsize,HBCIUtils.LOG_DEBUG);
+            } else {
+                HBCIUtils.log("can not determine message size, trying to detect automatically",HBCIUtils.LOG_DEBUG);
+            }
+
+            // bei 5xx ist der server (vorübergehend) gestört. Nur bei 503
+            // wird wiederholt: bei 502 und 504 kann ein gateway die nachricht
+            // schon an die bank weitergereicht haben, die den auftrag dann
+            // ggf. bereits ausgefuehrt hat
+            int status=conn.getResponseCode();
+            if (status>=500) {
+                conn.disconnect();
+                breaker.failure();
+                HBCI_Exception he=new HBCI_Exception("*** server returned HTTP status "+status);
+                he.setRetryable(status==503);
+                throw he;
+            }
+            breaker.success();
+            InputStream i=conn.getInputStream();
+            MsgBuffer ret=read(i,msgsize);
+            HBCIUtils.log("received "+ret.length()+" bytes",HBCIUtils.LOG_DEBUG2);
+
+            if (keepAlive) {
+                // die vollstaendig gelesene antwort freigeben - die verbindung
+                // bleibt dann fuer die naechste nachricht offen
+                HBCIUtils.log("releasing connection for reuse",HBCIUtils.LOG_DEBUG);
+                i.close();
+            } else {
+                HBCIUtils.log("closing communication line",HBCIUtils.LOG_DEBUG);
+                conn.disconnect();
+            }
+            return ret;
+        } catch (Exception e) {
+            // der server hat nicht rechtzeitig geantwortet - die nachricht kann
+            // aber schon verarbeitet worden sein, daher keine wiederholung
+            if (e instanceof SocketTimeoutException) {
+                breaker.failure();
+            }
+            // eine gestoerte verbindung darf nicht wiederverwendet werden
+            conn.disconnect();
+
+            // Die hier marieren wir nicht als fatal - ich meine mich zu erinnern,
+            // dass es Banken gibt, die einen anonymen BPD-Abruf mit einem HTTP-Fehlercode quittieren
+            throw new HBCI_Exception(HBCIUtilsInternal.getLocMsg("EXCMSG_RECVERR"),e);
+        }
+    }
+
+    /** Liest die Antwort direkt in einen {@link MsgBuffer}. Ist die Länge
+        bekannt, wird der Puffer in passender Größe (höchstens aber
+        {@link #MAX_PREALLOC} Bytes) angelegt, ansonsten bzw. darüber hinaus
+        wächst er geometrisch. Antworten, die größer als
+        <code>client.passport.PinTan.maxresponsesize</code> sind, werden
+        abgebrochen.
+        @param i der Stream mit der Antwort
+        @param msgsize Länge der Antwort oder <code>-1</code>, wenn unbekannt
+        @return die Antwort */
+    protected MsgBuffer read(InputStream i,int msgsize)
+        throws IOException
+    {
+        int limit=-1;
+        if (msgsize>=0) {
+            checkSize(msgsize);
+            limit=msgsize;
+        } else if (maxResponseSize>0) {
+            // ein byte mehr lesen, um eine zu grosse antwort zu erkennen
+            limit=(int)Math.min(maxResponseSize+1,Integer.MAX_VALUE);
+        }
+
+        // der Content-Length-Header wird nur bis MAX_PREALLOC fuer die
+        // groesse des puffers uebernommen - ein falscher header soll nicht
+        // auf einen schlag beliebig viel speicher belegen
+        MsgBuffer ret=new MsgBuffer((msgsize>=0)?Math.min(msgsize,MAX_PREALLOC):8192);
+        int num=ret.readFrom(i,limit);
+        if (msgsize>=0 && num<msgsize) {
+            HBCIUtils.log("response ended after "+num+" of "+msgsize+" bytes",HBCIUtils.LOG_WARN);
+        }
+        checkSize(num);
+        return ret;
+    }
+
+    private void checkSize(long size)
+    {
+        if (maxResponseSize>0 && size>maxResponseSize) {
+            throw tooLarge(size);
+        }
+    }
+
+    private HBCI_Exception tooLarge(long size)
+    {
+        return new HBCI_Exception("*** response too large: at least "+size+" bytes"
+                                  +" (client.passport.PinTan.maxresponsesize="+maxResponseSize+")");
+    }
+}
@@ -0,0 +1,513 @@
+package org.kapott.hbci.concurrent;
+
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.kapott.hbci.manager.BankInfo;
+import org.kapott.hbci.manager.HBCIUtils;
+
+/**
+ * Führt viele {@link HBCIRunnable}s (z.B. je Konto bzw. Passport eines) parallel aus und hält dabei Grenzen ein,
+ * die viele Banken vorgeben:
+ *
+ * <ul>
+ * <li>höchstens <code>maxParallel</code> Dialoge insgesamt,</li>
+ * <li>höchstens <code>maxPerHost</code> gleichzeitige Dialoge je Bank-Server (bzw. BLZ) und</li>
+ * <li>höchstens ein Dialog je Benutzerkennung - FinTS erlaubt keine parallelen Dialoge eines Benutzers.</li>
+ * </ul>
+ *
+ * <p>Jeder Auftrag wird mit dem Server und der Benutzerkennung übergeben, für die er ausgeführt wird (siehe
+ * {@link #submit(HBCIRunnable, String, String)}). Die Warteschlangen werden je Server im Wechsel abgearbeitet, so
+ * dass viele Aufträge für eine Bank die Aufträge für andere Banken nicht ausbremsen. Innerhalb eines Servers gilt
+ * die Reihenfolge der Übergabe.</p>
+ *
+ * <p>Über {@link #getStatistics()} können Warteschlangenlänge, Wartezeiten und Durchsatz je Server abgefragt
+ * werden.</p>
+ *
+ * <pre>
+ * HBCIBatchScheduler scheduler = new HBCIBatchScheduler(50, 4);
+ * for (...)
+ *     scheduler.submit(new MyHBCIRunnable(properties, callback, passportFactory),
+ *                      HBCIBatchScheduler.hostForBLZ(blz), userId);
+ * ...
+ * scheduler.shutdown();
+ * </pre>
+ */
+public class HBCIBatchScheduler {
+
+    /**
+     * Statistik eines Servers (bzw. aller Server) zum Zeitpunkt der Abfrage.
+     */
+    public static final class Statistics {
+
+        private final String host;
+        private final int queued;
+        private final int running;
+        private final long completed;
+        private final long failed;
+        private final long waitTime;
+        private final long runTime;
+        private final long since;
+
+        private Statistics(String host, int queued, int running, long completed, long failed, long waitTime, long runTime, long since) {
+            this.host = host;
+            this.queued = queued;
+            this.running = running;
+            this.completed = completed;
+            this.failed = failed;
+            this.waitTime = waitTime;
+            this.runTime = runTime;
+            this.since = since;
+        }
+
+        /**
+         * @return der Server oder <code>null</code> bei der Gesamt-Statistik.
+         */
+        public String getHost() {
+            return host;
+        }
+
+        /**
+         * @return Anzahl der wartenden Aufträge.
+         */
+        public int getQueued() {
+            return queued;
+        }
+
+        /**
+         * @return Anzahl der laufenden Aufträge.
+         */
+        public int getRunning() {
+            return running;
+        }
+
+        /**
+         * @return Anzahl der abgeschlossenen Aufträge (einschließlich der fehlgeschlagenen).
+         */
+        public long getCompleted() {
+            return completed;
+        }
+
+        /**
+         * @return Anzahl der mit Exception abgebrochenen Aufträge.
+         */
+        public long getFailed() {
+            return failed;
+        }
+
+        /**
+         * @return durchschnittliche Wartezeit der gestarteten Aufträge in Millisekunden.
+         */
+        public long getAverageWaitTime() {
+            long started = completed + running;
+            return (started != 0) ? waitTime / started : 0;
+        }
+
+        /**
+         * @return durchschnittliche Laufzeit der abgeschlossenen Aufträge in Millisekunden.
+         */
+        public long getAverageRunTime() {
+            return (completed != 0) ? runTime / completed : 0;
+        }
+
+        /**
+         * @return abgeschlossene Aufträge je Minute seit dem ersten Auftrag.
+         */
+        public double getThroughput() {
+            long millis = System.currentTimeMillis() - since;
+            return (millis > 0) ? completed * 60000d / millis : 0d;
+        }
+
+        @Override
+        public String toString() {
+            return ((host != null) ? host : "total") + ": queued=" + queued + ", running=" + running
+                    + ", completed=" + completed + ", failed=" + failed
+                    + ", avgWait=" + getAverageWaitTime() + "ms, avgRun=" + getAverageRunTime() + "ms";
+        }
+    }
+
+    /* ein übergebener auftrag */
+    private final class Entry implements Runnable {
+
+        final HBCIRunnable task;
+        final HBCIFuture<Void> future;
+        final Host host;
+        final String user;
+        final long queued = System.currentTimeMillis();
+        long started;
+
+        Entry(HBCIRunnable task, Host host, String user) {
+            this.task = task;
+            this.future = new HBCIFuture<Void>(Executors.<Void>callable(task, null));
+            this.host = host;
+            this.user = user;
+        }
+
+        @Override
+        public void run() {
+            boolean ok = false;
+            try {
+                future.run();
+                future.get();
+                ok = task.getException() == null;
+            } catch (ExecutionException e) {
+                // fehler im auftrag
+            } catch (Exception e) {
+                // abgebrochen oder unterbrochen
+            } finally {
+                finished(this, ok);
+            }
+        }
+    }
+
+    /* warteschlange und zähler je server */
+    private static final class Host {
+
+        final String name;
+        final LinkedList<Entry> queue = new LinkedList<Entry>();
+        final long since = System.currentTimeMillis();
+        int running;
+        long completed;
+        long failed;
+        long waitTime;
+        long runTime;
+
+        Host(String name) {
+            this.name = name;
+        }
+
+        Statistics getStatistics() {
+            return new Statistics(name, queue.size(), running, completed, failed, waitTime, runTime, since);
+        }
+    }
+
+    private final int maxParallel;
+    private final int maxPerHost;
+    private final ExecutorService executor;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition idle = lock.newCondition();
+    private final Map<String, Host> hosts = new LinkedHashMap<String, Host>();
+    private final Set<String> activeUsers = new HashSet<String>();
+    private final List<Host> roundRobin = new ArrayList<Host>();
+    private int next;
+    private int running;
+    private boolean shutdown;
+
+    /**
+     * Erzeugt einen Scheduler, dessen Threads mit {@link HBCIVirtualThreadFactory} erzeugt werden.
+     *
+     * @param maxParallel maximale Anzahl gleichzeitiger Dialoge insgesamt.
+     * @param maxPerHost  maximale Anzahl gleichzeitiger Dialoge je Server.
+     */
+    public HBCIBatchScheduler(int maxParallel, int maxPerHost) {
+        this(maxParallel, maxPerHost, new HBCIVirtualThreadFactory());
+    }
+
+    /**
+     * ct.
+     *
+     * @param maxParallel   maximale Anzahl gleichzeitiger Dialoge insgesamt.
+     * @param maxPerHost    maximale Anzahl gleichzeitiger Dialoge je Server.
+     * @param threadFactory erzeugt die Threads, in denen die Aufträge ausgeführt werden.
+     */
+    public HBCIBatchScheduler(int maxParallel, int maxPerHost, ThreadFactory threadFactory) {
+        if (maxParallel < 1 || maxPerHost < 1)
+            throw new IllegalArgumentException("limits must be at least 1");
+
+        this.maxParallel = maxParallel;
+        this.maxPerHost = maxPerHost;
+        this.executor = Executors.newCachedThreadPool(threadFactory);
+    }
+
+    /**
+     * Liefert den Server, über den die PIN/TAN-Dialoge für die angegebene BLZ laufen - bzw. die BLZ selbst, wenn
+     * kein Server bekannt ist. Geeignet als Parameter <code>host</code> für {@link #submit(HBCIRunnable, String, String)}.
+     *
+     * @param blz die Bankleitzahl.
+     * @return der Server.
+     */
+    public static String hostForBLZ(String blz) {
+        BankInfo info = HBCIUtils.getBankInfo(blz);
+        String url = (info != null) ? info.getPinTanAddress() : null;
+        if (url == null || url.length() == 0)
+            return blz;
+
+        String host = url;
+        int pos = host.indexOf("://");
+        if (pos != -1)
+            host = host.substring(pos + 3);
+        pos = host.indexOf('/');
+        if (pos != -1)
+            host = host.substring(0, pos);
+        return host.toLowerCase();
+    }
+
+    /**
+     * Übergibt einen Auftrag.
+     *
+     * @param task der Auftrag.
+     * @param host der Server bzw. die BLZ, an die sich der Auftrag richtet.
+     * @param user die Benutzerkennung, mit der der Auftrag ausgeführt wird. Für eine Benutzerkennung wird immer
+     *             nur ein Auftrag gleichzeitig ausgeführt. Kann <code>null</code> sein, wenn keine Beschränkung
+     *             gewünscht ist.
+     * @return Future, über die auf das Ende des Auftrages gewartet bzw. der noch wartende Auftrag abgebrochen
+     *         werden kann.
+     * @throws RejectedExecutionException wenn der Scheduler bereits beendet wurde.
+     */
+    public HBCIFuture<Void> submit(HBCIRunnable task, String host, String user) {
+        if (task == null || host == null)
+            throw new NullPointerException("task and host must not be null");
+
+        lock.lock();
+        try {
+            if (shutdown)
+                throw new RejectedExecutionException("scheduler has been shut down");
+
+            Host h = hosts.get(host);
+            if (h == null) {
+                h = new Host(host);
+                hosts.put(host, h);
+                roundRobin.add(h);
+            }
+
+            // die benutzerkennung wird bankübergreifend eindeutig gemacht
+            Entry entry = new Entry(task, h, (user != null) ? host + "/" + user : null);
+            h.queue.add(entry);
+            schedule();
+            return entry.future;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /* startet alle aufträge, die gerade gestartet werden dürfen - aufruf nur mit lock */
+    private void schedule() {
+        while (running < maxParallel) {
+            Entry entry = nextEntry();
+            if (entry == null)
+                return;
+
+            entry.started = System.currentTimeMillis();
+            entry.host.running++;
+            entry.host.waitTime += entry.started - entry.queued;
+            if (entry.user != null)
+                activeUsers.add(entry.user);
+            running++;
+
+            try {
+                executor.execute(entry);
+            } catch (RejectedExecutionException e) {
+                // executor wurde mit shutdownNow() beendet
+                entry.future.cancel(false);
+                entry.host.running--;
+                if (entry.user != null)
+                    activeUsers.remove(entry.user);
+                running--;
+                return;
+            }
+        }
+    }
+
+    /* der nächste startbare auftrag - reihum je server */
+    private Entry nextEntry() {
+        int count = roundRobin.size();
+        for (int i = 0; i < count; i++) {
+            Host h = roundRobin.get((next + i) % count);
+            if (h.running >= maxPerHost)
+                continue;
+
+            for (Iterator<Entry> it = h.queue.iterator(); it.hasNext(); ) {
+                Entry entry = it.next();
+                if (entry.future.isCancelled()) {
+                    it.remove();
+                    continue;
+                }
+                if (entry.user != null && activeUsers.contains(entry.user))
+                    continue;
+
+                it.remove();
+                next = (next + i + 1) % count;
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private void finished(Entry entry, boolean ok) {
+        lock.lock();
+        try {
+            Host h = entry.host;
+            h.running--;
+            h.completed++;
+            if (!ok)
+                h.failed++;
+            h.runTime += System.currentTimeMillis() - entry.started;
+            if (entry.user != null)
+                activeUsers.remove(entry.user);
+            running--;
+
+            schedule();
+            checkIdle();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /* benachrichtigt awaitTermination() und beendet nach shutdown() den executor,
+     * wenn nichts mehr zu tun ist - aufruf nur mit lock */
+    private void checkIdle() {
+        if (running != 0 || queueDepth() != 0)
+            return;
+
+        idle.signalAll();
+        if (shutdown)
+            executor.shutdown();
+    }
+
+    private int queueDepth() {
+        int ret = 0;
+        for (Host h : roundRobin)
+            ret += h.queue.size();
+        return ret;
+    }
+
+    /**
+     * @return Anzahl der insgesamt wartenden Aufträge.
+     */
+    public int getQueueDepth() {
+        lock.lock();
+        try {
+            return queueDepth();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Anzahl der gerade laufenden Aufträge.
+     */
+    public int getRunning() {
+        lock.lock();
+        try {
+            return running;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Statistik je Server, Schlüssel ist der bei {@link #submit(HBCIRunnable, String, String)} übergebene
+     *         Server.
+     */
+    public Map<String, Statistics> getStatistics() {
+        lock.lock();
+        try {
+            Map<String, Statistics> ret = new LinkedHashMap<String, Statistics>();
+            for (Host h : roundRobin)
+                ret.put(h.name, h.getStatistics());
+            return ret;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Statistik über alle Server.
+     */
+    public Statistics getTotalStatistics() {
+        lock.lock();
+        try {
+            int queued = 0;
+            long completed = 0, failed = 0, waitTime = 0, runTime = 0;
+            long since = System.currentTimeMillis();
+            for (Host h : roundRobin) {
+                queued += h.queue.size();
+                completed += h.completed;
+                failed += h.failed;
+                waitTime += h.waitTime;
+                runTime += h.runTime;
+                since = Math.min(since, h.since);
+            }
+            return new Statistics(null, queued, running, completed, failed, waitTime, runTime, since);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Nimmt keine neuen Aufträge mehr an. Bereits übergebene Aufträge werden noch ausgeführt.
+     */
+    public void shutdown() {
+        lock.lock();
+        try {
+            shutdown = true;
+            checkIdle();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Bricht alle wartenden Aufträge ab und unterbricht die laufenden.
+     *
+     * @return Anzahl der abgebrochenen wartenden Aufträge.
+     */
+    public int shutdownNow() {
+        lock.lock();
+        try {
+            shutdown = true;
+            int ret = 0;
+            for (Host h : roundRobin) {
+                for (Entry entry : h.queue) {
+                    if (entry.future.cancel(false))
+                        ret++;
+                }
+                h.queue.clear();
+            }
+            executor.shutdownNow();
+            checkIdle();
+            return ret;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wartet, bis alle übergebenen Aufträge abgeschlossen sind. Sinnvoll nach {@link #shutdown()}.
+     *
+     * @param millis maximale Wartezeit in Millisekunden.
+     * @return <code>true</code>, wenn alle Aufträge abgeschlossen sind.
+     * @throws InterruptedException
+     */
+    public boolean awaitTermination(long millis) throws InterruptedException {
+        lock.lock();
+        try {
+            long nanos = TimeUnit.MILLISECONDS.toNanos(millis);
+            while (running != 0 || queueDepth() != 0) {
+                if (nanos <= 0)
+                    return false;
+                nanos = idle.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+}
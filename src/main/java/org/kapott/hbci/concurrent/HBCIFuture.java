@@ -0,0 +1,107 @@
+package org.kapott.hbci.concurrent;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+
+import org.kapott.hbci.manager.HBCIContext;
+import org.kapott.hbci.manager.HBCIUtils;
+
+/**
+ * {@link FutureTask}, bei dem Listener registriert werden können, die nach Abschluss der Ausführung aufgerufen
+ * werden. Damit muss kein Thread der Anwendung in {@link #get()} auf das Ergebnis warten.
+ *
+ * <p>Die Listener werden in dem Thread aufgerufen, der die Ausführung abschließt - bzw. sofort im aufrufenden
+ * Thread, wenn die Ausführung beim Registrieren bereits abgeschlossen ist. Sie sollten daher nicht lange
+ * blockieren. {@link #get()} kann bereits zurückkehren, bevor alle Listener aufgerufen wurden.</p>
+ *
+ * <p>Nach Abschluss der Ausführung werden die Listener mit dem {@link HBCIContext} aufgerufen, der beim Erzeugen
+ * des Futures aktiv war (bzw. übergeben wurde) - auch wenn der Thread des Executors selbst keinen Kontext hat.</p>
+ *
+ * @param <V> Typ des Ergebnisses.
+ * @see org.kapott.hbci.manager.HBCIHandler#executeAsync(java.util.concurrent.Executor)
+ */
+public class HBCIFuture<V> extends FutureTask<V> {
+
+    private final HBCIContext context;
+    private List<Runnable> listeners = new ArrayList<Runnable>();
+
+    /**
+     * ct.
+     * Die Listener werden mit dem aktuell aktiven Kontext aufgerufen.
+     *
+     * @param callable die auszuführende Aufgabe.
+     */
+    public HBCIFuture(Callable<V> callable) {
+        this(callable, HBCIContext.current());
+    }
+
+    /**
+     * ct.
+     *
+     * @param callable die auszuführende Aufgabe.
+     * @param context der Kontext für die Listener, kann <code>null</code> sein.
+     */
+    public HBCIFuture(Callable<V> callable, HBCIContext context) {
+        super(callable);
+        this.context = context;
+    }
+
+    /**
+     * Registriert einen Listener, der nach Abschluss der Ausführung (auch bei Fehler oder Abbruch) aufgerufen wird.
+     *
+     * @param listener der Listener.
+     */
+    public void addListener(Runnable listener) {
+        synchronized (this) {
+            if (listeners != null) {
+                listeners.add(listener);
+                return;
+            }
+        }
+
+        // schon fertig
+        listener.run();
+    }
+
+    @Override
+    protected void done() {
+        List<Runnable> list;
+        synchronized (this) {
+            list = listeners;
+            listeners = null;
+        }
+
+        HBCIContext old = (context != null) ? context.bind() : null;
+        try {
+            for (Runnable listener : list) {
+                try {
+                    listener.run();
+                } catch (RuntimeException e) {
+                    // ein fehlerhafter Listener soll die anderen nicht verhindern
+                    report(e);
+                }
+            }
+        } finally {
+            if (context != null)
+                HBCIContext.restore(old);
+        }
+    }
+
+    /**
+     * Meldet den Fehler eines Listeners. Ohne Kontext ist kein Logging möglich, der Fehler wird dann wie eine
+     * nicht gefangene Exception behandelt.
+     */
+    private static void report(RuntimeException e) {
+        if (HBCIContext.current() != null) {
+            HBCIUtils.log(e, HBCIUtils.LOG_ERR);
+            return;
+        }
+
+        Thread t = Thread.currentThread();
+        t.getUncaughtExceptionHandler().uncaughtException(t, e);
+    }
+
+}
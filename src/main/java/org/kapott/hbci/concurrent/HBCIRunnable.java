@@ -4,6 +4,7 @@ package org.kapott.hbci.concurrent;
 import java.util.Properties;
 
 import org.kapott.hbci.callback.HBCICallback;
+import org.kapott.hbci.manager.HBCIContext;
 import org.kapott.hbci.manager.HBCIHandler;
 import org.kapott.hbci.manager.HBCIUtils;
 import org.kapott.hbci.passport.HBCIPassport;
@@ -17,11 +18,13 @@ import org.kapott.hbci.passport.HBCIPassport;
  * <p>Bei Ausführung einer solchen {@link Runnable} passiert folgendes:</p>
  *
  * <ol>
- * <li>{@link HBCIUtils.initThread(properties, callback)} wird mit den Parametern aus dem Constructor aufgerufen.</li>
+ * <li>Mit den Parametern aus dem Constructor wird ein {@link HBCIContext} erzeugt und für den aktuellen Thread aktiviert.
+ *     Eine eigene Thread-Gruppe je Runnable (siehe {@link HBCIThreadFactory}) ist daher nicht mehr nötig, die Runnables
+ *     können z.B. auch in einem Thread-Pool ausgeführt werden.</li>
  * <li>Das Passport wird von der {@link HBCIPassportFactory} abgefragt und darüber wird der {@link HBCIHandler} erzeugt.</li>
  * <li>{@link #execute()} wird aufgerufen.</li>
  *     {@link HBCIPassport} und {@link HBCIHandler} sind über die Variablen <code>passport</code> bzw. <code>handler</code> verfügbar.</li>
- * <li>Abschließend werden Handler und Passport geschlossen, sowie {@link HBCIUtils#doneThread()} aufgerufen.</li>
+ * <li>Abschließend werden Handler und Passport geschlossen und der vorher aktive Kontext wiederhergestellt.</li>
  * </ol>
  *
  * @author Hendrik Schnepel
@@ -36,6 +39,10 @@ public abstract class HBCIRunnable implements Runnable
     protected HBCIPassport passport = null;
     protected HBCIHandler handler = null;
 
+    private HBCIContext context = null;
+    private HBCIContext previous = null;
+    private volatile Exception exception = null;
+
     public HBCIRunnable(Properties properties, HBCICallback callback, HBCIPassportFactory passportFactory)
     {
         this.properties = properties;
@@ -54,6 +61,7 @@ public abstract class HBCIRunnable implements Runnable
         }
         catch (Exception e)
         {
+            exception = e;
             HBCIUtils.log(e);
         }
         finally
@@ -64,7 +72,9 @@ public abstract class HBCIRunnable implements Runnable
 
     private void init()
     {
-        HBCIUtils.initThread(properties, callback);
+        exception = null;
+        context = new HBCIContext(properties, callback);
+        previous = context.bind();
     }
 
     private void prepare() throws Exception
@@ -73,12 +83,22 @@ public abstract class HBCIRunnable implements Runnable
         if (passport != null)
         {
             String version = passport.getHBCIVersion();
-            handler = new HBCIHandler((version.length() != 0) ? version : "plus", passport);
+            handler = new HBCIHandler((version.length() != 0) ? version : "plus", passport, context);
         }
     }
 
     protected abstract void execute() throws Exception;
 
+    /**
+     * Liefert den Fehler, mit dem die letzte Ausführung abgebrochen wurde.
+     *
+     * @return der Fehler oder <code>null</code>, wenn die Ausführung erfolgreich war.
+     */
+    public Exception getException()
+    {
+        return exception;
+    }
+
     private void done()
     {
         if (handler != null)
@@ -89,7 +109,7 @@ public abstract class HBCIRunnable implements Runnable
         {
             passport.close();
         }
-        HBCIUtils.doneThread();
+        HBCIContext.restore(previous);
     }
 
 }
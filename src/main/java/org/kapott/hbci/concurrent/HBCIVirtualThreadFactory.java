@@ -0,0 +1,73 @@
+package org.kapott.hbci.concurrent;
+
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Implementierung einer {@link ThreadFactory} für sehr viele parallele HBCI-Sitzungen (z.B. den regelmäßigen
+ * Abruf der Umsätze tausender Konten).
+ *
+ * <p>Unterstützt die Java-Laufzeitumgebung virtuelle Threads (<code>Thread.ofVirtual()</code>), werden diese
+ * verwendet. Andernfalls werden normale Daemon-Threads erzeugt. Im Gegensatz zu {@link HBCIThreadFactory} wird
+ * keine eigene Thread-Gruppe je Thread angelegt - die Sitzungen müssen daher mit einem eigenen
+ * {@link org.kapott.hbci.manager.HBCIContext} arbeiten, was bei {@link HBCIRunnable} automatisch der Fall ist.</p>
+ *
+ * <pre>
+ * ExecutorService executor = Executors.newCachedThreadPool(new HBCIVirtualThreadFactory());
+ * for (...)
+ *     executor.submit(new MyHBCIRunnable(properties, callback, passportFactory));
+ * </pre>
+ *
+ * <p>Die Klasse wird gegen Java 7 übersetzt, die virtuellen Threads werden daher per Reflection angesprochen.</p>
+ */
+public class HBCIVirtualThreadFactory implements ThreadFactory {
+
+    private static final AtomicLong SEQUENCE = new AtomicLong(0L);
+
+    private static final ThreadFactory VIRTUAL = createVirtualFactory();
+
+    /**
+     * Liefert die Factory für virtuelle Threads oder <code>null</code>, wenn die Laufzeitumgebung
+     * keine virtuellen Threads unterstützt.
+     */
+    private static ThreadFactory createVirtualFactory() {
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "HBCI Virtual Thread #", 1L);
+            Method factory = builderClass.getMethod("factory");
+            return (ThreadFactory) factory.invoke(builder);
+        } catch (Exception e) {
+            // keine virtuellen Threads verfügbar
+            return null;
+        }
+    }
+
+    /**
+     * Prüft, ob die Laufzeitumgebung virtuelle Threads unterstützt.
+     *
+     * @return <code>true</code>, wenn diese Factory virtuelle Threads erzeugt.
+     */
+    public static boolean isVirtual() {
+        return VIRTUAL != null;
+    }
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+        if (VIRTUAL != null) {
+            return VIRTUAL.newThread(runnable);
+        }
+
+        Thread thread = new Thread(runnable, "HBCI Thread #" + SEQUENCE.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    @Override
+    public String toString() {
+        return "HBCIVirtualThreadFactory[" + (isVirtual() ? "virtual" : "platform") + "]";
+    }
+
+}
@@ -36,6 +36,7 @@ package org.kapott.hbci.datatypes;
 
 import org.kapott.hbci.exceptions.InvalidArgumentException;
 import org.kapott.hbci.manager.HBCIUtilsInternal;
+import org.kapott.hbci.tools.ParseCursor;
 
 /* @internal
     @brief Abstract base class for datatypes.
@@ -76,7 +77,7 @@ public abstract class SyntaxDE
         initData(x,minsize,maxsize);
     }
     
-    public void init(StringBuffer x, int minsize, int maxsize)
+    public void init(ParseCursor x, int minsize, int maxsize)
     {
         initData(x.toString(),minsize,maxsize);
     }
@@ -158,7 +159,7 @@ public abstract class SyntaxDE
         @param res A part of an HBCI message to be parsed.
         @return Index into @p res where next token starts.
     */
-    protected static int skipPreDelim(StringBuffer res)
+    protected static int skipPreDelim(ParseCursor res)
     {
         int ret = 0;
 
@@ -187,7 +188,7 @@ public abstract class SyntaxDE
                 next delimiter character, the return value will be the next character
                 after the end of the String @p res (i.e. will equal @c res.length())
     */
-    public static int findNextDelim(StringBuffer res, int startidx)
+    public static int findNextDelim(ParseCursor res, int startidx)
     {
         int ret = startidx;
         boolean quoted = false;
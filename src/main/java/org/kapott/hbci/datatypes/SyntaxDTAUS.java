@@ -23,6 +23,7 @@ package org.kapott.hbci.datatypes;
 
 import org.kapott.hbci.exceptions.InvalidArgumentException;
 import org.kapott.hbci.manager.HBCIUtilsInternal;
+import org.kapott.hbci.tools.ParseCursor;
 
 // Speicherung im HBCI-MSG-Format
 public class SyntaxDTAUS
@@ -100,22 +101,22 @@ public class SyntaxDTAUS
 
     // --------------------------------------------------------------------------------
 
-    private void initData(StringBuffer res, int minsize, int maxsize)
+    private void initData(ParseCursor res, int minsize, int maxsize)
     {
         int startidx = skipPreDelim(res);
         int endidx = findNextDelim(res, startidx);
         String st = res.substring(startidx, endidx);
 
         setContent(check(unquote(st)),minsize,maxsize);
-        res.delete(0,endidx);
+        res.skip(endidx);
     }
     
-    public SyntaxDTAUS(StringBuffer res, int minsize, int maxsize)
+    public SyntaxDTAUS(ParseCursor res, int minsize, int maxsize)
     {
         initData(res,minsize,maxsize);
     }
     
-    public void init(StringBuffer res, int minsize, int maxsize)
+    public void init(ParseCursor res, int minsize, int maxsize)
     {
         initData(res,minsize,maxsize);
     }
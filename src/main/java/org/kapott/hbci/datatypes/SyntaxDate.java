@@ -26,6 +26,7 @@ import java.text.SimpleDateFormat;
 import org.kapott.hbci.exceptions.InvalidUserDataException;
 import org.kapott.hbci.manager.HBCIUtils;
 import org.kapott.hbci.manager.HBCIUtilsInternal;
+import org.kapott.hbci.tools.ParseCursor;
 
 /* represents the datatype "date" */
 // interne Speicherung im HBCI-MSG-Format
@@ -55,7 +56,7 @@ public final class SyntaxDate
 
     // --------------------------------------------------------------------------------
 
-    private void initData(StringBuffer res, int minsize, int maxsize)
+    private void initData(ParseCursor res, int minsize, int maxsize)
     {
         int startidx = skipPreDelim(res);
         int endidx = findNextDelim(res, startidx);
@@ -63,15 +64,15 @@ public final class SyntaxDate
 
         unparseDate(st);
         setContent(st,8,8);
-        res.delete(0, endidx);
+        res.skip(endidx);
     }
 
-    public SyntaxDate(StringBuffer res, int minsize, int maxsize)
+    public SyntaxDate(ParseCursor res, int minsize, int maxsize)
     {
         initData(res,minsize,maxsize);
     }
 
-    public void init(StringBuffer res, int minsize, int maxsize)
+    public void init(ParseCursor res, int minsize, int maxsize)
     {
         initData(res,minsize,maxsize);
     }
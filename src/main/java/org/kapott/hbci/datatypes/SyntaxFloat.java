@@ -29,6 +29,7 @@ import org.kapott.hbci.exceptions.HBCI_Exception;
 import org.kapott.hbci.exceptions.InvalidUserDataException;
 import org.kapott.hbci.manager.HBCIUtils;
 import org.kapott.hbci.manager.HBCIUtilsInternal;
+import org.kapott.hbci.tools.ParseCursor;
 
 /* a class for representing the HBCI-datatype "float" */
 // interne Speicherung im HBCI-MSG-Format
@@ -67,7 +68,7 @@ public class SyntaxFloat
 
     // --------------------------------------------------------------------------------
 
-    private void initData(StringBuffer res, int minsize, int maxsize)
+    private void initData(ParseCursor res, int minsize, int maxsize)
     {
         String st=null;
         
@@ -87,19 +88,19 @@ public class SyntaxFloat
             }
 
             setContent(st,minsize,maxsize);
-            res.delete(0,endidx);
+            res.skip(endidx);
         } catch (Exception ex) {
             throw new InvalidUserDataException(HBCIUtilsInternal.getLocMsg("EXCMSG_FLOATERR",st),ex); 
         }
     }
 
-    public SyntaxFloat(StringBuffer res, int minsize, int maxsize)
+    public SyntaxFloat(ParseCursor res, int minsize, int maxsize)
     {
         initData(res,minsize,maxsize);
     }
 
     @Override
-    public void init(StringBuffer res, int minsize, int maxsize)
+    public void init(ParseCursor res, int minsize, int maxsize)
     {
         initData(res,minsize,maxsize);
     }
@@ -24,6 +24,7 @@ package org.kapott.hbci.datatypes;
 import org.kapott.hbci.exceptions.InvalidArgumentException;
 import org.kapott.hbci.exceptions.InvalidUserDataException;
 import org.kapott.hbci.manager.HBCIUtilsInternal;
+import org.kapott.hbci.tools.ParseCursor;
 
 /* the class for representing the datatype "num" */
 // interne Speicherung im HBCI-Nachrichten-Format
@@ -59,7 +60,7 @@ public final class SyntaxNum
 
     // --------------------------------------------------------------------------------
 
-    private void initData(StringBuffer res, int minsize, int maxsize)
+    private void initData(ParseCursor res, int minsize, int maxsize)
     {
         int startidx = skipPreDelim(res);
         int endidx = findNextDelim(res, startidx);
@@ -74,15 +75,15 @@ public final class SyntaxNum
         }
 
         setContent(st, minsize, maxsize);
-        res.delete(0, endidx);
+        res.skip(endidx);
     }
     
-    public SyntaxNum(StringBuffer res, int minsize, int maxsize)
+    public SyntaxNum(ParseCursor res, int minsize, int maxsize)
     {
         initData(res,minsize,maxsize);
     }
 
-    public void init(StringBuffer res, int minsize, int maxsize)
+    public void init(ParseCursor res, int minsize, int maxsize)
     {
         initData(res,minsize,maxsize);
     }
@@ -26,6 +26,7 @@ import java.text.SimpleDateFormat;
 import org.kapott.hbci.exceptions.InvalidUserDataException;
 import org.kapott.hbci.manager.HBCIUtils;
 import org.kapott.hbci.manager.HBCIUtilsInternal;
+import org.kapott.hbci.tools.ParseCursor;
 
 /* a class for the datatype "time" */
 // interne Speicherung im HBCI-MSG-Format
@@ -49,7 +50,7 @@ public final class SyntaxTime
 
     // --------------------------------------------------------------------------------
 
-    private void initData(StringBuffer res, int minsize, int maxsize)
+    private void initData(ParseCursor res, int minsize, int maxsize)
     {
         int startidx = skipPreDelim(res);
         int endidx = findNextDelim(res, startidx);
@@ -57,15 +58,15 @@ public final class SyntaxTime
 
         unparseTime(st);
         setContent(st, 6, 6);
-        res.delete(0, endidx);
+        res.skip(endidx);
     }
 
-    public SyntaxTime(StringBuffer res, int minsize, int maxsize)
+    public SyntaxTime(ParseCursor res, int minsize, int maxsize)
     {
         initData(res,minsize,maxsize);
     }
 
-    public void init(StringBuffer res, int minsize, int maxsize)
+    public void init(ParseCursor res, int minsize, int maxsize)
     {
         initData(res,minsize,maxsize);
     }
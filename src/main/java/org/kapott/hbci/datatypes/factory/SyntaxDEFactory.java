@@ -23,10 +23,25 @@ package org.kapott.hbci.datatypes.factory;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
-import java.util.Enumeration;
-import java.util.Hashtable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+import org.kapott.hbci.datatypes.SyntaxAN;
+import org.kapott.hbci.datatypes.SyntaxBin;
+import org.kapott.hbci.datatypes.SyntaxCode;
+import org.kapott.hbci.datatypes.SyntaxCtr;
+import org.kapott.hbci.datatypes.SyntaxCur;
 import org.kapott.hbci.datatypes.SyntaxDE;
+import org.kapott.hbci.datatypes.SyntaxDTAUS;
+import org.kapott.hbci.datatypes.SyntaxDate;
+import org.kapott.hbci.datatypes.SyntaxDig;
+import org.kapott.hbci.datatypes.SyntaxFloat;
+import org.kapott.hbci.datatypes.SyntaxID;
+import org.kapott.hbci.datatypes.SyntaxJN;
+import org.kapott.hbci.datatypes.SyntaxNum;
+import org.kapott.hbci.datatypes.SyntaxTime;
+import org.kapott.hbci.datatypes.SyntaxWrt;
 import org.kapott.hbci.exceptions.InitializingException;
 import org.kapott.hbci.exceptions.NoSuchConstructorException;
 import org.kapott.hbci.exceptions.NoSuchSyntaxException;
@@ -34,24 +49,36 @@ import org.kapott.hbci.exceptions.ParseErrorException;
 import org.kapott.hbci.manager.HBCIUtils;
 import org.kapott.hbci.manager.HBCIUtilsInternal;
 import org.kapott.hbci.tools.ObjectFactory;
+import org.kapott.hbci.tools.ParseCursor;
 
 public class SyntaxDEFactory 
 {
-    private static SyntaxDEFactory instance;
+    private final static SyntaxDEFactory instance=new SyntaxDEFactory();
     
-    private Hashtable<String, ObjectFactory> factories;
+    private ConcurrentMap<String, ObjectFactory> factories;
     
-    public static synchronized SyntaxDEFactory getInstance()
+    public static SyntaxDEFactory getInstance()
     {
-        if (instance==null) {
-            instance=new SyntaxDEFactory();
-        }
         return instance;
     }
     
     private SyntaxDEFactory()
     {
-        factories=new Hashtable<String, ObjectFactory>();
+        factories=new ConcurrentHashMap<String, ObjectFactory>();
+    }
+
+    /* gibt den pool fuer den datentyp zurueck und legt ihn bei bedarf an */
+    private ObjectFactory getFactory(String dataType)
+    {
+        ObjectFactory factory=factories.get(dataType);
+        if (factory==null) {
+            ObjectFactory newFactory=new ObjectFactory(Integer.parseInt(HBCIUtils.getParam("kernel.objpool.Syntax","1024")));
+            factory=factories.putIfAbsent(dataType,newFactory);
+            if (factory==null) {
+                factory=newFactory;
+            }
+        }
+        return factory;
     }
     
     public SyntaxDE createSyntaxDE(String dataType,String path,String value,int minsize,int maxsize)
@@ -59,17 +86,22 @@ public class SyntaxDEFactory
         SyntaxDE ret=null;
         ObjectFactory factory;
         
-        synchronized(this) {
-        	factory=factories.get(dataType);
-
-        	if (factory==null) {
-        		factory=new ObjectFactory(Integer.parseInt(HBCIUtils.getParam("kernel.objpool.Syntax","1024")));
-        		factories.put(dataType,factory);
-        	}
-        }
+        factory=getFactory(dataType);
         
         ret=(SyntaxDE)factory.getFreeObject();
         if (ret==null) {
+            // die bekannten datentypen werden direkt erzeugt - nur fuer
+            // unbekannte datentypen wird die syntaxklasse per reflection gesucht
+            try {
+                ret=newSyntaxDE(dataType,value,minsize,maxsize);
+            } catch (RuntimeException e) {
+                throw new InitializingException(e,path);
+            }
+            if (ret!=null) {
+                factory.addToUsedPool(ret);
+                return ret;
+            }
+
             // laden der klasse, die die syntax des de enthaelt
             Class c;
             try {
@@ -112,22 +144,27 @@ public class SyntaxDEFactory
         return ret;
     }
 
-    public SyntaxDE createSyntaxDE(String dataType,String path,StringBuffer res,int minsize,int maxsize)
+    public SyntaxDE createSyntaxDE(String dataType,String path,ParseCursor res,int minsize,int maxsize)
     {
         SyntaxDE      ret=null;
         ObjectFactory factory;
         
-        synchronized(this) {
-        	factory=factories.get(dataType);
-
-        	if (factory==null) {
-        		factory=new ObjectFactory(Integer.parseInt(HBCIUtils.getParam("kernel.objpool.Syntax","1024")));
-        		factories.put(dataType,factory);
-        	}
-        }
+        factory=getFactory(dataType);
         
         ret=(SyntaxDE)factory.getFreeObject();
         if (ret==null) {
+            // die bekannten datentypen werden direkt erzeugt - nur fuer
+            // unbekannte datentypen wird die syntaxklasse per reflection gesucht
+            try {
+                ret=newSyntaxDE(dataType,res,minsize,maxsize);
+            } catch (RuntimeException e) {
+                throw new ParseErrorException(HBCIUtilsInternal.getLocMsg("EXCMSG_PROT_ERRSYNDE",path),e);
+            }
+            if (ret!=null) {
+                factory.addToUsedPool(ret);
+                return ret;
+            }
+
             // laden der klasse, die die syntax des de enthaelt
             Class c;
             try {
@@ -139,7 +176,7 @@ public class SyntaxDEFactory
             // holen des constructors fuer diese klasse
             Constructor con;
             try {
-                con=c.getConstructor(new Class[]{StringBuffer.class, int.class, int.class});
+                con=c.getConstructor(new Class[]{ParseCursor.class, int.class, int.class});
             } catch (NoSuchMethodException e) {
                 throw new NoSuchConstructorException(dataType);
             }
@@ -170,6 +207,52 @@ public class SyntaxDEFactory
         return ret;
     }
     
+    /* erzeugt ein neues objekt fuer einen der bekannten datentypen oder
+     * gibt null zurueck, wenn der datentyp hier nicht bekannt ist. die
+     * direkten konstruktor-aufrufe ersetzen den reflection-aufruf, so dass
+     * der JIT das parsen der einzelnen DEs inlinen kann */
+    private static SyntaxDE newSyntaxDE(String dataType,String value,int minsize,int maxsize)
+    {
+        switch (dataType) {
+            case "AN":    return new SyntaxAN(value,minsize,maxsize);
+            case "Bin":   return new SyntaxBin(value,minsize,maxsize);
+            case "Code":  return new SyntaxCode(value,minsize,maxsize);
+            case "Ctr":   return new SyntaxCtr(value,minsize,maxsize);
+            case "Cur":   return new SyntaxCur(value,minsize,maxsize);
+            case "DTAUS": return new SyntaxDTAUS(value,minsize,maxsize);
+            case "Date":  return new SyntaxDate(value,minsize,maxsize);
+            case "Dig":   return new SyntaxDig(value,minsize,maxsize);
+            case "Float": return new SyntaxFloat(value,minsize,maxsize);
+            case "ID":    return new SyntaxID(value,minsize,maxsize);
+            case "JN":    return new SyntaxJN(value,minsize,maxsize);
+            case "Num":   return new SyntaxNum(value,minsize,maxsize);
+            case "Time":  return new SyntaxTime(value,minsize,maxsize);
+            case "Wrt":   return new SyntaxWrt(value,minsize,maxsize);
+            default:      return null;
+        }
+    }
+
+    private static SyntaxDE newSyntaxDE(String dataType,ParseCursor res,int minsize,int maxsize)
+    {
+        switch (dataType) {
+            case "AN":    return new SyntaxAN(res,minsize,maxsize);
+            case "Bin":   return new SyntaxBin(res,minsize,maxsize);
+            case "Code":  return new SyntaxCode(res,minsize,maxsize);
+            case "Ctr":   return new SyntaxCtr(res,minsize,maxsize);
+            case "Cur":   return new SyntaxCur(res,minsize,maxsize);
+            case "DTAUS": return new SyntaxDTAUS(res,minsize,maxsize);
+            case "Date":  return new SyntaxDate(res,minsize,maxsize);
+            case "Dig":   return new SyntaxDig(res,minsize,maxsize);
+            case "Float": return new SyntaxFloat(res,minsize,maxsize);
+            case "ID":    return new SyntaxID(res,minsize,maxsize);
+            case "JN":    return new SyntaxJN(res,minsize,maxsize);
+            case "Num":   return new SyntaxNum(res,minsize,maxsize);
+            case "Time":  return new SyntaxTime(res,minsize,maxsize);
+            case "Wrt":   return new SyntaxWrt(res,minsize,maxsize);
+            default:      return null;
+        }
+    }
+
     public void unuseObject(SyntaxDE sde,String type)
     {
         if (sde!=null) {
@@ -183,9 +266,9 @@ public class SyntaxDEFactory
     {
         StringBuffer ret=new StringBuffer();
         
-        for (Enumeration<String> e=factories.keys();e.hasMoreElements();) {
-            String        type=e.nextElement();
-            ObjectFactory fac=factories.get(type);
+        for (Map.Entry<String, ObjectFactory> entry:factories.entrySet()) {
+            String        type=entry.getKey();
+            ObjectFactory fac=entry.getValue();
             
             ret.append(type).append(": ").append(fac.toString()).append(System.getProperty("line.separator"));
         }
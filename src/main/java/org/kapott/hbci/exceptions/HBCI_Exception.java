@@ -21,7 +21,7 @@
 
 package org.kapott.hbci.exceptions;
 
-import org.kapott.hbci.manager.HBCIUtils;
+import org.kapott.hbci.manager.HBCIContext;
 import org.kapott.hbci.manager.LogFilter;
 
 
@@ -50,11 +50,14 @@ public class HBCI_Exception
     extends RuntimeException
 {
     private boolean fatal = false;
+    private boolean retryable = false;
   
     protected static String applyLogFilter(String st) 
     {
         try {
-            int filterLevel=Integer.parseInt(HBCIUtils.getParam("log.filter","2"));
+            // thread evtl. (noch) nicht initialisiert
+            HBCIContext context=HBCIContext.current();
+            int filterLevel=(context!=null)?context.getConfig().getLogFilter():0;
             if (filterLevel!=0) {
                 st=LogFilter.getInstance().filterLine(st,filterLevel);
             }
@@ -124,4 +127,33 @@ public class HBCI_Exception
       
       return false;
     }
+    
+    /**
+     * Markiert eine Exception als vorübergehenden Fehler, nach dem der Vorgang
+     * gefahrlos wiederholt werden kann (z.B. weil der Server nicht erreichbar war
+     * und die Nachricht daher nicht angekommen sein kann).
+     * @param b true, wenn eine Wiederholung möglich ist.
+     */
+    public void setRetryable(boolean b)
+    {
+      this.retryable = b;
+    }
+    
+    /**
+     * Liefert true, wenn die Exception oder ihr Cause als wiederholbar eingestuft wurde.
+     * @return true, wenn die Exception oder ihr Cause als wiederholbar eingestuft wurde.
+     */
+    public boolean isRetryable()
+    {
+      if (this.retryable)
+        return true;
+      
+      Throwable t = this.getCause();
+      if (t == this)
+        return false;
+      if (t instanceof HBCI_Exception)
+        return ((HBCI_Exception)t).isRetryable();
+      
+      return false;
+    }
 }
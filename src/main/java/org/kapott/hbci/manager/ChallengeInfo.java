@@ -50,18 +50,27 @@ public class ChallengeInfo
   /**
    * Das Singleton.
    */
-  private static ChallengeInfo singleton = null;
+  private static volatile ChallengeInfo singleton = null;
     private Map<String,Job> data = null; // Die Parameter-Daten aus der XML-Datei.
 
   /**
    * Erzeugt ein neues Challenge-Info-Objekt.
    * @return das Challenge-Info-Objekt.
    */
-  public static synchronized ChallengeInfo getInstance()
+  public static ChallengeInfo getInstance()
   {
-    if (singleton == null)
-      singleton = new ChallengeInfo();
-    return singleton;
+    // Nur beim ersten Aufruf synchronisieren
+    ChallengeInfo ci = singleton;
+    if (ci == null)
+    {
+      synchronized (ChallengeInfo.class)
+      {
+        ci = singleton;
+        if (ci == null)
+          singleton = ci = new ChallengeInfo();
+      }
+    }
+    return ci;
   }
   
   /**
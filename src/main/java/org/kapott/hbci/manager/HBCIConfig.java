@@ -0,0 +1,262 @@
+/*  This file is part of HBCI4Java
+    Copyright (C) 2001-2008  Stefan Palme
+
+    HBCI4Java is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    HBCI4Java is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package org.kapott.hbci.manager;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import org.kapott.hbci.exceptions.HBCI_Exception;
+import org.kapott.hbci.rewrite.RewriteChain;
+
+/** <p>Unveränderlicher Stand der Kernel-Parameter eines {@link HBCIContext}.
+    Die vom Kernel häufig benötigten Parameter (z.B. <code>log.loglevel.default</code>
+    bei jeder Log-Meldung) werden beim Erzeugen einmalig ausgewertet und
+    stehen danach über typisierte Methoden zur Verfügung.</p>
+    <p>Bei jeder Änderung eines Parameters mit {@link HBCIUtils#setParam(String, String)}
+    wird ein neuer <code>HBCIConfig</code> erzeugt und im Kontext ausgetauscht.
+    Ein einmal geholtes Objekt ändert sich also nie.</p> */
+public final class HBCIConfig
+{
+    private final Map<String,String> values;
+
+    private final int     logLevel;
+    private final int     logFilter;
+    private final boolean logCaller;
+    private final boolean logAsync;
+    private final int     logOverflow;
+    private final int     maxWaitTime;
+    private final boolean sepaSchemaValidation;
+    private final int     parallelDialogs;
+    private final int     retryMax;
+    private final int     retryDelay;
+    private final int     retryMaxDelay;
+    private final Set<String> retryCodes;
+    private final int     breakerThreshold;
+    private final int     breakerTimeout;
+
+    /* wird erst bei bedarf ermittelt */
+    private volatile RewriteChain rewriteChain;
+
+    /** Erzeugt einen neuen Stand aus den übergebenen Kernel-Parametern.
+        @param props die Kernel-Parameter; werden kopiert
+        @throws HBCI_Exception wenn einer der ausgewerteten Parameter einen
+                ungültigen Wert hat */
+    public HBCIConfig(Properties props)
+    {
+        this(copy(props));
+    }
+
+    private HBCIConfig(Map<String,String> values)
+    {
+        this.values=Collections.unmodifiableMap(values);
+
+        this.logLevel=getInt("log.loglevel.default",2);
+        this.logFilter=getInt("log.filter",2);
+        this.logCaller=!getParam("log.caller","1").equals("0");
+        this.logAsync=getParam("log.async","0").equals("1");
+
+        String st=getParam("log.async.overflow","block");
+        if (st.equals("drop")) {
+            this.logOverflow=LogDispatcher.OVERFLOW_DROP;
+        } else if (st.equals("sync")) {
+            this.logOverflow=LogDispatcher.OVERFLOW_SYNC;
+        } else {
+            this.logOverflow=LogDispatcher.OVERFLOW_BLOCK;
+        }
+
+        this.maxWaitTime=getInt("kernel.threaded.maxwaittime",300);
+        this.sepaSchemaValidation=getParam("sepa.schema.validation","0").equals("1");
+        this.parallelDialogs=Math.max(1,getInt("client.dialogs.parallel",1));
+
+        this.retryMax=Math.max(0,getInt("client.retry.max",2));
+        this.retryDelay=Math.max(0,getInt("client.retry.delay",1000));
+        this.retryMaxDelay=Math.max(retryDelay,getInt("client.retry.maxdelay",30000));
+        this.breakerThreshold=Math.max(0,getInt("client.retry.breaker.threshold",5));
+        this.breakerTimeout=Math.max(0,getInt("client.retry.breaker.timeout",60));
+
+        Set<String> codes=new HashSet<String>();
+        for (String code:getParam("client.retry.codes","").split(",")) {
+            code=code.trim();
+            if (code.length()!=0) {
+                codes.add(code);
+            }
+        }
+        this.retryCodes=Collections.unmodifiableSet(codes);
+    }
+
+    private static Map<String,String> copy(Properties props)
+    {
+        Map<String,String> ret=new HashMap<String,String>();
+        if (props!=null) {
+            for (String key:props.stringPropertyNames()) {
+                ret.put(key,props.getProperty(key));
+            }
+        }
+        return ret;
+    }
+
+    private int getInt(String key,int def)
+    {
+        String st=values.get(key);
+        if (st==null) {
+            return def;
+        }
+        try {
+            return Integer.parseInt(st.trim());
+        } catch (NumberFormatException e) {
+            throw new HBCI_Exception("invalid value for kernel parameter "+key+": "+st,e);
+        }
+    }
+
+    /** Erzeugt einen neuen Stand, in dem der Parameter <code>key</code> auf
+        <code>value</code> gesetzt ist (bzw. entfernt wurde, wenn
+        <code>value==null</code>). */
+    HBCIConfig with(String key,String value)
+    {
+        Map<String,String> newValues=new HashMap<String,String>(values);
+        if (value!=null) {
+            newValues.put(key,value);
+        } else {
+            newValues.remove(key);
+        }
+        return new HBCIConfig(newValues);
+    }
+
+    /** siehe {@link HBCIUtils#getParam(String)} */
+    public String getParam(String key)
+    {
+        return values.get(key);
+    }
+
+    /** siehe {@link HBCIUtils#getParam(String, String)} */
+    public String getParam(String key,String def)
+    {
+        String ret=values.get(key);
+        return (ret!=null)?ret:def;
+    }
+
+    /** @return eine neue Kopie aller Kernel-Parameter dieses Standes.
+                Änderungen daran wirken sich weder auf den Kernel noch auf
+                andere Aufrufer aus. */
+    public Properties getParams()
+    {
+        Properties ret=new Properties();
+        ret.putAll(values);
+        return ret;
+    }
+
+    /** @return <code>log.loglevel.default</code> */
+    public int getLogLevel()
+    {
+        return logLevel;
+    }
+
+    /** @return <code>log.filter</code> */
+    public int getLogFilter()
+    {
+        return logFilter;
+    }
+
+    /** @return <code>log.caller</code> */
+    public boolean isLogCaller()
+    {
+        return logCaller;
+    }
+
+    /** @return <code>log.async</code> */
+    public boolean isLogAsync()
+    {
+        return logAsync;
+    }
+
+    /** @return <code>log.async.overflow</code> als <code>LogDispatcher.OVERFLOW_*</code> */
+    public int getLogOverflow()
+    {
+        return logOverflow;
+    }
+
+    /** @return <code>kernel.threaded.maxwaittime</code> in Sekunden */
+    public int getMaxWaitTime()
+    {
+        return maxWaitTime;
+    }
+
+    /** @return <code>sepa.schema.validation</code> */
+    public boolean isSepaSchemaValidation()
+    {
+        return sepaSchemaValidation;
+    }
+
+    /** @return <code>client.dialogs.parallel</code> (mindestens 1) */
+    public int getParallelDialogs()
+    {
+        return parallelDialogs;
+    }
+
+    /** @return <code>client.retry.max</code> */
+    public int getRetryMax()
+    {
+        return retryMax;
+    }
+
+    /** @return <code>client.retry.delay</code> in Millisekunden */
+    public int getRetryDelay()
+    {
+        return retryDelay;
+    }
+
+    /** @return <code>client.retry.maxdelay</code> in Millisekunden */
+    public int getRetryMaxDelay()
+    {
+        return retryMaxDelay;
+    }
+
+    /** @return die Rückmeldungscodes aus <code>client.retry.codes</code> */
+    public Set<String> getRetryCodes()
+    {
+        return retryCodes;
+    }
+
+    /** @return <code>client.retry.breaker.threshold</code> (0 = abgeschaltet) */
+    public int getBreakerThreshold()
+    {
+        return breakerThreshold;
+    }
+
+    /** @return <code>client.retry.breaker.timeout</code> in Sekunden */
+    public int getBreakerTimeout()
+    {
+        return breakerTimeout;
+    }
+
+    /** @return die Rewriter-Kette für <code>kernel.rewriter</code> */
+    public RewriteChain getRewriteChain()
+    {
+        RewriteChain ret=rewriteChain;
+        if (ret==null) {
+            ret=RewriteChain.getInstance(getParam("kernel.rewriter"));
+            rewriteChain=ret;
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,267 @@
+/*  This file is part of HBCI4Java
+    Copyright (C) 2001-2008  Stefan Palme
+
+    HBCI4Java is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    HBCI4Java is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package org.kapott.hbci.manager;
+
+import java.util.Locale;
+import java.util.Properties;
+import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.kapott.hbci.callback.HBCICallback;
+
+/** <p>Umgebung, in der <em>HBCI4Java</em> arbeitet: Kernel-Parameter,
+    Callback-Objekt und Locale. Bisher wurden diese Daten ausschließlich
+    je <code>ThreadGroup</code> verwaltet (siehe
+    {@link HBCIUtils#initThread(Properties, HBCICallback)}) - das setzt voraus,
+    dass für jede parallele HBCI-Sitzung eine eigene <code>ThreadGroup</code>
+    angelegt wird, was sich z.B. mit Thread-Pools nicht verträgt.</p>
+    <p>Ein <code>HBCIContext</code> kann statt dessen direkt erzeugt und an
+    {@link HBCIHandler#HBCIHandler(String, org.kapott.hbci.passport.HBCIPassport, HBCIContext)}
+    bzw. {@link org.kapott.hbci.passport.AbstractHBCIPassport#getInstance(HBCIContext, String, Object)}
+    übergeben werden. Handler und Passport aktivieren ihren Kontext dann für
+    die Dauer jedes Aufrufes im aktuellen Thread, alle Kernel-Funktionen
+    (z.B. {@link HBCIUtils#getParam(String)}) arbeiten mit diesem Kontext.
+    Code der Anwendung, der außerhalb dieser Aufrufe <em>HBCI4Java</em>-Funktionen
+    benutzt, kann den Kontext mit {@link #bind()} selbst aktivieren:</p>
+<pre>
+HBCIContext ctx=new HBCIContext(props,callback);
+HBCIContext old=ctx.bind();
+try {
+    ...
+} finally {
+    HBCIContext.restore(old);
+}
+</pre>
+    <p>Ist im aktuellen Thread kein Kontext aktiviert, wird (wie bisher) der
+    Kontext der <code>ThreadGroup</code> verwendet, die mit
+    {@link HBCIUtils#initThread(Properties, HBCICallback)} initialisiert wurde.</p> */
+public final class HBCIContext
+{
+    private final static String DEFAULT_REWRITERS="InvalidSegment,WrongStatusSegOrder,WrongSequenceNumbers,MissingMsgRef,HBCIVersion,SigIdLeadingZero,InvalidSuppHBCIVersion,SecTypeTAN,KUmsDelimiters,KUmsEmptyBDateSets";
+
+    /* explizit aktivierter kontext des aktuellen threads */
+    private final static ThreadLocal<HBCIContext> bound=new ThreadLocal<HBCIContext>();
+    /* kontexte der mit initThread() initialisierten threadgroups */
+    private final static ConcurrentMap<ThreadGroup,HBCIContext> groups=new ConcurrentHashMap<ThreadGroup,HBCIContext>();
+
+    private final String       name;
+    private final HBCICallback callback;
+
+    /* wird bei jeder änderung eines parameters ausgetauscht */
+    private volatile HBCIConfig config;
+
+    private volatile Locale         locale;
+    private volatile ResourceBundle locMsgs;
+
+    /* geheime daten für den log-filter */
+    volatile LogFilter.Scope       secrets;
+
+    /** Erzeugt einen neuen Kontext.
+        @param props die Kernel-Parameter (siehe {@link HBCIUtils}); werden kopiert
+        @param callback das Callback-Objekt für alle Handler und Passports,
+               die in diesem Kontext erzeugt werden */
+    public HBCIContext(Properties props,HBCICallback callback)
+    {
+        this(null,props,callback);
+    }
+
+    HBCIContext(String name,Properties props,HBCICallback callback)
+    {
+        if (callback==null)
+            throw new NullPointerException("no callback specified");
+
+        this.name=(name!=null)?name:"HBCIContext@"+Integer.toHexString(System.identityHashCode(this));
+        this.callback=callback;
+
+        HBCIConfig config=new HBCIConfig(props);
+        if (config.getParam("kernel.rewriter")==null) {
+            config=config.with("kernel.rewriter",DEFAULT_REWRITERS);
+        }
+        this.config=config;
+
+        initLocale();
+    }
+
+    /** Liefert den im aktuellen Thread aktiven Kontext: den mit {@link #bind()}
+        aktivierten Kontext bzw. den Kontext der aktuellen <code>ThreadGroup</code>.
+        @return der Kontext oder <code>null</code>, wenn der aktuelle Thread
+                nicht initialisiert ist */
+    public static HBCIContext current()
+    {
+        HBCIContext ret=bound.get();
+        if (ret==null) {
+            ret=groups.get(Thread.currentThread().getThreadGroup());
+        }
+        return ret;
+    }
+
+    /* nur der explizit aktivierte kontext */
+    static HBCIContext getBound()
+    {
+        return bound.get();
+    }
+
+    static HBCIContext forThreadGroup(ThreadGroup group)
+    {
+        return groups.get(group);
+    }
+
+    static void register(ThreadGroup group,HBCIContext context)
+    {
+        groups.put(group,context);
+    }
+
+    static void unregister(ThreadGroup group)
+    {
+        groups.remove(group);
+    }
+
+    static void unregisterAll()
+    {
+        groups.clear();
+    }
+
+    /** Aktiviert diesen Kontext für den aktuellen Thread.
+        @return der bisher aktivierte Kontext (kann <code>null</code> sein), muss
+                anschließend an {@link #restore(HBCIContext)} übergeben werden */
+    public HBCIContext bind()
+    {
+        HBCIContext old=bound.get();
+        bound.set(this);
+        return old;
+    }
+
+    /** Aktiviert wieder den Kontext, der vor dem Aufruf von {@link #bind()}
+        aktiv war.
+        @param old Rückgabewert von {@link #bind()} */
+    public static void restore(HBCIContext old)
+    {
+        if (old==null) {
+            bound.remove();
+        } else {
+            bound.set(old);
+        }
+    }
+
+    /** Erzeugt ein <code>Runnable</code>, welches <code>task</code> mit diesem
+        Kontext ausführt - z.B. für die Übergabe an einen
+        <code>java.util.concurrent.Executor</code>. */
+    public Runnable wrap(final Runnable task)
+    {
+        return new Runnable() {
+            public void run()
+            {
+                HBCIContext old=bind();
+                try {
+                    task.run();
+                } finally {
+                    restore(old);
+                }
+            }
+        };
+    }
+
+    /** @return Name des Kontextes (für Log- und Fehlermeldungen) */
+    public String getName()
+    {
+        return name;
+    }
+
+    /** @return der aktuelle (unveränderliche) Stand der Kernel-Parameter
+                dieses Kontextes */
+    public HBCIConfig getConfig()
+    {
+        return config;
+    }
+
+    /** @return eine Kopie der Kernel-Parameter dieses Kontextes, siehe
+                {@link HBCIConfig#getParams()} */
+    public Properties getParams()
+    {
+        return config.getParams();
+    }
+
+    /** siehe {@link HBCIUtils#getParam(String, String)} */
+    public String getParam(String key,String def)
+    {
+        return config.getParam(key,def);
+    }
+
+    /** siehe {@link HBCIUtils#getParam(String)} */
+    public String getParam(String key)
+    {
+        return config.getParam(key);
+    }
+
+    /** siehe {@link HBCIUtils#setParam(String, String)} */
+    public void setParam(String key,String value)
+    {
+        // nur die schreibenden zugriffe werden synchronisiert
+        synchronized (this) {
+            config=config.with(key,value);
+        }
+    }
+
+    /** @return das Callback-Objekt dieses Kontextes */
+    public HBCICallback getCallback()
+    {
+        return callback;
+    }
+
+    /** @return die Locale dieses Kontextes (siehe Kernel-Parameter
+                <code>kernel.locale.*</code>) */
+    public Locale getLocale()
+    {
+        return locale;
+    }
+
+    /** Ermittelt die Locale neu aus den Kernel-Parametern
+        <code>kernel.locale.*</code>. */
+    public void initLocale()
+    {
+        HBCIConfig config=this.config;
+        String lang=config.getParam("kernel.locale.language","").trim();
+        if (lang.length()==0) {
+            setLocale(Locale.getDefault());
+        } else {
+            setLocale(new Locale(lang,
+                                 config.getParam("kernel.locale.country","").trim(),
+                                 config.getParam("kernel.locale.variant","").trim()));
+        }
+    }
+
+    void setLocale(Locale locale)
+    {
+        this.locMsgs=ResourceBundle.getBundle("hbci4java-messages",locale);
+        this.locale=locale;
+    }
+
+    /** @return die Texte für die Meldungen von <em>HBCI4Java</em> in der
+                Sprache dieses Kontextes */
+    public ResourceBundle getLocMsgs()
+    {
+        return locMsgs;
+    }
+
+    public String toString()
+    {
+        return name;
+    }
+}
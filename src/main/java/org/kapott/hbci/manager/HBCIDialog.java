@@ -29,6 +29,7 @@ import java.util.Properties;
 
 import org.kapott.hbci.GV.HBCIJobImpl;
 import org.kapott.hbci.callback.HBCICallback;
+import org.kapott.hbci.comm.Backoff;
 import org.kapott.hbci.exceptions.HBCI_Exception;
 import org.kapott.hbci.passport.HBCIPassportInternal;
 import org.kapott.hbci.passport.HBCIPassportList;
@@ -110,6 +111,7 @@ public final class HBCIDialog
             String blz=mainPassport.getBLZ();
     
             boolean restarted=false;
+            int     retries=0;
             while (true) {
                 kernel.rawNewMsg("DialogInit"+anonSuffix);
                 kernel.rawSet("Idn.KIK.blz", blz);
@@ -151,6 +153,15 @@ public final class HBCIDialog
                         !isAnon && HBCIKernelImpl.NEED_SIG,
                         !isAnon && HBCIKernelImpl.NEED_CRYPT);
 
+                // vorübergehender fehler der bank (z.b. überlastung) - da noch
+                // keine aufträge gesendet wurden, kann die initialisierung
+                // gefahrlos wiederholt werden
+                if (!ret.isOK() && ret.isTemporaryError() && retries<HBCIUtils.getConfig().getRetryMax()) {
+                    HBCIUtils.log("dialog initialization failed with temporary error - retrying",HBCIUtils.LOG_WARN);
+                    Backoff.sleep(retries++);
+                    continue;
+                }
+
                 boolean need_restart=mainPassport.postInitResponseHook(ret,isAnon);
                 if (need_restart) {
                     HBCIUtils.log("for some reason we have to restart this dialog", HBCIUtils.LOG_INFO);
@@ -166,14 +177,18 @@ public final class HBCIDialog
             
             Properties result=ret.getData();
             if (ret.isOK()) {
-                HBCIInstitute inst=new HBCIInstitute(kernel,mainPassport,false);
-                inst.updateBPD(result);
-                inst.extractKeys(result);
-    
-                HBCIUser user=new HBCIUser(kernel,mainPassport,false);
-                user.updateUPD(result);
-               
-                mainPassport.saveChanges();
+                // parallele dialoge (siehe HBCIHandler.execute()) aktualisieren
+                // das gemeinsame passport nacheinander
+                synchronized (mainPassport) {
+                    HBCIInstitute inst=new HBCIInstitute(kernel,mainPassport,false);
+                    inst.updateBPD(result);
+                    inst.extractKeys(result);
+        
+                    HBCIUser user=new HBCIUser(kernel,mainPassport,false);
+                    user.updateUPD(result);
+                   
+                    mainPassport.saveChanges();
+                }
     
                 msgnum=2;
                 dialogid=result.getProperty("MsgHead.dialogid");
@@ -291,7 +306,6 @@ public final class HBCIDialog
                     
                     // nachrichtenaustausch durchführen
                     msgstatus=kernel.rawDoIt(msgPassports,HBCIKernelImpl.SIGNIT,HBCIKernelImpl.CRYPTIT,HBCIKernelImpl.NEED_SIG,HBCIKernelImpl.NEED_CRYPT);
-                    Properties result=msgstatus.getData();
                     
                     // searching for first segment number that belongs to the custom_msg
                     // we look for entries like {"1","CustomMsg.MsgHead"} and so
@@ -299,7 +313,7 @@ public final class HBCIDialog
                     // until we find the first segment containing a task
                     int offset=0;   // this specifies, how many segments precede the first task segment
                     for (offset=1;true;offset++) {
-                        String path=result.getProperty(Integer.toString(offset));
+                        String path=msgstatus.getProperty(Integer.toString(offset));
                         if (path==null || path.startsWith("CustomMsg.GV")) {
                             if (path==null) { // wenn kein entsprechendes Segment gefunden, dann offset auf 0 setzen
                                 offset=0;
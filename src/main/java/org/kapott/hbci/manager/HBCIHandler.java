@@ -23,19 +23,30 @@ package org.kapott.hbci.manager;
 
 import java.lang.reflect.Constructor;
 import java.security.KeyPair;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.Hashtable;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.kapott.hbci.GV.GVTemplate;
 import org.kapott.hbci.GV.HBCIJob;
 import org.kapott.hbci.GV.HBCIJobImpl;
+import org.kapott.hbci.concurrent.HBCIFuture;
+import org.kapott.hbci.concurrent.HBCIVirtualThreadFactory;
 import org.kapott.hbci.exceptions.HBCI_Exception;
 import org.kapott.hbci.exceptions.InvalidArgumentException;
 import org.kapott.hbci.exceptions.InvalidUserDataException;
+import org.kapott.hbci.passport.AbstractHBCIPassport;
 import org.kapott.hbci.passport.AbstractPinTanPassport;
 import org.kapott.hbci.passport.HBCIPassport;
 import org.kapott.hbci.passport.HBCIPassportInternal;
@@ -91,6 +102,10 @@ public final class HBCIHandler
     private HBCIKernelImpl       kernel;
     private HBCIPassportInternal passport;
     private Map<String, HBCIDialog>                  dialogs;
+    private final HBCIContext    context;
+
+    /* eigener kernel je parallel ausgeführtem dialog (siehe executeParallel()) */
+    private final ThreadLocal<HBCIKernelImpl> dialogKernel=new ThreadLocal<HBCIKernelImpl>();
     
     /** Anlegen eines neuen HBCI-Handler-Objektes. Beim Anlegen wird
         überprüft, ob für die angegebene HBCI-Version eine entsprechende
@@ -114,41 +129,68 @@ public final class HBCIHandler
                erzeugt worden sein */
     public HBCIHandler(String hbciversion,HBCIPassport passport)
     {
+        this(hbciversion,passport,null);
+    }
+
+    /** Anlegen eines neuen HBCI-Handler-Objektes, welches mit dem Kontext
+        <code>context</code> arbeitet (Kernel-Parameter, Callback, Locale).
+        Der Kontext wird für die Dauer jedes Aufrufes einer Methode dieses
+        Handlers im aktuellen Thread aktiviert, siehe {@link HBCIContext}.
+        @param hbciversion siehe {@link #HBCIHandler(String, HBCIPassport)}
+        @param passport siehe {@link #HBCIHandler(String, HBCIPassport)}
+        @param context der Kontext; bei <code>null</code> wird der Kontext
+               verwendet, mit dem das Passport erzeugt wurde bzw. der im
+               aktuellen Thread aktive Kontext */
+    public HBCIHandler(String hbciversion,HBCIPassport passport,HBCIContext context)
+    {
+        if (context==null && passport instanceof AbstractHBCIPassport) {
+            context=((AbstractHBCIPassport)passport).getContext();
+        }
+        if (context==null) {
+            context=HBCIUtils.getContext();
+        }
+        this.context=context;
+
+        HBCIContext old=context.bind();
         try {
-            if (passport==null)
-                throw new InvalidArgumentException(HBCIUtilsInternal.getLocMsg("EXCMSG_PASSPORT_NULL"));
+            try {
+                if (passport==null)
+                    throw new InvalidArgumentException(HBCIUtilsInternal.getLocMsg("EXCMSG_PASSPORT_NULL"));
             
-            if (hbciversion==null) {
-                hbciversion=passport.getHBCIVersion();
-            }
-            if (hbciversion.length()==0)
-                throw new InvalidArgumentException(HBCIUtilsInternal.getLocMsg("EXCMSG_NO_HBCIVERSION"));
+                if (hbciversion==null) {
+                    hbciversion=passport.getHBCIVersion();
+                }
+                if (hbciversion.length()==0)
+                    throw new InvalidArgumentException(HBCIUtilsInternal.getLocMsg("EXCMSG_NO_HBCIVERSION"));
 
-            this.kernel=new HBCIKernelImpl(this,hbciversion);
+                this.kernel=new HBCIKernelImpl(this,hbciversion);
             
-            this.passport=(HBCIPassportInternal)passport;
-            this.passport.setParentHandlerData(this);
+                this.passport=(HBCIPassportInternal)passport;
+                this.passport.setParentHandlerData(this);
 
-            registerInstitute();
-            registerUser();
+                registerInstitute();
+                registerUser();
             
-            if (!passport.getHBCIVersion().equals(hbciversion)) {
-                this.passport.setHBCIVersion(hbciversion);
-                this.passport.saveChanges();
-            }
+                if (!passport.getHBCIVersion().equals(hbciversion)) {
+                    this.passport.setHBCIVersion(hbciversion);
+                    this.passport.saveChanges();
+                }
 
-            dialogs=new Hashtable<String, HBCIDialog>();
-        } catch (Exception e) {
-            throw new HBCI_Exception(HBCIUtilsInternal.getLocMsg("EXCMSG_CANT_CREATE_HANDLE"),e);
-        }
+                dialogs=new Hashtable<String, HBCIDialog>();
+            } catch (Exception e) {
+                throw new HBCI_Exception(HBCIUtilsInternal.getLocMsg("EXCMSG_CANT_CREATE_HANDLE"),e);
+            }
         
-        // wenn in den UPD noch keine SEPA- und TAN-Medien-Informationen ueber die Konten enthalten
-        // sind, versuchen wir, diese zu holen
-        Properties upd=passport.getUPD();
-        if (upd!=null && !upd.containsKey("_fetchedMetaInfo"))
-        {
-        	// wir haben UPD, in denen aber nicht "_fetchedMetaInfo" drinsteht
-        	updateMetaInfo();
+            // wenn in den UPD noch keine SEPA- und TAN-Medien-Informationen ueber die Konten enthalten
+            // sind, versuchen wir, diese zu holen
+            Properties upd=passport.getUPD();
+            if (upd!=null && !upd.containsKey("_fetchedMetaInfo"))
+            {
+            	// wir haben UPD, in denen aber nicht "_fetchedMetaInfo" drinsteht
+            	updateMetaInfo();
+            }
+        } finally {
+            HBCIContext.restore(old);
         }
     }
     
@@ -158,50 +200,55 @@ public final class HBCIHandler
      */
     public void updateMetaInfo()
     {
-        Properties bpd = passport.getBPD();
-        if (bpd == null)
-        {
-          HBCIUtils.log("have no bpd, skip fetching of meta info", HBCIUtils.LOG_WARN);
-          return;
-        }
-
-        try
-        {
-            final Properties lowlevel = this.getSupportedLowlevelJobs();
-            
-            // SEPA-Infos abrufen
-            if (lowlevel.getProperty("SEPAInfo") != null)
+        HBCIContext old=context.bind();
+        try {
+            Properties bpd = passport.getBPD();
+            if (bpd == null)
             {
-                HBCIUtils.log("fetching SEPA information", HBCIUtils.LOG_INFO);
-                HBCIJob sepainfo = this.newJob("SEPAInfo");
-                sepainfo.addToQueue();
+              HBCIUtils.log("have no bpd, skip fetching of meta info", HBCIUtils.LOG_WARN);
+              return;
             }
 
-            // TAN-Medien abrufen - aber nur bei PIN/TAN-Verfahren
-            if (lowlevel.getProperty("TANMediaList") != null && (this.passport instanceof AbstractPinTanPassport))
+            try
             {
-                HBCIUtils.log("fetching TAN media list", HBCIUtils.LOG_INFO);
-                HBCIJob tanMedia = this.newJob("TANMediaList");
-                tanMedia.addToQueue();
-            }
+                final Properties lowlevel = this.getSupportedLowlevelJobs();
+            
+                // SEPA-Infos abrufen
+                if (lowlevel.getProperty("SEPAInfo") != null)
+                {
+                    HBCIUtils.log("fetching SEPA information", HBCIUtils.LOG_INFO);
+                    HBCIJob sepainfo = this.newJob("SEPAInfo");
+                    sepainfo.addToQueue();
+                }
 
-            HBCIExecStatus status = this.execute();
-            if (status.isOK())
-            {
-                HBCIUtils.log("successfully fetched meta info", HBCIUtils.LOG_INFO);
-                passport.getUPD().setProperty("_fetchedMetaInfo",new Date().toString());
-                passport.saveChanges();
+                // TAN-Medien abrufen - aber nur bei PIN/TAN-Verfahren
+                if (lowlevel.getProperty("TANMediaList") != null && (this.passport instanceof AbstractPinTanPassport))
+                {
+                    HBCIUtils.log("fetching TAN media list", HBCIUtils.LOG_INFO);
+                    HBCIJob tanMedia = this.newJob("TANMediaList");
+                    tanMedia.addToQueue();
+                }
+
+                HBCIExecStatus status = this.execute();
+                if (status.isOK())
+                {
+                    HBCIUtils.log("successfully fetched meta info", HBCIUtils.LOG_INFO);
+                    passport.getUPD().setProperty("_fetchedMetaInfo",new Date().toString());
+                    passport.saveChanges();
+                }
+                else
+                {
+                    HBCIUtils.log("error while fetching meta info: " + status.toString(), HBCIUtils.LOG_ERR);
+                }
             }
-            else
+            catch (Exception e)
             {
-                HBCIUtils.log("error while fetching meta info: " + status.toString(), HBCIUtils.LOG_ERR);
+                // Wir werfen das nicht als Exception. Unschoen, wenn das nicht klappt.
+                // Aber kein Grund zur Panik.
+                HBCIUtils.log(e);
             }
-        }
-        catch (Exception e)
-        {
-            // Wir werfen das nicht als Exception. Unschoen, wenn das nicht klappt.
-            // Aber kein Grund zur Panik.
-            HBCIUtils.log(e);
+        } finally {
+            HBCIContext.restore(old);
         }
     }
 
@@ -215,48 +262,53 @@ public final class HBCIHandler
      */
     public void updateSEPAInfo()
     {
-        Properties bpd = passport.getBPD();
-        if (bpd == null)
-        {
-          HBCIUtils.log("have no bpd, skipping SEPA information fetching", HBCIUtils.LOG_WARN);
-          return;
-        }
-
-        // jetzt noch zusaetzliche die SEPA-Informationen abholen
+        HBCIContext old=context.bind();
         try {
-        	if (getSupportedLowlevelJobs().getProperty("SEPAInfo")!=null) {
-        		HBCIUtils.log("trying to fetch SEPA information from institute", HBCIUtils.LOG_INFO);
+            Properties bpd = passport.getBPD();
+            if (bpd == null)
+            {
+              HBCIUtils.log("have no bpd, skipping SEPA information fetching", HBCIUtils.LOG_WARN);
+              return;
+            }
+
+            // jetzt noch zusaetzliche die SEPA-Informationen abholen
+            try {
+            	if (getSupportedLowlevelJobs().getProperty("SEPAInfo")!=null) {
+            		HBCIUtils.log("trying to fetch SEPA information from institute", HBCIUtils.LOG_INFO);
         		
-        		// HKSPA wird unterstuetzt
-        		HBCIJob sepainfo=newJob("SEPAInfo");
-        		sepainfo.addToQueue();
-        		HBCIExecStatus status=execute();
-        		if (status.isOK()) {
-        			HBCIUtils.log("successfully fetched information about SEPA accounts from institute", HBCIUtils.LOG_INFO);
+            		// HKSPA wird unterstuetzt
+            		HBCIJob sepainfo=newJob("SEPAInfo");
+            		sepainfo.addToQueue();
+            		HBCIExecStatus status=execute();
+            		if (status.isOK()) {
+            			HBCIUtils.log("successfully fetched information about SEPA accounts from institute", HBCIUtils.LOG_INFO);
         			
-        			passport.getUPD().setProperty("_fetchedSEPA","1");
-        			passport.saveChanges();
-        		} else {
-        			HBCIUtils.log("error while fetching information about SEPA accounts from institute:", HBCIUtils.LOG_ERR);
-        			HBCIUtils.log(status.toString(), HBCIUtils.LOG_ERR);
-        		}
-        		/* beim execute() werden die Job-Result-Objekte automatisch
-        		 * gefuellt. Der GV-Klasse fuer SEPAInfo haengt sich in diese
-        		 * Logik rein, um gleich die UPD mit den SEPA-Konto-Daten
-        		 * zu aktualisieren, so dass an dieser Stelle die UPD um
-        		 * die SEPA-Informationen erweitert wurden. 
-        		 */
-        	} else {
-        		HBCIUtils.log("institute does not support SEPA accounts, so we skip fetching information about SEPA", HBCIUtils.LOG_DEBUG);
-        	}
-        }
-        catch (HBCI_Exception he)
-        {
-          throw he;
-        }
-        catch (Exception e)
-        {
-        	throw new HBCI_Exception(e);
+            			passport.getUPD().setProperty("_fetchedSEPA","1");
+            			passport.saveChanges();
+            		} else {
+            			HBCIUtils.log("error while fetching information about SEPA accounts from institute:", HBCIUtils.LOG_ERR);
+            			HBCIUtils.log(status.toString(), HBCIUtils.LOG_ERR);
+            		}
+            		/* beim execute() werden die Job-Result-Objekte automatisch
+            		 * gefuellt. Der GV-Klasse fuer SEPAInfo haengt sich in diese
+            		 * Logik rein, um gleich die UPD mit den SEPA-Konto-Daten
+            		 * zu aktualisieren, so dass an dieser Stelle die UPD um
+            		 * die SEPA-Informationen erweitert wurden. 
+            		 */
+            	} else {
+            		HBCIUtils.log("institute does not support SEPA accounts, so we skip fetching information about SEPA", HBCIUtils.LOG_DEBUG);
+            	}
+            }
+            catch (HBCI_Exception he)
+            {
+              throw he;
+            }
+            catch (Exception e)
+            {
+            	throw new HBCI_Exception(e);
+            }
+        } finally {
+            HBCIContext.restore(old);
         }
     }
     
@@ -289,17 +341,22 @@ public final class HBCIHandler
         nicht mehr benutzt werden.</p> */
     public void close()
     {
-        if (passport!=null) {
-            try {
-                passport.close();
-            } catch (Exception e) {
-                HBCIUtils.log(e);
+        HBCIContext old=context.bind();
+        try {
+            if (passport!=null) {
+                try {
+                    passport.close();
+                } catch (Exception e) {
+                    HBCIUtils.log(e);
+                }
             }
-        }
         
-        passport=null;
-        kernel=null;
-        dialogs=null;
+            passport=null;
+            kernel=null;
+            dialogs=null;
+        } finally {
+            HBCIContext.restore(old);
+        }
     }
     
     /* gibt die zu verwendende Customer-Id zurück. Wenn keine angegeben wurde
@@ -339,8 +396,13 @@ public final class HBCIHandler
         begonnen werden soll */
     public void newMsg(String customerId)
     {
-        HBCIUtils.log("have to create new message for dialog for customer "+customerId,HBCIUtils.LOG_DEBUG);
-        getDialogFor(fixUnspecifiedCustomerId(customerId)).newMsg();
+        HBCIContext old=context.bind();
+        try {
+            HBCIUtils.log("have to create new message for dialog for customer "+customerId,HBCIUtils.LOG_DEBUG);
+            getDialogFor(fixUnspecifiedCustomerId(customerId)).newMsg();
+        } finally {
+            HBCIContext.restore(old);
+        }
     }
     
     /** Erzwingen einer neuen Nachricht im Dialog für die aktuelle Kunden-ID.
@@ -368,27 +430,32 @@ public final class HBCIHandler
                 welches anschließend zum HBCI-Dialog hinzugefügt werden kann. */
     public HBCIJob newJob(String jobname)
     {
-        HBCIUtils.log("creating new job "+jobname,HBCIUtils.LOG_DEBUG);
+        HBCIContext old=context.bind();
+        try {
+            HBCIUtils.log("creating new job "+jobname,HBCIUtils.LOG_DEBUG);
         
-        if (jobname==null || jobname.length()==0)
-            throw new InvalidArgumentException(HBCIUtilsInternal.getLocMsg("EXCMSG_EMPTY_JOBNAME"));
+            if (jobname==null || jobname.length()==0)
+                throw new InvalidArgumentException(HBCIUtilsInternal.getLocMsg("EXCMSG_EMPTY_JOBNAME"));
         
-        HBCIJobImpl ret=null;
-        String      className="org.kapott.hbci.GV.GV"+jobname;
+            HBCIJobImpl ret=null;
+            String      className="org.kapott.hbci.GV.GV"+jobname;
 
-        try {
-            Class cl=Class.forName(className);
-            Constructor cons=cl.getConstructor(new Class[] {HBCIHandler.class});
-            ret=(HBCIJobImpl)cons.newInstance(new Object[] {this});
-        } catch (ClassNotFoundException e) {
-            throw new InvalidUserDataException("*** there is no highlevel job named "+jobname+" - need class "+className);
-        } catch (Exception e) {
-            String msg=HBCIUtilsInternal.getLocMsg("EXCMSG_JOB_CREATE_ERR",jobname);
-            if (!HBCIUtilsInternal.ignoreError(null,"client.errors.ignoreCreateJobErrors",msg))
-                throw new HBCI_Exception(msg,e);
-        }
+            try {
+                Class cl=Class.forName(className);
+                Constructor cons=cl.getConstructor(new Class[] {HBCIHandler.class});
+                ret=(HBCIJobImpl)cons.newInstance(new Object[] {this});
+            } catch (ClassNotFoundException e) {
+                throw new InvalidUserDataException("*** there is no highlevel job named "+jobname+" - need class "+className);
+            } catch (Exception e) {
+                String msg=HBCIUtilsInternal.getLocMsg("EXCMSG_JOB_CREATE_ERR",jobname);
+                if (!HBCIUtilsInternal.ignoreError(null,"client.errors.ignoreCreateJobErrors",msg))
+                    throw new HBCI_Exception(msg,e);
+            }
         
-        return ret;
+            return ret;
+        } finally {
+            HBCIContext.restore(old);
+        }
     }
     
     /** Erzeugt ein neues Lowlevel-Job-Objekt. Für eine Beschreibung des Unterschiedes
@@ -398,42 +465,52 @@ public final class HBCIHandler
                 werden müssen und das anschließend zum HBCI-Dialog hinzugefügt werden kann */
     public HBCIJob newLowlevelJob(String gvname)
     {
-        HBCIUtils.log("generating new lowlevel-job "+gvname,HBCIUtils.LOG_DEBUG);
+        HBCIContext old=context.bind();
+        try {
+            HBCIUtils.log("generating new lowlevel-job "+gvname,HBCIUtils.LOG_DEBUG);
 
-        if (gvname==null || gvname.length()==0)
-            throw new InvalidArgumentException(HBCIUtilsInternal.getLocMsg("EXCMSG_EMPTY_JOBNAME"));
+            if (gvname==null || gvname.length()==0)
+                throw new InvalidArgumentException(HBCIUtilsInternal.getLocMsg("EXCMSG_EMPTY_JOBNAME"));
 
-        HBCIJobImpl ret=new GVTemplate(gvname,this);
-        return ret;
+            HBCIJobImpl ret=new GVTemplate(gvname,this);
+            return ret;
+        } finally {
+            HBCIContext.restore(old);
+        }
     }
     
     /** Do NOT use! Use {@link org.kapott.hbci.GV.HBCIJob#addToQueue(String)} instead */
     public void addJobToDialog(String customerId,HBCIJob job)
     {
-        // TODO: nach dem neuen Objekt-Graph kennt der HBCIJob bereits "seinen"
-        // HBCIHandler, so dass ein HBCIHandler.addJob(job) eigentlich
-        // redundant ist und durch HBCIJob.addToQueue() ersetzt werden
-        // könnte. Deswegen muss es hier einen Überprüfung geben, ob
-        // (job.getHBCIHandler() === this) ist.
+        HBCIContext old=context.bind();
+        try {
+            // TODO: nach dem neuen Objekt-Graph kennt der HBCIJob bereits "seinen"
+            // HBCIHandler, so dass ein HBCIHandler.addJob(job) eigentlich
+            // redundant ist und durch HBCIJob.addToQueue() ersetzt werden
+            // könnte. Deswegen muss es hier einen Überprüfung geben, ob
+            // (job.getHBCIHandler() === this) ist.
         
-        customerId=fixUnspecifiedCustomerId(customerId);
+            customerId=fixUnspecifiedCustomerId(customerId);
         
-        HBCIDialog dialog=null;
-        try {
-            dialog=getDialogFor(customerId);
-            dialog.addTask((HBCIJobImpl)job);
-        } finally {
-            // wenn beim hinzufügen des jobs ein fehler auftrat, und wenn der
-            // entsprechende dialog extra für diesen fehlerhaften job erzeugt
-            // wurde, dann kann der (leere) dialog auch wieder aus der liste
-            // auszuführender dialoge entfernt werden
+            HBCIDialog dialog=null;
+            try {
+                dialog=getDialogFor(customerId);
+                dialog.addTask((HBCIJobImpl)job);
+            } finally {
+                // wenn beim hinzufügen des jobs ein fehler auftrat, und wenn der
+                // entsprechende dialog extra für diesen fehlerhaften job erzeugt
+                // wurde, dann kann der (leere) dialog auch wieder aus der liste
+                // auszuführender dialoge entfernt werden
             
-            if (dialog!=null) {
-                if (dialog.getAllTasks().size()==0) {
-                    HBCIUtils.log("removing empty dialog for customerid "+customerId+" from list of dialogs",HBCIUtils.LOG_DEBUG);
-                    dialogs.remove(customerId);
+                if (dialog!=null) {
+                    if (dialog.getAllTasks().size()==0) {
+                        HBCIUtils.log("removing empty dialog for customerid "+customerId+" from list of dialogs",HBCIUtils.LOG_DEBUG);
+                        dialogs.remove(customerId);
+                    }
                 }
             }
+        } finally {
+            HBCIContext.restore(old);
         }
     }
 
@@ -462,9 +539,14 @@ public final class HBCIHandler
      */
     public void createEmptyDialog(String customerId)
     {
-        customerId=fixUnspecifiedCustomerId(customerId);
-        HBCIUtils.log("creating empty dialog for customerid "+customerId,HBCIUtils.LOG_DEBUG);
-        getDialogFor(customerId);
+        HBCIContext old=context.bind();
+        try {
+            customerId=fixUnspecifiedCustomerId(customerId);
+            HBCIUtils.log("creating empty dialog for customerid "+customerId,HBCIUtils.LOG_DEBUG);
+            getDialogFor(customerId);
+        } finally {
+            HBCIContext.restore(old);
+        }
     }
     
     /** Entspricht {@link #createEmptyDialog(String) createEmptyDialog(null)} */
@@ -501,35 +583,117 @@ public final class HBCIHandler
                 der Dialoge festgestellt werden kann. */
     public HBCIExecStatus execute()
     {
-        String origCustomerId=passport.getCustomerId();
+        HBCIContext old=context.bind();
         try {
-            HBCIExecStatus ret=new HBCIExecStatus();
+            String origCustomerId=passport.getCustomerId();
+            try {
+                HBCIExecStatus ret=new HBCIExecStatus();
+                
+                // dialoge verschiedener kunden-ids ggf. parallel ausführen - nicht
+                // bei executeThreaded(), weil die synchronen callbacks nur einen
+                // dialog-thread kennen
+                int parallel=Math.min(HBCIUtils.getConfig().getParallelDialogs(),dialogs.size());
+                if (parallel>1 && passport.supportsParallelDialogs() && 
+                        passport.getPersistentData("thread_syncer_main")==null) {
+                    executeParallel(ret,parallel);
+                }
             
-            while (!dialogs.isEmpty()) {
-                String customerid=dialogs.keySet().iterator().next();
-                HBCIUtils.log("executing dialog for customerid "+customerid,HBCIUtils.LOG_DEBUG);
-                passport.setCustomerId(customerid);
+                while (!dialogs.isEmpty()) {
+                    String customerid=dialogs.keySet().iterator().next();
+                    HBCIUtils.log("executing dialog for customerid "+customerid,HBCIUtils.LOG_DEBUG);
+                    passport.setCustomerId(customerid);
                 
+                    try {
+                        HBCIDialog dialog=getDialogFor(customerid);
+                        HBCIDialogStatus dialogStatus=dialog.doIt();
+                        ret.addDialogStatus(customerid,dialogStatus);
+                    } catch (Exception e) {
+                        ret.addException(customerid,e);
+                    } finally {
+                        dialogs.remove(customerid);
+                    }
+                }
+                return ret;
+            } finally {
+                reset();
+                passport.setCustomerId(origCustomerId);
                 try {
-                    HBCIDialog dialog=getDialogFor(customerid);
-                    HBCIDialogStatus dialogStatus=dialog.doIt();
-                    ret.addDialogStatus(customerid,dialogStatus);
+                    passport.closeComm();
                 } catch (Exception e) {
+                    HBCIUtils.log("nested exception while closing passport: ", HBCIUtils.LOG_ERR);
+                    HBCIUtils.log(e);
+                }
+            }
+        } finally {
+            HBCIContext.restore(old);
+        }
+    }
+    
+    /* führt die dialoge aller kunden-ids mit höchstens "parallel" threads gleichzeitig
+     * aus. jeder dialog bekommt einen eigenen kernel und eine eigene sicht auf das
+     * passport (kunden-id, verbindung). die ergebnisse werden in der reihenfolge
+     * der dialoge in "ret" übernommen */
+    private void executeParallel(HBCIExecStatus ret,int parallel)
+    {
+        // gemeinsam benötigte daten (pin, pintan-verfahren) im thread des
+        // aufrufers ermitteln, damit nicht jeder dialog einzeln danach fragt.
+        // klappt das nicht, werden die dialoge nacheinander ausgeführt und
+        // melden den fehler dann jeweils selbst
+        try {
+            passport.prepareParallelDialogs();
+        } catch (Exception e) {
+            HBCIUtils.log("can not prepare parallel dialogs - executing them sequentially",HBCIUtils.LOG_WARN);
+            HBCIUtils.log(e,HBCIUtils.LOG_DEBUG);
+            return;
+        }
+        
+        HBCIUtils.log("executing "+dialogs.size()+" dialogs with "+parallel+" parallel threads",HBCIUtils.LOG_DEBUG);
+        
+        final String hbciversion=kernel.getHBCIVersion();
+        ExecutorService executor=Executors.newFixedThreadPool(parallel,new HBCIVirtualThreadFactory());
+        try {
+            Map<String,Future<HBCIDialogStatus>> results=new LinkedHashMap<String,Future<HBCIDialogStatus>>();
+            for (final Map.Entry<String,HBCIDialog> entry:new ArrayList<Map.Entry<String,HBCIDialog>>(dialogs.entrySet())) {
+                results.put(entry.getKey(),executor.submit(new Callable<HBCIDialogStatus>() {
+                    public HBCIDialogStatus call()
+                    {
+                        HBCIContext old=context.bind();
+                        try {
+                            String customerid=entry.getKey();
+                            HBCIUtils.log("executing dialog for customerid "+customerid,HBCIUtils.LOG_DEBUG);
+                            dialogKernel.set(new HBCIKernelImpl(HBCIHandler.this,hbciversion));
+                            passport.beginDialogScope(customerid);
+                            try {
+                                return entry.getValue().doIt();
+                            } finally {
+                                passport.endDialogScope();
+                                dialogKernel.remove();
+                            }
+                        } finally {
+                            HBCIContext.restore(old);
+                        }
+                    }
+                }));
+            }
+            
+            for (Map.Entry<String,Future<HBCIDialogStatus>> result:results.entrySet()) {
+                String customerid=result.getKey();
+                try {
+                    ret.addDialogStatus(customerid,result.getValue().get());
+                } catch (ExecutionException e) {
+                    Throwable cause=e.getCause();
+                    if (cause instanceof Error)
+                        throw (Error)cause;
+                    ret.addException(customerid,(Exception)cause);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
                     ret.addException(customerid,e);
                 } finally {
                     dialogs.remove(customerid);
                 }
             }
-            return ret;
         } finally {
-            reset();
-            passport.setCustomerId(origCustomerId);
-            try {
-                passport.closeComm();
-            } catch (Exception e) {
-                HBCIUtils.log("nested exception while closing passport: ", HBCIUtils.LOG_ERR);
-                HBCIUtils.log(e);
-            }
+            executor.shutdownNow();
         }
     }
     
@@ -547,63 +711,95 @@ public final class HBCIHandler
      * <p>Mehr Informationen dazu in der Datei <code>README.ThreadedCallbacks</code>.</p>*/
     public HBCIExecThreadedStatus executeThreaded()
     {
-        HBCIUtils.log("main thread: starting new threaded execute",HBCIUtils.LOG_DEBUG);
+        HBCIContext old=context.bind();
+        try {
+            HBCIUtils.log("main thread: starting new threaded execute",HBCIUtils.LOG_DEBUG);
         
-        final ThreadSyncer sync_main=new ThreadSyncer("sync_main");
-        passport.setPersistentData("thread_syncer_main",sync_main);
+            final ThreadSyncer sync_main=new ThreadSyncer("sync_main");
+            passport.setPersistentData("thread_syncer_main",sync_main);
         
-        new Thread() { public void run() {
-            try {
-                HBCIUtils.log("hbci thread: starting execute()",HBCIUtils.LOG_DEBUG);
+            new Thread(context.wrap(new Runnable() { public void run() {
+                try {
+                    HBCIUtils.log("hbci thread: starting execute()",HBCIUtils.LOG_DEBUG);
                 
-                HBCIExecStatus execStatus=execute();
-                sync_main.setData("execStatus",execStatus);
-            } catch (Exception e) {
-                // im fehlerfall (der eigentlich nie auftreten sollte, weil execute()
-                // selbst alle exceptions catcht) muss sicherheitshalber ein noch
-                // im sync-objekt enthaltenes altes execStatus-objekt entfernt
-                // werden
-                sync_main.setData("execStatus",null);
-            } finally {
-                // die existenz von "thread_syncer" im passport entscheidet
-                // in CallbackThreaded darüber, ob der threaded callback mechanimus
-                // verwendet werden soll oder das standard-callback.
-                // der threaded mechanismus wird allerdings *nur* für hbci.execute()
-                // verwendet, deshalb muss das thread_syncer-Objekt wieder entfernt
-                // werden, wenn hbci.execute() beendet ist.
-                passport.setPersistentData("thread_syncer_main",null);
+                    HBCIExecStatus execStatus=execute();
+                    sync_main.setData("execStatus",execStatus);
+                } catch (Exception e) {
+                    // im fehlerfall (der eigentlich nie auftreten sollte, weil execute()
+                    // selbst alle exceptions catcht) muss sicherheitshalber ein noch
+                    // im sync-objekt enthaltenes altes execStatus-objekt entfernt
+                    // werden
+                    sync_main.setData("execStatus",null);
+                } finally {
+                    // die existenz von "thread_syncer" im passport entscheidet
+                    // in CallbackThreaded darüber, ob der threaded callback mechanimus
+                    // verwendet werden soll oder das standard-callback.
+                    // der threaded mechanismus wird allerdings *nur* für hbci.execute()
+                    // verwendet, deshalb muss das thread_syncer-Objekt wieder entfernt
+                    // werden, wenn hbci.execute() beendet ist.
+                    passport.setPersistentData("thread_syncer_main",null);
                 
-                // egal, wie der hbci-thread beendet wird (fehlerhaft oder nicht),
-                // am ende muss auf jeden fall ein evtl. noch wartender main-thread
-                // wieder aufgeweckt werden (das kann entweder executeThreaded()
-                // oder continueThreaded() sein)
-                HBCIUtils.log("hbci thread: awaking main thread with hbci result data",HBCIUtils.LOG_DEBUG);
-                sync_main.setData("callbackData",null);
-                sync_main.stopWaiting();
+                    // egal, wie der hbci-thread beendet wird (fehlerhaft oder nicht),
+                    // am ende muss auf jeden fall ein evtl. noch wartender main-thread
+                    // wieder aufgeweckt werden (das kann entweder executeThreaded()
+                    // oder continueThreaded() sein)
+                    HBCIUtils.log("hbci thread: awaking main thread with hbci result data",HBCIUtils.LOG_DEBUG);
+                    sync_main.setData("callbackData",null);
+                    sync_main.stopWaiting();
                 
-                HBCIUtils.log("hbci thread: thread finished",HBCIUtils.LOG_DEBUG);
-            }
-        }}.start();
+                    HBCIUtils.log("hbci thread: thread finished",HBCIUtils.LOG_DEBUG);
+                }
+            }})).start();
         
-        // für dieses wait() brauche ich kein timeout, weil der hbci-thread auf
-        // jeden fall ein notify() macht, sobald er beendet wird oder sobald der
-        // hbci-thread callback-daten braucht. die sichere beendigung des 
-        // hbci-threads wiederum wird dadurch abgesichert, dass die waits() aus
-        // dem hbci-thread (warten auf callback-daten) mit timeouts versehen sind
-        HBCIUtils.log("main thread: waiting for hbci result or callback data from hbci thread",HBCIUtils.LOG_DEBUG);
-        sync_main.startWaiting(Integer.parseInt(HBCIUtils.getParam("kernel.threaded.maxwaittime","300")), "no response from hbci thread - timeout");
+            // für dieses wait() brauche ich kein timeout, weil der hbci-thread auf
+            // jeden fall ein notify() macht, sobald er beendet wird oder sobald der
+            // hbci-thread callback-daten braucht. die sichere beendigung des 
+            // hbci-threads wiederum wird dadurch abgesichert, dass die waits() aus
+            // dem hbci-thread (warten auf callback-daten) mit timeouts versehen sind
+            HBCIUtils.log("main thread: waiting for hbci result or callback data from hbci thread",HBCIUtils.LOG_DEBUG);
+            sync_main.startWaiting(HBCIUtils.getConfig().getMaxWaitTime(), "no response from hbci thread - timeout");
         
-        HBCIExecThreadedStatus threadStatus=new HBCIExecThreadedStatus();
-        threadStatus.setCallbackData((Hashtable<String, Object>)sync_main.getData("callbackData"));
-        threadStatus.setExecStatus((HBCIExecStatus)sync_main.getData("execStatus"));
+            HBCIExecThreadedStatus threadStatus=new HBCIExecThreadedStatus();
+            threadStatus.setCallbackData((Hashtable<String, Object>)sync_main.getData("callbackData"));
+            threadStatus.setExecStatus((HBCIExecStatus)sync_main.getData("execStatus"));
         
-        HBCIUtils.log(
-            "main thread: received answer from hbci thread, returning status "+
-            "(isCallback="+threadStatus.isCallback()+
-            ", isFinished="+threadStatus.isFinished()+")",
-            HBCIUtils.LOG_DEBUG);
+            HBCIUtils.log(
+                "main thread: received answer from hbci thread, returning status "+
+                "(isCallback="+threadStatus.isCallback()+
+                ", isFinished="+threadStatus.isFinished()+")",
+                HBCIUtils.LOG_DEBUG);
 
-        return threadStatus;
+            return threadStatus;
+        } finally {
+            HBCIContext.restore(old);
+        }
+    }
+    
+    /** <p>Führt {@link #execute()} mit dem übergebenen <code>Executor</code> aus
+     * und kehrt sofort zurück. Das Ergebnis kann über das zurückgegebene
+     * {@link HBCIFuture} abgefragt werden - oder ohne wartenden Thread über
+     * einen dort registrierten Listener.</p>
+     * <p>Im Gegensatz zu {@link #executeThreaded()} wird kein eigener Thread
+     * erzeugt und es wartet kein Thread der Anwendung auf den HBCI-Dialog.
+     * Callbacks, die Eingaben des Benutzers erfordern (PIN, TAN), können mit
+     * {@link org.kapott.hbci.callback.HBCICallbackAsync} ebenfalls ohne
+     * wartenden Thread der Anwendung beantwortet werden. Der HBCI-Dialog selbst
+     * wartet dabei im Thread des Executors - für sehr viele gleichzeitige
+     * Dialoge empfiehlt sich daher ein Executor mit
+     * {@link org.kapott.hbci.concurrent.HBCIVirtualThreadFactory}.</p>
+     * @param executor der Executor, in dem der HBCI-Dialog ausgeführt wird
+     * @return das Ergebnis der Ausführung */
+    public HBCIFuture<HBCIExecStatus> executeAsync(Executor executor)
+    {
+        HBCIFuture<HBCIExecStatus> ret=new HBCIFuture<HBCIExecStatus>(new Callable<HBCIExecStatus>() {
+            public HBCIExecStatus call()
+            {
+                // execute() aktiviert den kontext selbst
+                return execute();
+            }
+        },context);
+        executor.execute(ret);
+        return ret;
     }
     
     /** <p>Setzt bei Verwendung des threaded-callback-Mechanismus einen noch 
@@ -630,40 +826,45 @@ public final class HBCIHandler
      * <code>README.ThreadedCallbacks</code>. */
     public HBCIExecThreadedStatus continueThreaded(String retData)
     {
-        HBCIUtils.log("main thread: continuing hbci dialog with callback retData",HBCIUtils.LOG_DEBUG);
+        HBCIContext old=context.bind();
+        try {
+            HBCIUtils.log("main thread: continuing hbci dialog with callback retData",HBCIUtils.LOG_DEBUG);
         
-        // diese sync-objekte gibt es immer (bei richtiger verwendung des API),
-        // weil continueThreaded() nur nach einem initialen executeThreaded()
-        // ausgeführt werden darf und auch nur dann, wenn bei beiden methoden
-        // noch kein endgültiges hbci-exec-status zurückgegeben wurde
+            // diese sync-objekte gibt es immer (bei richtiger verwendung des API),
+            // weil continueThreaded() nur nach einem initialen executeThreaded()
+            // ausgeführt werden darf und auch nur dann, wenn bei beiden methoden
+            // noch kein endgültiges hbci-exec-status zurückgegeben wurde
 
-        // damit wird das wait() im threaded callback wieder aufgeweckt
-        ThreadSyncer sync_hbci=(ThreadSyncer)passport.getPersistentData("thread_syncer_hbci");
-        sync_hbci.setData("retData",retData);
+            // damit wird das wait() im threaded callback wieder aufgeweckt
+            ThreadSyncer sync_hbci=(ThreadSyncer)passport.getPersistentData("thread_syncer_hbci");
+            sync_hbci.setData("retData",retData);
         
-        HBCIUtils.log("main thread: awaking hbci thread with callback data from application",HBCIUtils.LOG_DEBUG);
-        sync_hbci.stopWaiting();
+            HBCIUtils.log("main thread: awaking hbci thread with callback data from application",HBCIUtils.LOG_DEBUG);
+            sync_hbci.stopWaiting();
         
-        // für dieses wait() brauche ich kein timeout, weil der hbci-thread auf
-        // jeden fall ein notify() macht, sobald er beendet wird oder sobald der
-        // hbci-thread callback-daten braucht. die sichere beendigung des 
-        // hbci-threads wiederum wird dadurch abgesichert, dass die waits() aus
-        // dem hbci-thread (warten auf callback-daten) mit timeouts versehen sind
-        ThreadSyncer sync_main=(ThreadSyncer)passport.getPersistentData("thread_syncer_main");
-        HBCIUtils.log("main thread: waiting for hbci result or new callback data from hbci thread",HBCIUtils.LOG_DEBUG);
-        sync_main.startWaiting(Integer.parseInt(HBCIUtils.getParam("kernel.threaded.maxwaittime","300")), "no response from hbci thread - timeout");
+            // für dieses wait() brauche ich kein timeout, weil der hbci-thread auf
+            // jeden fall ein notify() macht, sobald er beendet wird oder sobald der
+            // hbci-thread callback-daten braucht. die sichere beendigung des 
+            // hbci-threads wiederum wird dadurch abgesichert, dass die waits() aus
+            // dem hbci-thread (warten auf callback-daten) mit timeouts versehen sind
+            ThreadSyncer sync_main=(ThreadSyncer)passport.getPersistentData("thread_syncer_main");
+            HBCIUtils.log("main thread: waiting for hbci result or new callback data from hbci thread",HBCIUtils.LOG_DEBUG);
+            sync_main.startWaiting(HBCIUtils.getConfig().getMaxWaitTime(), "no response from hbci thread - timeout");
         
-        HBCIExecThreadedStatus threadStatus=new HBCIExecThreadedStatus();
-        threadStatus.setCallbackData((Hashtable<String, Object>)sync_main.getData("callbackData"));
-        threadStatus.setExecStatus((HBCIExecStatus)sync_main.getData("execStatus"));
+            HBCIExecThreadedStatus threadStatus=new HBCIExecThreadedStatus();
+            threadStatus.setCallbackData((Hashtable<String, Object>)sync_main.getData("callbackData"));
+            threadStatus.setExecStatus((HBCIExecStatus)sync_main.getData("execStatus"));
         
-        HBCIUtils.log(
-            "main thread: received answer from hbci thread, returning status "+
-            "(isCallback="+threadStatus.isCallback()+
-            ", isFinished="+threadStatus.isFinished()+")",
-            HBCIUtils.LOG_DEBUG);
+            HBCIUtils.log(
+                "main thread: received answer from hbci thread, returning status "+
+                "(isCallback="+threadStatus.isCallback()+
+                ", isFinished="+threadStatus.isFinished()+")",
+                HBCIUtils.LOG_DEBUG);
 
-        return threadStatus;
+            return threadStatus;
+        } finally {
+            HBCIContext.restore(old);
+        }
     }
     
     /** <p>Sperren der Nutzerschlüssel. Das ist nur dann sinnvoll, wenn zwei Bedinungen erfüllt sind:</p>
@@ -697,11 +898,16 @@ hbciHandle=new HBCIHandle(hbciversion,passport);
         erzeugt werden, ein neuer INI-Brief generiert und an die Bank versandt werden.</p>*/
     public void lockKeys()
     {
-        // TODO: die methode hat hier eigentlich nichts zu suchen
+        HBCIContext old=context.bind();
         try {
-            new HBCIUser(kernel,passport,false).lockKeys();
-        } catch (Exception ex) {
-            throw new HBCI_Exception(HBCIUtilsInternal.getLocMsg("EXCMSG_LOCKFAILED"),ex);
+            // TODO: die methode hat hier eigentlich nichts zu suchen
+            try {
+                new HBCIUser(kernel,passport,false).lockKeys();
+            } catch (Exception ex) {
+                throw new HBCI_Exception(HBCIUtilsInternal.getLocMsg("EXCMSG_LOCKFAILED"),ex);
+            }
+        } finally {
+            HBCIContext.restore(old);
         }
     }
     
@@ -723,11 +929,16 @@ hbciHandle=new HBCIHandle(hbciversion,passport);
         weggeworfen wurden.</p> */
     public void newKeys()
     {
-        // TODO: diese methode verschieben
+        HBCIContext old=context.bind();
         try {
-            new HBCIUser(kernel,passport,false).generateNewKeys();
-        } catch (Exception ex) {
-            throw new HBCI_Exception(HBCIUtilsInternal.getLocMsg("EXCMSG_GENKEYS_ERR"),ex);
+            // TODO: diese methode verschieben
+            try {
+                new HBCIUser(kernel,passport,false).generateNewKeys();
+            } catch (Exception ex) {
+                throw new HBCI_Exception(HBCIUtilsInternal.getLocMsg("EXCMSG_GENKEYS_ERR"),ex);
+            }
+        } finally {
+            HBCIContext.restore(old);
         }
     }
     
@@ -744,11 +955,16 @@ hbciHandle=new HBCIHandle(hbciversion,passport);
     // TODO: hier digisig keys mit unterstützen
     public void setKeys(KeyPair sigKey,KeyPair encKey)
     {
-        // TODO: diese methode verschieben
+        HBCIContext old=context.bind();
         try {
-            new HBCIUser(kernel,passport,false).manuallySetNewKeys(sigKey,encKey);
-        } catch (Exception ex) {
-            throw new HBCI_Exception(HBCIUtilsInternal.getLocMsg("EXCMSG_SETKEYS_ERR"),ex);
+            // TODO: diese methode verschieben
+            try {
+                new HBCIUser(kernel,passport,false).manuallySetNewKeys(sigKey,encKey);
+            } catch (Exception ex) {
+                throw new HBCI_Exception(HBCIUtilsInternal.getLocMsg("EXCMSG_SETKEYS_ERR"),ex);
+            }
+        } finally {
+            HBCIContext.restore(old);
         }
     }
     
@@ -765,12 +981,17 @@ hbciHandle=new HBCIHandle(hbciversion,passport);
      *         der TAN-Überprüfung festgestellt werden kann. */
     public HBCIExecStatus verifyTAN(String customerId)
     {
-        // TODO diese methode ist eine key-management-methode, muss also später
-        // ins passport-objekt verschoben werden
-        reset();
-        createEmptyDialog(customerId);
-        ((AbstractPinTanPassport)passport).activateTANVerifyMode();
-        return execute();
+        HBCIContext old=context.bind();
+        try {
+            // TODO diese methode ist eine key-management-methode, muss also später
+            // ins passport-objekt verschoben werden
+            reset();
+            createEmptyDialog(customerId);
+            ((AbstractPinTanPassport)passport).activateTANVerifyMode();
+            return execute();
+        } finally {
+            HBCIContext.restore(old);
+        }
     }
     
     /** Entspricht {@link #verifyTAN(String) verifyTAN(null)}. */
@@ -803,12 +1024,19 @@ hbciHandle=new HBCIHandle(hbciversion,passport);
      * @return HBCI-Kernel-Objekt, mit dem der HBCI-Handler arbeitet */
     public HBCIKernel getKernel()
     {
-        return kernel;
+        HBCIKernelImpl ret=dialogKernel.get();
+        return (ret!=null)?ret:kernel;
     }
     
+    /** @return der Kontext, mit dem dieser Handler arbeitet */
+    public HBCIContext getContext()
+    {
+        return context;
+    }
+
     public MsgGen getMsgGen()
     {
-        return kernel.getMsgGen();
+        return ((HBCIKernelImpl)getKernel()).getMsgGen();
     }
     
     /** Gibt die HBCI-Versionsnummer zurück, für die der aktuelle HBCIHandler
@@ -1017,18 +1245,23 @@ hbciHandle=new HBCIHandle(hbciversion,passport);
      * HBCI-Dialog enthält */ 
     public HBCIDialogStatus refreshXPD(int selectX) 
     {
-        if ((selectX & REFRESH_BPD)!=0) {
-            passport.clearBPD();
-        }
-        if ((selectX & REFRESH_UPD)!=0) {
-            passport.clearUPD();
-        }
+        HBCIContext old=context.bind();
+        try {
+            if ((selectX & REFRESH_BPD)!=0) {
+                passport.clearBPD();
+            }
+            if ((selectX & REFRESH_UPD)!=0) {
+                passport.clearUPD();
+            }
 
-        reset();
+            reset();
         
-        String customerId=passport.getCustomerId();
-        getDialogFor(customerId);
-        HBCIDialogStatus result=execute().getDialogStatus(customerId);
-        return result;
+            String customerId=passport.getCustomerId();
+            getDialogFor(customerId);
+            HBCIDialogStatus result=execute().getDialogStatus(customerId);
+            return result;
+        } finally {
+            HBCIContext.restore(old);
+        }
     }
 }
@@ -21,32 +21,29 @@
 
 package org.kapott.hbci.manager;
 
-import java.io.InputStream;
-import java.lang.reflect.Constructor;
-import java.util.ArrayList;
-import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Properties;
-import java.util.StringTokenizer;
 
 import org.kapott.hbci.callback.HBCICallback;
 import org.kapott.hbci.exceptions.CanNotParseMessageException;
 import org.kapott.hbci.exceptions.HBCI_Exception;
-import org.kapott.hbci.exceptions.InvalidUserDataException;
 import org.kapott.hbci.passport.HBCIPassport;
 import org.kapott.hbci.passport.HBCIPassportInternal;
 import org.kapott.hbci.passport.HBCIPassportList;
 import org.kapott.hbci.protocol.MSG;
+import org.kapott.hbci.protocol.MsgBuffer;
+import org.kapott.hbci.protocol.SyntaxDef;
+import org.kapott.hbci.protocol.SyntaxSpec;
 import org.kapott.hbci.protocol.factory.MSGFactory;
 import org.kapott.hbci.rewrite.Rewrite;
+import org.kapott.hbci.rewrite.RewriteChain;
 import org.kapott.hbci.security.Crypt;
 import org.kapott.hbci.security.Sig;
 import org.kapott.hbci.security.factory.CryptFactory;
 import org.kapott.hbci.security.factory.SigFactory;
 import org.kapott.hbci.status.HBCIMsgStatus;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
+import org.kapott.hbci.status.ResultNode;
 
 public final class HBCIKernelImpl implements HBCIKernel
 {
@@ -64,26 +61,22 @@ public final class HBCIKernelImpl implements HBCIKernel
     private String currentMsgName;   /* name of job currently beeing created */
     
     private IHandlerData parentHandlerData;
+    private HBCIContext  context;    /* kernel-parameter, callback und locale */
     
     public HBCIKernelImpl(IHandlerData parentHandlerData,String hbciversion)
     {
         this.parentHandlerData=parentHandlerData;
         this.hbciversion=hbciversion;
+        this.context=HBCIUtils.getContext();
 
-        String xmlpath=HBCIUtils.getParam("kernel.kernel.xmlpath");
-        InputStream syntaxStream=null;
-        if (xmlpath==null) {
-            xmlpath="";
-        }
-
-        ClassLoader cl=this.getClass().getClassLoader();
-        String filename=xmlpath+"hbci-"+hbciversion+".xml";
-        syntaxStream=cl.getResourceAsStream(filename);
-        if (syntaxStream==null)
-            throw new InvalidUserDataException(HBCIUtilsInternal.getLocMsg("EXCMSG_KRNL_CANTLOAD_SYN",filename));
+        // die syntax-spezifikation wird nur einmal pro hbci-version (und
+        // xmlpath) geladen bzw. aus der beim build erzeugten klasse erzeugt
+        // und von allen kernel-instanzen gemeinsam benutzt
+        String     xmlpath=HBCIUtils.getParam("kernel.kernel.xmlpath");
+        SyntaxSpec syntax=SyntaxRegistry.getInstance().getSyntax(xmlpath,hbciversion,this.getClass().getClassLoader());
         
         try {
-            gen=new MsgGen(syntaxStream);
+            gen=new MsgGen(syntax);
             currentMsgName=null;
         } catch (Exception e) {
             throw new HBCI_Exception(HBCIUtilsInternal.getLocMsg("EXCMSG_MSGGEN_INIT"),e);
@@ -108,16 +101,21 @@ public final class HBCIKernelImpl implements HBCIKernel
         return this.parentHandlerData;
     }
 
+    /** @return der Kontext, in dem dieser Kernel erzeugt wurde */
+    public HBCIContext getContext()
+    {
+        return this.context;
+    }
+
     public String getHBCIVersion(int dummy)
     {
-        String   ret="";
-        NodeList nodes=gen.getSyntax().getElementById("MsgHeadUser").getElementsByTagName("value");
-        int      len=nodes.getLength();
+        String    ret="";
+        SyntaxDef msghead=gen.getSyntaxSpec().getDef("MsgHeadUser");
+        int       len=msghead.getValueCount();
         
         for (int i=0;i<len;i++) {
-            Element node=(Element)nodes.item(i);
-            if (node.getAttribute("path").equals("hbciversion")) {
-                ret=node.getFirstChild().getNodeValue();
+            if (msghead.getValuePath(i).equals("hbciversion")) {
+                ret=msghead.getValue(i);
                 break;
             }
         }
@@ -219,30 +217,11 @@ public final class HBCIKernelImpl implements HBCIKernel
             Rewrite.setData("needSig",Boolean.valueOf(needSig));
             Rewrite.setData("needCrypt",Boolean.valueOf(needCrypt));
 
-            // liste der rewriter erzeugen
-            String rewriters_st=HBCIUtils.getParam("kernel.rewriter");
-            ArrayList<Rewrite> al=new ArrayList<Rewrite>();
-            StringTokenizer tok=new StringTokenizer(rewriters_st,",");
-            while (tok.hasMoreTokens()) {
-                String rewriterName=tok.nextToken().trim();
-                if (rewriterName.length()!=0) {
-                    Class cl=this.getClass().getClassLoader().loadClass("org.kapott.hbci.rewrite.R"+
-                                                                        rewriterName);
-                    Constructor con=cl.getConstructor((Class[])null);
-                    Rewrite rewriter=(Rewrite)(con.newInstance((Object[])null));
-                    al.add(rewriter);
-                }
-            }
-            Rewrite[] rewriters=al.toArray(new Rewrite[al.size()]);
+            // die (einmal pro konfiguration erzeugte) rewriter-kette holen
+            RewriteChain rewriters=RewriteChain.getInstance().forMessage();
             
             // alle rewriter durchlaufen und plaintextnachricht patchen
-            for (int i=0;i<rewriters.length;i++) {
-                MSG old=msg;
-                msg=rewriters[i].outgoingClearText(old,gen);
-                if (msg!=old) {
-                    MSGFactory.getInstance().unuseObject(old);
-                }
-            }
+            msg=rewriters.outgoingClearText(msg,gen);
             
             // HBCIUtils.log("sending msg: "+msg.toString(0));
             
@@ -265,42 +244,30 @@ public final class HBCIKernelImpl implements HBCIKernel
                 }
 
                 // alle rewrites erledigen, die *nach* dem hinzufügen der signatur stattfinden müssen
-                for (int i=0;i<rewriters.length;i++) {
-                    MSG old=msg;
-                    msg=rewriters[i].outgoingSigned(old,gen);
-                    if (msg!=old) {
-                        MSGFactory.getInstance().unuseObject(old);
-                    }
-                }
+                msg=rewriters.outgoingSigned(msg,gen);
             }
             
             /* zu jeder SyntaxElement-Referenz (2:3,1)==(SEG:DEG,DE) den Pfad
-               des jeweiligen Elementes speichern */
+               des jeweiligen Elementes sowie für alle Elemente (Pfadnamen)
+               die Werte merken, wie sie bei der ausgehenden Nachricht versandt
+               werden. Die "orig_"-Einträge in HBCIMsgStatus.getData() werden
+               erst bei Bedarf daraus erzeugt */
             Properties paths=new Properties();
             msg.getElementPaths(paths,null,null,null);
-            ret.addData(paths);
+            Hashtable<String,String> values=new Hashtable<String,String>();
+            msg.extractValues(values);
+            ret.setSentData(values,paths);
             
-            /* für alle Elemente (Pfadnamen) die aktuellen Werte speichern,
-               wie sie bei der ausgehenden Nachricht versandt werden */
-            Hashtable<String,String> current=new Hashtable<String,String>();
-            msg.extractValues(current);
-            Properties origs=new Properties();
-            for (Enumeration<String> e=current.keys();e.hasMoreElements();) {
-                String key= e.nextElement();
-                String value= current.get(key);
-                origs.setProperty("orig_"+key,value);
-            }
-            ret.addData(origs);
-            
-            // zu versendene nachricht loggen
-            String outstring=msg.toString(0);
-            HBCIUtils.log("sending message: "+outstring,HBCIUtils.LOG_DEBUG2);
+            // zu versendene nachricht einmal in ihre übertragungsform bringen
+            // - diese wird fürs logging, die größenprüfung und den versand benutzt
+            MsgBuffer raw=msg.toBytes();
+            HBCIUtils.log("sending message: ",raw,HBCIUtils.LOG_DEBUG2);
 
             // max. nachrichtengröße aus BPD überprüfen
             int maxmsgsize=mainPassport.getMaxMsgSizeKB();
-            if (maxmsgsize!=0 && (outstring.length()>>10)>maxmsgsize) {
+            if (maxmsgsize!=0 && (raw.length()>>10)>maxmsgsize) {
                 String errmsg=HBCIUtilsInternal.getLocMsg("EXCMSG_MSGTOOLARGE",
-                                                  new Object[] {Integer.toString(outstring.length()>>10),Integer.toString(maxmsgsize)});
+                                                  new Object[] {Integer.toString(raw.length()>>10),Integer.toString(maxmsgsize)});
                 if (!HBCIUtilsInternal.ignoreError(null,"client.errors.ignoreMsgSizeErrors",errmsg))
                     throw new HBCI_Exception(errmsg);
             }
@@ -329,15 +296,10 @@ public final class HBCIKernelImpl implements HBCIKernel
                 }
 
                 // verschlüsselte nachricht patchen
-                for (int i=0;i<rewriters.length;i++) {
-                    MSG oldMsg=msg;
-                    msg=rewriters[i].outgoingCrypted(oldMsg,gen);
-                    if (msg!=oldMsg) {
-                        MSGFactory.getInstance().unuseObject(oldMsg);
-                    }
-                }
+                msg=rewriters.outgoingCrypted(msg,gen);
                 
-                HBCIUtils.log("encrypted message to be sent: "+msg.toString(0),HBCIUtils.LOG_DEBUG2);
+                raw=msg.toBytes();
+                HBCIUtils.log("encrypted message to be sent: ",raw,HBCIUtils.LOG_DEBUG2);
             }
 
             // basic-values der ausgehenden nachricht merken
@@ -349,7 +311,7 @@ public final class HBCIKernelImpl implements HBCIKernel
             // nachricht versenden und antwortnachricht empfangen
             HBCIUtils.log("communicating dialogid/msgnum "+dialogid+"/"+msgnum,HBCIUtils.LOG_DEBUG);
             MSG old=msg;
-            msg=mainPassport.getComm().pingpong(currentMsgName,old);
+            msg=mainPassport.getComm().pingpong(currentMsgName,raw);
             if (msg!=old) {
                 MSGFactory.getInstance().unuseObject(old);
             }
@@ -377,18 +339,17 @@ public final class HBCIKernelImpl implements HBCIKernel
                 
                 // alle patches für die unverschlüsselte nachricht durchlaufen
                 HBCIUtils.log("rewriting message",HBCIUtils.LOG_DEBUG);
-                for (int i=0;i<rewriters.length;i++) {
-                    HBCIUtils.log("applying rewriter " + rewriters[i].getClass().getSimpleName(),HBCIUtils.LOG_DEBUG);
-                    newmsgstring=rewriters[i].incomingClearText(newmsgstring,gen);
-                }
+                newmsgstring=rewriters.incomingClearText(newmsgstring,gen);
                 HBCIUtils.log("rewriting done",HBCIUtils.LOG_DEBUG);
                 
-                HBCIUtils.log("decrypted message after rewriting: "+newmsgstring,HBCIUtils.LOG_DEBUG2);
+                HBCIUtils.log("decrypted message after rewriting: ",newmsgstring,HBCIUtils.LOG_DEBUG2);
                 
                 // nachricht als plaintextnachricht parsen
                 try {
                     HBCIUtilsInternal.getCallback().status(mainPassport,HBCICallback.STATUS_MSG_PARSE,currentMsgName+"Res");
-                    HBCIUtils.log("message to pe parsed: "+msg.toString(0),HBCIUtils.LOG_DEBUG2);
+                    if (HBCIUtils.isLogEnabled(HBCIUtils.LOG_DEBUG2)) {
+                        HBCIUtils.log("message to pe parsed: "+msg.toString(0),HBCIUtils.LOG_DEBUG2);
+                    }
                     MSG oldMsg=msg;
                     msg=MSGFactory.getInstance().createMSG(currentMsgName+"Res",newmsgstring,newmsgstring.length(),gen);
                     if (msg!=oldMsg) {
@@ -398,25 +359,23 @@ public final class HBCIKernelImpl implements HBCIKernel
                     throw new CanNotParseMessageException(HBCIUtilsInternal.getLocMsg("EXCMSG_CANTPARSE"),newmsgstring,ex);
                 }
             }
-            else
+            else if (HBCIUtilsInternal.isStatusWanted(HBCICallback.STATUS_MSG_RAW_RECV))
             {
+              // nachricht nur dann rendern, wenn der callback sie auch haben will
               HBCIUtilsInternal.getCallback().status(mainPassport,HBCICallback.STATUS_MSG_RAW_RECV,msg.toString(0));
             }
             
-            HBCIUtils.log("received message after decryption: "+msg.toString(0),HBCIUtils.LOG_DEBUG2);
+            if (HBCIUtils.isLogEnabled(HBCIUtils.LOG_DEBUG2)) {
+                HBCIUtils.log("received message after decryption: "+msg.toString(0),HBCIUtils.LOG_DEBUG2);
+            }
 
             // alle patches für die plaintextnachricht durchlaufen
-            for (int i=0;i<rewriters.length;i++) {
-                MSG oldMsg=msg;
-                msg=rewriters[i].incomingData(oldMsg,gen);
-                if (msg!=oldMsg) {
-                    MSGFactory.getInstance().unuseObject(oldMsg);
-                }
-            }
+            msg=rewriters.incomingData(msg,gen);
             
             // daten aus nachricht in status-objekt einstellen
             HBCIUtils.log("extracting data from received message",HBCIUtils.LOG_DEBUG);
-            Properties p=msg.getData();
+            ret.setResult(ResultNode.create(msg));
+            Properties p=new Properties();
             p.setProperty("_msg", gen.get("_origSignedMsg"));
             ret.addData(p);
             
@@ -491,6 +450,7 @@ public final class HBCIKernelImpl implements HBCIKernel
             MSGFactory.getInstance().unuseObject(msg);
             currentMsgName=null;
             gen.reset();
+            Rewrite.clearData();
         }
         
         return ret;
@@ -38,18 +38,18 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.Hashtable;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map.Entry;
 import java.util.Properties;
-import java.util.ResourceBundle;
 
 import org.kapott.cryptalgs.CryptAlgs4JavaProvider;
 import org.kapott.hbci.GV_Result.GVRKUms;
 import org.kapott.hbci.callback.HBCICallback;
+import org.kapott.hbci.comm.Base64Codec;
 import org.kapott.hbci.comm.Comm;
+import org.kapott.hbci.comm.PinTanSSLContext;
 import org.kapott.hbci.exceptions.HBCI_Exception;
 import org.kapott.hbci.exceptions.InvalidArgumentException;
 import org.kapott.hbci.exceptions.InvalidUserDataException;
@@ -261,6 +261,10 @@ import org.kapott.hbci.swift.Swift;
  * <code>client.passport.PinTan.checkcert</code> die Zertifikatsüberprüfung
  * gänzlich deaktiviert werden.
  * </p>
+ * <p>
+ * Die Datei wird nur für die Verbindungen dieses Passports verwendet, der
+ * TrustStore der JVM (<code>javax.net.ssl.trustStore</code>) bleibt unverändert.
+ * </p>
  * </li>
  * <li><code>client.passport.PinTan.checkcert</code> (für PIN/TAN-Passports)
  * <p>
@@ -281,6 +285,9 @@ import org.kapott.hbci.swift.Swift;
  * kann der zu verwendende Proxy-Server mit diesem Parameter konfiguriert
  * werden. Das Format für den Wert dieses Kernel-Parameters ist "HOST:PORT",
  * also z.B. <code>proxy.intern.domain.com:3128</code>.
+ * Der Proxy gilt nur für die Verbindungen dieses Passports, die
+ * System-Properties <code>https.proxyHost</code>/<code>https.proxyPort</code>
+ * werden nicht verändert.
  * </p>
  * </li>
  * <li><code>client.passport.PinTan.proxyuser</code> (für PIN/TAN-Passports)
@@ -311,6 +318,58 @@ import org.kapott.hbci.swift.Swift;
  * verwendet).
  * </p>
  * </li>
+ * <li><code>client.passport.PinTan.keepalive</code> (für PIN/TAN-Passports)
+ * <p>
+ * Standardmäßig (Wert "1") bleibt die HTTPS-Verbindung zum Server nach einer
+ * Nachricht offen und wird für die nächsten Nachrichten an denselben Server
+ * wiederverwendet - auch von anderen Passports. Das spart für jede Nachricht
+ * den Aufbau der Verbindung und den TLS-Handshake. Mit "0" wird die Verbindung
+ * wie früher nach jeder Nachricht geschlossen. Statistiken dazu liefert
+ * {@link org.kapott.hbci.comm.PinTanConnectionPool#getInstances()}.
+ * </p>
+ * </li>
+ * <li><code>client.passport.PinTan.sslsessions.size</code>,
+ * <code>client.passport.PinTan.sslsessions.timeout</code> (für
+ * PIN/TAN-Passports)
+ * <p>
+ * Alle PIN/TAN-Verbindungen mit derselben Zertifikats-Einstellung
+ * (<code>checkcert</code>, <code>certfile</code>) verwenden einen gemeinsamen
+ * SSL-Kontext, so dass eine einmal ausgehandelte TLS-Session auch von
+ * anderen Passports wiederaufgenommen werden kann. Diese Parameter legen die
+ * maximale Anzahl der zwischengespeicherten Sessions bzw. deren Gültigkeit in
+ * Sekunden fest. Ohne Angabe (oder mit "0") gelten die Vorgaben der JVM. Die
+ * Werte werden beim Erzeugen des Kontextes gelesen, spätere Änderungen wirken
+ * sich also nicht mehr aus. Für die Prüfung mit dem Truststore der JVM
+ * (<code>checkcert=1</code> ohne <code>certfile</code>) wird der Kontext der
+ * JVM verwendet, dessen Session-Cache nicht verändert wird. Statistiken zu
+ * Handshakes und wiederaufgenommenen Sessions liefert
+ * {@link org.kapott.hbci.comm.PinTanSSLContext#getInstances()}.
+ * </p>
+ * </li>
+ * <li><code>client.passport.PinTan.sslwarmup</code> (für PIN/TAN-Passports)
+ * <p>
+ * Mit "1" wird der SSL-Kontext für die in <code>client.passport.PinTan.checkcert</code>
+ * und <code>client.passport.PinTan.certfile</code> angegebene Einstellung schon
+ * in {@link #init(Properties,HBCICallback)} erzeugt und initialisiert, so
+ * dass das nicht beim Versand der ersten Nachricht geschieht. Der Default ist "0".
+ * </p>
+ * </li>
+ * <li><code>client.passport.PinTan.transport</code> (für PIN/TAN-Passports)
+ * <p>
+ * Legt fest, wie die Nachrichten zum Server übertragen werden (siehe
+ * {@link org.kapott.hbci.comm.Transport}). Der Default ist "<code>Http</code>".
+ * Die Übertragung findet immer im aufrufenden Thread statt. Alternativ kann der voll qualifizierte Name einer eigenen Implementierung
+ * angegeben werden. Kann für einzelne Passports mit
+ * {@link org.kapott.hbci.passport.AbstractPinTanPassport#setTransport(String)}
+ * überschrieben werden.
+ * </p>
+ * </li>
+ * <li><code>client.passport.PinTan.maxresponsesize</code> (für PIN/TAN-Passports)
+ * <p>
+ * Maximale Größe einer Antwort des Servers in Bytes. Größere Antworten werden
+ * mit einer Exception abgebrochen. Der Default "0" bedeutet keine Begrenzung.
+ * </p>
+ * </li>
  * <li><code>client.passport.SIZRDHFile.filename</code> (für
  * SIZRDHFile-Passports)
  * <p>
@@ -367,6 +426,17 @@ import org.kapott.hbci.swift.Swift;
  * verwendet).
  * </p>
  * </li>
+ * <li><code>client.dialogs.parallel</code>
+ * <p>
+ * Wurden in einem {@link HBCIHandler} Aufträge für mehrere Kunden-IDs erfasst,
+ * führt {@link HBCIHandler#execute()} für jede Kunden-ID einen eigenen Dialog.
+ * Ist dieser Parameter größer als 1 (Standard ist 1), werden bis zu so viele
+ * dieser Dialoge gleichzeitig über jeweils eine eigene Verbindung geführt.
+ * Das wird derzeit nur von PIN/TAN-Passports unterstützt und nicht bei
+ * {@link HBCIHandler#executeThreaded()}. Das Callback-Objekt muss in diesem
+ * Fall Aufrufe aus mehreren Threads gleichzeitig verarbeiten können.
+ * </p>
+ * </li>
  * <li><code>client.passport.default</code>
  * <p>
  * Wird bei der Erzeugung eines Passport-Objektes
@@ -386,6 +456,42 @@ import org.kapott.hbci.swift.Swift;
  * Exception geworfen und die weitere Programmausführung unterbrochen wird.
  * </p>
  * </li>
+ * <li><code>client.retry.max</code>, <code>client.retry.delay</code>,
+ * <code>client.retry.maxdelay</code>
+ * <p>
+ * Kann eine Nachricht wegen eines vorübergehenden Fehlers nicht zugestellt
+ * werden (Server beim PIN/TAN-Verfahren nicht erreichbar oder HTTP-Status
+ * 503), wird der Versand bis zu <code>client.retry.max</code>
+ * mal wiederholt (Standard ist 2, 0 schaltet die Wiederholung ab). Vor jedem
+ * Versuch wird gewartet, beginnend mit <code>client.retry.delay</code>
+ * Millisekunden (Standard 1000), danach jeweils doppelt so lange, höchstens
+ * jedoch <code>client.retry.maxdelay</code> Millisekunden (Standard 30000).
+ * Die Wartezeit wird dabei zufällig um bis zu 50% verkürzt. Kommt eine Antwort
+ * nicht rechtzeitig oder meldet ein Gateway HTTP-Status 502 bzw. 504, wird
+ * <em>nicht</em> wiederholt, da die Nachricht dann bereits verarbeitet worden
+ * sein kann.
+ * </p>
+ * </li>
+ * <li><code>client.retry.codes</code>
+ * <p>
+ * Komma-separierte Liste von Rückmeldungscodes, mit denen die Bank einen
+ * vorübergehenden Fehler meldet (z.B. Überlastung des Systems). Die Codes sind
+ * nicht standardisiert, daher ist die Liste per Default leer. Wird die
+ * Dialog-Initialisierung mit einem dieser Codes abgelehnt, wird sie wie oben
+ * beschrieben wiederholt. Aufträge selbst werden nie automatisch wiederholt.
+ * </p>
+ * </li>
+ * <li><code>client.retry.breaker.threshold</code>, <code>client.retry.breaker.timeout</code>
+ * <p>
+ * Schlägt die Verbindung zu einem PIN/TAN-Server so oft in Folge wegen eines
+ * vorübergehenden Fehlers fehl, wie <code>client.retry.breaker.threshold</code>
+ * angibt (Standard 5, 0 schaltet den Mechanismus ab), werden für
+ * <code>client.retry.breaker.timeout</code> Sekunden (Standard 60) keine neuen
+ * Verbindungen zu diesem Server mehr aufgebaut, sondern sofort mit einer
+ * Exception abgelehnt. Der Zustand kann über
+ * {@link org.kapott.hbci.comm.CircuitBreaker#getInstances()} abgefragt werden.
+ * </p>
+ * </li>
  * <li><code>client.connection.localPort</code>
  * <p>
  * Für Anwendungen, die sich hinter einer Firewall befinden, welche nur
@@ -424,7 +530,10 @@ import org.kapott.hbci.swift.Swift;
  * </li>
  * <li><code>kernel.kernel.xmlpath</code>
  * <p>
- * (wird nicht gesetzt, zur Zeit nur intern benutzt)
+ * (wird nicht gesetzt, zur Zeit nur intern benutzt). Ist dieser Parameter
+ * gesetzt, so werden die Syntax-Spezifikationen <code>hbci-*.xml</code> aus
+ * diesem Pfad geladen und geparst. Andernfalls wird die beim Build aus den
+ * mitgelieferten Spezifikationen erzeugte Form benutzt.
  * </p>
  * </li>
  * <li><code>kernel.kernel.blzpath</code>
@@ -471,6 +580,41 @@ import org.kapott.hbci.swift.Swift;
  * Die Standard-Einstellung dieses Wertes ist 2 - es werden also alle
  * "identifizierenden" Daten und alle "geheimen" Daten gefiltert.
  * </p>
+ * <p>
+ * Die zu filternden Daten werden für jede ThreadGroup separat gesammelt.
+ * Eine Meldung wird nur mit den Daten der ThreadGroup gefiltert, in der sie
+ * erzeugt wird (inkl. der übergeordneten ThreadGroups).
+ * </p>
+ * </li>
+ * <li><code>log.caller</code>
+ * <p>
+ * Ist dieser Parameter auf 1 gesetzt (Standard), wird für jede Log-Meldung
+ * die aufrufende Klasse ermittelt und an die Callback-Methode
+ * <code>log()</code> übergeben. Da dazu jedesmal ein Stacktrace erzeugt werden
+ * muss, kann das bei sehr vielen Log-Ausgaben mit 0 abgeschaltet werden - der
+ * Callback erhält dann <code>null</code> als <code>trace</code>.
+ * </p>
+ * </li>
+ * <li><code>log.async</code>, <code>log.async.size</code>,
+ * <code>log.async.overflow</code>
+ * <p>
+ * Ist <code>log.async</code> auf 1 gesetzt (Standard ist 0), werden die
+ * Log-Meldungen nicht im erzeugenden Thread an den Callback übergeben, sondern
+ * in einen Ringpuffer mit <code>log.async.size</code> Einträgen (Standard 8192)
+ * eingestellt und von einem separaten Thread ausgegeben (siehe
+ * {@link LogDispatcher}). Ist der Puffer voll, wird abhängig von
+ * <code>log.async.overflow</code> gewartet, bis wieder Platz ist
+ * (<code>block</code>, Standard), die Meldung verworfen (<code>drop</code>)
+ * oder die Meldung direkt im erzeugenden Thread ausgegeben
+ * (<code>sync</code>). Die Puffergröße wird nur beim Starten des Log-Threads
+ * ausgewertet.
+ * </p>
+ * <p>
+ * Die Kernel-Parameter werden für jeden {@link HBCIContext} als
+ * unveränderlicher {@link HBCIConfig} gehalten. Sie können daher nur via
+ * {@link #setParam(String, String)} geändert werden, {@link #getParams()}
+ * liefert lediglich eine Kopie.
+ * </p>
  * </li>
  * <li><code>log.ssl.enable</code>
  * <p>
@@ -533,6 +677,13 @@ import org.kapott.hbci.swift.Swift;
  * durchlaufende Rewriter-Module angegeben werden, indem sie durch Komma
  * voneinander getrennt werden.
  * </p>
+ * <p>
+ * Die Rewriter-Module werden nur einmal pro Wert dieses Parameters geladen und
+ * danach für alle Nachrichten wiederverwendet. Wie oft die einzelnen Module
+ * aufgerufen wurden, wie oft sie eine Nachricht tatsächlich verändert haben und
+ * wie viel Zeit dabei verbraucht wurde, kann mit
+ * {@link org.kapott.hbci.rewrite.RewriteChain#getStatistics()} ermittelt werden.
+ * </p>
  * </li>
  * <li><code>kernel.threaded.maxwaittime</code>
  * <p>
@@ -552,7 +703,7 @@ import org.kapott.hbci.swift.Swift;
  * </p>
  * <p>
  * Die Zeitspanne wird in Sekunden angegeben. Der default-Wert beträgt 300 (5
- * Minuten).
+ * Minuten). Mit dem Wert 0 wird ohne zeitliche Begrenzung gewartet.
  * </p>
  * </li>
  * <li>
@@ -570,9 +721,23 @@ import org.kapott.hbci.swift.Swift;
  * In der folgenden Auflistung steht in Klammern jeweils der eingebaute
  * default-Wert.
  * </p>
+ * <p>
+ * Die Pools werden von allen Threads gemeinsam benutzt, arbeiten aber ohne
+ * globale Sperre, so dass auch viele parallel laufende Dialoge sich nicht
+ * gegenseitig blockieren.
+ * </p>
  * <ul>
  * <li>
  * <p>
+ * <code>kernel.objpool.enabled</code> -- mit "<code>no</code>" wird das
+ * Object-Pooling für alle Objekttypen deaktiviert, es werden dann immer neue
+ * Objekte erzeugt. Das kann z.B. benutzt werden, um Pooling und Neuerzeugung
+ * in der eigenen Umgebung zu vergleichen. Der Parameter wird beim ersten
+ * Erzeugen bzw. Parsen einer Nachricht ausgewertet (<code>yes</code>)
+ * </p>
+ * </li>
+ * <li>
+ * <p>
  * <code>kernel.objpool.MSG</code> -- Pool für Nachrichten-Objekte (3)
  * </p>
  * </li>
@@ -699,10 +864,6 @@ public final class HBCIUtils
 	/** Loglevel für devel-Debugging - nicht benutzen! */
 	public static final int								LOG_INTERN	= 6;
 
-	private static Hashtable<ThreadGroup, Properties>	configs;																							// threadgroup->hashtable(paramname->paramvalue)
-	private static char[]								base64table	= { 'A', 'B', 'C', 'D', 'E', 'F', 'G', 'H', 'I', 'J', 'K', 'L', 'M', 'N', 'O', 'P', 'Q',
-			'R', 'S', 'T', 'U', 'V', 'W', 'X', 'Y', 'Z', 'a', 'b', 'c', 'd', 'e', 'f', 'g', 'h', 'i', 'j', 'k', 'l', 'm', 'n', 'o', 'p', 'q', 'r', 's', 't',
-			'u', 'v', 'w', 'x', 'y', 'z', '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', '+', '/' };
 	static
 	{
 		initDataStructures();
@@ -710,12 +871,9 @@ public final class HBCIUtils
 
 	private static void initDataStructures ( )
 	{
-		configs = new Hashtable<ThreadGroup, Properties>();
-		HBCIUtilsInternal.callbacks = new Hashtable<ThreadGroup, HBCICallback>();
+		HBCIContext.unregisterAll();
 		HBCIUtilsInternal.blzs = new Properties();
 		HBCIUtilsInternal.banks = new HashMap<String, BankInfo>();
-		HBCIUtilsInternal.locMsgs = new Hashtable<ThreadGroup, ResourceBundle>();
-		HBCIUtilsInternal.locales = new Hashtable<ThreadGroup, Locale>();
 	}
 
 	private HBCIUtils ()
@@ -841,6 +999,11 @@ public final class HBCIUtils
 			{
 				Security.addProvider(new CryptAlgs4JavaProvider());
 			}
+
+			if (getParam("client.passport.PinTan.sslwarmup", "0").equals("1"))
+			{
+				PinTanSSLContext.warmUp();
+			}
 		}
 		catch (Exception e)
 		{
@@ -894,6 +1057,13 @@ public final class HBCIUtils
 	 * verwaltet, so dass jede <code>ThreadGroup</code> also einen eigenen Satz
 	 * dieser Daten benutzt.
 	 * <p>
+	 * Alternativ kann statt einer eigenen <code>ThreadGroup</code> ein
+	 * {@link HBCIContext} erzeugt und direkt an den {@link HBCIHandler} bzw.
+	 * die Passport-Factory übergeben werden. Intern erzeugt auch diese Methode
+	 * einen {@link HBCIContext}, der immer dann verwendet wird, wenn im
+	 * aktuellen Thread kein Kontext explizit aktiviert ist.
+	 * </p>
+	 * <p>
 	 * Der Thread, in dem die Methode <code>HBCIUtils.init()</code> aufgerufen
 	 * wird, muss <em>nicht</em> zusätzlich mit <code>initThread()</code>
 	 * initialisiert werden, das wird automatisch von der Methode
@@ -939,7 +1109,7 @@ public final class HBCIUtils
 	{
 		ThreadGroup threadgroup = Thread.currentThread().getThreadGroup();
 
-		if (HBCIUtilsInternal.callbacks.get(threadgroup) != null)
+		if (HBCIContext.forThreadGroup(threadgroup) != null)
 		{
 			HBCIUtils.log("will not initialize this threadgroup because it is already initialized", HBCIUtils.LOG_WARN);
 		}
@@ -947,36 +1117,20 @@ public final class HBCIUtils
 		{
 			try
 			{
-				// initialize kernel params
-				Properties config = new Properties();
-				if (props != null)
-				{
-					config.putAll(props);
-				}
-
-				synchronized (configs)
-				{
-					configs.put(threadgroup, config);
-				}
-				if (getParam("kernel.rewriter") == null)
-				{
-					setParam(	"kernel.rewriter",
-								"InvalidSegment,WrongStatusSegOrder,WrongSequenceNumbers,MissingMsgRef,HBCIVersion,SigIdLeadingZero,InvalidSuppHBCIVersion,SecTypeTAN,KUmsDelimiters,KUmsEmptyBDateSets");
-				}
-
 				// initialize callback
 				if (callback == null)
 				{
-					ThreadGroup parent = Thread.currentThread().getThreadGroup().getParent();
-					callback = HBCIUtilsInternal.callbacks.get(parent);
-					if (callback == null)
+					HBCIContext parent = HBCIContext.forThreadGroup(threadgroup.getParent());
+					if (parent == null)
 					{
 						throw new NullPointerException("no callback specified");
 					}
+					callback = parent.getCallback();
 				}
-				HBCIUtilsInternal.callbacks.put(threadgroup, callback);
 
-				// configure Locale
+				// initialize kernel params and locale
+				HBCIContext context = new HBCIContext(threadgroup.getName(), props, callback);
+				HBCIContext.register(threadgroup, context);
 				initLocale();
 
 				HBCIUtils.log("initialized HBCI4Java for thread group " + threadgroup.getName(), HBCIUtils.LOG_DEBUG);
@@ -1049,10 +1203,7 @@ public final class HBCIUtils
 		HBCIUtils.log("removing all data for current thread", HBCIUtils.LOG_DEBUG);
 
 		ThreadGroup group = Thread.currentThread().getThreadGroup();
-		HBCIUtilsInternal.callbacks.remove(group);
-		configs.remove(group);
-		HBCIUtilsInternal.locMsgs.remove(group);
-		HBCIUtilsInternal.locales.remove(group);
+		HBCIContext.unregister(group);
 	}
 
 	/**
@@ -1064,6 +1215,8 @@ public final class HBCIUtils
 	public static synchronized void done ( )
 	{
 		HBCIUtils.log("destroying all HBCI4Java resources", HBCIUtils.LOG_DEBUG);
+		LogDispatcher.shutdown();
+		LogFilter.getInstance().clearSecretData();
 		initDataStructures();
 	}
 
@@ -1098,15 +1251,7 @@ public final class HBCIUtils
 			log("using specified locale " + locale.toString(), HBCIUtils.LOG_DEBUG);
 		}
 
-		ThreadGroup threadgroup = Thread.currentThread().getThreadGroup();
-		synchronized (HBCIUtilsInternal.locales)
-		{
-			HBCIUtilsInternal.locales.put(threadgroup, locale);
-		}
-		synchronized (HBCIUtilsInternal.locMsgs)
-		{
-			HBCIUtilsInternal.locMsgs.put(threadgroup, ResourceBundle.getBundle("hbci4java-messages", locale));
-		}
+		getContext().setLocale(locale);
 	}
 
 	/**
@@ -1116,13 +1261,13 @@ public final class HBCIUtils
 	 */
 	public static Locale getLocale ( )
 	{
-		ThreadGroup group = Thread.currentThread().getThreadGroup();
-		return HBCIUtilsInternal.locales.get(group);
+		HBCIContext context = HBCIContext.current();
+		return (context != null) ? context.getLocale() : null;
 	}
 
 	/**
 	 * Gibt den aktuellen Wert eines bestimmten HBCI-Parameters zurück. Für jede
-	 * {@link java.lang.ThreadGroup} wird ein separater Satz von HBCI-Parametern
+	 * {@link java.lang.ThreadGroup} bzw. jeden {@link HBCIContext} wird ein separater Satz von HBCI-Parametern
 	 * verwaltet.
 	 *
 	 * @param st
@@ -1133,35 +1278,60 @@ public final class HBCIUtils
 	 */
 	public static String getParam ( String st, String def )
 	{
-		ThreadGroup group = Thread.currentThread().getThreadGroup();
-		Properties config = getParams();
-		if (config == null)
-		{
-			throw new HBCI_Exception(HBCIUtilsInternal.getLocMsg("EXCMSG_THREAD_NOTINIT", group.getName()));
-		}
-		return config.getProperty(st, def);
+		return getContext().getParam(st, def);
 	}
 
 	/**
 	 * Gibt eine Map aller in der aktuellen ThreadGroup gesetzten
-	 * Kernel-Parameter zurück.
+	 * Kernel-Parameter zurück. Die Map ist bei jedem Aufruf eine neue Kopie,
+	 * Änderungen müssen mit {@link #setParam(String, String)} vorgenommen
+	 * werden.
+	 * <p>
+	 * Achtung: in früheren Versionen wurde hier das Original geliefert, so dass
+	 * Änderungen an der zurückgegebenen Map die Kernel-Parameter verändert
+	 * haben. Das ist nicht mehr der Fall - solche Änderungen werden jetzt vom
+	 * Kernel ignoriert.
+	 * </p>
 	 */
 	public static Properties getParams ( )
 	{
-		Properties params;
-		ThreadGroup threadgroup = Thread.currentThread().getThreadGroup();
+		HBCIContext context = HBCIContext.current();
+		return (context != null) ? context.getParams() : null;
+	}
+
+	/**
+	 * Gibt den aktuellen (unveränderlichen) Stand der Kernel-Parameter des im
+	 * aktuellen Thread aktiven {@link HBCIContext} zurück.
+	 *
+	 * @return die Kernel-Parameter
+	 * @throws HBCI_Exception
+	 *             wenn der aktuelle Thread nicht initialisiert ist
+	 */
+	public static HBCIConfig getConfig ( )
+	{
+		return getContext().getConfig();
+	}
 
-		synchronized (configs)
+	/**
+	 * Gibt den im aktuellen Thread aktiven {@link HBCIContext} zurück.
+	 *
+	 * @return der Kontext; niemals <code>null</code>
+	 * @throws HBCI_Exception
+	 *             wenn der aktuelle Thread nicht initialisiert ist
+	 */
+	public static HBCIContext getContext ( )
+	{
+		HBCIContext context = HBCIContext.current();
+		if (context == null)
 		{
-			params = configs.get(threadgroup);
+			throw new HBCI_Exception(HBCIUtilsInternal.getLocMsg("EXCMSG_THREAD_NOTINIT", Thread.currentThread().getThreadGroup().getName()));
 		}
-
-		return params;
+		return context;
 	}
 
 	/**
 	 * Gibt den aktuellen Wert eines bestimmten HBCI-Parameters zurück. Für jede
-	 * {@link java.lang.ThreadGroup} wird ein separater Satz von HBCI-Parametern
+	 * {@link java.lang.ThreadGroup} bzw. jeden {@link HBCIContext} wird ein separater Satz von HBCI-Parametern
 	 * verwaltet.
 	 *
 	 * @param st
@@ -1463,7 +1633,7 @@ public final class HBCIUtils
 	 * Setzt den Wert eines HBCI-Parameters. Eine Beschreibung aller vom Kernel
 	 * ausgewerteten Parameter befindet sich in der
 	 * {@link org.kapott.hbci.manager.HBCIUtils Klassenbeschreibung} zur dieser
-	 * Klasse. Für jede {@link java.lang.ThreadGroup} wird ein separater Satz
+	 * Klasse. Für jede {@link java.lang.ThreadGroup} bzw. jeden {@link HBCIContext} wird ein separater Satz
 	 * von HBCI-Parametern verwaltet.
 	 *
 	 * @param key
@@ -1473,24 +1643,7 @@ public final class HBCIUtils
 	 */
 	public static void setParam ( String key, String value )
 	{
-		ThreadGroup group = Thread.currentThread().getThreadGroup();
-		Properties config = getParams();
-		if (config == null)
-		{
-			throw new HBCI_Exception(HBCIUtilsInternal.getLocMsg("EXCMSG_THREAD_NOTINIT", group.getName()));
-		}
-
-		synchronized (config)
-		{
-			if (value != null)
-			{
-				config.setProperty(key, value);
-			}
-			else
-			{
-				config.remove(key);
-			}
-		}
+		getContext().setParam(key, value);
 	}
 
 	/**
@@ -1508,28 +1661,82 @@ public final class HBCIUtils
 	 *            <li><code>LOG_CHIPCARD</code> (wird nur intern benutzt)</li>
 	 *            </ul>
 	 */
-	public static synchronized void log ( String st, int level )
+	public static void log ( String st, int level )
 	{
-		if (level <= Integer.parseInt(getParam("log.loglevel.default", "2")))
+		HBCIContext context = getContext();
+		HBCIConfig config = context.getConfig();
+		if (level > config.getLogLevel())
 		{
-			StackTraceElement trace = null;
-			try
-			{
-				throw new Exception("");
-			}
-			catch (Exception e)
-			{
-				trace = e.getStackTrace()[1];
-			}
+			return;
+		}
+
+		StackTraceElement trace = config.isLogCaller() ? getCaller() : null;
+		if (config.getLogFilter() != 0)
+		{
+			st = LogFilter.getInstance().filterLine(st, config.getLogFilter());
+		}
+
+		if (config.isLogAsync())
+		{
+			LogDispatcher.getInstance().dispatch(context.getCallback(), st, level, new Date(), trace, config.getLogOverflow());
+		}
+		else
+		{
+			context.getCallback().log(st, level, new Date(), trace);
+		}
+	}
+
+	/**
+	 * Ausgabe einer Log-Meldung, die aus einem festen Text und einem
+	 * (evtl. sehr großen) Objekt besteht. Die String-Darstellung von
+	 * <code>payload</code> wird nur dann erzeugt, wenn die Meldung wegen des
+	 * eingestellten Log-Levels auch tatsächlich ausgegeben wird.
+	 *
+	 * @param prefix
+	 *            fester Text der Meldung
+	 * @param payload
+	 *            Objekt, dessen <code>toString()</code>-Darstellung an
+	 *            <code>prefix</code> angehängt wird
+	 * @param level
+	 *            die "Wichtigkeit" dieser Meldung, siehe
+	 *            {@link #log(String, int)}
+	 */
+	public static void log ( String prefix, Object payload, int level )
+	{
+		if (isLogEnabled(level))
+		{
+			log(prefix + payload, level);
+		}
+	}
+
+	/**
+	 * Gibt zurück, ob Log-Meldungen mit dem angegebenen Level aktuell
+	 * ausgegeben werden. Damit kann das Erzeugen aufwändiger Log-Meldungen
+	 * übersprungen werden, wenn sie ohnehin nicht ausgegeben würden.
+	 *
+	 * @param level
+	 *            der Log-Level, siehe {@link #log(String, int)}
+	 * @return <code>true</code>, wenn Meldungen mit diesem Level ausgegeben
+	 *         werden
+	 */
+	public static boolean isLogEnabled ( int level )
+	{
+		return level <= getContext().getConfig().getLogLevel();
+	}
 
-			int filterLevel = Integer.parseInt(HBCIUtils.getParam("log.filter", "2"));
-			if (filterLevel != 0)
+	/* erstes element des stacktraces ausserhalb dieser klasse */
+	private static StackTraceElement getCaller ( )
+	{
+		StackTraceElement[] stack = new Throwable().getStackTrace();
+		String myName = HBCIUtils.class.getName();
+		for (int i = 1; i < stack.length; i++)
+		{
+			if (!stack[i].getClassName().equals(myName))
 			{
-				st = LogFilter.getInstance().filterLine(st, filterLevel);
+				return stack[i];
 			}
-
-			HBCIUtilsInternal.getCallback().log(st, level, new Date(), trace);
 		}
+		return stack[stack.length - 1];
 	}
 
 	/**
@@ -1540,7 +1747,7 @@ public final class HBCIUtils
 	 *            die Exception, deren <code>getMessage()</code>-Meldungen
 	 *            geloggt werden sollen
 	 */
-	public static synchronized void log ( Exception e )
+	public static void log ( Exception e )
 	{
 		log(e, LOG_ERR);
 	}
@@ -1603,7 +1810,7 @@ public final class HBCIUtils
 	 *            der Log-Level, mit dem die Meldungen geloggt werden sollen.
 	 *            Siehe dazu auch {@link #log(String,int)}
 	 */
-	public static synchronized void log ( Exception e, int level )
+	public static void log ( Exception e, int level )
 	{
 		log(exception2String(e), level);
 	}
@@ -1980,48 +2187,7 @@ public final class HBCIUtils
 	{
 		try
 		{
-			int origSize = x.length;
-
-			if ( ( origSize % 3 ) != 0)
-			{
-				byte[] temp = new byte[ ( ( origSize / 3 ) + 1 ) * 3];
-				System.arraycopy(x, 0, temp, 0, origSize);
-				x = temp;
-			}
-
-			StringBuffer ret = new StringBuffer();
-			int readPos = 0;
-
-			while (readPos < ( x.length << 3 ))
-			{
-				int modulus = readPos & 7;
-				int value;
-
-				if ( ( readPos >> 3 ) < origSize)
-				{
-					if (modulus <= 2)
-					{
-						// six bits in one byte
-						value = ( x[readPos >> 3] >> ( 2 - modulus ) ) & 0x3F;
-					}
-					else
-					{
-						// six bits in two bytes
-						value = ( ( x[readPos >> 3] << ( modulus - 2 ) ) & 0x3F )
-								| ( ( x[ ( readPos >> 3 ) + 1] >> ( 10 - modulus ) ) & ( ( 1 << ( modulus - 2 ) ) - 1 ) );
-					}
-
-					ret.append(base64table[value]);
-				}
-				else
-				{
-					ret.append('=');
-
-				}
-				readPos += 6;
-			}
-
-			return ret.toString();
+			return new String(Base64Codec.encode(x, 0, x.length), Comm.ENCODING);
 		}
 		catch (Exception ex)
 		{
@@ -2042,101 +2208,7 @@ public final class HBCIUtils
 		try
 		{
 			byte[] source = st.getBytes(Comm.ENCODING);
-			byte[] ret = new byte[st.length()];
-			int retlen = 0;
-
-			int needFromFirst = 6;
-			int needFromSecond = 2;
-			boolean abort = false;
-			int byteCounter = 0;
-			int[] values = new int[2];
-
-			for (int readPos = 0; readPos < source.length; readPos++)
-			{
-				values[0] = 0;
-				values[1] = 0;
-
-				for (int step = 0; step < 2; step++)
-				{
-					int value = 0;
-
-					while ( ( readPos + step ) < source.length)
-					{
-						value = source[readPos + step];
-
-						if (value >= '0' && value <= '9' || value >= 'A' && value <= 'Z' || value >= 'a' && value <= 'z' || value == '+' || value == '/'
-								|| value == '=')
-						{
-							break;
-						}
-
-						readPos++;
-					}
-
-					if (! ( value >= '0' && value <= '9' || value >= 'A' && value <= 'Z' || value >= 'a' && value <= 'z' || value == '+' || value == '/' ))
-					{
-
-						abort = true;
-						break;
-					}
-
-					if ((char) value == '/')
-					{
-						value = 63;
-					}
-					else if ((char) value == '+')
-					{
-						value = 62;
-					}
-					else if ((char) value <= '9')
-					{
-						value = 52 + value - (byte) '0';
-					}
-					else if ((char) value <= 'Z')
-					{
-						value = value - (byte) 'A';
-					}
-					else
-					{
-						value = 26 + value - (byte) 'a';
-
-					}
-					if (step == 0)
-					{
-						values[0] = ( value << ( 8 - needFromFirst ) ) & 0xFF;
-					}
-					else
-					{
-						values[1] = ( value >> ( 6 - needFromSecond ) ) & 0xFF;
-					}
-				}
-
-				if (abort)
-				{
-					break;
-				}
-
-				ret[retlen++] = (byte) ( values[0] | values[1] );
-
-				if ( ( byteCounter & 3 ) == 2)
-				{
-					readPos++;
-					byteCounter++;
-					needFromFirst = 6;
-					needFromSecond = 2;
-				}
-				else
-				{
-					needFromFirst = 6 - needFromSecond;
-					needFromSecond = 8 - needFromFirst;
-				}
-
-				byteCounter++;
-			}
-
-			byte[] ret2 = new byte[retlen];
-			System.arraycopy(ret, 0, ret2, 0, retlen);
-			return ret2;
+			return Base64Codec.decode(source, 0, source.length);
 		}
 		catch (Exception ex)
 		{
@@ -25,13 +25,12 @@ import java.math.BigDecimal;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.text.MessageFormat;
-import java.util.Hashtable;
-import java.util.Locale;
 import java.util.Map;
 import java.util.MissingResourceException;
 import java.util.Properties;
 import java.util.ResourceBundle;
 
+import org.kapott.hbci.callback.AbstractHBCICallback;
 import org.kapott.hbci.callback.HBCICallback;
 import org.kapott.hbci.passport.HBCIPassport;
 
@@ -40,9 +39,6 @@ public class HBCIUtilsInternal
 
     public static Properties blzs;
     public static Map<String,BankInfo> banks = null;
-    public static Hashtable<ThreadGroup, HBCICallback>  callbacks;  // threadgroup->callbackObject
-    public static Hashtable<ThreadGroup, ResourceBundle>  locMsgs;    // threadgroup->resourceBundle
-    public static Hashtable<ThreadGroup, Locale>  locales;    // threadgroup->Locale
     
     public static String bigDecimal2String(BigDecimal value)
     {
@@ -101,16 +97,34 @@ public class HBCIUtilsInternal
 
     public static HBCICallback getCallback()
     {
-        ThreadGroup group=Thread.currentThread().getThreadGroup();
-        return callbacks.get(group);
+        HBCIContext context=HBCIContext.current();
+        return (context!=null)?context.getCallback():null;
+    }
+    
+    /** Gibt an, ob der Callback der aktuellen ThreadGroup Status-Meldungen
+        mit dem Tag <code>statusTag</code> auswertet, siehe
+        {@link AbstractHBCICallback#isStatusWanted(int)}. Callbacks, die nicht
+        von {@link AbstractHBCICallback} abgeleitet sind, erhalten alle
+        Status-Meldungen. */
+    public static boolean isStatusWanted(int statusTag)
+    {
+        return isStatusWanted(getCallback(),statusTag);
+    }
+    
+    public static boolean isStatusWanted(HBCICallback callback,int statusTag)
+    {
+        if (callback instanceof AbstractHBCICallback)
+            return ((AbstractHBCICallback)callback).isStatusWanted(statusTag);
+        return true;
     }
     
     public static String getLocMsg(String key)
     {
-        ThreadGroup group=Thread.currentThread().getThreadGroup();
+        HBCIContext    context=HBCIContext.current();
+        ResourceBundle msgs=(context!=null)?context.getLocMsgs():ResourceBundle.getBundle("hbci4java-messages");
         try
         {
-            return locMsgs.get(group).getString(key);
+            return msgs.getString(key);
         }
         catch (MissingResourceException re)
         {
@@ -0,0 +1,355 @@
+/*  This file is part of HBCI4Java
+    Copyright (C) 2001-2008  Stefan Palme
+
+    HBCI4Java is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    HBCI4Java is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package org.kapott.hbci.manager;
+
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.kapott.hbci.callback.HBCICallback;
+
+/** <p>Asynchrone Zustellung der Log-Ausgaben an die Callback-Objekte. Wird
+    der Kernel-Parameter <code>log.async</code> auf 1 gesetzt, stellt
+    {@link HBCIUtils#log(String, int)} die Log-Meldungen nur noch in einen
+    Ringpuffer fester Größe ein. Ein separater Thread entnimmt die Meldungen
+    und ruft damit {@link HBCICallback#log(String, int, Date, StackTraceElement)}
+    auf - die erzeugenden Threads warten also nicht mehr auf eine evtl. langsame
+    Log-Ausgabe.</p>
+    <p>Der Ringpuffer kommt ohne Locks aus; mehrere Threads können gleichzeitig
+    Meldungen einstellen. Ist der Puffer voll, wird abhängig von
+    <code>log.async.overflow</code> gewartet, die Meldung verworfen oder direkt
+    im erzeugenden Thread ausgegeben. Wie oft das passiert ist, kann mit
+    {@link #getDropped()} und {@link #getOverflows()} abgefragt werden.
+    Exceptions aus dem Callback werden im Zustell-Thread nur gezählt
+    ({@link #getFailed()}).</p> */
+public final class LogDispatcher
+{
+    /** Bei vollem Puffer warten, bis wieder Platz ist */
+    public final static int OVERFLOW_BLOCK=0;
+    /** Bei vollem Puffer die neue Meldung verwerfen */
+    public final static int OVERFLOW_DROP=1;
+    /** Bei vollem Puffer die Meldung direkt im erzeugenden Thread ausgeben */
+    public final static int OVERFLOW_SYNC=2;
+
+    private final static int DEFAULT_SIZE=8192;
+
+    private static volatile LogDispatcher _instance;
+
+    /* wird nur im consumer-thread gesetzt, während ein event zugestellt wird */
+    private final static ThreadLocal<Thread> source=new ThreadLocal<Thread>();
+
+    private final Event[]         buffer;
+    private final AtomicLongArray sequences;
+    private final int             mask;
+    private final AtomicLong      head=new AtomicLong();
+    private volatile long         tail;
+    private volatile long         delivered;
+
+    private final AtomicLong dropped=new AtomicLong();
+    private final AtomicLong overflows=new AtomicLong();
+    private final AtomicLong failed=new AtomicLong();
+
+    private final Thread     consumer;
+    private volatile boolean waiting;
+    private volatile boolean running=true;
+
+    private final static class Event
+    {
+        final HBCICallback      callback;
+        final String            msg;
+        final int               level;
+        final Date              date;
+        final StackTraceElement trace;
+        final Thread            thread;
+
+        Event(HBCICallback callback,String msg,int level,Date date,StackTraceElement trace)
+        {
+            this.callback=callback;
+            this.msg=msg;
+            this.level=level;
+            this.date=date;
+            this.trace=trace;
+            this.thread=Thread.currentThread();
+        }
+    }
+
+    /** Liefert die Instanz des Dispatchers, beim ersten Aufruf wird sie mit
+        der Puffergröße aus <code>log.async.size</code> erzeugt. */
+    public static LogDispatcher getInstance()
+    {
+        // nur beim ersten aufruf synchronisieren
+        LogDispatcher ret=_instance;
+        if (ret!=null) {
+            return ret;
+        }
+        return create();
+    }
+
+    private static synchronized LogDispatcher create()
+    {
+        if (_instance==null) {
+            int size=DEFAULT_SIZE;
+            try {
+                size=Integer.parseInt(HBCIUtils.getParam("log.async.size",Integer.toString(DEFAULT_SIZE)));
+            } catch (Exception e) {
+                // thread nicht initialisiert oder ungültiger wert - default benutzen
+            }
+            _instance=new LogDispatcher(size);
+        }
+        return _instance;
+    }
+
+    /** Stellt alle noch im Puffer befindlichen Meldungen zu und beendet den
+        Zustell-Thread. Wird von {@link HBCIUtils#done()} aufgerufen. */
+    public static synchronized void shutdown()
+    {
+        if (_instance!=null) {
+            _instance.stop();
+            _instance=null;
+        }
+    }
+
+    /** Liefert den Thread, aus dem die gerade ausgegebene Log-Meldung stammt.
+        Für Callback-Implementierungen, die den Thread-Namen mit ausgeben; bei
+        synchroner Ausgabe ist das einfach der aktuelle Thread. */
+    public static Thread getSourceThread()
+    {
+        Thread ret=source.get();
+        return (ret!=null)?ret:Thread.currentThread();
+    }
+
+    private LogDispatcher(int size)
+    {
+        // puffergröße auf die nächste zweierpotenz aufrunden
+        int capacity=2;
+        while (capacity<size && capacity<(1<<30)) {
+            capacity<<=1;
+        }
+
+        this.buffer=new Event[capacity];
+        this.sequences=new AtomicLongArray(capacity);
+        this.mask=capacity-1;
+        for (int i=0;i<capacity;i++) {
+            sequences.set(i,i);
+        }
+
+        this.consumer=new Thread(new Runnable() {
+            public void run()
+            {
+                consume();
+            }
+        },"HBCI4Java-Log");
+        this.consumer.setDaemon(true);
+        this.consumer.start();
+    }
+
+    /* einstellen in den ringpuffer (mehrere produzenten) */
+    private boolean offer(Event e)
+    {
+        long pos=head.get();
+        while (true) {
+            int  idx=(int)(pos&mask);
+            long diff=sequences.get(idx)-pos;
+
+            if (diff==0) {
+                if (head.compareAndSet(pos,pos+1)) {
+                    buffer[idx]=e;
+                    sequences.lazySet(idx,pos+1);
+                    return true;
+                }
+                pos=head.get();
+            } else if (diff<0) {
+                // puffer voll
+                return false;
+            } else {
+                pos=head.get();
+            }
+        }
+    }
+
+    /* entnehmen aus dem ringpuffer (nur ein konsument) */
+    private Event poll()
+    {
+        long pos=tail;
+        int  idx=(int)(pos&mask);
+        if (sequences.get(idx)!=pos+1)
+            return null;
+
+        Event e=buffer[idx];
+        buffer[idx]=null;
+        sequences.lazySet(idx,pos+mask+1);
+        tail=pos+1;
+        return e;
+    }
+
+    private void consume()
+    {
+        while (true) {
+            Event e=poll();
+            if (e!=null) {
+                deliver(e);
+                delivered++;
+                continue;
+            }
+
+            if (!running && head.get()==tail)
+                break;
+
+            waiting=true;
+            if (head.get()==tail && running) {
+                LockSupport.parkNanos(this,100000000L);
+            }
+            waiting=false;
+        }
+    }
+
+    private void deliver(Event e)
+    {
+        source.set(e.thread);
+        try {
+            e.callback.log(e.msg,e.level,e.date,e.trace);
+        } catch (Throwable t) {
+            // kann nicht über HBCIUtils.log() ausgegeben werden
+            failed.incrementAndGet();
+        } finally {
+            source.remove();
+        }
+    }
+
+    /** Stellt eine Log-Meldung zur Ausgabe ein.
+        @param callback das Callback-Objekt, an das die Meldung übergeben wird
+        @param overflow Verhalten bei vollem Puffer (<code>OVERFLOW_*</code>) */
+    public void dispatch(HBCICallback callback,String msg,int level,Date date,StackTraceElement trace,int overflow)
+    {
+        if (!running || Thread.currentThread()==consumer) {
+            // log-ausgaben aus dem callback selbst direkt ausgeben
+            callback.log(msg,level,date,trace);
+            return;
+        }
+
+        Event e=new Event(callback,msg,level,date,trace);
+        if (!offer(e)) {
+            overflows.incrementAndGet();
+            switch (overflow) {
+                case OVERFLOW_DROP:
+                    dropped.incrementAndGet();
+                    return;
+                case OVERFLOW_SYNC:
+                    callback.log(msg,level,date,trace);
+                    return;
+                default:
+                    while (!offer(e)) {
+                        if (!running) {
+                            callback.log(msg,level,date,trace);
+                            return;
+                        }
+                        LockSupport.unpark(consumer);
+                        LockSupport.parkNanos(100000L);
+                    }
+            }
+        }
+
+        if (!running) {
+            // der zustell-thread wurde evtl. beendet, nachdem oben noch
+            // running==true galt - dann würde die meldung im puffer liegen bleiben
+            drainStopped();
+        } else if (waiting) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    /* stellt nach dem beenden des zustell-threads die restlichen meldungen
+       im aufrufenden thread zu. synchronisiert, damit es auch dann nur einen
+       konsumenten gibt, wenn mehrere produzenten gleichzeitig hier ankommen */
+    private synchronized void drainStopped()
+    {
+        try {
+            // falls der zustell-thread noch läuft, stellt er die meldung selbst zu
+            consumer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        Event e;
+        while ((e=poll())!=null) {
+            deliver(e);
+            delivered++;
+        }
+    }
+
+    /** Wartet, bis alle bis jetzt eingestellten Meldungen ausgegeben wurden. */
+    public void flush()
+    {
+        long target=head.get();
+        while (delivered<target && consumer.isAlive()) {
+            LockSupport.unpark(consumer);
+            LockSupport.parkNanos(100000L);
+        }
+    }
+
+    private void stop()
+    {
+        flush();
+        running=false;
+        LockSupport.unpark(consumer);
+        try {
+            consumer.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** @return Anzahl der Meldungen, die wegen eines vollen Puffers verworfen
+                wurden (<code>log.async.overflow=drop</code>) */
+    public long getDropped()
+    {
+        return dropped.get();
+    }
+
+    /** @return Anzahl der Meldungen, die nicht sofort in den Puffer eingestellt
+                werden konnten (unabhängig vom eingestellten Verhalten) */
+    public long getOverflows()
+    {
+        return overflows.get();
+    }
+
+    /** @return Anzahl der Meldungen, bei deren Zustellung der Callback eine
+                Exception geworfen hat */
+    public long getFailed()
+    {
+        return failed.get();
+    }
+
+    /** Setzt die Zähler {@link #getDropped()}, {@link #getOverflows()} und
+        {@link #getFailed()} zurück. */
+    public void resetCounters()
+    {
+        dropped.set(0);
+        overflows.set(0);
+        failed.set(0);
+    }
+
+    /** @return Größe des Ringpuffers */
+    public int getCapacity()
+    {
+        return buffer.length;
+    }
+}
@@ -23,119 +23,414 @@ package org.kapott.hbci.manager;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Hashtable;
-import java.util.Iterator;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-// TODO: doku fehlt
-public class LogFilter 
+/** <p>Entfernt geheime Daten (PINs, Kennungen, Kontonummern, ...) aus den
+    Log-Ausgaben und Exception-Meldungen. Die zu filternden Daten werden mit
+    {@link #addSecretData(String, String, int)} registriert und beim Aufruf
+    von {@link #filterLine(String, int)} durch einen Ersatz-String ersetzt.</p>
+    <p>Die geheimen Daten werden für jeden explizit aktivierten {@link HBCIContext}
+    separat verwaltet; der Kontext wird mit {@link HBCIContext#wrap(Runnable)}
+    auch an andere Threads weitergegeben. Daten, die ohne aktivierten Kontext
+    registriert werden, gelten wie bisher für den ganzen Prozess - egal, aus
+    welchem Thread bzw. welcher <code>ThreadGroup</code> später geloggt wird.
+    Eine Log-Zeile wird also mit den prozessweiten Daten und denen des aktiven
+    Kontextes gefiltert.</p>
+    <p>Die geheimen Daten werden zu Suchautomaten (Aho-Corasick) zusammengefasst,
+    so dass eine Log-Zeile nicht für jedes einzelne Secret durchsucht werden
+    muss. Die Automaten werden erst beim nächsten Filtern nach dem Registrieren
+    neuer Daten erzeugt. Neue Daten landen dabei zunächst in einem kleinen
+    Automaten, der erst mit den größeren zusammengefasst wird, wenn er selbst
+    deren Größe erreicht - das Registrieren vieler Daten bleibt so auch dann
+    billig, wenn zwischendurch geloggt wird. Das Filtern selbst kommt ohne
+    Locks aus.</p> */
+public class LogFilter
 {
-    public static final int FILTER_NONE=0;
-    public static final int FILTER_SECRETS=1;
-    public static final int FILTER_IDS=2;
-    public static final int FILTER_MOST=3;
-
-	private static LogFilter _instance;
-	
-	private Map<Integer,List<String[]>> secretDataByLevel;
-	
-	public static synchronized LogFilter getInstance()
+	public static final int FILTER_NONE=0;
+	public static final int FILTER_SECRETS=1;
+	public static final int FILTER_IDS=2;
+	public static final int FILTER_MOST=3;
+
+	private static volatile LogFilter _instance;
+
+	/* die ohne aktivierten kontext registrierten daten */
+	private volatile Scope global;
+
+	/* ein registriertes secret; der level kann nachträglich nur kleiner werden */
+	private final static class Entry
 	{
-		if (_instance==null) {
-			_instance=new LogFilter();
+		final String secret;
+		final String replacement;
+		volatile int level;
+
+		Entry(String secret,String replacement,int level)
+		{
+			this.secret=secret;
+			this.replacement=replacement;
+			this.level=level;
 		}
-		return _instance;
 	}
-	
-	private LogFilter()
+
+	/* die geheimen daten des prozesses bzw. eines kontextes */
+	final static class Scope
+	{
+		/* nur mit lock auf das scope-objekt */
+		private final Map<String,Entry> secretData=new HashMap<String,Entry>();
+		private final List<Entry>       pending=new ArrayList<Entry>();
+
+		/* automaten mit absteigender größe */
+		private volatile Matcher[] matchers=new Matcher[0];
+		private volatile boolean   dirty;
+		private volatile int       minLevel=Integer.MAX_VALUE;
+
+		synchronized void add(String secret,String replacement,int level)
+		{
+			Entry entry=secretData.get(secret);
+			if (entry!=null) {
+				// secret schon in filterliste - evtl. gilt es jetzt schon
+				// für einen niedrigeren filter-level
+				if (level>=entry.level)
+					return;
+				entry.level=level;
+			} else {
+				entry=new Entry(secret,replacement,level);
+				secretData.put(secret,entry);
+				pending.add(entry);
+				dirty=true;
+			}
+
+			if (level<minLevel)
+				minLevel=level;
+		}
+
+		private Matcher[] getMatchers()
+		{
+			if (dirty) {
+				synchronized (this) {
+					if (dirty) {
+						matchers=merge(matchers,pending);
+						pending.clear();
+						dirty=false;
+					}
+				}
+			}
+			return matchers;
+		}
+
+		/* die neuen daten werden mit den kleinsten automaten zusammengefasst,
+		 * bis der neue automat kleiner als sein vorgänger ist (wie beim binären
+		 * zählen). so gibt es höchstens log2(n)+1 automaten, und jedes secret
+		 * wird höchstens log2(n)+1 mal in einen automaten eingebaut */
+		private static Matcher[] merge(Matcher[] matchers,List<Entry> pending)
+		{
+			List<Entry> entries=new ArrayList<Entry>(pending);
+			int         count=matchers.length;
+			while (count>0 && matchers[count-1].size()<=entries.size()) {
+				entries.addAll(Arrays.asList(matchers[--count].entries));
+			}
+
+			Matcher[] ret=Arrays.copyOf(matchers,count+1);
+			ret[count]=new Matcher(entries);
+			return ret;
+		}
+
+		String filter(String line,int filterLevel)
+		{
+			if (filterLevel<minLevel)
+				return line;
+
+			// startposition -> längstes dort beginnendes secret
+			Entry[] found=null;
+			for (Matcher matcher:getMatchers()) {
+				found=matcher.collect(line,filterLevel,found);
+			}
+			if (found==null)
+				return line;
+
+			// treffer von links nach rechts ersetzen, bei überlappenden
+			// treffern gewinnt der am weitesten links beginnende
+			int          len=line.length();
+			StringBuffer ret=new StringBuffer(len);
+			int          posi=0;
+			while (posi<len) {
+				Entry entry=found[posi];
+				if (entry!=null) {
+					ret.append(entry.replacement);
+					posi+=entry.secret.length();
+				} else {
+					ret.append(line.charAt(posi++));
+				}
+			}
+			return ret.toString();
+		}
+	}
+
+	/* unveränderlicher suchautomat über eine menge von secrets */
+	private final static class Matcher
+	{
+		private final static Comparator<Entry> BY_SECRET=new Comparator<Entry>() {
+			public int compare(Entry e1,Entry e2)
+			{
+				return e1.secret.compareTo(e2.secret);
+			}
+		};
+
+		private final Entry[] entries;
+
+		/* übergänge von zustand s: labels/targets[first[s]..first[s+1]-1],
+		 * nach zeichen sortiert. dazu fehlerfunktion, im zustand endendes secret
+		 * und nächster zustand in der fehlerkette mit einem secret */
+		private final int[]  first;
+		private final char[] labels;
+		private final int[]  targets;
+		private final int[]  fail;
+		private final int[]  out;
+		private final int[]  dict;
+
+		Matcher(List<Entry> list)
+		{
+			this.entries=list.toArray(new Entry[list.size()]);
+			Arrays.sort(entries,BY_SECRET);
+
+			int maxStates=1;
+			for (Entry entry:entries) {
+				maxStates+=entry.secret.length();
+			}
+
+			// trie als "erstes kind/nächster bruder" aufbauen. durch die sortierung
+			// teilt jedes secret mit seinem vorgänger genau das gemeinsame präfix,
+			// und die kinder eines zustands entstehen in aufsteigender reihenfolge
+			char[] label=new char[maxStates];
+			int[]  child=new int[maxStates];
+			int[]  lastChild=new int[maxStates];
+			int[]  sibling=new int[maxStates];
+			int[]  childCount=new int[maxStates];
+			int[]  ends=new int[maxStates];
+			int[]  path=new int[maxStates];
+			int    states=1;
+			String prev="";
+
+			ends[0]=-1;
+			for (int i=0;i<entries.length;i++) {
+				String secret=entries[i].secret;
+				int    common=0;
+				int    max=Math.min(prev.length(),secret.length());
+				while (common<max && prev.charAt(common)==secret.charAt(common)) {
+					common++;
+				}
+
+				int state=path[common];
+				for (int j=common;j<secret.length();j++) {
+					int next=states++;
+					label[next]=secret.charAt(j);
+					ends[next]=-1;
+					if (childCount[state]++==0) {
+						child[state]=next;
+					} else {
+						sibling[lastChild[state]]=next;
+					}
+					lastChild[state]=next;
+					path[j+1]=next;
+					state=next;
+				}
+				ends[state]=i;
+				prev=secret;
+			}
+
+			this.first=new int[states+1];
+			this.labels=new char[states-1];
+			this.targets=new int[states-1];
+			this.fail=new int[states];
+			this.out=Arrays.copyOf(ends,states);
+			this.dict=new int[states];
+
+			int edge=0;
+			for (int s=0;s<states;s++) {
+				first[s]=edge;
+				for (int c=0,t=child[s];c<childCount[s];c++,t=sibling[t]) {
+					labels[edge]=label[t];
+					targets[edge++]=t;
+				}
+			}
+			first[states]=edge;
+
+			// fehlerfunktion per breitensuche berechnen
+			int[] queue=new int[states];
+			int   head=0;
+			int   tail=0;
+			dict[0]=-1;
+			for (int k=first[0];k<first[1];k++) {
+				int v=targets[k];
+				fail[v]=0;
+				dict[v]=-1;
+				queue[tail++]=v;
+			}
+			while (head<tail) {
+				int u=queue[head++];
+				for (int k=first[u];k<first[u+1];k++) {
+					char c=labels[k];
+					int  v=targets[k];
+
+					int f=fail[u];
+					int g;
+					while ((g=next(f,c))==-1 && f!=0) {
+						f=fail[f];
+					}
+					fail[v]=(g!=-1)?g:0;
+					dict[v]=(out[fail[v]]!=-1)?fail[v]:dict[fail[v]];
+					queue[tail++]=v;
+				}
+			}
+		}
+
+		int size()
+		{
+			return entries.length;
+		}
+
+		private int next(int state,char c)
+		{
+			int from=first[state];
+			int to=first[state+1];
+			if (to-from<8) {
+				for (int i=from;i<to;i++) {
+					if (labels[i]==c)
+						return targets[i];
+				}
+				return -1;
+			}
+			int idx=Arrays.binarySearch(labels,from,to,c);
+			return (idx>=0)?targets[idx]:-1;
+		}
+
+		/* trägt die treffer in <found> ein (wird bei bedarf erzeugt) */
+		Entry[] collect(String line,int filterLevel,Entry[] found)
+		{
+			int len=line.length();
+			int state=0;
+
+			for (int i=0;i<len;i++) {
+				char c=line.charAt(i);
+				int  t;
+				while ((t=next(state,c))==-1 && state!=0) {
+					state=fail[state];
+				}
+				state=(t!=-1)?t:0;
+
+				for (int o=(out[state]!=-1)?state:dict[state];o!=-1;o=dict[o]) {
+					Entry entry=entries[out[o]];
+					if (entry.level>filterLevel)
+						continue;
+
+					int start=i-entry.secret.length()+1;
+					if (found==null) {
+						found=new Entry[len];
+					}
+					Entry prev=found[start];
+					if (prev==null || prev.secret.length()<entry.secret.length()) {
+						found[start]=entry;
+					}
+				}
+			}
+			return found;
+		}
+	}
+
+	public static LogFilter getInstance()
 	{
-		this.secretDataByLevel = new Hashtable<Integer, List<String[]>>();
+		// nur beim ersten aufruf synchronisieren
+		LogFilter ret=_instance;
+		if (ret==null) {
+			synchronized (LogFilter.class) {
+				ret=_instance;
+				if (ret==null) {
+					_instance=ret=new LogFilter();
+				}
+			}
+		}
+		return ret;
 	}
-	
-	public synchronized void clearSecretData()
+
+	private LogFilter()
 	{
-		this.secretDataByLevel.clear();
+		this.global=new Scope();
 	}
-	
-	public synchronized void addSecretData(String secret, String replacement, int level)
+
+	/** Entfernt die prozessweiten geheimen Daten sowie die des im aktuellen
+	    Thread aktivierten {@link HBCIContext}. */
+	public void clearSecretData()
 	{
-	    if (secret!=null && secret.length()!=0) {
-	        // liste der secrets im gewählten level holen bzw. erzeugen
-	        List<String[]> secretData= secretDataByLevel.get(new Integer(level));
-	        if (secretData==null) {
-	            secretData=new ArrayList<String[]>();
-	            secretDataByLevel.put(new Integer(level),secretData);
-	        }
-
-	        // duplikats-check für "secret"
-	        boolean found=false;
-	        for (Iterator<String[]> i=secretData.iterator();i.hasNext();) {
-	            String[] entry= i.next();
-	            if (entry[0].equals(secret)) {
-	                found=true;
-	                break;
-	            }
-	        }
-
-	        if (!found) {
-	            // secret noch nicht in filterliste
-
-	            if (replacement==null || replacement.length()<2) {
-	                // wenn der replacement-string kein vollständiger String ist,
-	                // diesen mit einem Filler auf die länge des secrets bringen 
-	                char filler;
-
-	                if (replacement!=null && replacement.length()==1) {
-	                    // der replacement-string besteht aus genau einem zeichen,
-	                    // also dieses zeichen als filler verwenden
-	                    filler=replacement.charAt(0);
-	                } else {
-	                    // ansonsten default-filler "X" verwenden
-	                    filler='X';
-	                }
-
-	                char[] ca=new char[secret.length()];
-	                Arrays.fill(ca,filler);
-	                replacement=new String(ca);
-	            }
-
-	            secretData.add(new String[] {secret,replacement});
-	        }
-	    }
+		this.global=new Scope();
+
+		HBCIContext context=HBCIContext.getBound();
+		if (context!=null) {
+			context.secrets=null;
+		}
 	}
-	
-	public synchronized String filterLine(String line, int filterLevel)
+
+	/** Registriert geheime Daten für den im aktuellen Thread aktivierten
+	    {@link HBCIContext} bzw. (ohne aktivierten Kontext) für den ganzen Prozess.
+	    @param secret die zu filternden Daten
+	    @param replacement Ersatz-String; besteht er aus weniger als zwei Zeichen,
+	           wird das Secret durch dieses Zeichen (bzw. "X") in der Länge des
+	           Secrets ersetzt
+	    @param level ab welchem Filter-Level (<code>FILTER_*</code>) die Daten
+	           gefiltert werden */
+	public void addSecretData(String secret, String replacement, int level)
 	{
-		String ret=null;
-		if (line!=null) {
-			StringBuffer line2=new StringBuffer(line);
-
-			for (int level=filterLevel; level>0; level--) {
-				List<String[]> secretData= secretDataByLevel.get(new Integer(level));
-				if (secretData==null) {
-					continue;
-				}
-				
-				for (Iterator<String[]> i = secretData.iterator(); i.hasNext();) {
-					String[] entry = i.next();
+		if (secret!=null && secret.length()!=0) {
+			if (replacement==null || replacement.length()<2) {
+				// wenn der replacement-string kein vollständiger String ist,
+				// diesen mit einem Filler auf die länge des secrets bringen
+				char filler;
 
-					String secret=entry[0];
-					String replacement=entry[1];
+				if (replacement!=null && replacement.length()==1) {
+					// der replacement-string besteht aus genau einem zeichen,
+					// also dieses zeichen als filler verwenden
+					filler=replacement.charAt(0);
+				} else {
+					// ansonsten default-filler "X" verwenden
+					filler='X';
+				}
 
-					if (secret.isEmpty()) {
-						continue;
-					}
+				char[] ca=new char[secret.length()];
+				Arrays.fill(ca,filler);
+				replacement=new String(ca);
+			}
 
-					int posi=0;
-					while ((posi=line2.indexOf(secret,posi))!=-1) {
-						line2.replace(posi,posi+secret.length(),replacement);
-						posi+=replacement.length();
+			HBCIContext context=HBCIContext.getBound();
+			Scope       scope;
+			if (context!=null) {
+				synchronized (context) {
+					scope=context.secrets;
+					if (scope==null) {
+						scope=new Scope();
+						context.secrets=scope;
 					}
 				}
+			} else {
+				scope=global;
+			}
+			scope.add(secret,replacement,level);
+		}
+	}
+
+	/** Ersetzt alle prozessweiten geheimen Daten und die des aktivierten
+	    Kontextes, die für den Filter-Level <code>filterLevel</code> registriert
+	    wurden. */
+	public String filterLine(String line, int filterLevel)
+	{
+		String ret=line;
+		if (line!=null && filterLevel>0) {
+			HBCIContext context=HBCIContext.getBound();
+			Scope       scope=(context!=null)?context.secrets:null;
+			if (scope!=null) {
+				ret=scope.filter(ret,filterLevel);
 			}
-		
-			ret=line2.toString();
+			ret=global.filter(ret,filterLevel);
 		}
 		return ret;
 	}
@@ -26,18 +26,13 @@ import java.util.ArrayList;
 import java.util.Hashtable;
 import java.util.List;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.FactoryConfigurationError;
-import javax.xml.parsers.ParserConfigurationException;
 
-import org.kapott.hbci.exceptions.HBCI_Exception;
 import org.kapott.hbci.protocol.MSG;
+import org.kapott.hbci.protocol.SyntaxDef;
+import org.kapott.hbci.protocol.SyntaxRef;
+import org.kapott.hbci.protocol.SyntaxSpec;
 import org.kapott.hbci.protocol.factory.MSGFactory;
 import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
 /* Message-Generator-Klasse. Diese Klasse verwaltet die Syntax-Spezifikation
  * für die zu verwendende HBCI-Version. Hiermit wird das Erzeugen von
@@ -57,13 +52,20 @@ import org.w3c.dom.NodeList;
  *      mit "<msgName>." beginnen).*/
 public final class MsgGen
 {
-    private Document syntax;         /**< @internal @brief The representation of the syntax used by this generator */
+    private SyntaxSpec syntax;       /**< @internal @brief The (compiled) representation of the syntax used by this generator */
     private Hashtable<String, String> clientValues;  /**< @internal @brief A table of properties set by the user to specify the message to be generated */
     
-    // Wird vom Server-Code benutzt. Wenn ein Dialog reinkommt mit einer HBCI-
-    // Version, die schon mal benutzt wurde, dann wird nicht das entsprechende
-    // XML-Document nochmal erzeugt, sondern das alte wiederbenutzt.
+    // Wird vom Server-Code und vom Kernel benutzt. Wenn eine HBCI-Version
+    // schon mal benutzt wurde, dann wird nicht das entsprechende XML-Document
+    // nochmal erzeugt, sondern das alte wiederbenutzt (siehe SyntaxRegistry).
+    // Das Document wird dabei nur gelesen, alle generator-spezifischen Daten
+    // liegen in clientValues.
     public MsgGen(Document syntax)
+    {
+        this(new SyntaxSpec(syntax));
+    }
+
+    public MsgGen(SyntaxSpec syntax)
     {
         this.syntax=syntax;
         this.clientValues=new Hashtable<String, String>();
@@ -74,24 +76,7 @@ public final class MsgGen
      * eingelesen wird */
     public MsgGen(InputStream syntaxFileStream)
     {
-        try {
-            DocumentBuilderFactory dbf=DocumentBuilderFactory.newInstance();
-
-            dbf.setIgnoringComments(true);
-            dbf.setValidating(true);
-
-            DocumentBuilder db=dbf.newDocumentBuilder();
-            syntax=db.parse(syntaxFileStream);
-            syntaxFileStream.close();
-
-            clientValues=new Hashtable<String, String>();
-        } catch (FactoryConfigurationError e) {
-            throw new HBCI_Exception(HBCIUtilsInternal.getLocMsg("EXCMSG_MSGGEN_DBFAC"),e);
-        } catch (ParserConfigurationException e) {
-            throw new HBCI_Exception(HBCIUtilsInternal.getLocMsg("EXCMSG_MSGGEN_DB"),e);
-        } catch (Exception e) {
-            throw new HBCI_Exception(HBCIUtilsInternal.getLocMsg("EXCMSG_MSGGEN_STXFILE"),e);
-        }
+        this(SyntaxRegistry.parseSyntax(syntaxFileStream));
     }
 
     /** @internal 
@@ -134,6 +119,13 @@ public final class MsgGen
         @return The internally used representation of a HBCI syntax description.
      */
     public Document getSyntax()
+    {
+        return syntax.getDocument();
+    }
+
+    /** @internal @brief Returns the compiled representation of the HBCI syntax
+        used by this generator. This is what the protocol classes work on. */
+    public SyntaxSpec getSyntaxSpec()
     {
         return syntax;
     }
@@ -142,33 +134,28 @@ public final class MsgGen
     {
         Hashtable<String, List<String>> result=new Hashtable<String, List<String>>();
         
-        Element      gvlist=syntax.getElementById("GV");
-        NodeList     gvs=gvlist.getChildNodes();
-        int          len=gvs.getLength();
+        SyntaxDef    gvlist=syntax.getDef("GV");
         StringBuffer type=new StringBuffer();
         
-        for (int i=0;i<len;i++) {
-            Node gvref=gvs.item(i);
-            if (gvref.getNodeType()==Node.ELEMENT_NODE) {
-                type.setLength(0);
-                type.append(((Element)gvref).getAttribute("type"));
-                
-                int  pos=type.length()-1;
-                char ch;
-                
-                while ((ch=type.charAt(pos))>='0' && ch<='9') {
-                    pos--;
-                }
-                
-                String gvname=type.substring(0,pos+1);
-                List<String>   entry= result.get(gvname);
-                
-                if (entry==null) {
-                    entry=new ArrayList<String>();
-                    result.put(gvname,entry);
-                }
-                entry.add(type.substring(pos+1));
+        for (SyntaxRef gvref:gvlist.getChildren()) {
+            type.setLength(0);
+            type.append(gvref.getType());
+            
+            int  pos=type.length()-1;
+            char ch;
+            
+            while ((ch=type.charAt(pos))>='0' && ch<='9') {
+                pos--;
+            }
+            
+            String gvname=type.substring(0,pos+1);
+            List<String>   entry= result.get(gvname);
+            
+            if (entry==null) {
+                entry=new ArrayList<String>();
+                result.put(gvname,entry);
             }
+            entry.add(type.substring(pos+1));
         }
         
         return result;
@@ -195,22 +182,11 @@ public final class MsgGen
     public List<String> getGVParameterNames(String gvname,String version)
     {
         ArrayList<String> ret=new ArrayList<String>();
-        Element   gvdef=syntax.getElementById(gvname+version);
-        NodeList  gvcontent=gvdef.getChildNodes();
-        int       len=gvcontent.getLength();
+        SyntaxRef[] gvcontent=syntax.getDef(gvname+version).getChildren();
 
-        boolean first=true;
-        for (int i=0;i<len;i++) {
-            Node contentref=gvcontent.item(i);
-
-            if (contentref.getNodeType()==Node.ELEMENT_NODE) {
-                // skip seghead
-                if (first) {
-                    first=false;
-                } else {
-                    addLowlevelProperties(ret,"",(Element)contentref);
-                }
-            }
+        // skip seghead
+        for (int i=1;i<gvcontent.length;i++) {
+            addLowlevelProperties(ret,"",gvcontent[i]);
         }
 
         return ret;
@@ -237,23 +213,13 @@ public final class MsgGen
     public List<String> getGVResultNames(String gvname,String version)
     {
         ArrayList<String> ret=new ArrayList<String>();
-        Element   gvdef=syntax.getElementById(gvname+"Res"+version);
+        SyntaxDef gvdef=syntax.getDef(gvname+"Res"+version);
         
         if (gvdef!=null) {
-            NodeList gvcontent=gvdef.getChildNodes();
-            int len=gvcontent.getLength();
-
-            boolean first=true;
-            for (int i=0;i<len;i++) {
-                Node contentref=gvcontent.item(i);
-
-                if (contentref.getNodeType()==Node.ELEMENT_NODE) {
-                    if (first) {
-                        first=false;
-                    } else {
-                        addLowlevelProperties(ret,"",(Element)contentref);
-                    }
-                }
+            // skip seghead
+            SyntaxRef[] gvcontent=gvdef.getChildren();
+            for (int i=1;i<gvcontent.length;i++) {
+                addLowlevelProperties(ret,"",gvcontent[i]);
             }
         }
 
@@ -283,42 +249,24 @@ public final class MsgGen
         ArrayList<String> ret=new ArrayList<String>();
         
         // SEGdef id="TermUebPar1" finden
-        Element   gvdef=syntax.getElementById(gvname+"Par"+version);
+        SyntaxDef gvdef=syntax.getDef(gvname+"Par"+version);
         
         if (gvdef!=null) {
             // alle darin enthaltenen elemente durchlaufen, bis ein element
             // DEG type="ParTermUeb1" gefunden ist
-            NodeList gvcontent=gvdef.getChildNodes();
-            int len=gvcontent.getLength();
-
-            for (int i=0;i<len;i++) {
-                Node contentref=gvcontent.item(i);
-
-                if (contentref.getNodeType()==Node.ELEMENT_NODE) {
-                    String type=((Element)contentref).getAttribute("type");
-                    if (type.startsWith("Par")) {
-                        // wenn ein DEG type="ParTermUeb" gefunden ist, können
-                        // alle umgebenenden schleifenvariablen wiederverwendet
-                        // werden, weil es nur *ein* solches element geben kann
-                        // und die umgebende schleife demzufolge abgebrochen werden
-                        // kann, nachdem das gefundenen element bearbeitet wurde
-                        
-                        // DEGdef id="ParTermUeb1" finden
-                        gvdef=syntax.getElementById(type);
-                        gvcontent=gvdef.getChildNodes();
-                        len=gvcontent.getLength();
-                        
-                        // darin alle elemente durchlaufen und deren namen
-                        // zur ergebnisliste hinzufügen
-                        for (i=0;i<len;i++) {
-                            contentref=gvcontent.item(i);
-
-                            if (contentref.getNodeType()==Node.ELEMENT_NODE) {
-                                addLowlevelProperties(ret,"",(Element)contentref);
-                            }
-                        }
-                        break;
+            for (SyntaxRef contentref:gvdef.getChildren()) {
+                String type=contentref.getType();
+                if (type.startsWith("Par")) {
+                    // wenn ein DEG type="ParTermUeb" gefunden ist, kann
+                    // die umgebende schleife abgebrochen werden, weil es
+                    // nur *ein* solches element geben kann
+                    
+                    // DEGdef id="ParTermUeb1" finden und darin alle elemente
+                    // durchlaufen und deren namen zur ergebnisliste hinzufügen
+                    for (SyntaxRef parref:syntax.getDef(type).getChildren()) {
+                        addLowlevelProperties(ret,"",parref);
                     }
+                    break;
                 }
             }
         }
@@ -326,25 +274,14 @@ public final class MsgGen
         return ret;
     }
 
-    private void addLowlevelProperties(ArrayList<String> result,String path,Element ref)
+    private void addLowlevelProperties(ArrayList<String> result,String path,SyntaxRef ref)
     {
-        if (ref.getAttribute("type").length()!=0) {
-            if (ref.getNodeName().equals("DE")) {
-                String name=ref.getAttribute("name");
-                result.add(pathWithDot(path)+name);
+        if (ref.getType().length()!=0) {
+            if (ref.isDE()) {
+                result.add(pathWithDot(path)+ref.getName());
             } else {
-                String name=ref.getAttribute("name");
-                if (name.length()==0)
-                    name=ref.getAttribute("type");
-
-                Element  def=syntax.getElementById(ref.getAttribute("type"));
-                NodeList defcontent=def.getChildNodes();
-                int len=defcontent.getLength();
-
-                for (int i=0;i<len;i++) {
-                    Node content=defcontent.item(i);
-                    if (content.getNodeType()==Node.ELEMENT_NODE)
-                        addLowlevelProperties(result,pathWithDot(path)+name,(Element)content);
+                for (SyntaxRef content:ref.getDef().getChildren()) {
+                    addLowlevelProperties(result,pathWithDot(path)+ref.getName(),content);
                 }
             }
         }
@@ -0,0 +1,246 @@
+/*  This file is part of HBCI4Java
+    Copyright (C) 2001-2008  Stefan Palme
+
+    HBCI4Java is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    HBCI4Java is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package org.kapott.hbci.manager;
+
+import java.io.InputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.FactoryConfigurationError;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.kapott.hbci.exceptions.HBCI_Exception;
+import org.kapott.hbci.exceptions.InvalidUserDataException;
+import org.kapott.hbci.protocol.SyntaxSpec;
+import org.w3c.dom.Document;
+
+/** <p>Prozessweites Register der HBCI-Syntax-Spezifikationen. Das Einlesen und
+    Validieren einer <code>hbci-*.xml</code>-Datei ist teuer (mehrere hundert KB
+    XML, DTD-Validierung), das Ergebnis ist aber für alle Kernel-Instanzen mit
+    der gleichen HBCI-Version identisch. Deshalb wird jede Spezifikation pro
+    Kombination aus <code>kernel.kernel.xmlpath</code> und HBCI-Version nur
+    genau einmal geladen, in eine {@link SyntaxSpec} übersetzt und anschließend
+    von allen {@link MsgGen}-Instanzen gemeinsam benutzt.</p>
+    <p>Die hier verwalteten Dokumente dürfen <em>nicht</em> verändert werden.
+    Alle kernel-spezifischen Daten (zu setzende Nachrichtenwerte, Name der
+    aktuellen Nachricht) liegen in {@link MsgGen} bzw. {@link HBCIKernelImpl}.</p>
+    <p>Die Dokumente werden ohne "deferred node expansion" erzeugt, so dass
+    beim lesenden Zugriff aus mehreren Threads keine internen Datenstrukturen
+    des DOM nachträglich aufgebaut werden müssen.</p> */
+public final class SyntaxRegistry
+{
+    private final static SyntaxRegistry instance=new SyntaxRegistry();
+
+    private final static String COMPILED_SYNTAX_PREFIX="org.kapott.hbci.protocol.CompiledSyntax_";
+    private final static String FEATURE_DEFER_NODE_EXPANSION="http://apache.org/xml/features/dom/defer-node-expansion";
+
+    private final ConcurrentMap<String,Entry> entries;
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+    private final AtomicLong loadTime;
+
+    /* Ein Eintrag im Register. Das eigentliche Laden erfolgt synchronisiert
+     * auf dem Eintrag selbst, so dass das parallele Anfordern verschiedener
+     * HBCI-Versionen sich nicht gegenseitig blockiert */
+    private final static class Entry
+    {
+        private volatile SyntaxSpec syntax;
+        private long              loadTime;
+    }
+
+    private SyntaxRegistry()
+    {
+        this.entries=new ConcurrentHashMap<String,Entry>();
+        this.hits=new AtomicLong();
+        this.misses=new AtomicLong();
+        this.loadTime=new AtomicLong();
+    }
+
+    public static SyntaxRegistry getInstance()
+    {
+        return instance;
+    }
+
+    /** Gibt die Syntax-Spezifikation für die angegebene HBCI-Version zurück.
+        Ist diese noch nicht geladen, wird sie - sofern kein <code>xmlpath</code>
+        angegeben ist - über die beim Build erzeugte Klasse
+        <code>org.kapott.hbci.protocol.CompiledSyntax_<em>version</em></code>
+        erzeugt. Andernfalls (oder wenn es diese Klasse nicht gibt) wird sie über
+        den übergebenen ClassLoader als Resource
+        <code>xmlpath+"hbci-"+hbciversion+".xml"</code> geladen.
+        @param xmlpath Pfad aus <code>kernel.kernel.xmlpath</code> (darf <code>null</code> sein)
+        @param hbciversion die HBCI-Version
+        @param cl der zu verwendende ClassLoader
+        @return die (gemeinsam benutzte und unveränderliche) kompilierte Syntax-Spezifikation */
+    public SyntaxSpec getSyntax(String xmlpath,String hbciversion,ClassLoader cl)
+    {
+        if (xmlpath==null) {
+            xmlpath="";
+        }
+        String filename=xmlpath+"hbci-"+hbciversion+".xml";
+
+        Entry entry=entries.get(filename);
+        if (entry==null) {
+            Entry newEntry=new Entry();
+            entry=entries.putIfAbsent(filename,newEntry);
+            if (entry==null) {
+                entry=newEntry;
+            }
+        }
+
+        SyntaxSpec syntax=entry.syntax;
+        if (syntax!=null) {
+            hits.incrementAndGet();
+            return syntax;
+        }
+
+        synchronized (entry) {
+            if (entry.syntax!=null) {
+                hits.incrementAndGet();
+                return entry.syntax;
+            }
+
+            misses.incrementAndGet();
+            long start=System.currentTimeMillis();
+
+            // ohne eigenen xmlpath wird zuerst die beim build erzeugte form
+            // der spezifikation gesucht - nur wenn es diese nicht gibt, muss
+            // das XML-dokument geparst werden
+            String source="compiled";
+            syntax=(xmlpath.length()==0)?loadCompiledSyntax(hbciversion,cl):null;
+            if (syntax==null) {
+                InputStream syntaxStream=cl.getResourceAsStream(filename);
+                if (syntaxStream==null)
+                    throw new InvalidUserDataException(HBCIUtilsInternal.getLocMsg("EXCMSG_KRNL_CANTLOAD_SYN",filename));
+
+                source="xml";
+                syntax=new SyntaxSpec(parseSyntax(syntaxStream));
+            }
+
+            entry.loadTime=System.currentTimeMillis()-start;
+            loadTime.addAndGet(entry.loadTime);
+            entry.syntax=syntax;
+
+            HBCIUtils.log("loaded syntax specification "+filename+" ("+source+") in "+entry.loadTime+" ms",HBCIUtils.LOG_DEBUG);
+            return syntax;
+        }
+    }
+
+    /* Erzeugen der Spezifikation über die beim Build aus hbci-<version>.xml
+     * generierte Klasse. Gibt null zurück, wenn es für diese Version keine
+     * generierte Klasse gibt (z.B. beim Build ohne Code-Generierung) */
+    private static SyntaxSpec loadCompiledSyntax(String hbciversion,ClassLoader cl)
+    {
+        String classname=COMPILED_SYNTAX_PREFIX+hbciversion;
+        try {
+            Class<?> c=Class.forName(classname,true,cl);
+            return (SyntaxSpec)c.getMethod("create").invoke(null);
+        } catch (ClassNotFoundException e) {
+            HBCIUtils.log("no compiled syntax specification "+classname+" found, using xml",HBCIUtils.LOG_DEBUG);
+            return null;
+        } catch (Exception e) {
+            HBCIUtils.log("can not use compiled syntax specification "+classname+", using xml",HBCIUtils.LOG_WARN);
+            HBCIUtils.log(e,HBCIUtils.LOG_DEBUG);
+            return null;
+        }
+    }
+
+    /** Einlesen und Validieren einer Syntax-Spezifikation aus dem übergebenen
+        Stream. Der Stream wird anschließend geschlossen. */
+    public static Document parseSyntax(InputStream syntaxFileStream)
+    {
+        try {
+            DocumentBuilderFactory dbf=DocumentBuilderFactory.newInstance();
+
+            dbf.setIgnoringComments(true);
+            dbf.setValidating(true);
+            try {
+                dbf.setFeature(FEATURE_DEFER_NODE_EXPANSION,false);
+            } catch (ParserConfigurationException e) {
+                HBCIUtils.log("xml parser does not support "+FEATURE_DEFER_NODE_EXPANSION+", ignoring",HBCIUtils.LOG_DEBUG);
+            }
+
+            DocumentBuilder db=dbf.newDocumentBuilder();
+            Document syntax=db.parse(syntaxFileStream);
+            syntaxFileStream.close();
+            return syntax;
+        } catch (FactoryConfigurationError e) {
+            throw new HBCI_Exception(HBCIUtilsInternal.getLocMsg("EXCMSG_MSGGEN_DBFAC"),e);
+        } catch (ParserConfigurationException e) {
+            throw new HBCI_Exception(HBCIUtilsInternal.getLocMsg("EXCMSG_MSGGEN_DB"),e);
+        } catch (Exception e) {
+            throw new HBCI_Exception(HBCIUtilsInternal.getLocMsg("EXCMSG_MSGGEN_STXFILE"),e);
+        }
+    }
+
+    /** Gibt die Anzahl der Anforderungen zurück, die aus dem Register bedient
+        werden konnten, ohne die Spezifikation neu zu laden. */
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    /** Gibt die Anzahl der Anforderungen zurück, bei denen die Spezifikation
+        neu geladen werden musste. */
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    /** Gibt die Summe der Ladezeiten aller bisher geladenen Spezifikationen
+        in Millisekunden zurück. */
+    public long getLoadTime()
+    {
+        return loadTime.get();
+    }
+
+    /** Gibt die Ladezeit der angegebenen Spezifikation in Millisekunden
+        zurück, oder <code>-1</code>, wenn diese noch nicht geladen wurde. */
+    public long getLoadTime(String xmlpath,String hbciversion)
+    {
+        Entry entry=entries.get((xmlpath!=null?xmlpath:"")+"hbci-"+hbciversion+".xml");
+        return (entry!=null && entry.syntax!=null)?entry.loadTime:-1;
+    }
+
+    /** Gibt die Anzahl der derzeit geladenen Spezifikationen zurück. */
+    public int size()
+    {
+        int ret=0;
+        for (Entry entry:entries.values()) {
+            if (entry.syntax!=null) {
+                ret++;
+            }
+        }
+        return ret;
+    }
+
+    /** Entfernt alle geladenen Spezifikationen aus dem Register und setzt die
+        Statistiken zurück. Bereits existierende Kernel-Objekte benutzen ihre
+        Spezifikation unverändert weiter. */
+    public void clear()
+    {
+        entries.clear();
+        hits.set(0);
+        misses.set(0);
+        loadTime.set(0);
+    }
+}
@@ -22,7 +22,14 @@
 package org.kapott.hbci.manager;
 
 import java.util.Hashtable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
+/* synchronisiert den hbci-thread mit dem thread der anwendung (siehe
+ * HBCIHandler.executeThreaded()). statt synchronized/wait()/notify() wird
+ * ein ReentrantLock verwendet - ein darauf wartender virtueller thread
+ * blockiert damit nicht den traeger-thread. */
 public class ThreadSyncer
 {
     private String    name;
@@ -31,6 +38,9 @@ public class ThreadSyncer
     private boolean   timeouted;
     private Hashtable<String, Object> data;
     
+    private final ReentrantLock lock=new ReentrantLock();
+    private final Condition     wakeup=lock.newCondition();
+    
     public ThreadSyncer(String name)
     {
         this.name=name;
@@ -40,21 +50,36 @@ public class ThreadSyncer
         this.data=new Hashtable<String, Object>();
     }
     
-    public synchronized void startWaiting(long seconds, String errMsg)
+    public void startWaiting(long seconds, String errMsg)
     {
+        lock.lock();
         try {
             if (!notified) {
                 HBCIUtils.log(name+".startWaiting: !notified, waiting now",HBCIUtils.LOG_DEBUG);
-                // wenn das notify() nicht schon vor dem wait() kam, dann 
+                // wenn das stopWaiting() nicht schon vor dem warten kam, dann 
                 // wirklich warten
                 
                 waiting=true;
-                wait(seconds*1000);
-                waiting=false;
+                try {
+                    // schleife wegen "spurious wakeups"; wie bisher bei
+                    // wait(0) bedeutet seconds<=0 "ohne timeout warten"
+                    if (seconds<=0) {
+                        while (!notified) {
+                            wakeup.await();
+                        }
+                    } else {
+                        long nanos=TimeUnit.SECONDS.toNanos(seconds);
+                        while (!notified && nanos>0) {
+                            nanos=wakeup.awaitNanos(nanos);
+                        }
+                    }
+                } finally {
+                    waiting=false;
+                }
                 
                 if (!notified) {
                     HBCIUtils.log(name+".startWaiting: end of wait: !notified (timeouted)",HBCIUtils.LOG_DEBUG);
-                    // wenn das wait() wegen timeouted terminierte
+                    // wenn das warten wegen timeout terminierte
                     timeouted=true;
                     throw new RuntimeException(name+": "+errMsg);
                 }
@@ -68,24 +93,31 @@ public class ThreadSyncer
             }
         } catch (Exception e) {
             throw new RuntimeException(e);
+        } finally {
+            lock.unlock();
         }
     }
     
-    public synchronized void stopWaiting()
+    public void stopWaiting()
     {
-        HBCIUtils.log(name+".stopWaiting",HBCIUtils.LOG_DEBUG);
-        notified=true;
-        if (waiting) {
-            HBCIUtils.log(name+".stopWaiting: someone waits, so notify()",HBCIUtils.LOG_DEBUG);
-            notify();
-        } else {
-            if (timeouted) {
-                HBCIUtils.log(name+".stopWaiting: trying to awake a timeouted wait() - aborting",HBCIUtils.LOG_DEBUG);
-                timeouted=false;
-                throw new RuntimeException(name+": can not awake a timeouted wait()");
+        lock.lock();
+        try {
+            HBCIUtils.log(name+".stopWaiting",HBCIUtils.LOG_DEBUG);
+            notified=true;
+            if (waiting) {
+                HBCIUtils.log(name+".stopWaiting: someone waits, so notify()",HBCIUtils.LOG_DEBUG);
+                wakeup.signal();
+            } else {
+                if (timeouted) {
+                    HBCIUtils.log(name+".stopWaiting: trying to awake a timeouted wait() - aborting",HBCIUtils.LOG_DEBUG);
+                    timeouted=false;
+                    throw new RuntimeException(name+": can not awake a timeouted wait()");
+                }
+                
+                HBCIUtils.log(name+".stopWaiting: no one waits, so we do nothing",HBCIUtils.LOG_DEBUG);
             }
-            
-            HBCIUtils.log(name+".stopWaiting: no one waits, so we do nothing",HBCIUtils.LOG_DEBUG);
+        } finally {
+            lock.unlock();
         }
     }
     
@@ -40,6 +40,7 @@ import org.kapott.hbci.comm.Comm;
 import org.kapott.hbci.comm.Filter;
 import org.kapott.hbci.exceptions.HBCI_Exception;
 import org.kapott.hbci.exceptions.InvalidUserDataException;
+import org.kapott.hbci.manager.HBCIContext;
 import org.kapott.hbci.manager.HBCIDialog;
 import org.kapott.hbci.manager.HBCIKey;
 import org.kapott.hbci.manager.HBCIUtils;
@@ -78,6 +79,25 @@ public abstract class AbstractHBCIPassport
     private Hashtable<String, Object>  persistentData;
 
     private IHandlerData parentHandlerData;
+    private transient HBCIContext context;
+
+    /* dialog-sicht des aktuellen threads (siehe beginDialogScope()) - nur
+     * gültig, wenn sie auch zu diesem passport gehört */
+    private static final ThreadLocal<DialogScope> dialogScope=new ThreadLocal<DialogScope>();
+
+    private static final class DialogScope
+    {
+        final AbstractHBCIPassport passport;
+        String customerid;
+        Comm   comm;
+        Hashtable<String,Object> data=new Hashtable<String,Object>();
+
+        DialogScope(AbstractHBCIPassport passport,String customerid)
+        {
+            this.passport=passport;
+            this.customerid=customerid;
+        }
+    }
     
     protected static final boolean FOR_SAVE=true;
     protected static final boolean FOR_LOAD=false;
@@ -85,9 +105,17 @@ public abstract class AbstractHBCIPassport
     public AbstractHBCIPassport(Object init)
     {
         persistentData=new Hashtable<String, Object>();
+        context=HBCIContext.current();
         setClientData("init",init);
     }
 
+    /** @return der Kontext, in dem dieses Passport erzeugt wurde, oder
+                <code>null</code> */
+    public HBCIContext getContext()
+    {
+        return context;
+    }
+
     protected boolean askForMissingData(boolean needCountry,boolean needBLZ,
                                         boolean needHost,boolean needPort,
                                         boolean needFilter,
@@ -179,6 +207,14 @@ public abstract class AbstractHBCIPassport
 
     public final Comm getComm()
     {
+        DialogScope scope=getDialogScope();
+        if (scope!=null) {
+            if (scope.comm==null) {
+                scope.comm=getCommInstance();
+            }
+            return scope.comm;
+        }
+
         if (comm==null) {
             comm=getCommInstance();
         }
@@ -195,6 +231,15 @@ public abstract class AbstractHBCIPassport
     
     public final void closeComm()
     {
+        DialogScope scope=getDialogScope();
+        if (scope!=null) {
+            if (scope.comm!=null) {
+                scope.comm.close();
+                scope.comm=null;
+            }
+            return;
+        }
+
         if (comm!=null) {
             comm.close();
             comm=null;
@@ -360,14 +405,80 @@ public abstract class AbstractHBCIPassport
     public final String getCustomerId(int idx)
     {
         String header=HBCIUtilsInternal.withCounter("KInfo",idx)+".customerid";
-        String c=(upd!=null)?upd.getProperty(header):customerid;
+        String c=(upd!=null)?upd.getProperty(header):getScopedCustomerId();
         return (c!=null)?c:getUserId();
     }
     
     public String getCustomerId()
     {
+        String customerid=getScopedCustomerId();
         return (customerid!=null && customerid.length()!=0)?customerid:getUserId();
     }
+
+    /* die kunden-id der dialog-sicht des aktuellen threads bzw. die des passports */
+    private String getScopedCustomerId()
+    {
+        DialogScope scope=getDialogScope();
+        return (scope!=null)?scope.customerid:customerid;
+    }
+
+    private DialogScope getDialogScope()
+    {
+        DialogScope scope=dialogScope.get();
+        return (scope!=null && scope.passport==this)?scope:null;
+    }
+
+    /** Standard-Verhalten: keine parallelen Dialoge. */
+    public boolean supportsParallelDialogs()
+    {
+        return false;
+    }
+
+    /** Standard-Verhalten: nichts vorzubereiten. */
+    public void prepareParallelDialogs()
+    {
+    }
+
+    /* daten, die nur für den dialog der aktuellen dialog-sicht gelten. ohne
+     * dialog-sicht liefert getDialogData() immer null */
+    protected Object getDialogData(String id)
+    {
+        DialogScope scope=getDialogScope();
+        return (scope!=null)?scope.data.get(id):null;
+    }
+
+    protected void setDialogData(String id,Object o)
+    {
+        DialogScope scope=getDialogScope();
+        if (scope!=null) {
+            if (o!=null) {
+                scope.data.put(id,o);
+            } else {
+                scope.data.remove(id);
+            }
+        }
+    }
+
+    public final void beginDialogScope(String customerid)
+    {
+        if (dialogScope.get()!=null) {
+            throw new HBCI_Exception("*** dialog scope already active in this thread");
+        }
+        LogFilter.getInstance().addSecretData(customerid,"X",LogFilter.FILTER_IDS);
+        dialogScope.set(new DialogScope(this,customerid));
+    }
+
+    public final void endDialogScope()
+    {
+        DialogScope scope=getDialogScope();
+        if (scope!=null) {
+            try {
+                closeComm();
+            } finally {
+                dialogScope.remove();
+            }
+        }
+    }
     
     public String getStoredCustomerId()
     {
@@ -636,7 +747,12 @@ public abstract class AbstractHBCIPassport
     public final void setCustomerId(String customerid)
     {
       	LogFilter.getInstance().addSecretData(customerid,"X",LogFilter.FILTER_IDS);
-        this.customerid=customerid;
+        DialogScope scope=getDialogScope();
+        if (scope!=null) {
+            scope.customerid=customerid;
+        } else {
+            this.customerid=customerid;
+        }
     }    
 
     public final void setSigId(Long sigid)
@@ -703,6 +819,40 @@ public abstract class AbstractHBCIPassport
         <code>setClientData("init",init)</code> zu den Passport-Daten hinzugefügt wird.
         @return Instanz eines HBCIPassports */
     public static HBCIPassport getInstance(String name,Object init)
+    {
+        return getInstance(null,name,init);
+    }
+
+    /** Erzeugt eine Instanz eines HBCI-Passports im Kontext <code>context</code>.
+        Der Kontext wird während der Erzeugung aktiviert (z.B. für die dabei
+        auftretenden Callbacks) und später von einem mit diesem Passport
+        erzeugten {@link org.kapott.hbci.manager.HBCIHandler} übernommen.
+        @param context der Kontext; bei <code>null</code> wird der im aktuellen
+               Thread aktive Kontext verwendet
+        @param name Typ der zu erzeugenden Passport-Instanz (siehe {@link #getInstance(String,Object)})
+        @param init siehe {@link #getInstance(String,Object)}
+        @return Instanz eines HBCI-Passports */
+    public static HBCIPassport getInstance(HBCIContext context,String name,Object init)
+    {
+        if (context==null) {
+            context=HBCIUtils.getContext();
+        }
+
+        HBCIContext old=context.bind();
+        try {
+            return createInstance(name,init);
+        } finally {
+            HBCIContext.restore(old);
+        }
+    }
+
+    /** Entspricht {@link #getInstance(HBCIContext,String,Object) getInstance(context,name,null)} */
+    public static HBCIPassport getInstance(HBCIContext context,String name)
+    {
+        return getInstance(context,name,null);
+    }
+
+    private static HBCIPassport createInstance(String name,Object init)
     {
         if (name==null) {
             throw new NullPointerException("name of passport implementation must not be null");
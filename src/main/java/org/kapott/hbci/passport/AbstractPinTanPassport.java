@@ -42,6 +42,7 @@ import org.kapott.hbci.manager.HBCIHandler;
 import org.kapott.hbci.manager.HBCIKey;
 import org.kapott.hbci.manager.HBCIUtils;
 import org.kapott.hbci.manager.HBCIUtilsInternal;
+import org.kapott.hbci.manager.LogFilter;
 import org.kapott.hbci.protocol.SEG;
 import org.kapott.hbci.protocol.factory.SEGFactory;
 import org.kapott.hbci.security.Crypt;
@@ -59,6 +60,7 @@ public abstract class AbstractPinTanPassport
     private String    proxy;
     private String    proxyuser;
     private String    proxypass;
+    private String    transport;
 
     private boolean   verifyTANMode;
     
@@ -70,6 +72,11 @@ public abstract class AbstractPinTanPassport
 
     private String    pin;
 
+    // schlüssel für die daten der dialog-sicht (siehe getDialogData()): die
+    // pin und das pintan-verfahren, mit denen der dialog zuletzt signiert hat
+    protected static final String DIALOG_PIN="pintan_pin";
+    protected static final String DIALOG_TANMETHOD="pintan_method";
+
     public AbstractPinTanPassport(Object initObject)
     {
         super(initObject);
@@ -82,7 +89,7 @@ public abstract class AbstractPinTanPassport
         return "PinTan";
     }
 
-    public void setBPD(Properties p)
+    public synchronized void setBPD(Properties p)
     {
         super.setBPD(p);
 
@@ -230,9 +237,8 @@ public abstract class AbstractPinTanPassport
         if (!msgStatus.isOK()) {
             HBCIUtils.log("dialog init ended with errors - searching for return code 'wrong PIN'", HBCIUtils.LOG_DEBUG);
             
-            if (msgStatus.isInvalidPIN()) {
-                HBCIUtils.log("detected 'invalid PIN' error - clearing passport PIN", HBCIUtils.LOG_INFO);
-                clearPIN();
+            if (msgStatus.isInvalidPIN() && clearPIN((String)getDialogData(DIALOG_PIN))) {
+                HBCIUtils.log("detected 'invalid PIN' error - cleared passport PIN", HBCIUtils.LOG_INFO);
                 
                 // Aufrufer informieren, dass falsche PIN eingegeben wurde (um evtl. PIN aus Puffer zu löschen, etc.) 
                 StringBuffer retData=new StringBuffer();
@@ -240,27 +246,34 @@ public abstract class AbstractPinTanPassport
             }
         }
             
-        HBCIUtils.log("autosecfunc: search for 3920s in response to detect allowed twostep secmechs", HBCIUtils.LOG_DEBUG);
-
-        searchFor3920s(msgStatus.globStatus.getWarnings());
-        searchFor3920s(msgStatus.segStatus.getWarnings());
-        
-        searchFor3072s(msgStatus.segStatus.getWarnings());
-
-        if (!anonDialog) {
-            setPersistentData("_authed_dialog_executed", Boolean.TRUE);
-
-            // aktuelle secmech merken und neue auswählen (basierend auf evtl. gerade
-            // neu empfangenen informationen (3920s))
-            String oldTANMethod=currentTANMethod;
-            String updatedTANMethod=getCurrentTANMethod(true);
-
-            if (!oldTANMethod.equals(updatedTANMethod)) {
-                // wenn sich das ausgewählte secmech geändert hat, müssen wir
-                // einen dialog-restart fordern, weil während eines dialoges
-                // das secmech nicht gewechselt werden darf
-                restart_needed=true;
-                HBCIUtils.log("autosecfunc: after this dialog-init we had to change selected pintan method from "+oldTANMethod+" to "+updatedTANMethod+", so a restart of this dialog is needed", HBCIUtils.LOG_INFO);
+        // parallele dialoge werten ihre antworten nacheinander aus, damit
+        // das pintan-verfahren nur einmal neu ermittelt wird
+        synchronized (this) {
+            HBCIUtils.log("autosecfunc: search for 3920s in response to detect allowed twostep secmechs", HBCIUtils.LOG_DEBUG);
+    
+            searchFor3920s(msgStatus.globStatus.getWarnings());
+            searchFor3920s(msgStatus.segStatus.getWarnings());
+            
+            searchFor3072s(msgStatus.segStatus.getWarnings());
+    
+            if (!anonDialog) {
+                setPersistentData("_authed_dialog_executed", Boolean.TRUE);
+    
+                // secmech dieses dialoges merken und neue auswählen (basierend auf evtl. gerade
+                // neu empfangenen informationen (3920s))
+                String oldTANMethod=(String)getDialogData(DIALOG_TANMETHOD);
+                if (oldTANMethod==null) {
+                    oldTANMethod=currentTANMethod;
+                }
+                String updatedTANMethod=getCurrentTANMethod(true);
+    
+                if (!oldTANMethod.equals(updatedTANMethod)) {
+                    // wenn sich das ausgewählte secmech geändert hat, müssen wir
+                    // einen dialog-restart fordern, weil während eines dialoges
+                    // das secmech nicht gewechselt werden darf
+                    restart_needed=true;
+                    HBCIUtils.log("autosecfunc: after this dialog-init we had to change selected pintan method from "+oldTANMethod+" to "+updatedTANMethod+", so a restart of this dialog is needed", HBCIUtils.LOG_INFO);
+                }
             }
         }
         
@@ -271,6 +284,21 @@ public abstract class AbstractPinTanPassport
     {
         return Comm.getInstance("PinTan",this);
     }
+
+    /** PIN/TAN-Dialoge verschiedener Kunden-IDs können parallel über je eine
+        eigene HTTPS-Verbindung geführt werden. */
+    public boolean supportsParallelDialogs()
+    {
+        return true;
+    }
+
+    /** Ermittelt das PIN/TAN-Verfahren und die PIN, bevor die parallelen
+        Dialoge starten. So werden die Callbacks dafür nur einmal erzeugt. */
+    public void prepareParallelDialogs()
+    {
+        getCurrentTANMethod(false);
+        fetchPIN();
+    }
     
     public boolean isSupported()
     {
@@ -360,19 +388,19 @@ public abstract class AbstractPinTanPassport
     /** Kann vor <code>new HBCIHandler()</code> aufgerufen werden, um zu
      * erzwingen, dass die Liste der unterstützten PIN/TAN-Sicherheitsverfahren
      * neu vom Server abgeholt wird und evtl. neu vom Nutzer abgefragt wird. */
-    public void resetSecMechs()
+    public synchronized void resetSecMechs()
     {
         this.allowedTwostepMechanisms=new ArrayList<String>();
         this.currentTANMethod=null;
         this.currentTANMethodWasAutoSelected=false;
     }
     
-    public void setCurrentTANMethod(String method)
+    public synchronized void setCurrentTANMethod(String method)
     {
         this.currentTANMethod=method;
     }
     
-    public String getCurrentTANMethod(boolean recheckSupportedSecMechs)
+    public synchronized String getCurrentTANMethod(boolean recheckSupportedSecMechs)
     {
         // autosecmech: hier auch dann checken, wenn recheckSupportedSecMechs==true
         // UND die vorherige auswahl AUTOMATISCH getroffen wurde (manuelle auswahl
@@ -935,6 +963,24 @@ public abstract class AbstractPinTanPassport
         this.proxyuser = proxyuser;
     }
     
+    /** Gibt den Transport zurück, über den die Nachrichten dieses Passports
+        übertragen werden (siehe {@link org.kapott.hbci.comm.Transport#getInstance(String, AbstractPinTanPassport, java.net.URL)}).
+        Wurde keiner mit {@link #setTransport(String)} festgelegt, wird der
+        Kernel-Parameter <code>client.passport.PinTan.transport</code>
+        verwendet (Default "<code>Http</code>"). */
+    public String getTransport()
+    {
+        if (transport!=null && transport.length()!=0) {
+            return transport;
+        }
+        return HBCIUtils.getParam("client.passport.PinTan.transport","Http");
+    }
+    
+    public void setTransport(String transport)
+    {
+        this.transport = transport;
+    }
+    
     private String getOrderHashMode()
     {
         String ret=null;
@@ -1061,7 +1107,7 @@ public abstract class AbstractPinTanPassport
                                 SEG seg=task.createJobSegment(3);
                                 seg.validate();
                                 String segdata=seg.toString(0);
-                                HBCIUtils.log("calculating hash for jobsegment: "+segdata,HBCIUtils.LOG_DEBUG2);
+                                HBCIUtils.log("calculating hash for jobsegment: ",segdata,HBCIUtils.LOG_DEBUG2);
                                 
                                 // zu verwendenden Hash-Algorithmus von dem Wert "orderhashmode" aus den BPD abhängig machen
                                 String orderhashmode=getOrderHashMode();
@@ -1254,20 +1300,55 @@ public abstract class AbstractPinTanPassport
         patchMessagesFor2StepMethods(dialog);
     }
     
-    public void setPIN(String pin)
+    public synchronized void setPIN(String pin)
     {
         this.pin=pin;
     }
     
-    public String getPIN()
+    public synchronized String getPIN()
     {
         return this.pin;
     }
     
-    public void clearPIN()
+    public synchronized void clearPIN()
     {
         setPIN(null);
     }
+
+    /* löscht die pin nur, wenn sie noch der (falschen) pin "used" entspricht - bei
+     * parallelen dialogen kann ein anderer dialog schon eine neue pin abgefragt
+     * haben. ohne angabe von "used" wird die pin immer gelöscht */
+    private synchronized boolean clearPIN(String used)
+    {
+        if (used!=null && !used.equals(this.pin)) {
+            HBCIUtils.log("invalid PIN has already been replaced - keeping passport PIN", HBCIUtils.LOG_DEBUG);
+            return false;
+        }
+        clearPIN();
+        return true;
+    }
+
+    /** Liefert die PIN. Ist sie noch nicht bekannt, wird sie per Callback
+        abgefragt - bei parallelen Dialogen nur einmal.
+        @return die PIN */
+    protected synchronized String fetchPIN()
+    {
+        if (getPIN()==null) {
+            StringBuffer s=new StringBuffer();
+
+            HBCIUtilsInternal.getCallback().callback(this,
+                                             HBCICallback.NEED_PT_PIN,
+                                             HBCIUtilsInternal.getLocMsg("CALLB_NEED_PTPIN"),
+                                             HBCICallback.TYPE_SECRET,
+                                             s);
+            if (s.length()==0) {
+                throw new HBCI_Exception(HBCIUtilsInternal.getLocMsg("EXCMSG_PINZERO"));
+            }
+            setPIN(s.toString());
+            LogFilter.getInstance().addSecretData(getPIN(),"X",LogFilter.FILTER_SECRETS);
+        }
+        return getPIN();
+    }
     
     public List<String> getAllowedTwostepMechanisms() 
     {
@@ -43,6 +43,23 @@ public interface HBCIPassportInternal
     public Comm getComm();
     public Filter getCommFilter();
     public void closeComm();
+
+    /** Gibt an, ob mit diesem Passport mehrere Dialoge (für verschiedene
+        Kunden-IDs) gleichzeitig geführt werden können. */
+    public boolean supportsParallelDialogs();
+    /** Beginnt eine Dialog-Sicht auf dieses Passport für den aktuellen Thread:
+        bis zum Aufruf von {@link #endDialogScope()} liefern
+        {@link #getCustomerId()} und {@link #getComm()} in diesem Thread eine
+        eigene Kunden-ID bzw. Verbindung. */
+    public void beginDialogScope(String customerid);
+    /** Wird vor dem Start paralleler Dialoge im Thread des Aufrufers
+        aufgerufen. Hier können Daten ermittelt werden, die alle Dialoge
+        gemeinsam benötigen (z.B. PIN), damit die Callbacks dafür nur einmal
+        erzeugt werden. */
+    public void prepareParallelDialogs();
+    /** Beendet die mit {@link #beginDialogScope(String)} begonnene Dialog-Sicht
+        und schließt deren Verbindung. */
+    public void endDialogScope();
     public void setHBCIVersion(String hbciversion);
     public String getSysId();
     public String getCID();
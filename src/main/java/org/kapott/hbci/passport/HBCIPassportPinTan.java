@@ -251,8 +251,9 @@ public class HBCIPassportPinTan
      * @see org.kapott.hbci.passport.HBCIPassport#saveChanges()
      */
     @Override
-    public void saveChanges()
+    public synchronized void saveChanges()
     {
+        // synchronized wegen paralleler dialoge (siehe HBCIHandler.execute())
         File passportfile = new File(getFileName());
         File tempfile     = null;
         
@@ -330,20 +331,8 @@ public class HBCIPassportPinTan
         try {
             // TODO: wenn die eingegebene PIN falsch war, muss die irgendwie
             // resettet werden, damit wieder danach gefragt wird
-            if (getPIN()==null) {
-                StringBuffer s=new StringBuffer();
-
-                HBCIUtilsInternal.getCallback().callback(this,
-                                                 HBCICallback.NEED_PT_PIN,
-                                                 HBCIUtilsInternal.getLocMsg("CALLB_NEED_PTPIN"),
-                                                 HBCICallback.TYPE_SECRET,
-                                                 s);
-                if (s.length()==0) {
-                    throw new HBCI_Exception(HBCIUtilsInternal.getLocMsg("EXCMSG_PINZERO"));
-                }
-                setPIN(s.toString());
-                LogFilter.getInstance().addSecretData(getPIN(),"X",LogFilter.FILTER_SECRETS);
-            }
+            String pin=fetchPIN();
+            setDialogData(DIALOG_PIN,pin);
             
             String tan="";
             
@@ -353,6 +342,7 @@ public class HBCIPassportPinTan
             // ermittelt werden
             
             String pintanMethod=getCurrentTANMethod(false);
+            setDialogData(DIALOG_TANMETHOD,pintanMethod);
 
             if (pintanMethod.equals(Sig.SECFUNC_SIG_PT_1STEP)) {
                 // nur beim normalen einschritt-verfahren muss anhand der segment-
@@ -463,7 +453,7 @@ public class HBCIPassportPinTan
             	LogFilter.getInstance().addSecretData(tan,"X",LogFilter.FILTER_SECRETS);
             }
 
-            return (getPIN()+"|"+tan).getBytes("ISO-8859-1");
+            return (pin+"|"+tan).getBytes("ISO-8859-1");
         } catch (Exception ex) {
             throw new HBCI_Exception("*** signing failed",ex);
         }
@@ -32,6 +32,7 @@ import org.kapott.hbci.datatypes.SyntaxCtr;
 import org.kapott.hbci.exceptions.HBCI_Exception;
 import org.kapott.hbci.manager.HBCIKey;
 import org.kapott.hbci.manager.HBCIUtils;
+import org.kapott.hbci.tools.ParseCursor;
 
 
 public class BankKeys
@@ -95,7 +96,7 @@ public class BankKeys
     
     public String getCountry()
     {
-        return new SyntaxCtr(new StringBuffer(countrycode),1,0).toString();
+        return new SyntaxCtr(new ParseCursor(countrycode),1,0).toString();
     }
     
     public void setCountry(String country)
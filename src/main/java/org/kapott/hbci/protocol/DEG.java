@@ -29,8 +29,7 @@ import java.util.Properties;
 
 import org.kapott.hbci.protocol.factory.MultipleDEGsFactory;
 import org.kapott.hbci.protocol.factory.MultipleDEsFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
+import org.kapott.hbci.tools.ParseCursor;
 
 public final class DEG
     extends SyntaxElement
@@ -40,46 +39,51 @@ public final class DEG
         return "DEG";
     }
 
-    protected MultipleSyntaxElements createNewChildContainer(Node ref, Document syntax)
+    protected MultipleSyntaxElements createNewChildContainer(SyntaxRef ref, SyntaxSpec syntax)
     {
         MultipleSyntaxElements ret=null;
 
-        if ((ref.getNodeName()).equals("DE"))
+        if (ref.isDE())
             ret=MultipleDEsFactory.getInstance().createMultipleDEs(ref, ':', getPath(), syntax);
-        else if ((ref.getNodeName()).equals("DEG"))
+        else if (ref.isDEG())
             ret=MultipleDEGsFactory.getInstance().createMultipleDEGs(ref, ':', getPath(), syntax);
 
         return ret;
     }
 
-    public DEG(String type, String name, String path, int idx, Document syntax)
+    public DEG(String type, String name, String path, int idx, SyntaxSpec syntax)
     {
         super(type,name,path,idx,syntax);
     }
 
-    public void init(String type, String name, String path, int idx, Document syntax)
+    public void init(String type, String name, String path, int idx, SyntaxSpec syntax)
     {
         super.init(type,name,path,idx,syntax);
     }
 
     public String toString(int zero)
     {
-        StringBuffer ret = new StringBuffer(128);
-        boolean first = true;
+        MsgBuffer ret=new MsgBuffer(128);
+        appendTo(ret);
+        return ret.toString();
+    }
 
+    public void appendTo(MsgBuffer out)
+    {
         if (isValid()) {
-            int tooMuch=0;
-            int saveLen;
+            boolean first=true;
+            int     tooMuch=0;
+            int     saveLen;
             for (ListIterator<MultipleSyntaxElements> i = getChildContainers().listIterator(); i.hasNext(); ) {
                 if (!first)
-                    ret.append(':');
+                    out.append(':');
 
-                saveLen=ret.length();
+                saveLen=out.length();
                 MultipleSyntaxElements dataList = i.next();
                 if (dataList != null)
-                    ret.append(dataList.toString(0));
+                    dataList.appendTo(out);
                 
-                if (ret.length()==saveLen && !first) {
+                if (out.length()==saveLen && !first) {
                     tooMuch++;
                 } else {
                     tooMuch=0;
@@ -90,23 +94,20 @@ public final class DEG
             // das auslassen von leeren elementen am ende darf nur erfolgen, wenn
             // es nicht um eine DEG innerhalb einer anderen DEG handelt
             if (getParent().getParent().getInDelim()!=':') {
-                int retlen=ret.length();
-                ret.delete(retlen-tooMuch,retlen);
+                out.setLength(out.length()-tooMuch);
             }
         }
-
-        return ret.toString();
     }
 
     // ---------------------------------------------------------------------------------------------------------------
 
-    protected MultipleSyntaxElements parseNewChildContainer(Node dataref, char predelim0, char predelim1, StringBuffer res, int fullResLen,Document syntax, Hashtable<String, String> predefs,Hashtable<String, String> valids)
+    protected MultipleSyntaxElements parseNewChildContainer(SyntaxRef dataref, char predelim0, char predelim1, ParseCursor res, int fullResLen,SyntaxSpec syntax, Hashtable<String, String> predefs,Hashtable<String, String> valids)
     {
         MultipleSyntaxElements ret=null;
 
-        if ((dataref.getNodeName()).equals("DEG"))
+        if (dataref.isDEG())
             ret=MultipleDEGsFactory.getInstance().createMultipleDEGs(dataref, ':', getPath(), predelim0, predelim1, res, fullResLen, syntax, predefs,valids);
-        else if ((dataref.getNodeName()).equals("DE"))
+        else if (dataref.isDE())
             ret=MultipleDEsFactory.getInstance().createMultipleDEs(dataref, ':', getPath(), predelim0, predelim1, res, fullResLen, syntax, predefs,valids);
 
         return ret;
@@ -117,12 +118,12 @@ public final class DEG
         return ':';
     }
 
-    public DEG(String type, String name, String path, char predelim, int idx, StringBuffer res, int fullResLen, Document syntax, Hashtable<String, String> predefs,Hashtable<String, String> valids)
+    public DEG(String type, String name, String path, char predelim, int idx, ParseCursor res, int fullResLen, SyntaxSpec syntax, Hashtable<String, String> predefs,Hashtable<String, String> valids)
     {
         super(type, name, path, predelim, idx, res, fullResLen, syntax, predefs,valids);
     }
 
-    public void init(String type, String name, String path, char predelim, int idx, StringBuffer res, int fullResLen, Document syntax, Hashtable<String, String> predefs,Hashtable<String,String> valids)
+    public void init(String type, String name, String path, char predelim, int idx, ParseCursor res, int fullResLen, SyntaxSpec syntax, Hashtable<String, String> predefs,Hashtable<String,String> valids)
     {
         super.init(type, name, path, predelim, idx, res, fullResLen, syntax, predefs,valids);
     }
@@ -24,10 +24,12 @@ package org.kapott.hbci.protocol;
 import java.text.DecimalFormat;
 import java.util.Arrays;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Map;
 import java.util.Properties;
 
 import org.kapott.hbci.exceptions.NoSuchPathException;
@@ -35,8 +37,7 @@ import org.kapott.hbci.manager.HBCIUtils;
 import org.kapott.hbci.manager.MsgGen;
 import org.kapott.hbci.protocol.factory.MultipleSEGsFactory;
 import org.kapott.hbci.protocol.factory.MultipleSFsFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
+import org.kapott.hbci.tools.ParseCursor;
 
 public final class MSG
     extends SyntaxElement
@@ -45,14 +46,27 @@ public final class MSG
     public final static boolean DONT_CHECK_SEQ=false;
     public final static boolean CHECK_VALIDS=true;
     public final static boolean DONT_CHECK_VALIDS=false;
+
+    /* puffer, die grösser sind, werden beim zurückgeben der nachricht an den
+     * object-pool nicht aufgehoben */
+    private final static int MAX_KEPT_BUFFER_SIZE=64*1024;
+
+    /* wiederverwendbarer puffer für die übertragungsform der nachricht */
+    private MsgBuffer raw;
+
+    /* index pfad -> syntaxelement über alle elemente dieser nachricht. wird
+     * nach dem aufbauen des nachrichtenbaumes einmal erzeugt und beim nachträglichen
+     * anlegen von elementen (TRY_TO_CREATE) ergänzt. solange der index noch nicht
+     * existiert (also während des aufbauens), wird der baum durchsucht */
+    private Map<String,SyntaxElement> index;
     
-    protected MultipleSyntaxElements createNewChildContainer(Node ref, Document syntax)
+    protected MultipleSyntaxElements createNewChildContainer(SyntaxRef ref, SyntaxSpec syntax)
     {
         MultipleSyntaxElements ret=null;
         
-        if ((ref.getNodeName()).equals("SEG"))
+        if (ref.isSEG())
             ret=MultipleSEGsFactory.getInstance().createMultipleSEGs(ref, getPath(), syntax);
-        else if ((ref.getNodeName()).equals("SF"))
+        else if (ref.isSF())
             ret=MultipleSFsFactory.getInstance().createMultipleSFs(ref, getPath(), syntax);
         
         return ret;
@@ -107,24 +121,42 @@ public final class MSG
 
     public void autoSetMsgSize(MsgGen gen)
     {
-        setMsgSizeValue(gen, toString(0).length(),ALLOW_OVERWRITE);
+        setMsgSizeValue(gen, toBytes().length(),ALLOW_OVERWRITE);
+    }
+
+    /** Erzeugt die Übertragungsform (ISO-8859-1) der Nachricht. Dazu wird ein
+        zu dieser Nachricht gehörender Puffer wiederverwendet - der Inhalt des
+        zurückgegebenen Puffers ist deshalb nur bis zum nächsten Aufruf dieser
+        Methode bzw. bis zum Zurückgeben der Nachricht an den Object-Pool
+        gültig. Da die Nachricht bei jedem Aufruf neu erzeugt wird, sollte
+        das Ergebnis für alle Verwendungen (Logging, Größenprüfung, Versand)
+        nur einmal erzeugt werden. */
+    public MsgBuffer toBytes()
+    {
+        if (raw==null) {
+            raw=new MsgBuffer(4096);
+        }
+        raw.reset();
+        appendTo(raw);
+        return raw;
     }
     
     /** @brief erstellen eines neuen nachrichten-syntaxelements */
     public MSG(String type, MsgGen gen, Hashtable<String,String> clientValues)
     {
-        super(type,type,null,0,gen.getSyntax());
+        super(type,type,null,0,gen.getSyntaxSpec());
         initData(type,gen,clientValues);
     }
     
     public void init(String type,MsgGen gen,Hashtable<String,String> clientValues)
     {
-        super.init(type,type,null,0,gen.getSyntax());
+        super.init(type,type,null,0,gen.getSyntaxSpec());
         initData(type,gen,clientValues);
     }
     
     private void initData(String type,MsgGen gen,Hashtable<String,String> clientValues)
     {
+        rebuildIndex();
         propagateUserData(getName(), clientValues);
 
         enumerateSegs(0,DONT_ALLOW_OVERWRITE);
@@ -136,40 +168,44 @@ public final class MSG
 
     public String toString(int zero)
     {
-        StringBuffer ret = new StringBuffer(1024);
+        MsgBuffer ret=new MsgBuffer(1024);
+        appendTo(ret);
+        return ret.toString();
+    }
 
+    public void appendTo(MsgBuffer out)
+    {
         if (isValid())
-            for (Iterator<MultipleSyntaxElements> i = getChildContainers().listIterator(); i.hasNext(); ) {
+            for (ListIterator<MultipleSyntaxElements> i = getChildContainers().listIterator(); i.hasNext(); ) {
                 MultipleSyntaxElements list = i.next();
 
                 if (list != null)
-                    ret.append(list.toString(0));
+                    list.appendTo(out);
             }
-
-        return ret.toString();
     }
 
     // -------------------------------------------------------------------------------------------
     
-    private void initData(String type,String res,int fullResLen,MsgGen gen,boolean checkSeq,boolean checkValids)
+    private void initData(String type,CharSequence res,int fullResLen,MsgGen gen,boolean checkSeq,boolean checkValids)
     {
+        rebuildIndex();
         if (checkSeq)
             checkSegSeq(1);
     }
 
-    public MSG(String type,String res,int fullResLen,MsgGen gen,boolean checkSeq,boolean checkValids)
+    public MSG(String type,CharSequence res,int fullResLen,MsgGen gen,boolean checkSeq,boolean checkValids)
     {
-        super(type,type,null,(char)0,0,new StringBuffer(res),fullResLen,
-                gen.getSyntax(),
+        super(type,type,null,(char)0,0,new ParseCursor(res),fullResLen,
+                gen.getSyntaxSpec(),
                 new Hashtable<String, String>(),
                 checkValids?new Hashtable<String, String>():null);
         initData(type,res,fullResLen,gen,checkSeq,checkValids);
     }
     
-    public void init(String type,String res,int fullResLen,MsgGen gen,boolean checkSeq,boolean checkValids)
+    public void init(String type,CharSequence res,int fullResLen,MsgGen gen,boolean checkSeq,boolean checkValids)
     {
-        super.init(type,type,null,(char)0,0,new StringBuffer(res),fullResLen,
-                gen.getSyntax(),new Hashtable<String, String>(),
+        super.init(type,type,null,(char)0,0,new ParseCursor(res),fullResLen,
+                gen.getSyntaxSpec(),new Hashtable<String, String>(),
                 checkValids?new Hashtable<String, String>():null);
         initData(type,res,fullResLen,gen,checkSeq,checkValids);
     }
@@ -179,20 +215,129 @@ public final class MSG
         return '\'';
     }
 
-    protected MultipleSyntaxElements parseNewChildContainer(Node segref, char predelim0, char predelim1, StringBuffer res, int fullResLen, Document syntax, Hashtable<String, String> predefs,Hashtable<String, String> valids)
+    protected MultipleSyntaxElements parseNewChildContainer(SyntaxRef segref, char predelim0, char predelim1, ParseCursor res, int fullResLen, SyntaxSpec syntax, Hashtable<String, String> predefs,Hashtable<String, String> valids)
     {
         MultipleSyntaxElements ret=null;
 
-        if ((segref.getNodeName()).equals("SEG"))
+        if (segref.isSEG())
             ret=MultipleSEGsFactory.getInstance().createMultipleSEGs(segref, getPath(), predelim0, predelim1, res, fullResLen, syntax, predefs,valids);
-        else if ((segref.getNodeName()).equals("SF"))
+        else if (segref.isSF())
             ret=MultipleSFsFactory.getInstance().createMultipleSFs(segref, getPath(), predelim0, predelim1, res, fullResLen, syntax, predefs,valids);
         
         return ret;
     }
 
+    // -------------------------------------------------------------------------------------------
+
+    /** Baut den Pfad-Index dieser Nachricht komplett neu auf. Das ist nur nötig,
+        wenn Elemente an den Methoden dieser Klasse vorbei direkt in den
+        Nachrichtenbaum eingehängt oder daraus entfernt wurden - veraltete Einträge
+        werden bei der Suche aber ohnehin erkannt und ignoriert. */
+    public void rebuildIndex()
+    {
+        if (index==null) {
+            index=new HashMap<String,SyntaxElement>(256);
+        } else {
+            index.clear();
+        }
+        
+        for (Iterator<MultipleSyntaxElements> i=getChildContainers().iterator();i.hasNext();) {
+            MultipleSyntaxElements c=i.next();
+            if (c!=null) {
+                addToIndex(c);
+            }
+        }
+    }
+    
+    /** nimmt das element <code>elem</code> und alle seine unterelemente in den
+        pfad-index auf. das element muss bereits in die nachricht eingehängt sein */
+    public void addToIndex(SyntaxElement elem)
+    {
+        if (index!=null && elem!=null) {
+            index.put(elem.getPath(),elem);
+            
+            List<MultipleSyntaxElements> childs=elem.getChildContainers();
+            if (childs!=null) {
+                for (Iterator<MultipleSyntaxElements> i=childs.iterator();i.hasNext();) {
+                    MultipleSyntaxElements c=i.next();
+                    if (c!=null) {
+                        addToIndex(c);
+                    }
+                }
+            }
+        }
+    }
+    
+    void addToIndex(MultipleSyntaxElements container)
+    {
+        if (index!=null) {
+            for (Iterator<SyntaxElement> i=container.getElements().iterator();i.hasNext();) {
+                addToIndex(i.next());
+            }
+        }
+    }
+    
+    /** sucht das element mit dem pfad <code>path</code> im index. einträge
+        für elemente, die inzwischen nicht mehr zu dieser nachricht gehören
+        (z.b. weil sie ersetzt und an den object-pool zurückgegeben wurden),
+        werden dabei verworfen
+        @return das element oder <code>null</code>, wenn es nicht im index
+        gefunden wurde (es kann trotzdem im baum existieren) */
+    private SyntaxElement lookup(String path)
+    {
+        SyntaxElement ret=null;
+        
+        if (index!=null) {
+            ret=index.get(path);
+            if (ret!=null && (!path.equals(ret.getPath()) || ret.getMsg()!=this)) {
+                index.remove(path);
+                ret=null;
+            }
+        }
+        
+        return ret;
+    }
+    
+    public boolean propagateValue(String destPath, String value, boolean tryToCreate,boolean allowOverwrite)
+    {
+        SyntaxElement elem=lookup(destPath);
+        if (elem!=null) {
+            return elem.propagateValue(destPath,value,tryToCreate,allowOverwrite);
+        }
+        return super.propagateValue(destPath,value,tryToCreate,allowOverwrite);
+    }
+    
+    public SyntaxElement getElement(String path)
+    {
+        SyntaxElement ret=lookup(path);
+        if (ret==null) {
+            ret=super.getElement(path);
+            if (ret!=null && ret!=this && index!=null) {
+                index.put(path,ret);
+            }
+        }
+        return ret;
+    }
+    
+    public String getValueOfDE(String path, int zero)
+    {
+        SyntaxElement elem=lookup(path);
+        if (elem!=null) {
+            return elem.getValueOfDE(path,0);
+        }
+        return super.getValueOfDE(path,0);
+    }
+
     public String getValueOfDE(String path)
     {
+        SyntaxElement elem=lookup(path);
+        if (elem!=null) {
+            String ret=elem.getValueOfDE(path);
+            if (ret==null)
+                throw new NoSuchPathException(path);
+            return ret;
+        }
+        
         String ret = null;
 
         for (ListIterator<MultipleSyntaxElements> i = getChildContainers().listIterator(); i.hasNext(); ) {
@@ -256,6 +401,12 @@ public final class MSG
             }
           }
         }
+
+        index=null;
+
+        if (raw!=null && raw.capacity()>MAX_KEPT_BUFFER_SIZE) {
+            raw=null;
+        }
         
         super.destroy();
     }
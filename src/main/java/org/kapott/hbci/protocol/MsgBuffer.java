@@ -0,0 +1,193 @@
+/*  This file is part of HBCI4Java
+    Copyright (C) 2001-2008  Stefan Palme
+
+    HBCI4Java is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    HBCI4Java is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package org.kapott.hbci.protocol;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+
+import org.kapott.hbci.exceptions.HBCI_Exception;
+import org.kapott.hbci.manager.HBCIUtilsInternal;
+
+/** <p>Wiederverwendbarer Puffer, in den eine HBCI-Nachricht direkt in ihrer
+    Übertragungsform (ISO-8859-1) geschrieben wird. Die Syntaxelemente einer
+    Nachricht schreiben sich mit {@link SyntaxElement#appendTo(MsgBuffer)}
+    nacheinander in den Puffer, so dass die Nachricht genau einmal erzeugt
+    wird - ohne die bei geschachtelten <code>toString()</code>-Aufrufen
+    entstehenden Zwischen-Strings.</p>
+    <p>Zeichen, die in ISO-8859-1 nicht darstellbar sind, werden (wie bei
+    <code>String.getBytes("ISO-8859-1")</code>) als <code>'?'</code> geschrieben.</p>
+    <p>Objekte dieser Klasse sind nicht threadsicher.</p> */
+public final class MsgBuffer
+{
+    private final static String ENCODING="ISO-8859-1";
+
+    private byte[] buf;
+    private int    len;
+
+    public MsgBuffer()
+    {
+        this(1024);
+    }
+
+    public MsgBuffer(int capacity)
+    {
+        this.buf=new byte[Math.max(capacity,16)];
+        this.len=0;
+    }
+
+    /** erzeugt einen puffer, der bereits die übergebenen daten enthält. das
+        array wird dabei nicht kopiert und darf danach nicht mehr verändert werden */
+    public MsgBuffer(byte[] data)
+    {
+        this.buf=data;
+        this.len=data.length;
+    }
+
+    private void ensureCapacity(int needed)
+    {
+        if (needed>buf.length) {
+            buf=Arrays.copyOf(buf,Math.max(needed,buf.length<<1));
+        }
+    }
+
+    public MsgBuffer append(char ch)
+    {
+        ensureCapacity(len+1);
+        buf[len++]=(ch<=0xff)?(byte)ch:(byte)'?';
+        return this;
+    }
+
+    public MsgBuffer append(String st)
+    {
+        int n=st.length();
+        ensureCapacity(len+n);
+        byte[] b=buf;
+        int    pos=len;
+        for (int i=0;i<n;i++) {
+            char ch=st.charAt(i);
+            b[pos++]=(ch<=0xff)?(byte)ch:(byte)'?';
+        }
+        len=pos;
+        return this;
+    }
+
+    public MsgBuffer append(byte[] data,int offset,int count)
+    {
+        ensureCapacity(len+count);
+        System.arraycopy(data,offset,buf,len,count);
+        len+=count;
+        return this;
+    }
+
+    /** liest bis zu <code>count</code> bytes (bei <code>count&lt;0</code> bis
+        zum ende des streams) aus <code>in</code> direkt in den puffer. reicht
+        der platz nicht, wächst der puffer geometrisch (aber nicht über die
+        noch zu lesenden <code>count</code> bytes hinaus) - ist die länge
+        vorher bekannt, sollte der puffer also schon passend angelegt werden
+        @return anzahl der gelesenen bytes */
+    public int readFrom(InputStream in,int count)
+        throws IOException
+    {
+        int start=len;
+        while (count!=0) {
+            if (len==buf.length) {
+                int grow=Math.max(buf.length,16);
+                if (count>0 && count<grow) {
+                    grow=count;
+                }
+                buf=Arrays.copyOf(buf,len+grow);
+            }
+            int max=buf.length-len;
+            if (count>0 && count<max) {
+                max=count;
+            }
+            int num=in.read(buf,len,max);
+            if (num<0) {
+                break;
+            }
+            len+=num;
+            if (count>0) {
+                count-=num;
+            }
+        }
+        return len-start;
+    }
+
+    /** anzahl der bytes im puffer */
+    public int length()
+    {
+        return len;
+    }
+
+    /** kürzt den puffer auf <code>newLength</code> bytes */
+    public void setLength(int newLength)
+    {
+        if (newLength<0 || newLength>len)
+            throw new IndexOutOfBoundsException(Integer.toString(newLength));
+        len=newLength;
+    }
+
+    /** leert den puffer. der bereits allokierte speicher wird weiter benutzt */
+    public void reset()
+    {
+        len=0;
+    }
+
+    /** größe des allokierten speichers */
+    public int capacity()
+    {
+        return buf.length;
+    }
+
+    /** gibt das interne array zurück - gültig sind nur die ersten
+        {@link #length()} bytes. das array darf nicht verändert werden (außer
+        beim dekodieren direkt im puffer, danach muss die länge mit
+        {@link #setLength(int)} angepasst werden) und ist nur bis zur nächsten
+        änderung des puffers gültig */
+    public byte[] getBuffer()
+    {
+        return buf;
+    }
+
+    /** gibt eine kopie des pufferinhaltes zurück */
+    public byte[] toByteArray()
+    {
+        return Arrays.copyOf(buf,len);
+    }
+
+    /** schreibt den pufferinhalt in den stream */
+    public void writeTo(OutputStream out)
+        throws IOException
+    {
+        out.write(buf,0,len);
+    }
+
+    /** gibt den pufferinhalt als string zurück */
+    public String toString()
+    {
+        try {
+            return new String(buf,0,len,ENCODING);
+        } catch (UnsupportedEncodingException e) {
+            throw new HBCI_Exception(HBCIUtilsInternal.getLocMsg("EXCMSG_ISOERR"),e);
+        }
+    }
+}
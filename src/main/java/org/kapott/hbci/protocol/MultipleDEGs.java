@@ -28,15 +28,14 @@ import java.util.ListIterator;
 import java.util.Properties;
 
 import org.kapott.hbci.protocol.factory.DEGFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
+import org.kapott.hbci.tools.ParseCursor;
 
 public final class MultipleDEGs
      extends MultipleSyntaxElements
 {
     private char delimiter;
 
-    protected SyntaxElement createAndAppendNewElement(Node ref, String path, int idx, Document syntax)
+    protected SyntaxElement createAndAppendNewElement(SyntaxRef ref, String path, int idx, SyntaxSpec syntax)
     {
         SyntaxElement ret=null;
 
@@ -44,18 +43,18 @@ public final class MultipleDEGs
         return ret;
     }
 
-    private void initData(Node degref, char delimiter, String path, Document syntax)
+    private void initData(SyntaxRef degref, char delimiter, String path, SyntaxSpec syntax)
     {
         this.delimiter = delimiter;
     }
     
-    public MultipleDEGs(Node degref, char delimiter, String path, Document syntax)
+    public MultipleDEGs(SyntaxRef degref, char delimiter, String path, SyntaxSpec syntax)
     {
         super(degref, path, syntax);
         initData(degref,delimiter,path,syntax);
     }
 
-    public void init(Node degref, char delimiter, String path, Document syntax)
+    public void init(SyntaxRef degref, char delimiter, String path, SyntaxSpec syntax)
     {
         super.init(degref, path, syntax);
         initData(degref,delimiter,path,syntax);
@@ -63,43 +62,47 @@ public final class MultipleDEGs
 
     public String toString(int zero)
     {
-        StringBuffer ret=new StringBuffer(128);
-        boolean first = true;
+        MsgBuffer ret=new MsgBuffer(128);
+        appendTo(ret);
+        return ret.toString();
+    }
+
+    public void appendTo(MsgBuffer out)
+    {
+        boolean first=true;
 
         for (ListIterator<SyntaxElement> i = getElements().listIterator(); i.hasNext(); ) {
             if (!first)
-                ret.append(delimiter);
+                out.append(delimiter);
             first=false;
 
             DEG deg = (DEG)(i.next());
             if (deg != null)
-                ret.append(deg.toString(0));
+                deg.appendTo(out);
         }
-
-        return ret.toString();
     }
 
     // --------------------------------------------------------------------------------------------------------------
 
-    protected SyntaxElement parseAndAppendNewElement(Node ref, String path, char predelim, int idx, StringBuffer res, int fullResLen, Document syntax, Hashtable<String, String> predefs,Hashtable<String, String> valids)
+    protected SyntaxElement parseAndAppendNewElement(SyntaxRef ref, String path, char predelim, int idx, ParseCursor res, int fullResLen, SyntaxSpec syntax, Hashtable<String, String> predefs,Hashtable<String, String> valids)
     {
         SyntaxElement ret=null;
         addElement((ret=DEGFactory.getInstance().createDEG(getType(), getName(), path, predelim, idx, res, fullResLen, syntax, predefs,valids)));
         return ret;
     }
     
-    private void initData(Node degref, char delimiter, String path, char predelim0, char predelim1, StringBuffer res, int fullResLen, Document syntax, Hashtable<?, ?> predefs,Hashtable<?, ?> valids)
+    private void initData(SyntaxRef degref, char delimiter, String path, char predelim0, char predelim1, ParseCursor res, int fullResLen, SyntaxSpec syntax, Hashtable<?, ?> predefs,Hashtable<?, ?> valids)
     {
         this.delimiter = delimiter;
     }
 
-    public MultipleDEGs(Node degref, char delimiter, String path, char predelim0, char predelim1, StringBuffer res, int fullResLen, Document syntax, Hashtable<String, String> predefs,Hashtable<String, String> valids)
+    public MultipleDEGs(SyntaxRef degref, char delimiter, String path, char predelim0, char predelim1, ParseCursor res, int fullResLen, SyntaxSpec syntax, Hashtable<String, String> predefs,Hashtable<String, String> valids)
     {
         super(degref, path, predelim0, predelim1, res, fullResLen, syntax, predefs,valids);
         initData(degref,delimiter,path,predelim0,predelim1,res,fullResLen,syntax,predefs,valids);
     }
 
-    public void init (Node degref, char delimiter, String path, char predelim0, char predelim1, StringBuffer res, int fullResLen,Document syntax, Hashtable<String, String> predefs,Hashtable<String, String> valids)
+    public void init (SyntaxRef degref, char delimiter, String path, char predelim0, char predelim1, ParseCursor res, int fullResLen,SyntaxSpec syntax, Hashtable<String, String> predefs,Hashtable<String, String> valids)
     {
         super.init(degref, path, predelim0, predelim1, res, fullResLen, syntax, predefs,valids);
         initData(degref,delimiter,path,predelim0,predelim1,res,fullResLen,syntax,predefs,valids);
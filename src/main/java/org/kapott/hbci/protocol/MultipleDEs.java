@@ -31,8 +31,7 @@ import java.util.Properties;
 
 import org.kapott.hbci.manager.HBCIUtilsInternal;
 import org.kapott.hbci.protocol.factory.DEFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
+import org.kapott.hbci.tools.ParseCursor;
 
 public final class MultipleDEs
      extends MultipleSyntaxElements
@@ -40,26 +39,26 @@ public final class MultipleDEs
     private char delimiter;
     private List<String> valids;
 
-    protected SyntaxElement createAndAppendNewElement(Node deref, String path, int idx, Document syntax)
+    protected SyntaxElement createAndAppendNewElement(SyntaxRef deref, String path, int idx, SyntaxSpec syntax)
     {
         SyntaxElement ret=null;
         addElement((ret=DEFactory.getInstance().createDE(deref, getName(), path, idx, syntax)));
         return ret;
     }
     
-    private void initData(Node dedef, char delimiter, String path, Document syntax)
+    private void initData(SyntaxRef dedef, char delimiter, String path, SyntaxSpec syntax)
     {
         this.delimiter = delimiter;
         this.valids=new ArrayList<String>();
     }
 
-    public MultipleDEs(Node dedef, char delimiter, String path, Document syntax)
+    public MultipleDEs(SyntaxRef dedef, char delimiter, String path, SyntaxSpec syntax)
     {
         super(dedef, path, syntax);
         initData(dedef,delimiter,path,syntax);
     }
 
-    public void init(Node dedef, char delimiter, String path, Document syntax)
+    public void init(SyntaxRef dedef, char delimiter, String path, SyntaxSpec syntax)
     {
         super.init(dedef, path, syntax);
         initData(dedef,delimiter,path,syntax);
@@ -86,25 +85,29 @@ public final class MultipleDEs
 
     public String toString(int zero)
     {
-        StringBuffer ret = new StringBuffer(128);
+        MsgBuffer ret=new MsgBuffer(128);
+        appendTo(ret);
+        return ret.toString();
+    }
+
+    public void appendTo(MsgBuffer out)
+    {
         boolean first=true;
 
         for (ListIterator<SyntaxElement> i = getElements().listIterator(); i.hasNext(); ) {
             if (!first)
-                ret.append(delimiter);
+                out.append(delimiter);
             first=false;
 
             DE de = (DE)(i.next());
             if (de != null)
-                ret.append(de.toString(0));
+                de.appendTo(out);
         }
-
-        return ret.toString();
     }
 
     // -------------------------------------------------------------------------------------------------------
 
-    protected SyntaxElement parseAndAppendNewElement(Node ref, String path, char predelim, int idx, StringBuffer res, int fullResLen,Document syntax, Hashtable<String, String> predefs,Hashtable<String, String> valids)
+    protected SyntaxElement parseAndAppendNewElement(SyntaxRef ref, String path, char predelim, int idx, ParseCursor res, int fullResLen,SyntaxSpec syntax, Hashtable<String, String> predefs,Hashtable<String, String> valids)
     {
         SyntaxElement ret=null;
         
@@ -129,19 +132,19 @@ public final class MultipleDEs
         return ret;
     }
     
-    private void initData(Node deref, char delimiter, String path, char predelim0, char predelim1, StringBuffer res, int fullResLen,Document syntax, Hashtable<?, ?> predefs,Hashtable<?, ?> valids)
+    private void initData(SyntaxRef deref, char delimiter, String path, char predelim0, char predelim1, ParseCursor res, int fullResLen,SyntaxSpec syntax, Hashtable<?, ?> predefs,Hashtable<?, ?> valids)
     {
         this.delimiter=delimiter;
         this.valids=new ArrayList<String>();
     }
 
-    public MultipleDEs(Node deref, char delimiter, String path, char predelim0, char predelim1, StringBuffer res, int fullResLen, Document syntax, Hashtable<String, String> predefs,Hashtable<String, String> valids)
+    public MultipleDEs(SyntaxRef deref, char delimiter, String path, char predelim0, char predelim1, ParseCursor res, int fullResLen, SyntaxSpec syntax, Hashtable<String, String> predefs,Hashtable<String, String> valids)
     {
         super(deref, path, predelim0, predelim1, res, fullResLen, syntax, predefs,valids);
         initData(deref,delimiter,path,predelim0,predelim1,res,fullResLen,syntax,predefs,valids);
     }
 
-    public void init(Node deref, char delimiter, String path, char predelim0, char predelim1, StringBuffer res, int fullResLen, Document syntax, Hashtable<String, String> predefs,Hashtable<String, String> valids)
+    public void init(SyntaxRef deref, char delimiter, String path, char predelim0, char predelim1, ParseCursor res, int fullResLen, SyntaxSpec syntax, Hashtable<String, String> predefs,Hashtable<String, String> valids)
     {
         super.init(deref, path, predelim0, predelim1, res, fullResLen, syntax, predefs,valids);
         initData(deref,delimiter,path,predelim0,predelim1,res,fullResLen,syntax,predefs,valids);
@@ -28,55 +28,57 @@ import java.util.ListIterator;
 import java.util.Properties;
 
 import org.kapott.hbci.protocol.factory.SEGFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
+import org.kapott.hbci.tools.ParseCursor;
 
 public final class MultipleSEGs
      extends MultipleSyntaxElements
 {
-    protected SyntaxElement createAndAppendNewElement(Node ref, String path, int idx, Document syntax)
+    protected SyntaxElement createAndAppendNewElement(SyntaxRef ref, String path, int idx, SyntaxSpec syntax)
     {
         SyntaxElement ret=null;
         addElement((ret=SEGFactory.getInstance().createSEG(getType(), getName(), path, idx, syntax)));
         return ret;
     }
 
-    public MultipleSEGs(Node segref, String path, Document syntax)
+    public MultipleSEGs(SyntaxRef segref, String path, SyntaxSpec syntax)
     {
         super(segref, path, syntax);
     }
 
-    public void init(Node segref, String path, Document syntax)
+    public void init(SyntaxRef segref, String path, SyntaxSpec syntax)
     {
         super.init(segref, path, syntax);
     }
 
     public String toString(int zero)
     {
-        StringBuffer ret = new StringBuffer(256);
+        MsgBuffer ret=new MsgBuffer(256);
+        appendTo(ret);
+        return ret.toString();
+    }
 
+    public void appendTo(MsgBuffer out)
+    {
         for (ListIterator<SyntaxElement> i = getElements().listIterator(); i.hasNext(); ) {
             SEG seg = (SEG)(i.next());
             if (seg != null)
-                ret.append(seg.toString(0));
+                seg.appendTo(out);
         }
-
-        return ret.toString();
     }
 
     // ---------------------------------------------------------------------------------------------------------------
 
-    public MultipleSEGs(Node segref, String path, char predelim0, char predelim1, StringBuffer res, int fullResLen, Document syntax, Hashtable<String,String> predefs,Hashtable<String,String> valids)
+    public MultipleSEGs(SyntaxRef segref, String path, char predelim0, char predelim1, ParseCursor res, int fullResLen, SyntaxSpec syntax, Hashtable<String,String> predefs,Hashtable<String,String> valids)
     {
         super(segref, path, predelim0, predelim1, res, fullResLen, syntax, predefs,valids);
     }
 
-    public void init(Node segref, String path, char predelim0, char predelim1, StringBuffer res, int fullResLen, Document syntax, Hashtable<String,String> predefs,Hashtable<String,String> valids)
+    public void init(SyntaxRef segref, String path, char predelim0, char predelim1, ParseCursor res, int fullResLen, SyntaxSpec syntax, Hashtable<String,String> predefs,Hashtable<String,String> valids)
     {
         super.init(segref, path, predelim0, predelim1, res, fullResLen, syntax, predefs,valids);
     }
 
-    protected SyntaxElement parseAndAppendNewElement(Node ref, String path, char predelim, int idx, StringBuffer res, int fullResLen, Document syntax, Hashtable<String,String> predefs,Hashtable<String,String> valids)
+    protected SyntaxElement parseAndAppendNewElement(SyntaxRef ref, String path, char predelim, int idx, ParseCursor res, int fullResLen, SyntaxSpec syntax, Hashtable<String,String> predefs,Hashtable<String,String> valids)
     {
         SyntaxElement ret=null;
         addElement((ret=SEGFactory.getInstance().createSEG(getType(), getName(), path, predelim, idx, res, fullResLen, syntax, predefs,valids)));
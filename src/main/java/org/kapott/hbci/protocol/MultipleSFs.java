@@ -28,55 +28,57 @@ import java.util.ListIterator;
 import java.util.Properties;
 
 import org.kapott.hbci.protocol.factory.SFFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
+import org.kapott.hbci.tools.ParseCursor;
 
 public final class MultipleSFs
      extends MultipleSyntaxElements
 {
-    protected SyntaxElement createAndAppendNewElement(Node ref, String path, int idx, Document syntax)
+    protected SyntaxElement createAndAppendNewElement(SyntaxRef ref, String path, int idx, SyntaxSpec syntax)
     {
         SyntaxElement ret=null;
         addElement((ret=SFFactory.getInstance().createSF(getType(), getName(), path, idx, syntax)));
         return ret;
     }
 
-    public MultipleSFs(Node sfref, String path, Document syntax)
+    public MultipleSFs(SyntaxRef sfref, String path, SyntaxSpec syntax)
     {
         super(sfref, path, syntax);
     }
 
-    public void init(Node sfref, String path, Document syntax)
+    public void init(SyntaxRef sfref, String path, SyntaxSpec syntax)
     {
         super.init(sfref, path, syntax);
     }
 
     public String toString(int zero)
     {
-        StringBuffer ret = new StringBuffer(256);
+        MsgBuffer ret=new MsgBuffer(256);
+        appendTo(ret);
+        return ret.toString();
+    }
 
+    public void appendTo(MsgBuffer out)
+    {
         for (ListIterator<SyntaxElement> i = getElements().listIterator(); i.hasNext(); ) {
             SF sf = (SF)(i.next());
             if (sf != null)
-                ret.append(sf.toString(0));
+                sf.appendTo(out);
         }
-
-        return ret.toString();
     }
 
     // ---------------------------------------------------------------------------------------------------------------
 
-    public MultipleSFs(Node sfref, String path, char predelim0, char predelim1, StringBuffer res, int fullResLen, Document syntax, Hashtable<String,String> predefs,Hashtable<String,String> valids)
+    public MultipleSFs(SyntaxRef sfref, String path, char predelim0, char predelim1, ParseCursor res, int fullResLen, SyntaxSpec syntax, Hashtable<String,String> predefs,Hashtable<String,String> valids)
     {
         super(sfref, path, predelim0, predelim1, res, fullResLen, syntax, predefs,valids);
     }
 
-    public void init(Node sfref, String path, char predelim0, char predelim1, StringBuffer res, int fullResLen, Document syntax, Hashtable<String,String> predefs,Hashtable<String,String> valids)
+    public void init(SyntaxRef sfref, String path, char predelim0, char predelim1, ParseCursor res, int fullResLen, SyntaxSpec syntax, Hashtable<String,String> predefs,Hashtable<String,String> valids)
     {
         super.init(sfref, path, predelim0, predelim1, res, fullResLen, syntax, predefs,valids);
     }
 
-    protected SyntaxElement parseAndAppendNewElement(Node ref, String path, char predelim, int idx, StringBuffer res, int fullResLen, Document syntax, Hashtable<String,String> predefs,Hashtable<String,String> valids)
+    protected SyntaxElement parseAndAppendNewElement(SyntaxRef ref, String path, char predelim, int idx, ParseCursor res, int fullResLen, SyntaxSpec syntax, Hashtable<String,String> predefs,Hashtable<String,String> valids)
     {
         SyntaxElement ret=null;
         addElement((ret=SFFactory.getInstance().createSF(getType(), getName(), path, predelim, idx, res, fullResLen, syntax, predefs,valids)));
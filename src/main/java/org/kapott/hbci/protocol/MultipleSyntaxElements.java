@@ -37,9 +37,7 @@ import org.kapott.hbci.protocol.factory.DEFactory;
 import org.kapott.hbci.protocol.factory.DEGFactory;
 import org.kapott.hbci.protocol.factory.SEGFactory;
 import org.kapott.hbci.protocol.factory.SFFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
+import org.kapott.hbci.tools.ParseCursor;
 
 /* die child-elemente von strukturierten syntaxelementen (msg, seg, sg, deg)
     werden nicht direkt als listenelemente der uebergeordneten
@@ -65,26 +63,23 @@ public abstract class MultipleSyntaxElements
     private int maxnum;
     private int syntaxIdx; // die Position dieses Container innerhalb
                            // der Syntax-Definition des Eltern-Elementes
-    private Document syntax;
-    private Node ref;
+    private SyntaxSpec syntax;
+    private SyntaxRef ref;
     private SyntaxElement parent;
 
     /** erzeugt einen neuen eintrag in der elements liste; dabei wird ein
         syntaxelement erzeugt, das im xml-node ref referenziert wird;
         idx ist die indexnummer des zu erzeugenden syntaxelementes
         innerhalb der elementlist */
-    protected abstract SyntaxElement createAndAppendNewElement(Node ref, String path, int idx, Document syntax);
+    protected abstract SyntaxElement createAndAppendNewElement(SyntaxRef ref, String path, int idx, SyntaxSpec syntax);
 
     /** siehe SyntaxElement::parseElementList() */
-    protected abstract SyntaxElement parseAndAppendNewElement(Node ref, String path, char predelim, int idx, StringBuffer res, int fullResLen,Document syntax, Hashtable<String,String> predefs,Hashtable<String,String> valids);
+    protected abstract SyntaxElement parseAndAppendNewElement(SyntaxRef ref, String path, char predelim, int idx, ParseCursor res, int fullResLen,SyntaxSpec syntax, Hashtable<String,String> predefs,Hashtable<String,String> valids);
 
-    private void initData(Node ref, String path, Document syntax)
+    private void initData(SyntaxRef ref, String path, SyntaxSpec syntax)
     {
-        type=((Element)ref).getAttribute("type");
-        name=((Element)ref).getAttribute("name");
-        if (name.length()==0) {
-            name=type;
-        }
+        type=ref.getType();
+        name=ref.getName();
         
         this.elements=new ArrayList<SyntaxElement>();
         this.parent=null;
@@ -98,17 +93,8 @@ public abstract class MultipleSyntaxElements
         temppath.append(name);
         this.path=temppath.toString();
 
-        String st;
-
-        minnum = 1;
-        st = ((Element)ref).getAttribute("minnum");
-        if (st.length() != 0)
-            minnum = Integer.parseInt(st);
-
-        maxnum = 1;
-        st = ((Element)ref).getAttribute("maxnum");
-        if (st.length() != 0)
-            maxnum = Integer.parseInt(st);
+        minnum = ref.getMinNum();
+        maxnum = ref.getMaxNum();
 
         try {
             // anlegen mindestens eines syntaxelementes
@@ -147,12 +133,12 @@ public abstract class MultipleSyntaxElements
     
     /** anlegen eines neuen syntaxelementarrays fuer ein syntaxelement;
         ref ist eine xml-node-referenz auf das syntaxelement */
-    protected MultipleSyntaxElements(Node ref, String path, Document syntax)
+    protected MultipleSyntaxElements(SyntaxRef ref, String path, SyntaxSpec syntax)
     {
         initData(ref,path,syntax);
     }
 
-    protected void init(Node ref, String path, Document syntax)
+    protected void init(SyntaxRef ref, String path, SyntaxSpec syntax)
     {
         initData(ref,path,syntax);
     }
@@ -177,11 +163,17 @@ public abstract class MultipleSyntaxElements
 
                 if (number>elements.size()) {
                     String temppath=path.substring(0,path.lastIndexOf("."));
+                    MSG    msg=(parent!=null)?parent.getMsg():null;
 
                     for (int i=elements.size();i<number;i++) {
                         SyntaxElement child=createAndAppendNewElement(ref,temppath,i,syntax);
-                        if (child!=null)
+                        if (child!=null) {
                             child.setParent(this);
+                            
+                            // neues element im pfad-index der nachricht bekannt machen
+                            if (msg!=null)
+                                msg.addToIndex(child);
+                        }
                     }
                 }
             }
@@ -351,17 +343,14 @@ public abstract class MultipleSyntaxElements
 
     // ---------------------------------------------------------------------------------------------------------------
 
-    private void initData(Node ref, String path, char predelim0, char predelim1, StringBuffer res, int fullResLen,Document syntax, Hashtable<String,String> predefs,Hashtable<String,String> valids)
+    private void initData(SyntaxRef ref, String path, char predelim0, char predelim1, ParseCursor res, int fullResLen,SyntaxSpec syntax, Hashtable<String,String> predefs,Hashtable<String,String> valids)
     {
         this.ref=null;
         this.syntax=null;
         this.syntaxIdx=-1;
         this.elements = new ArrayList<SyntaxElement>();
-        this.type = ((Element)ref).getAttribute("type");
-        this.name = ((Element)ref).getAttribute("name");
-        if (name.length()==0) {
-            this.name=this.type;
-        }
+        this.type = ref.getType();
+        this.name = ref.getName();
         this.parent=null;
 
         StringBuffer temppath=new StringBuffer(128);
@@ -370,26 +359,18 @@ public abstract class MultipleSyntaxElements
         temppath.append(name);
         this.path=temppath.toString();
 
-        String st;
-
-        minnum = 1;
-        st = ((Element)ref).getAttribute("minnum");
-        if (st.length() != 0)
-            minnum = Integer.parseInt(st);
-
-        maxnum = 1;
-        st = ((Element)ref).getAttribute("maxnum");
-        if (st.length() != 0)
-            maxnum = Integer.parseInt(st);
+        minnum = ref.getMinNum();
+        maxnum = ref.getMaxNum();
 
         int     idx = 0;
         boolean ready = false;
 
         try {
             while (!ready) {
-                // sichern des reststrings
-                StringBuffer save=new StringBuffer(res.toString());
-                boolean      emptyElementFound=false;
+                // sichern der aktuellen position im reststring (beim
+                // zuruecksetzen wird einfach diese position wiederhergestellt)
+                int     save=res.getPosition();
+                boolean emptyElementFound=false;
 
                 try {
                     // versuch, ein weiteres syntaxelement zu erzeugen
@@ -423,7 +404,9 @@ public abstract class MultipleSyntaxElements
                     // leerer elemente geworfen wurden, als OK akzeptiert werden, solange die
                     // mindestanzahl bereits gefuellter elemente erreicht ist
                     
-                    if (save.length()>1) {
+                    int failed=res.getPosition();
+                    res.setPosition(save);
+                    if (res.length()>1) {
                         
                         //////////////////////////////////////////////////////////////////////
                         // Dirty-Hack fuer Sonderfall optionale MultipleDEGs. Also eine Liste vieler DEGs,
@@ -434,32 +417,34 @@ public abstract class MultipleSyntaxElements
                         // Das verlaengert das Parsen enorm. Wir kuerzen daher hier ab.
                         // Wenn this ein MultiDEGs mit minnum = 0 und maxnum > 1 ist, dann checken
                         // wir, ob auf dem Substring von "save(0,maxnum-idx)" nur noch "+"-Zeichen
-                        // kommen. Wenn das der Fall ist, koennen wir hier abbrechen
+                        // kommen. Wenn das der Fall ist, koennen wir hier abbrechen.
+                        // (Die "+"-Zeichen werden - wie bisher - ab der Position
+                        // uebersprungen, an der der fehlgeschlagene Versuch aufgehoert hat)
                         // Siehe http://www.onlinebanking-forum.de/forum/topic.php?t=19879&page=last#last_post
                         if ((this instanceof MultipleDEGs) && this.minnum == 0 && this.maxnum > 1 && idx > 1)
                         {
                             int size = this.maxnum-idx;
-                            if (size > save.length())
-                                size = save.length();
-                            String rest = save.substring(0,size);
-                            if (containsOnly(rest,'+'))
+                            if (size > res.length())
+                                size = res.length();
+                            if (containsOnly(res,size,'+'))
                             {
                                 HBCIUtils.log("applying shortcut for optional MultipleDEGs, have no more content in according range",HBCIUtils.LOG_DEBUG);
-                                res.replace(0,res.length(),res.substring(size-1)); // Wir schneiden die "+++++..." alle weg
+                                res.setPosition(failed);
+                                res.skip(size-1); // Wir schneiden die "+++++..." alle weg
                                 ready = true;
                                 continue;
                             }
                         }
                         //////////////////////////////////////////////////////////////////////
                         
-                        char secondChar=save.charAt(1);
+                        char secondChar=res.charAt(1);
 
                         if (secondChar=='+' || secondChar==':' || secondChar=='\'') {
                             // nur wenn der Fehler nicht durch einen predelimiter-error
                             // verursacht wurde, darf der delimiter (der also offensichtlich richtig
                             // und erwartet war) geloescht werden
                             if (!(e instanceof PredelimErrorException)) { 
-                                save.deleteCharAt(0);
+                                res.skip(1);
                             }
 
                             emptyElementFound=true;
@@ -467,13 +452,11 @@ public abstract class MultipleSyntaxElements
                     } else {
                         emptyElementFound=true;
                     }
-                    
-                    res.replace(0,res.length(),save.toString());
 
                     /* wenn bisher weniger als die mindestanzahl geklappt hat,
                      dann exception werfen */
                     if (idx<minnum)
-                        throw new ParseErrorException("reststring in "+getPath()+": "+res.toString(),e);
+                        throw new ParseErrorException("reststring in "+getPath()+": "+res.preview(),e);
 
                     // es wird nur dann aufgehoert, weitere elemente dem aktuellen container hinzu-
                     // zufuegen, wenn ein element gefunden wurde, was offentsichlich nicht mehr dazu-
@@ -495,7 +478,7 @@ public abstract class MultipleSyntaxElements
                  reststring gleich sind; minnum ist aber erreicht),
                  dann diesen container normal beenden */
                 if ((maxnum!=0 && idx>=maxnum) ||
-                        (maxnum==0 && save.toString().equals(res.toString()) && !emptyElementFound))
+                        (maxnum==0 && save==res.getPosition() && !emptyElementFound))
                 {
                     ready = true;
                 }
@@ -529,12 +512,12 @@ public abstract class MultipleSyntaxElements
           propagiert wird (z.b. wenn die syntaxelementlist selbst das erste syntaxelement 
           einer msg repraesentiert), predelim1 ist allerdings immer der delimiter, 
           der fuer das aktuell uebergeordnete syntaxelement zu verwenden ist) */
-    protected MultipleSyntaxElements(Node ref, String path, char predelim0, char predelim1, StringBuffer res, int fullResLen, Document syntax, Hashtable<String,String> predefs,Hashtable<String,String> valids)
+    protected MultipleSyntaxElements(SyntaxRef ref, String path, char predelim0, char predelim1, ParseCursor res, int fullResLen, SyntaxSpec syntax, Hashtable<String,String> predefs,Hashtable<String,String> valids)
     {
         initData(ref,path,predelim0,predelim1,res,fullResLen,syntax,predefs,valids);
     }
     
-    protected void init(Node ref, String path, char predelim0, char predelim1, StringBuffer res, int fullResLen, Document syntax, Hashtable<String,String> predefs,Hashtable<String,String> valids)
+    protected void init(SyntaxRef ref, String path, char predelim0, char predelim1, ParseCursor res, int fullResLen, SyntaxSpec syntax, Hashtable<String,String> predefs,Hashtable<String,String> valids)
     {
         initData(ref,path,predelim0,predelim1,res,fullResLen,syntax,predefs,valids);
     }
@@ -563,21 +546,29 @@ public abstract class MultipleSyntaxElements
         return toString();
     }
 
+    /** schreibt die HBCI-Darstellung dieses Elementes (wie sie auch von
+        <code>toString(0)</code> zurückgegeben wird) an das Ende des Puffers */
+    public void appendTo(MsgBuffer out)
+    {
+        out.append(toString(0));
+    }
+
     public void getElementPaths(Properties p,int[] segref,int[] degref,int[] deref)
     {
     }
     
     /**
-     * Prueft, ob der Text s nur aus dem Zeichen c besteht.
-     * @param s der Text.
+     * Prueft, ob die ersten len Zeichen des Reststrings s nur aus dem Zeichen c bestehen.
+     * @param s der Reststring.
+     * @param len die Anzahl der zu pruefenden Zeichen.
      * @param c das Zeichen.
      * @return true, wenn der Text nur dieses Zeichen enthaelt.
      */
-    private boolean containsOnly(String s, char c)
+    private boolean containsOnly(ParseCursor s, int len, char c)
     {
-        for (char c2:s.toCharArray())
+        for (int i=0;i<len;i++)
         {
-            if (c != c2)
+            if (c != s.charAt(i))
                 return false;
         }
         
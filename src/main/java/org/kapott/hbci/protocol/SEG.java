@@ -33,8 +33,7 @@ import org.kapott.hbci.manager.HBCIUtilsInternal;
 import org.kapott.hbci.manager.MsgGen;
 import org.kapott.hbci.protocol.factory.MultipleDEGsFactory;
 import org.kapott.hbci.protocol.factory.MultipleDEsFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
+import org.kapott.hbci.tools.ParseCursor;
 
 public final class SEG
      extends SyntaxElement
@@ -44,46 +43,51 @@ public final class SEG
         return "SEG";
     }
 
-    protected MultipleSyntaxElements createNewChildContainer(Node ref, Document syntax)
+    protected MultipleSyntaxElements createNewChildContainer(SyntaxRef ref, SyntaxSpec syntax)
     {
         MultipleSyntaxElements ret=null;
 
-        if ((ref.getNodeName()).equals("DE"))
+        if (ref.isDE())
             ret=MultipleDEsFactory.getInstance().createMultipleDEs(ref, '+', getPath(), syntax);
-        else if ((ref.getNodeName()).equals("DEG"))
+        else if (ref.isDEG())
             ret=MultipleDEGsFactory.getInstance().createMultipleDEGs(ref, '+', getPath(), syntax);
 
         return ret;
     }
 
-    public SEG(String type, String name, String path, int idx, Document syntax)
+    public SEG(String type, String name, String path, int idx, SyntaxSpec syntax)
     {
         super(type, name, path, idx, syntax);
     }
 
-    public void init(String type, String name, String path, int idx, Document syntax)
+    public void init(String type, String name, String path, int idx, SyntaxSpec syntax)
     {
         super.init(type, name, path, idx, syntax);
     }
 
     public String toString(int zero)
     {
-        StringBuffer ret = new StringBuffer(256);
-        boolean first=true;
+        MsgBuffer ret=new MsgBuffer(256);
+        appendTo(ret);
+        return ret.toString();
+    }
 
+    public void appendTo(MsgBuffer out)
+    {
         if (isValid()) {
-            int tooMuch=0;
-            int saveLen;
+            boolean first=true;
+            int     tooMuch=0;
+            int     saveLen;
             for (ListIterator<MultipleSyntaxElements> i = getChildContainers().listIterator(); i.hasNext(); ) {
                 if (!first)
-                    ret.append('+');
+                    out.append('+');
 
-                saveLen=ret.length();
+                saveLen=out.length();
                 MultipleSyntaxElements dataList = i.next();
                 if (dataList != null)
-                    ret.append(dataList.toString(0));
+                    dataList.appendTo(out);
                 
-                if (ret.length()==saveLen && !first) {
+                if (out.length()==saveLen && !first) {
                     tooMuch++;
                 } else {
                     tooMuch=0;
@@ -91,12 +95,9 @@ public final class SEG
                 first=false;
             }
 
-            int retlen = ret.length();
-            ret.delete(retlen-tooMuch,retlen);
-            ret.append('\'');
+            out.setLength(out.length()-tooMuch);
+            out.append('\'');
         }
-
-        return ret.toString();
     }
 
     public void setSeq(int idx,boolean allowOverwrite)
@@ -132,13 +133,13 @@ public final class SEG
 
     // ---------------------------------------------------------------------------------------------------------------
 
-    protected MultipleSyntaxElements parseNewChildContainer(Node dataref, char predelim0, char predelim1, StringBuffer res, int fullResLen, Document syntax, Hashtable<String, String> predefs,Hashtable<String, String> valids)
+    protected MultipleSyntaxElements parseNewChildContainer(SyntaxRef dataref, char predelim0, char predelim1, ParseCursor res, int fullResLen, SyntaxSpec syntax, Hashtable<String, String> predefs,Hashtable<String, String> valids)
     {
         MultipleSyntaxElements ret=null;
 
-        if ((dataref.getNodeName()).equals("DEG"))
+        if (dataref.isDEG())
             ret=MultipleDEGsFactory.getInstance().createMultipleDEGs(dataref, '+', getPath(), predelim0, predelim1, res, fullResLen, syntax, predefs,valids);
-        else if ((dataref.getNodeName()).equals("DE"))
+        else if (dataref.isDE())
             ret=MultipleDEsFactory.getInstance().createMultipleDEs(dataref, '+', getPath(), predelim0, predelim1, res, fullResLen, syntax, predefs,valids);
 
         return ret;
@@ -149,12 +150,12 @@ public final class SEG
         return '+';
     }
 
-    public SEG(String type, String name, String path, char predelim, int idx, StringBuffer res, int fullResLen,Document syntax, Hashtable<String,String> predefs,Hashtable<String,String> valids)
+    public SEG(String type, String name, String path, char predelim, int idx, ParseCursor res, int fullResLen,SyntaxSpec syntax, Hashtable<String,String> predefs,Hashtable<String,String> valids)
     {
         super(type, name, path, predelim, idx, res, fullResLen, syntax, predefs,valids);
     }
 
-    public void init(String type, String name, String path, char predelim, int idx, StringBuffer res, int fullResLen, Document syntax, Hashtable<String,String> predefs,Hashtable<String,String> valids)
+    public void init(String type, String name, String path, char predelim, int idx, ParseCursor res, int fullResLen, SyntaxSpec syntax, Hashtable<String,String> predefs,Hashtable<String,String> valids)
     {
         super.init(type, name, path, predelim, idx, res, fullResLen, syntax, predefs,valids);
     }
@@ -0,0 +1,243 @@
+/*  This file is part of HBCI4Java
+    Copyright (C) 2001-2008  Stefan Palme
+
+    HBCI4Java is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    HBCI4Java is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package org.kapott.hbci.protocol;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/* kompilierte form einer definition aus der syntax-spezifikation (MSGdef,
+ * SFdef, SEGdef, DEGdef). enthält die aufgelösten referenzen auf die
+ * child-elemente sowie die vorgegebenen werte ("value") und die gültigen
+ * werte ("valids") - so dass beim erzeugen und parsen von nachrichten
+ * nicht mehr im DOM gesucht werden muss */
+public final class SyntaxDef
+{
+    final static SyntaxRef[] NO_REFS=new SyntaxRef[0];
+    final static String[]    NO_STRINGS=new String[0];
+
+    private final String  id;
+    private final String  defType;
+    private final boolean needsRequestTag;
+    private final boolean dontSign;
+    private final boolean dontCrypt;
+
+    private final SyntaxRef[]            children;
+    private final Map<String,SyntaxRef>  childrenByName;
+
+    private final String[]   valuePaths;
+    private final String[]   values;
+    private final String[]   validPaths;
+    private final String[][] validValues;
+
+    /* nur bei SEGdef: segmentcode und -version aus den value-knoten
+     * "SegHead.code" und "SegHead.version" ("", wenn nicht vorgegeben) */
+    private final String segCode;
+    private final String segVersion;
+
+    SyntaxDef(String id,String defType,boolean needsRequestTag,boolean dontSign,boolean dontCrypt,
+              SyntaxRef[] children,
+              String[] valuePaths,String[] values,
+              String[] validPaths,String[][] validValues)
+    {
+        this.id=id;
+        this.defType=defType;
+        this.needsRequestTag=needsRequestTag;
+        this.dontSign=dontSign;
+        this.dontCrypt=dontCrypt;
+
+        this.children=children;
+        this.childrenByName=new HashMap<String,SyntaxRef>();
+        for (SyntaxRef ref:children) {
+            // bei gleichnamigen elementen gewinnt (wie bisher) das erste
+            if (!childrenByName.containsKey(ref.getName())) {
+                childrenByName.put(ref.getName(),ref);
+            }
+        }
+
+        this.valuePaths=valuePaths;
+        this.values=values;
+        this.validPaths=validPaths;
+        this.validValues=validValues;
+
+        String code="";
+        String version="";
+        for (int i=0;i<valuePaths.length;i++) {
+            if (valuePaths[i].equals("SegHead.code")) {
+                code=values[i];
+            } else if (valuePaths[i].equals("SegHead.version")) {
+                version=values[i];
+            }
+        }
+        this.segCode=code;
+        this.segVersion=version;
+    }
+
+    /* erzeugt die kompilierte form der definition def aus dem DOM der
+     * syntax-spezifikation */
+    static SyntaxDef compile(Element def)
+    {
+        List<SyntaxRef>  refs=new ArrayList<SyntaxRef>();
+        List<String>     vPaths=new ArrayList<String>();
+        List<String>     vValues=new ArrayList<String>();
+        List<String>     vdPaths=new ArrayList<String>();
+        List<String[]>   vdValues=new ArrayList<String[]>();
+
+        // syntaxIdx zählt (wie bisher) alle element-knoten der definition
+        int syntaxIdx=0;
+        for (Node child=def.getFirstChild();child!=null;child=child.getNextSibling()) {
+            if (child.getNodeType()!=Node.ELEMENT_NODE) {
+                continue;
+            }
+
+            Element elem=(Element)child;
+            String  nodeName=elem.getNodeName();
+
+            if (nodeName.equals("value")) {
+                vPaths.add(elem.getAttribute("path"));
+                vValues.add(elem.getFirstChild().getNodeValue());
+            } else if (nodeName.equals("valids")) {
+                List<String> vv=new ArrayList<String>();
+                for (Node v=elem.getFirstChild();v!=null;v=v.getNextSibling()) {
+                    if (v.getNodeType()==Node.ELEMENT_NODE && v.getNodeName().equals("validvalue")) {
+                        vv.add(v.getFirstChild().getNodeValue());
+                    }
+                }
+                vdPaths.add(elem.getAttribute("path"));
+                vdValues.add(vv.toArray(NO_STRINGS));
+            } else {
+                refs.add(SyntaxRef.compile(elem,syntaxIdx));
+            }
+            syntaxIdx++;
+        }
+
+        return new SyntaxDef(def.getAttribute("id"),
+                             def.getNodeName(),
+                             def.getAttribute("needsRequestTag").equals("1"),
+                             def.getAttribute("dontsign").length()!=0,
+                             def.getAttribute("dontcrypt").length()!=0,
+                             refs.toArray(NO_REFS),
+                             vPaths.toArray(NO_STRINGS),
+                             vValues.toArray(NO_STRINGS),
+                             vdPaths.toArray(NO_STRINGS),
+                             vdValues.toArray(new String[vdValues.size()][]));
+    }
+
+    void resolve(SyntaxSpec spec)
+    {
+        for (SyntaxRef ref:children) {
+            ref.resolve(spec);
+        }
+    }
+
+    public String getId()
+    {
+        return id;
+    }
+
+    /** "MSGdef", "SFdef", "SEGdef" oder "DEGdef" */
+    public String getDefType()
+    {
+        return defType;
+    }
+
+    public boolean needsRequestTag()
+    {
+        return needsRequestTag;
+    }
+
+    public boolean isDontSign()
+    {
+        return dontSign;
+    }
+
+    public boolean isDontCrypt()
+    {
+        return dontCrypt;
+    }
+
+    /** die referenzen auf alle child-elemente in der reihenfolge der
+        syntax-spezifikation. das array darf nicht verändert werden */
+    public SyntaxRef[] getChildren()
+    {
+        return children;
+    }
+
+    /** die referenz auf das (erste) child-element mit dem angegebenen
+        namen oder <code>null</code> */
+    public SyntaxRef getChild(String name)
+    {
+        return childrenByName.get(name);
+    }
+
+    /** anzahl der vorgegebenen werte ("value"-knoten) */
+    public int getValueCount()
+    {
+        return values.length;
+    }
+
+    /** relativer pfad des i-ten vorgegebenen wertes */
+    public String getValuePath(int i)
+    {
+        return valuePaths[i];
+    }
+
+    public String getValue(int i)
+    {
+        return values[i];
+    }
+
+    /** anzahl der "valids"-knoten */
+    public int getValidsCount()
+    {
+        return validPaths.length;
+    }
+
+    /** relativer pfad des i-ten "valids"-knotens */
+    public String getValidsPath(int i)
+    {
+        return validPaths[i];
+    }
+
+    /** gültige werte des i-ten "valids"-knotens. das array darf nicht
+        verändert werden */
+    public String[] getValidValues(int i)
+    {
+        return validValues[i];
+    }
+
+    public String getSegCode()
+    {
+        return segCode;
+    }
+
+    public String getSegVersion()
+    {
+        return segVersion;
+    }
+
+    public String toString()
+    {
+        return defType+"("+id+")";
+    }
+}
@@ -36,10 +36,7 @@ import org.kapott.hbci.protocol.factory.MultipleDEGsFactory;
 import org.kapott.hbci.protocol.factory.MultipleDEsFactory;
 import org.kapott.hbci.protocol.factory.MultipleSEGsFactory;
 import org.kapott.hbci.protocol.factory.MultipleSFsFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
+import org.kapott.hbci.tools.ParseCursor;
 
 /* ein syntaxelement ist ein strukturelement einer hbci-nachricht (die nachricht
     selbst, eine segmentfolge, ein einzelnes segment, eine deg oder 
@@ -64,8 +61,8 @@ public abstract class SyntaxElement
     // Verändern ein neues MSG-Objekt erzeugt).
     private int posInMsg;
     
-    private Document syntax;
-    private Node     def;
+    private SyntaxSpec syntax;
+    private SyntaxDef  def;
     
     public final static boolean TRY_TO_CREATE=true;
     public final static boolean DONT_TRY_TO_CREATE=false;
@@ -84,7 +81,7 @@ public abstract class SyntaxElement
     /** erzeugt einen neuen Child-Container, welcher durch den
     xml-knoten 'ref' identifiziert wird; wird beim erzeugen von elementen
     benutzt */
-    protected abstract MultipleSyntaxElements createNewChildContainer(Node ref, Document syntax);
+    protected abstract MultipleSyntaxElements createNewChildContainer(SyntaxRef ref, SyntaxSpec syntax);
     
     // TODO: aus konsistenz-gründen auch in MultipleSyntaxElements create und
     // createAndAdd trennen
@@ -96,7 +93,7 @@ public abstract class SyntaxElement
      auftauchen mueste (optional; z.b. fuer segmentcodes); 'predelim*' geben
      die delimiter an, die direkt vor dem zu erzeugenden syntaxelement
      auftauchen muessten */
-    protected abstract MultipleSyntaxElements parseNewChildContainer(Node ref, char predelim0, char predelim1, StringBuffer res, int fullResLen, Document syntax, Hashtable<String,String> predefs,Hashtable<String,String> valids);
+    protected abstract MultipleSyntaxElements parseNewChildContainer(SyntaxRef ref, char predelim0, char predelim1, ParseCursor res, int fullResLen, SyntaxSpec syntax, Hashtable<String,String> predefs,Hashtable<String,String> valids);
     
     
     /** wird fuer datenelemente benoetigt, die sonst unbeabsichtigt generiert werden koennten.
@@ -146,7 +143,7 @@ public abstract class SyntaxElement
     private boolean needsRequestTag;
     private boolean haveRequestTag;
     
-    private void initData(String type, String name, String ppath, int idx, Document syntax)
+    private void initData(String type, String name, String ppath, int idx, SyntaxSpec syntax)
     {
         if (getElementTypeName().equals("SEG"))
             HBCIUtils.log("creating segment "+ppath+" -> "+name+"("+idx+")", HBCIUtils.LOG_INTERN);
@@ -176,26 +173,22 @@ public abstract class SyntaxElement
             this.def=getSyntaxDef(type,syntax);
             
             // erzeugen der child-elemente
-            String requestTag=((Element)def).getAttribute("needsRequestTag");
-            if (requestTag!=null && requestTag.equals("1"))
-                needsRequestTag=true;
+            needsRequestTag=def.needsRequestTag();
 
             try {
-                int syntaxIdx=0;
-                for (Node ref=def.getFirstChild(); ref!=null; ref=ref.getNextSibling()) {
-                    if (ref.getNodeType()==Node.ELEMENT_NODE) {
-                        MultipleSyntaxElements child=createAndAppendNewChildContainer(ref, syntax);
-                        if (child!=null) {
-                            child.setParent(this);
-                            // TODO: überprüfen, ob noch an anderen Stellen Container
-                            // erzeugt werden - diese müssten dann auch die richtige
-                            // syntaxIdx bekommen
-                            child.setSyntaxIdx(syntaxIdx);
-                            
-                            if (getElementTypeName().equals("MSG"))
-                                HBCIUtils.log("child container "+child.getPath()+" has syntaxIdx="+child.getSyntaxIdx(), HBCIUtils.LOG_INTERN);
-                        }
-                        syntaxIdx++;
+                SyntaxRef[] refs=def.getChildren();
+                for (int i=0;i<refs.length;i++) {
+                    SyntaxRef ref=refs[i];
+                    MultipleSyntaxElements child=createAndAppendNewChildContainer(ref, syntax);
+                    if (child!=null) {
+                        child.setParent(this);
+                        // TODO: überprüfen, ob noch an anderen Stellen Container
+                        // erzeugt werden - diese müssten dann auch die richtige
+                        // syntaxIdx bekommen
+                        child.setSyntaxIdx(ref.getSyntaxIdx());
+                        
+                        if (getElementTypeName().equals("MSG"))
+                            HBCIUtils.log("child container "+child.getPath()+" has syntaxIdx="+child.getSyntaxIdx(), HBCIUtils.LOG_INTERN);
                     }
                 }
 
@@ -211,14 +204,11 @@ public abstract class SyntaxElement
                 // wird nur für Segmentfolgen angewendet. Und in Segmentfolgen-
                 // Definitionen sind keine values oder valids angegeben, so dass
                 // dieser Code hier gar keine Relevanz für Segmentfolgen hat
-                NodeList valueNodes = ((Element)def).getElementsByTagName("value");
-                int      len=valueNodes.getLength();
+                int      len=def.getValueCount();
                 String   dottedPath = this.path+".";
                 for (int i=0; i<len; i++) {
-                    Node   valueNode = valueNodes.item(i);
-                    String valuePath = ((Element)valueNode).getAttribute("path");
-                    String value     = (valueNode.getFirstChild()).getNodeValue();
-                    String destpath  = dottedPath+valuePath;
+                    String value     = def.getValue(i);
+                    String destpath  = dottedPath+def.getValuePath(i);
                     
                     if (!propagateValue(destpath,value,TRY_TO_CREATE,DONT_ALLOW_OVERWRITE))
                         throw new NoSuchPathException(destpath);
@@ -226,21 +216,13 @@ public abstract class SyntaxElement
 
                 /* durchlaufen aller "valids"-knoten und speichern der valid-values */
                 // TODO: das hier ebenfalls später machen, siehe "values"
-                NodeList validNodes=((Element)def).getElementsByTagName("valids");
-                len = validNodes.getLength();
+                len = def.getValidsCount();
                 dottedPath = getPath()+".";
                 for (int i=0;i<len;i++) {
-                    Node validNode=validNodes.item(i);
-                    String valuePath=((Element)(validNode)).getAttribute("path");
-                    String absPath=dottedPath+valuePath;
-
-                    NodeList validvalueNodes=((Element)(validNode)).getElementsByTagName("validvalue");
-                    int len2=validvalueNodes.getLength();
-                    for (int j=0;j<len2;j++) {
-                        Node validvalue=validvalueNodes.item(j);
-                        String value=(validvalue.getFirstChild()).getNodeValue();
-
-                        storeValidValueInDE(absPath,value);
+                    String   absPath=dottedPath+def.getValidsPath(i);
+                    String[] validValues=def.getValidValues(i);
+                    for (int j=0;j<validValues.length;j++) {
+                        storeValidValueInDE(absPath,validValues[j]);
                     }
                 }
             } catch (RuntimeException e) {
@@ -265,17 +247,17 @@ public abstract class SyntaxElement
         diesem element wird in 'path' uebergeben; 'idx' ist die nummer dieses
         elementes innerhalb der syntaxelementliste fuer dieses element (falls ein
         bestimmtes syntaxelement mehr als einmal auftreten kann) */
-    protected SyntaxElement(String type, String name, String path, int idx, Document syntax)
+    protected SyntaxElement(String type, String name, String path, int idx, SyntaxSpec syntax)
     {
         initData(type,name,path,idx,syntax);
     }
 
-    protected void init(String type, String name, String path, int idx, Document syntax)
+    protected void init(String type, String name, String path, int idx, SyntaxSpec syntax)
     {
         initData(type,name,path,idx,syntax);
     }
     
-    protected MultipleSyntaxElements createAndAppendNewChildContainer(Node ref, Document syntax)
+    protected MultipleSyntaxElements createAndAppendNewChildContainer(SyntaxRef ref, SyntaxSpec syntax)
     {
         MultipleSyntaxElements ret=createNewChildContainer(ref,syntax);
         if (ret!=null)
@@ -320,7 +302,7 @@ public abstract class SyntaxElement
 
     // -------------------------------------------------------------------------------------------
     
-    private void initData(String type, String name, String ppath, char predelim, int idx, StringBuffer res, int fullResLen,Document syntax, Hashtable<String,String> predefs,Hashtable<String,String> valids)
+    private void initData(String type, String name, String ppath, char predelim, int idx, ParseCursor res, int fullResLen,SyntaxSpec syntax, Hashtable<String,String> predefs,Hashtable<String,String> valids)
     {
         this.type=type;
         this.name=name;
@@ -350,65 +332,51 @@ public abstract class SyntaxElement
             
             /* fuellen der 'predefs'-tabelle mit den in der
              syntaxbeschreibung vorgegebenen werten */
-            NodeList valueNodes = ((Element)def).getElementsByTagName("value");
             String dottedPath = getPath() + ".";
-            int len=valueNodes.getLength();
+            int len=def.getValueCount();
             for (int i = 0; i < len; i++) {
-                Node valueNode = valueNodes.item(i);
-                String valuePath = ((Element)valueNode).getAttribute("path");
-                String value = (valueNode.getFirstChild()).getNodeValue();
-
-                predefs.put(dottedPath + valuePath, value);
+                predefs.put(dottedPath + def.getValuePath(i), def.getValue(i));
             }
 
             if (valids!=null) {
                 /* durchlaufen aller "valids"-knoten und speichern der valid-values */
-                NodeList validNodes=((Element)def).getElementsByTagName("valids");
-                len=validNodes.getLength();
+                len=def.getValidsCount();
                 for (int i=0;i<len;i++) {
-                    Node validNode=validNodes.item(i);
-                    String valuePath=((Element)(validNode)).getAttribute("path");
-                    String absPath=dottedPath+valuePath;
-                    
-                    NodeList validvalueNodes=((Element)(validNode)).getElementsByTagName("validvalue");
-                    int len2=validvalueNodes.getLength();
-                    for (int j=0;j<len2;j++) {
-                        Node validvalue=validvalueNodes.item(j);
-                        String value=(validvalue.getFirstChild()).getNodeValue();
-                        valids.put(HBCIUtilsInternal.withCounter(absPath+".value",j),value);
+                    String   absPath=dottedPath+def.getValidsPath(i)+".value";
+                    String[] validValues=def.getValidValues(i);
+                    for (int j=0;j<validValues.length;j++) {
+                        valids.put(HBCIUtilsInternal.withCounter(absPath,j),validValues[j]);
                     }
                 }
             }
 
             try {
                 // anlegen der child-elemente
-                int counter=0;
-                for (Node ref=def.getFirstChild();ref!=null;ref=ref.getNextSibling()) {
-                	if (ref.getNodeType()==Node.ELEMENT_NODE) {
-                		MultipleSyntaxElements child=parseAndAppendNewChildContainer(ref,
-                				((counter++)==0)?predelim:getInDelim(),
-                						getInDelim(),
-                						res,fullResLen,syntax,predefs,valids);
-
-                		if (child!=null) {
-                			child.setParent(this);
-
-                			// TODO: this is a very very dirty hack to fix the problem with the params-template;
-                			// bei der SF "Params", die mit <SF type="Params" maxnum="0"/> referenziert wird, 
-                			// soll nach jedem erfolgreich in die SF aufgenommenen Param-Segment eine neue
-                			// SF begonnen werden, damit das Problem mit dem am Ende der SF stehenden Template-
-                			// Param-Segment nicht mehr auftritt
-                			// dazu wird beim hinzufuegen von segmenten zur sf ueberprueft, ob diese evtl. bereits
-                			// segmente enthaelt (hasValidChilds()). falls das der fall ist, so wird
-                			// kein neues segment hinzugefuegt
-                			// analoges gilt für die SF "GVRes" - hier muss dafür gesorgt werden, dass jede
-                			// antwort in ein eigenes GVRes kommt, damit die zuordnung reihenfolge-erkennung
-                			// der empfangenen GVRes-segmente funktioniert (in HBCIJobImpl.fillJobResult())
-                			if ((this instanceof SF) && 
-                					(getName().equals("Params") || getName().equals("GVRes")) &&
-                					((MultipleSEGs)child).hasValidChilds()) {
-                				break;
-                			}
+                SyntaxRef[] refs=def.getChildren();
+                for (int counter=0;counter<refs.length;counter++) {
+                	MultipleSyntaxElements child=parseAndAppendNewChildContainer(refs[counter],
+                			(counter==0)?predelim:getInDelim(),
+                					getInDelim(),
+                					res,fullResLen,syntax,predefs,valids);
+
+                	if (child!=null) {
+                		child.setParent(this);
+
+                		// TODO: this is a very very dirty hack to fix the problem with the params-template;
+                		// bei der SF "Params", die mit <SF type="Params" maxnum="0"/> referenziert wird, 
+                		// soll nach jedem erfolgreich in die SF aufgenommenen Param-Segment eine neue
+                		// SF begonnen werden, damit das Problem mit dem am Ende der SF stehenden Template-
+                		// Param-Segment nicht mehr auftritt
+                		// dazu wird beim hinzufuegen von segmenten zur sf ueberprueft, ob diese evtl. bereits
+                		// segmente enthaelt (hasValidChilds()). falls das der fall ist, so wird
+                		// kein neues segment hinzugefuegt
+                		// analoges gilt für die SF "GVRes" - hier muss dafür gesorgt werden, dass jede
+                		// antwort in ein eigenes GVRes kommt, damit die zuordnung reihenfolge-erkennung
+                		// der empfangenen GVRes-segmente funktioniert (in HBCIJobImpl.fillJobResult())
+                		if ((this instanceof SF) && 
+                				(getName().equals("Params") || getName().equals("GVRes")) &&
+                				((MultipleSEGs)child).hasValidChilds()) {
+                			break;
                 		}
                 	}
                 }
@@ -442,17 +410,17 @@ public abstract class SyntaxElement
         der zu parsende String 'predefs' soll eine menge von pfad-wert-paaren
         enthalten, die fuer einige syntaxelemente den wert angeben, den diese
         elemente zwingend haben muessen (z.b. ein bestimmter segmentcode o.ae.) */
-    protected SyntaxElement(String type, String name, String path, char predelim, int idx, StringBuffer res, int fullResLen,Document syntax, Hashtable<String,String> predefs,Hashtable<String,String> valids)
+    protected SyntaxElement(String type, String name, String path, char predelim, int idx, ParseCursor res, int fullResLen,SyntaxSpec syntax, Hashtable<String,String> predefs,Hashtable<String,String> valids)
     {
         initData(type,name,path,predelim,idx,res,fullResLen,syntax,predefs,valids);
     }
     
-    protected void init(String type, String name, String path, char predelim, int idx, StringBuffer res, int fullResLen,Document syntax, Hashtable<String,String> predefs,Hashtable<String,String> valids)
+    protected void init(String type, String name, String path, char predelim, int idx, ParseCursor res, int fullResLen,SyntaxSpec syntax, Hashtable<String,String> predefs,Hashtable<String,String> valids)
     {
         initData(type,name,path,predelim,idx,res,fullResLen,syntax,predefs,valids);
     }
 
-    protected MultipleSyntaxElements parseAndAppendNewChildContainer(Node ref, char predelim0, char predelim1, StringBuffer res, int fullResLen, Document syntax, Hashtable<String,String> predefs,Hashtable<String,String> valids)
+    protected MultipleSyntaxElements parseAndAppendNewChildContainer(SyntaxRef ref, char predelim0, char predelim1, ParseCursor res, int fullResLen, SyntaxSpec syntax, Hashtable<String,String> predefs,Hashtable<String,String> valids)
     {
         MultipleSyntaxElements ret=parseNewChildContainer(ref,predelim0,predelim1,res,fullResLen,syntax,predefs,valids);
         if (ret!=null)
@@ -552,28 +520,13 @@ public abstract class SyntaxElement
                     }
                     
                     if (!found) {
-                        // jetzt durch alle child-elemente des definierenden XML-Knotens
-                        // loopen und den ref-Knoten suchen, der das fehlende Element
-                        // beschreibt
-                        int     newChildIdx=0;
-                        Node    ref=null;
-                        found=false;
-                        for (ref=def.getFirstChild(); ref!=null; ref=ref.getNextSibling()) {
-                            if (ref.getNodeType()==Node.ELEMENT_NODE) {
-                                String type=((Element)ref).getAttribute("type");
-                                String name=((Element)ref).getAttribute("name");
-                                if (name.length()==0) {
-                                    name=type;
-                                }
-                                if (name.equals(subType)) {
-                                    found=true;
-                                    break;
-                                }
-                                newChildIdx++;
-                            }
-                        }
+                        // in der definition dieses elementes die referenz suchen,
+                        // die das fehlende Element beschreibt
+                        SyntaxRef ref=def.getChild(subType);
+
+                        if (ref!=null) {
+                            int newChildIdx=ref.getSyntaxIdx();
 
-                        if (found) {
                             // entsprechenden child-container erzeugen
                             MultipleSyntaxElements child=createNewChildContainer(ref,syntax);
                             child.setParent(this);
@@ -600,6 +553,13 @@ public abstract class SyntaxElement
                                     HBCIUtils.LOG_INTERN);
                             childContainers.add(newPosi,child);
                             
+                            // die neu erzeugten elemente im pfad-index der nachricht
+                            // bekannt machen
+                            MSG msg=getMsg();
+                            if (msg!=null) {
+                                msg.addToIndex(child);
+                            }
+                            
                             // now try to propagate the value to the newly created child
                             ret=child.propagateValue(destPath,value,tryToCreate,allowOverwrite);
                         }
@@ -707,10 +667,10 @@ public abstract class SyntaxElement
     
     /** @param type the name of the syntaxelement to be returned
         @param syntax the structure containing the current syntaxdefinition
-        @return a XML-node with the definition of the requested syntaxelement */
-    public final Node getSyntaxDef(String type, Document syntax)
+        @return the compiled definition of the requested syntaxelement */
+    public final SyntaxDef getSyntaxDef(String type, SyntaxSpec syntax)
     {
-        Node ret = syntax.getElementById(type);
+        SyntaxDef ret = syntax.getDef(type);
         if (ret == null)
             throw new org.kapott.hbci.exceptions.NoSuchElementException(getElementTypeName(), type);
         return ret;
@@ -724,6 +684,13 @@ public abstract class SyntaxElement
         return toString();
     }
 
+    /** schreibt die HBCI-Darstellung dieses Elementes (wie sie auch von
+        <code>toString(0)</code> zurückgegeben wird) an das Ende des Puffers */
+    public void appendTo(MsgBuffer out)
+    {
+        out.append(toString(0));
+    }
+
     protected final void setValid(boolean valid)
     {
         this.valid = valid;
@@ -775,6 +742,25 @@ public abstract class SyntaxElement
     {
         return parent;
     }
+
+    /** @return die nachricht, in die dieses element (direkt oder indirekt)
+        eingehängt ist, oder <code>null</code>, wenn das element (noch) zu
+        keiner nachricht gehört */
+    MSG getMsg()
+    {
+        SyntaxElement elem=this;
+        while (!(elem instanceof MSG)) {
+            MultipleSyntaxElements container=elem.parent;
+            if (container==null) {
+                return null;
+            }
+            elem=container.getParent();
+            if (elem==null) {
+                return null;
+            }
+        }
+        return (MSG)elem;
+    }
     
     public int getPosInMsg()
     {
@@ -0,0 +1,173 @@
+/*  This file is part of HBCI4Java
+    Copyright (C) 2001-2008  Stefan Palme
+
+    HBCI4Java is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    HBCI4Java is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package org.kapott.hbci.protocol;
+
+import org.w3c.dom.Element;
+
+/* kompilierte form eines referenz-knotens aus der syntax-spezifikation
+ * (<DE>, <DEG>, <SEG> oder <SF> innerhalb einer xxxdef). alle attribute
+ * werden genau einmal beim kompilieren der spezifikation ausgewertet,
+ * die objekte sind danach unveränderlich und werden von allen
+ * syntaxelementen (und allen threads) gemeinsam benutzt */
+public final class SyntaxRef
+{
+    public final static int KIND_DE=0;
+    public final static int KIND_DEG=1;
+    public final static int KIND_SEG=2;
+    public final static int KIND_SF=3;
+
+    private final int    kind;
+    private final String type;
+    private final String name;
+    private final int    minnum;
+    private final int    maxnum;
+    private final int    minsize;
+    private final int    maxsize;
+    private final int    syntaxIdx;
+
+    /* bei DEG, SEG und SF: die referenzierte definition (null, wenn diese in
+     * der spezifikation nicht existiert - der fehler wird dann erst bei der
+     * verwendung gemeldet) */
+    private SyntaxDef def;
+
+    SyntaxRef(int kind,String type,String name,int minnum,int maxnum,int minsize,int maxsize,int syntaxIdx)
+    {
+        this.kind=kind;
+        this.type=type;
+        this.name=name;
+        this.minnum=minnum;
+        this.maxnum=maxnum;
+        this.minsize=minsize;
+        this.maxsize=maxsize;
+        this.syntaxIdx=syntaxIdx;
+    }
+
+    /* erzeugt die kompilierte form des referenz-knotens ref aus dem DOM
+     * der syntax-spezifikation */
+    static SyntaxRef compile(Element ref,int syntaxIdx)
+    {
+        String nodeName=ref.getNodeName();
+        int    kind;
+        if (nodeName.equals("DE")) {
+            kind=KIND_DE;
+        } else if (nodeName.equals("DEG")) {
+            kind=KIND_DEG;
+        } else if (nodeName.equals("SEG")) {
+            kind=KIND_SEG;
+        } else {
+            kind=KIND_SF;
+        }
+
+        String type=ref.getAttribute("type");
+        String name=ref.getAttribute("name");
+
+        return new SyntaxRef(kind,type,(name.length()!=0)?name:type,
+                             parseInt(ref,"minnum",1),
+                             parseInt(ref,"maxnum",1),
+                             parseInt(ref,"minsize",1),
+                             parseInt(ref,"maxsize",0),
+                             syntaxIdx);
+    }
+
+    private static int parseInt(Element ref,String attr,int def)
+    {
+        String st=ref.getAttribute(attr);
+        return (st.length()!=0)?Integer.parseInt(st):def;
+    }
+
+    void resolve(SyntaxSpec spec)
+    {
+        if (kind!=KIND_DE) {
+            this.def=spec.getDef(type);
+        }
+    }
+
+    public int getKind()
+    {
+        return kind;
+    }
+
+    public boolean isDE()
+    {
+        return kind==KIND_DE;
+    }
+
+    public boolean isDEG()
+    {
+        return kind==KIND_DEG;
+    }
+
+    public boolean isSEG()
+    {
+        return kind==KIND_SEG;
+    }
+
+    public boolean isSF()
+    {
+        return kind==KIND_SF;
+    }
+
+    /** bei DE der datentyp, sonst die id der referenzierten definition */
+    public String getType()
+    {
+        return type;
+    }
+
+    /** der name des elementes (attribut "name", falls nicht vorhanden "type") */
+    public String getName()
+    {
+        return name;
+    }
+
+    public int getMinNum()
+    {
+        return minnum;
+    }
+
+    public int getMaxNum()
+    {
+        return maxnum;
+    }
+
+    public int getMinSize()
+    {
+        return minsize;
+    }
+
+    public int getMaxSize()
+    {
+        return maxsize;
+    }
+
+    /** position dieser referenz innerhalb der definition des eltern-elementes */
+    public int getSyntaxIdx()
+    {
+        return syntaxIdx;
+    }
+
+    public SyntaxDef getDef()
+    {
+        return def;
+    }
+
+    public String toString()
+    {
+        return name+"("+type+")";
+    }
+}
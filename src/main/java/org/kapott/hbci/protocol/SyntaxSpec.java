@@ -0,0 +1,127 @@
+/*  This file is part of HBCI4Java
+    Copyright (C) 2001-2008  Stefan Palme
+
+    HBCI4Java is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    HBCI4Java is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package org.kapott.hbci.protocol;
+
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.kapott.hbci.exceptions.InvalidUserDataException;
+import org.kapott.hbci.manager.HBCIUtilsInternal;
+import org.kapott.hbci.manager.SyntaxRegistry;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/** <p>Kompilierte Form einer HBCI-Syntax-Spezifikation. Beim Erzeugen werden
+    alle Definitionen (<code>MSGdef</code>, <code>SFdef</code>, <code>SEGdef</code>,
+    <code>DEGdef</code>) aus dem XML-Dokument genau einmal ausgewertet und
+    in einen Graph aus {@link SyntaxDef}- und {@link SyntaxRef}-Objekten
+    überführt. Die Klassen des <code>protocol</code>-Packages arbeiten beim
+    Erzeugen und Parsen von Nachrichten ausschließlich auf diesem Graph.</p>
+    <p>Für die mitgelieferten HBCI-Versionen wird der Graph bereits beim
+    Build erzeugt (siehe {@link org.kapott.hbci.tools.SyntaxCompiler}), so dass
+    zur Laufzeit kein XML geparst werden muss. Das XML-Dokument wird dann
+    erst bei Bedarf ({@link #getDocument()}) geladen.</p>
+    <p>Objekte dieser Klasse sind nach dem Erzeugen unveränderlich und können
+    von beliebig vielen Threads gemeinsam benutzt werden.</p> */
+public final class SyntaxSpec
+{
+    private final Map<String,SyntaxDef> defs;
+    private final String                filename;
+    private volatile Document           syntax;
+
+    public SyntaxSpec(Document syntax)
+    {
+        this.syntax=syntax;
+        this.filename=null;
+
+        Map<String,SyntaxDef> temp=new HashMap<String,SyntaxDef>();
+        Element root=syntax.getDocumentElement();
+        for (Node group=root.getFirstChild();group!=null;group=group.getNextSibling()) {
+            if (group.getNodeType()!=Node.ELEMENT_NODE) {
+                continue;
+            }
+            for (Node def=group.getFirstChild();def!=null;def=def.getNextSibling()) {
+                if (def.getNodeType()==Node.ELEMENT_NODE) {
+                    SyntaxDef compiled=SyntaxDef.compile((Element)def);
+                    temp.put(compiled.getId(),compiled);
+                }
+            }
+        }
+        this.defs=temp;
+        resolve();
+    }
+
+    /* wird von den beim build erzeugten klassen CompiledSyntax_<version>
+     * benutzt. filename ist der name der syntax-datei im classpath, aus der
+     * die definitionen erzeugt wurden */
+    SyntaxSpec(Map<String,SyntaxDef> defs,String filename)
+    {
+        this.defs=defs;
+        this.filename=filename;
+        resolve();
+    }
+
+    private void resolve()
+    {
+        // erst wenn alle definitionen bekannt sind, koennen die referenzen
+        // aufgeloest werden
+        for (SyntaxDef def:defs.values()) {
+            def.resolve(this);
+        }
+    }
+
+    /** gibt die definition mit der angegebenen id zurück oder <code>null</code>,
+        wenn es keine solche definition gibt */
+    public SyntaxDef getDef(String id)
+    {
+        return defs.get(id);
+    }
+
+    /** gibt alle definitionen dieser spezifikation zurück */
+    public Collection<SyntaxDef> getDefs()
+    {
+        return Collections.unmodifiableCollection(defs.values());
+    }
+
+    /** gibt das XML-Dokument zurück, aus dem diese spezifikation erzeugt wurde.
+        Wurde die spezifikation beim build erzeugt, so wird das dokument beim
+        ersten aufruf dieser methode geladen. Das Dokument darf nicht verändert
+        werden. */
+    public Document getDocument()
+    {
+        Document ret=syntax;
+        if (ret==null) {
+            synchronized (this) {
+                ret=syntax;
+                if (ret==null) {
+                    InputStream syntaxStream=SyntaxSpec.class.getClassLoader().getResourceAsStream(filename);
+                    if (syntaxStream==null)
+                        throw new InvalidUserDataException(HBCIUtilsInternal.getLocMsg("EXCMSG_KRNL_CANTLOAD_SYN",filename));
+                    ret=SyntaxRegistry.parseSyntax(syntaxStream);
+                    syntax=ret;
+                }
+            }
+        }
+        return ret;
+    }
+}
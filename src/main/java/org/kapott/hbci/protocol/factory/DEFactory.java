@@ -24,20 +24,18 @@ import java.util.Hashtable;
 
 import org.kapott.hbci.manager.HBCIUtils;
 import org.kapott.hbci.protocol.DE;
+import org.kapott.hbci.protocol.SyntaxRef;
+import org.kapott.hbci.protocol.SyntaxSpec;
 import org.kapott.hbci.tools.ObjectFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
+import org.kapott.hbci.tools.ParseCursor;
 
 public class DEFactory 
     extends ObjectFactory 
 {
-    private static DEFactory instance;
+    private final static DEFactory instance=new DEFactory();
     
-    public static synchronized DEFactory getInstance()
+    public static DEFactory getInstance()
     {
-        if (instance==null) {
-            instance=new DEFactory();
-        }
         return instance;
     }
     
@@ -46,7 +44,7 @@ public class DEFactory
         super(Integer.parseInt(HBCIUtils.getParam("kernel.objpool.DE","1024")));
     }
     
-    public DE createDE(Node dedef, String name, String path, char predelim, int idx, StringBuffer res, int fullResLen, Document syntax, Hashtable<String, String> predefs,Hashtable<String, String> valids)
+    public DE createDE(SyntaxRef dedef, String name, String path, char predelim, int idx, ParseCursor res, int fullResLen, SyntaxSpec syntax, Hashtable<String, String> predefs,Hashtable<String, String> valids)
     {
         DE ret=(DE)getFreeObject();
         
@@ -68,7 +66,7 @@ public class DEFactory
         return ret;
     }
     
-    public DE createDE(Node dedef, String name, String path, int idx, Document syntax)
+    public DE createDE(SyntaxRef dedef, String name, String path, int idx, SyntaxSpec syntax)
     {
         DE ret=(DE)getFreeObject();
         
@@ -25,19 +25,17 @@ import java.util.Hashtable;
 
 import org.kapott.hbci.manager.HBCIUtils;
 import org.kapott.hbci.protocol.DEG;
+import org.kapott.hbci.protocol.SyntaxSpec;
 import org.kapott.hbci.tools.ObjectFactory;
-import org.w3c.dom.Document;
+import org.kapott.hbci.tools.ParseCursor;
 
 public class DEGFactory 
     extends ObjectFactory 
 {
-    private static DEGFactory instance;
+    private final static DEGFactory instance=new DEGFactory();
     
-    public static synchronized DEGFactory getInstance()
+    public static DEGFactory getInstance()
     {
-        if (instance==null) {
-            instance=new DEGFactory();
-        }
         return instance;
     }
     
@@ -46,7 +44,7 @@ public class DEGFactory
     	super(Integer.parseInt(HBCIUtils.getParam("kernel.objpool.DEG","512")));
     }
     
-    public DEG createDEG(String type, String name, String path, char predelim, int idx, StringBuffer res, int fullResLen, Document syntax, Hashtable<String, String> predefs,Hashtable<String, String> valids)
+    public DEG createDEG(String type, String name, String path, char predelim, int idx, ParseCursor res, int fullResLen, SyntaxSpec syntax, Hashtable<String, String> predefs,Hashtable<String, String> valids)
     {
         DEG ret=(DEG)getFreeObject();
         
@@ -68,7 +66,7 @@ public class DEGFactory
         return ret;
     }
     
-    public DEG createDEG(String type, String name, String path, int idx, Document syntax)
+    public DEG createDEG(String type, String name, String path, int idx, SyntaxSpec syntax)
     {
         DEG ret=(DEG)getFreeObject();
         
@@ -31,13 +31,10 @@ import org.kapott.hbci.tools.ObjectFactory;
 public class MSGFactory 
     extends ObjectFactory
 {
-    private static MSGFactory instance;
+    private final static MSGFactory instance=new MSGFactory();
     
-    public static synchronized MSGFactory getInstance()
+    public static MSGFactory getInstance()
     {
-        if (instance==null) {
-            instance=new MSGFactory();
-        }
         return instance;
     }
     
@@ -68,17 +65,17 @@ public class MSGFactory
         return ret;
     }
     
-    public MSG createMSG(String type, String res, int fullResLen, MsgGen gen)
+    public MSG createMSG(String type, CharSequence res, int fullResLen, MsgGen gen)
     {
         return createMSG(type,res,fullResLen,gen,MSG.CHECK_SEQ);
     }
     
-    public MSG createMSG(String type,String res,int fullResLen,MsgGen gen,boolean checkSeq)
+    public MSG createMSG(String type,CharSequence res,int fullResLen,MsgGen gen,boolean checkSeq)
     {
         return createMSG(type,res,fullResLen,gen,checkSeq,true);
     }
     
-    public MSG createMSG(String type,String res,int fullResLen,MsgGen gen,boolean checkSeq,boolean checkValids)
+    public MSG createMSG(String type,CharSequence res,int fullResLen,MsgGen gen,boolean checkSeq,boolean checkValids)
     {
         MSG ret=(MSG)getFreeObject();
         
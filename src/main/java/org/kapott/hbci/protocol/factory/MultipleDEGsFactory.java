@@ -24,20 +24,18 @@ import java.util.Hashtable;
 
 import org.kapott.hbci.manager.HBCIUtils;
 import org.kapott.hbci.protocol.MultipleDEGs;
+import org.kapott.hbci.protocol.SyntaxRef;
+import org.kapott.hbci.protocol.SyntaxSpec;
 import org.kapott.hbci.tools.ObjectFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
+import org.kapott.hbci.tools.ParseCursor;
 
 public class MultipleDEGsFactory 
     extends ObjectFactory 
 {
-    private static MultipleDEGsFactory instance;
+    private final static MultipleDEGsFactory instance=new MultipleDEGsFactory();
     
-    public static synchronized MultipleDEGsFactory getInstance()
+    public static MultipleDEGsFactory getInstance()
     {
-        if (instance==null) {
-            instance=new MultipleDEGsFactory();
-        }
         return instance;
     }
     
@@ -46,7 +44,7 @@ public class MultipleDEGsFactory
     	super(Integer.parseInt(HBCIUtils.getParam("kernel.objpool.DEG","512")));
     }
     
-    public MultipleDEGs createMultipleDEGs(Node sfref, char delimiter, String path, char predelim0, char predelim1, StringBuffer res, int fullResLen,Document syntax, Hashtable<String, String> predefs,Hashtable<String, String> valids)
+    public MultipleDEGs createMultipleDEGs(SyntaxRef sfref, char delimiter, String path, char predelim0, char predelim1, ParseCursor res, int fullResLen,SyntaxSpec syntax, Hashtable<String, String> predefs,Hashtable<String, String> valids)
     {
         MultipleDEGs ret=(MultipleDEGs)getFreeObject();
         
@@ -68,7 +66,7 @@ public class MultipleDEGsFactory
         return ret;
     }
 
-    public MultipleDEGs createMultipleDEGs(Node sfref, char delimiter,String path, Document syntax)
+    public MultipleDEGs createMultipleDEGs(SyntaxRef sfref, char delimiter,String path, SyntaxSpec syntax)
     {
         MultipleDEGs ret=(MultipleDEGs)getFreeObject();
         
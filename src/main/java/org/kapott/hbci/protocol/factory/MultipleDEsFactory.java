@@ -25,20 +25,18 @@ import java.util.Hashtable;
 
 import org.kapott.hbci.manager.HBCIUtils;
 import org.kapott.hbci.protocol.MultipleDEs;
+import org.kapott.hbci.protocol.SyntaxRef;
+import org.kapott.hbci.protocol.SyntaxSpec;
 import org.kapott.hbci.tools.ObjectFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
+import org.kapott.hbci.tools.ParseCursor;
 
 public class MultipleDEsFactory 
     extends ObjectFactory 
 {
-    private static MultipleDEsFactory instance;
+    private final static MultipleDEsFactory instance=new MultipleDEsFactory();
     
-    public static synchronized MultipleDEsFactory getInstance()
+    public static MultipleDEsFactory getInstance()
     {
-        if (instance==null) {
-            instance=new MultipleDEsFactory();
-        }
         return instance;
     }
     
@@ -47,7 +45,7 @@ public class MultipleDEsFactory
     	super(Integer.parseInt(HBCIUtils.getParam("kernel.objpool.DE","1024")));
     }
     
-    public MultipleDEs createMultipleDEs(Node sfref, char delimiter, String path, char predelim0, char predelim1, StringBuffer res, int fullResLen, Document syntax, Hashtable<String, String> predefs,Hashtable<String, String> valids)
+    public MultipleDEs createMultipleDEs(SyntaxRef sfref, char delimiter, String path, char predelim0, char predelim1, ParseCursor res, int fullResLen, SyntaxSpec syntax, Hashtable<String, String> predefs,Hashtable<String, String> valids)
     {
         MultipleDEs ret=(MultipleDEs)getFreeObject();
         
@@ -69,7 +67,7 @@ public class MultipleDEsFactory
         return ret;
     }
 
-    public MultipleDEs createMultipleDEs(Node sfref, char delimiter,String path, Document syntax)
+    public MultipleDEs createMultipleDEs(SyntaxRef sfref, char delimiter,String path, SyntaxSpec syntax)
     {
         MultipleDEs ret=(MultipleDEs)getFreeObject();
         
@@ -25,20 +25,18 @@ import java.util.Hashtable;
 
 import org.kapott.hbci.manager.HBCIUtils;
 import org.kapott.hbci.protocol.MultipleSEGs;
+import org.kapott.hbci.protocol.SyntaxRef;
+import org.kapott.hbci.protocol.SyntaxSpec;
 import org.kapott.hbci.tools.ObjectFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
+import org.kapott.hbci.tools.ParseCursor;
 
 public class MultipleSEGsFactory 
     extends ObjectFactory 
 {
-    private static MultipleSEGsFactory instance;
+    private final static MultipleSEGsFactory instance=new MultipleSEGsFactory();
     
-    public static synchronized MultipleSEGsFactory getInstance()
+    public static MultipleSEGsFactory getInstance()
     {
-        if (instance==null) {
-            instance=new MultipleSEGsFactory();
-        }
         return instance;
     }
     
@@ -47,7 +45,7 @@ public class MultipleSEGsFactory
     	super(Integer.parseInt(HBCIUtils.getParam("kernel.objpool.SEG","128")));
     }
     
-    public MultipleSEGs createMultipleSEGs(Node sfref, String path, char predelim0, char predelim1, StringBuffer res, int fullResLen, Document syntax, Hashtable<String, String> predefs,Hashtable<String, String> valids)
+    public MultipleSEGs createMultipleSEGs(SyntaxRef sfref, String path, char predelim0, char predelim1, ParseCursor res, int fullResLen, SyntaxSpec syntax, Hashtable<String, String> predefs,Hashtable<String, String> valids)
     {
         MultipleSEGs ret=(MultipleSEGs)getFreeObject();
         
@@ -69,7 +67,7 @@ public class MultipleSEGsFactory
         return ret;
     }
 
-    public MultipleSEGs createMultipleSEGs(Node sfref, String path, Document syntax)
+    public MultipleSEGs createMultipleSEGs(SyntaxRef sfref, String path, SyntaxSpec syntax)
     {
         MultipleSEGs ret=(MultipleSEGs)getFreeObject();
         
@@ -25,20 +25,18 @@ import java.util.Hashtable;
 
 import org.kapott.hbci.manager.HBCIUtils;
 import org.kapott.hbci.protocol.MultipleSFs;
+import org.kapott.hbci.protocol.SyntaxRef;
+import org.kapott.hbci.protocol.SyntaxSpec;
 import org.kapott.hbci.tools.ObjectFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
+import org.kapott.hbci.tools.ParseCursor;
 
 public class MultipleSFsFactory 
     extends ObjectFactory 
 {
-    private static MultipleSFsFactory instance;
+    private final static MultipleSFsFactory instance=new MultipleSFsFactory();
     
-    public static synchronized MultipleSFsFactory getInstance()
+    public static MultipleSFsFactory getInstance()
     {
-        if (instance==null) {
-            instance=new MultipleSFsFactory();
-        }
         return instance;
     }
     
@@ -47,7 +45,7 @@ public class MultipleSFsFactory
     	super(Integer.parseInt(HBCIUtils.getParam("kernel.objpool.SF","128")));
     }
  
-    public MultipleSFs createMultipleSFs(Node sfref, String path, char predelim0, char predelim1, StringBuffer res, int fullResLen, Document syntax, Hashtable<String,String> predefs,Hashtable<String,String> valids)
+    public MultipleSFs createMultipleSFs(SyntaxRef sfref, String path, char predelim0, char predelim1, ParseCursor res, int fullResLen, SyntaxSpec syntax, Hashtable<String,String> predefs,Hashtable<String,String> valids)
     {
         MultipleSFs ret=(MultipleSFs)getFreeObject();
         
@@ -69,7 +67,7 @@ public class MultipleSFsFactory
         return ret;
     }
 
-    public MultipleSFs createMultipleSFs(Node sfref, String path, Document syntax)
+    public MultipleSFs createMultipleSFs(SyntaxRef sfref, String path, SyntaxSpec syntax)
     {
         MultipleSFs ret=(MultipleSFs)getFreeObject();
         
@@ -25,19 +25,17 @@ import java.util.Hashtable;
 
 import org.kapott.hbci.manager.HBCIUtils;
 import org.kapott.hbci.protocol.SEG;
+import org.kapott.hbci.protocol.SyntaxSpec;
 import org.kapott.hbci.tools.ObjectFactory;
-import org.w3c.dom.Document;
+import org.kapott.hbci.tools.ParseCursor;
 
 public class SEGFactory 
     extends ObjectFactory 
 {
-    private static SEGFactory instance;
+    private final static SEGFactory instance=new SEGFactory();
     
-    public static synchronized SEGFactory getInstance()
+    public static SEGFactory getInstance()
     {
-        if (instance==null) {
-            instance=new SEGFactory();
-        }
         return instance;
     }
     
@@ -46,7 +44,7 @@ public class SEGFactory
     	super(Integer.parseInt(HBCIUtils.getParam("kernel.objpool.SEG","128")));
     }
     
-    public SEG createSEG(String type, String name, String path, char predelim, int idx, StringBuffer res, int fullResLen, Document syntax, Hashtable<String, String> predefs,Hashtable<String, String> valids)
+    public SEG createSEG(String type, String name, String path, char predelim, int idx, ParseCursor res, int fullResLen, SyntaxSpec syntax, Hashtable<String, String> predefs,Hashtable<String, String> valids)
     {
         SEG ret=(SEG)getFreeObject();
         
@@ -68,7 +66,7 @@ public class SEGFactory
         return ret;
     }
     
-    public SEG createSEG(String type, String name, String path, int idx, Document syntax)
+    public SEG createSEG(String type, String name, String path, int idx, SyntaxSpec syntax)
     {
         SEG ret=(SEG)getFreeObject();
         
@@ -51,7 +51,7 @@ public class RHBCIVersion
                     HBCIMsgStatus msgStatus=(HBCIMsgStatus)getData("msgStatus");
                     String        msgName=(String)getData("msgName");
                     String        version=st.substring(idx+1,idx2);
-                    String        origVersion=msgStatus.getData().getProperty("orig_"+msgName+".MsgHead.hbciversion");
+                    String        origVersion=msgStatus.getProperty("orig_"+msgName+".MsgHead.hbciversion");
                     
                     if (version.length()==0 || version.equals("0")) {
                         HBCIUtils.log("received HBCI version of message ('"+version+"') is incorrect - replacing it with "+origVersion,
@@ -45,7 +45,7 @@ public class RMissingMsgRef
                     for (int i=0;i<2;i++) {
                         HBCIMsgStatus msgStatus=(HBCIMsgStatus)getData("msgStatus");
                         String        msgName=(String)getData("msgName");
-                        String        temp=(msgStatus.getData().getProperty("orig_"+msgName+".MsgHead."+des[i]));
+                        String        temp=msgStatus.getProperty("orig_"+msgName+".MsgHead."+des[i]);
                         HBCIUtils.log("setting MsgRef."+des[i]+" to "+temp,HBCIUtils.LOG_WARN);
                         msghead_st+=(i==0?"+":":");
                         msghead_st+=temp;
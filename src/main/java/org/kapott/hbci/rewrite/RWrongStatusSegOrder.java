@@ -159,7 +159,7 @@ public class RWrongStatusSegOrder
             // restliche daten-segmente
             new_msg.append(getDataForSegmentList(st,dataList,counter));
             
-            HBCIUtils.log("RWrongStatusSegOrder: new message after reordering: "+new_msg,HBCIUtils.LOG_DEBUG2);
+            HBCIUtils.log("RWrongStatusSegOrder: new message after reordering: ",new_msg,HBCIUtils.LOG_DEBUG2);
         } else {
             // kein fehler aufgetreten, also originale nachricht unverändert zurückgeben
             new_msg.append(st);
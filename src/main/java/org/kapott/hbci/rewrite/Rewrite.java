@@ -21,34 +21,48 @@
 
 package org.kapott.hbci.rewrite;
 
-import java.util.Hashtable;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.kapott.hbci.manager.MsgGen;
 import org.kapott.hbci.protocol.MSG;
 
+/** <p>Basisklasse für Rewriter-Module (siehe Kernel-Parameter <code>kernel.rewriter</code>).</p>
+    <p>Die Module werden nur einmal pro Rewriter-Konfiguration erzeugt und von
+    {@link RewriteChain} wiederverwendet. Module ohne Instanzvariablen werden dabei
+    von allen Threads gemeinsam benutzt. Daten zur gerade bearbeiteten Nachricht
+    sollten deshalb nicht in Instanzvariablen gehalten werden, sondern über
+    {@link #getData(String)} abgefragt werden.</p> */
 public abstract class Rewrite
 {
-    private static Hashtable<String,Object> kernelData;
-    
-    static {
-        kernelData=new Hashtable<String, Object>();
-    }
+    /* daten des kernels für die gerade bearbeitete nachricht. die rewriter
+     * laufen immer im selben thread wie der kernel, der die daten setzt */
+    private final static ThreadLocal<Map<String,Object>> kernelData=new ThreadLocal<Map<String,Object>>() {
+        protected Map<String,Object> initialValue()
+        {
+            return new HashMap<String,Object>();
+        }
+    };
     
     protected Rewrite()
     {
     }
     
-    public static synchronized void setData(String name,Object value)
+    public static void setData(String name,Object value)
+    {
+        kernelData.get().put(name,value);
+    }
+
+    public static Object getData(String name)
     {
-        ThreadGroup threadgroup=Thread.currentThread().getThreadGroup();
-        kernelData.put(threadgroup.getName()+"_"+name,
-                       value);
+        return kernelData.get().get(name);
     }
 
-    public static synchronized Object getData(String name)
+    /** entfernt alle mit {@link #setData(String, Object)} gesetzten Daten
+        des aktuellen Threads */
+    public static void clearData()
     {
-        ThreadGroup threadgroup=Thread.currentThread().getThreadGroup();
-        return kernelData.get(threadgroup.getName()+"_"+name);
+        kernelData.remove();
     }
 
     public MSG outgoingClearText(MSG msg,MsgGen gen)
@@ -0,0 +1,284 @@
+/*  This file is part of HBCI4Java
+    Copyright (C) 2001-2008  Stefan Palme
+
+    HBCI4Java is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    HBCI4Java is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package org.kapott.hbci.rewrite;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.kapott.hbci.exceptions.HBCI_Exception;
+import org.kapott.hbci.manager.HBCIUtils;
+import org.kapott.hbci.manager.HBCIUtilsInternal;
+import org.kapott.hbci.manager.MsgGen;
+import org.kapott.hbci.protocol.MSG;
+import org.kapott.hbci.protocol.factory.MSGFactory;
+
+/** <p>Kette der Rewriter-Module, die eine Nachricht durchläuft. Eine Kette wird
+    pro Wert des Kernel-Parameters <code>kernel.rewriter</code> nur einmal
+    erzeugt (Laden der Klassen per Reflection) und danach wiederverwendet.</p>
+    <p>Rewriter-Module ohne eigene Instanzvariablen sind zustandslos - von ihnen
+    wird nur eine einzige Instanz erzeugt, die von allen Threads gemeinsam benutzt
+    wird. Für Module mit Instanzvariablen wird (wie bisher) für jede Nachricht
+    eine neue Instanz erzeugt, siehe {@link #forMessage()}.</p>
+    <p>Für jedes Modul wird eine {@link RewriteStats Laufzeitstatistik} geführt,
+    anhand derer sich erkennen lässt, welche Module wie viel Zeit kosten und wie
+    oft sie tatsächlich etwas an den Nachrichten verändern.</p> */
+public final class RewriteChain
+{
+    private final static ConcurrentMap<String,RewriteChain> chains=new ConcurrentHashMap<String,RewriteChain>();
+    private final static ConcurrentMap<String,RewriteStats> statistics=new ConcurrentHashMap<String,RewriteStats>();
+    
+    private final static String[] MSG_HOOKS={"outgoingClearText","outgoingSigned","outgoingCrypted","incomingData"};
+
+    private final String[]         names;
+    private final Constructor<?>[] constructors;  /* nur für module mit zustand, sonst null */
+    private final Rewrite[]        rewriters;
+    private final RewriteStats[]   stats;
+    private final boolean          stateless;
+
+    /** liefert die Rewriter-Kette für die aktuelle Einstellung von
+        <code>kernel.rewriter</code> */
+    public static RewriteChain getInstance()
+    {
+        return HBCIUtils.getConfig().getRewriteChain();
+    }
+
+    /** liefert die Rewriter-Kette für die übergebene (kommaseparierte) Liste
+        von Rewriter-Modulen */
+    public static RewriteChain getInstance(String config)
+    {
+        if (config==null)
+            config="";
+
+        RewriteChain ret=chains.get(config);
+        if (ret==null) {
+            ret=new RewriteChain(config);
+            RewriteChain existing=chains.putIfAbsent(config,ret);
+            if (existing!=null)
+                ret=existing;
+            else
+                HBCIUtils.log("created rewriter chain "+ret,HBCIUtils.LOG_DEBUG);
+        }
+        return ret;
+    }
+
+    /** @return die Laufzeitstatistiken aller bisher benutzten Rewriter-Module */
+    public static List<RewriteStats> getStatistics()
+    {
+        return Collections.unmodifiableList(new ArrayList<RewriteStats>(statistics.values()));
+    }
+
+    /** setzt die Laufzeitstatistiken aller Rewriter-Module zurück */
+    public static void resetStatistics()
+    {
+        for (RewriteStats s:statistics.values()) {
+            s.reset();
+        }
+    }
+
+    private RewriteChain(String config)
+    {
+        List<String> list=new ArrayList<String>();
+        StringTokenizer tok=new StringTokenizer(config,",");
+        while (tok.hasMoreTokens()) {
+            String rewriterName=tok.nextToken().trim();
+            if (rewriterName.length()!=0) {
+                list.add(rewriterName);
+            }
+        }
+
+        this.names=list.toArray(new String[list.size()]);
+        this.constructors=new Constructor<?>[names.length];
+        this.rewriters=new Rewrite[names.length];
+        this.stats=new RewriteStats[names.length];
+
+        boolean allStateless=true;
+        for (int i=0;i<names.length;i++) {
+            String name=names[i];
+            try {
+                Class<? extends Rewrite> cl=Class.forName("org.kapott.hbci.rewrite.R"+name,true,
+                                                          RewriteChain.class.getClassLoader()).asSubclass(Rewrite.class);
+                Constructor<? extends Rewrite> con=cl.getConstructor((Class[])null);
+                rewriters[i]=con.newInstance((Object[])null);
+                if (!isStateless(cl)) {
+                    HBCIUtils.log("rewriter "+name+" is not stateless - will be created for each message",HBCIUtils.LOG_DEBUG);
+                    constructors[i]=con;
+                    allStateless=false;
+                }
+            } catch (Exception e) {
+                throw new HBCI_Exception(HBCIUtilsInternal.getLocMsg("EXCMSG_CANTCREATEREWRITER",name),e);
+            }
+
+            RewriteStats s=new RewriteStats(name);
+            RewriteStats existing=statistics.putIfAbsent(name,s);
+            stats[i]=(existing!=null)?existing:s;
+        }
+        this.stateless=allStateless;
+    }
+
+    /* kopie einer kette mit neuen instanzen für die module mit zustand */
+    private RewriteChain(RewriteChain template)
+    {
+        this.names=template.names;
+        this.constructors=template.constructors;
+        this.stats=template.stats;
+        this.stateless=false;
+        this.rewriters=template.rewriters.clone();
+
+        for (int i=0;i<names.length;i++) {
+            if (constructors[i]!=null) {
+                try {
+                    rewriters[i]=(Rewrite)constructors[i].newInstance((Object[])null);
+                } catch (Exception e) {
+                    throw new HBCI_Exception(HBCIUtilsInternal.getLocMsg("EXCMSG_CANTCREATEREWRITER",names[i]),e);
+                }
+            }
+        }
+    }
+
+    /* ein rewriter-modul gilt als zustandslos, wenn es (bis hinauf zu Rewrite)
+     * keine instanzvariablen deklariert */
+    private static boolean isStateless(Class<?> cl)
+    {
+        for (Class<?> c=cl;c!=null && c!=Rewrite.class;c=c.getSuperclass()) {
+            for (Field f:c.getDeclaredFields()) {
+                if (!Modifier.isStatic(f.getModifiers())) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /** Liefert die Kette, die für die Bearbeitung einer Nachricht (ausgehende
+        Nachricht und zugehörige Antwort) benutzt werden soll. Sind alle Module
+        zustandslos, ist das diese Kette selbst, ansonsten eine Kopie mit neuen
+        Instanzen der Module, die einen Zustand haben. */
+    public RewriteChain forMessage()
+    {
+        return stateless?this:new RewriteChain(this);
+    }
+
+    /** @return die Namen der Rewriter-Module dieser Kette */
+    public String[] getNames()
+    {
+        return names.clone();
+    }
+
+    private void modified(int i,String hook)
+    {
+        HBCIUtils.log("rewriter "+names[i]+" modified message ("+hook+")",HBCIUtils.LOG_DEBUG);
+    }
+
+    private MSG runMsgHook(int hook,MSG msg,MsgGen gen)
+    {
+        for (int i=0;i<rewriters.length;i++) {
+            MSG  old=msg;
+            long start=System.nanoTime();
+            switch (hook) {
+                case 0: msg=rewriters[i].outgoingClearText(old,gen); break;
+                case 1: msg=rewriters[i].outgoingSigned(old,gen); break;
+                case 2: msg=rewriters[i].outgoingCrypted(old,gen); break;
+                default: msg=rewriters[i].incomingData(old,gen); break;
+            }
+            boolean changed=(msg!=old);
+            stats[i].count(System.nanoTime()-start,changed);
+
+            if (changed) {
+                modified(i,MSG_HOOKS[hook]);
+                MSGFactory.getInstance().unuseObject(old);
+            }
+        }
+        return msg;
+    }
+
+    private String runStringHook(boolean crypted,String st,MsgGen gen)
+    {
+        for (int i=0;i<rewriters.length;i++) {
+            String old=st;
+            long   start=System.nanoTime();
+            st=crypted?rewriters[i].incomingCrypted(old,gen)
+                      :rewriters[i].incomingClearText(old,gen);
+            boolean changed=(st!=old && !st.equals(old));
+            stats[i].count(System.nanoTime()-start,changed);
+
+            if (changed) {
+                modified(i,crypted?"incomingCrypted":"incomingClearText");
+            }
+        }
+        return st;
+    }
+
+    /** Schickt die Nachricht durch {@link Rewrite#outgoingClearText(MSG, MsgGen)}
+        aller Module. Wird die Nachricht dabei durch eine neue ersetzt, wird die
+        alte an den Object-Pool zurückgegeben. */
+    public MSG outgoingClearText(MSG msg,MsgGen gen)
+    {
+        return runMsgHook(0,msg,gen);
+    }
+
+    /** siehe {@link #outgoingClearText(MSG, MsgGen)} */
+    public MSG outgoingSigned(MSG msg,MsgGen gen)
+    {
+        return runMsgHook(1,msg,gen);
+    }
+
+    /** siehe {@link #outgoingClearText(MSG, MsgGen)} */
+    public MSG outgoingCrypted(MSG msg,MsgGen gen)
+    {
+        return runMsgHook(2,msg,gen);
+    }
+
+    /** siehe {@link #outgoingClearText(MSG, MsgGen)} */
+    public MSG incomingData(MSG msg,MsgGen gen)
+    {
+        return runMsgHook(3,msg,gen);
+    }
+
+    /** Schickt die empfangene Nachricht durch {@link Rewrite#incomingCrypted(String, MsgGen)}
+        aller Module */
+    public String incomingCrypted(String st,MsgGen gen)
+    {
+        return runStringHook(true,st,gen);
+    }
+
+    /** Schickt die empfangene Nachricht durch {@link Rewrite#incomingClearText(String, MsgGen)}
+        aller Module */
+    public String incomingClearText(String st,MsgGen gen)
+    {
+        return runStringHook(false,st,gen);
+    }
+
+    public String toString()
+    {
+        StringBuffer ret=new StringBuffer();
+        for (int i=0;i<names.length;i++) {
+            if (i!=0)
+                ret.append(",");
+            ret.append(names[i]);
+        }
+        return ret.toString();
+    }
+}
@@ -0,0 +1,85 @@
+/*  This file is part of HBCI4Java
+    Copyright (C) 2001-2008  Stefan Palme
+
+    HBCI4Java is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    HBCI4Java is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package org.kapott.hbci.rewrite;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Laufzeitstatistik eines Rewriter-Moduls. Gezählt werden alle Aufrufe
+    des Moduls (über alle Hooks wie <code>incomingClearText()</code> oder
+    <code>outgoingSigned()</code> hinweg), die Anzahl der Aufrufe, bei denen
+    das Modul die Nachricht tatsächlich verändert hat, und die insgesamt in
+    dem Modul verbrachte Zeit. Die Statistik wird für alle Rewriter-Ketten
+    gemeinsam geführt, siehe {@link RewriteChain#getStatistics()}. */
+public final class RewriteStats
+{
+    private final String     name;
+    private final AtomicLong calls=new AtomicLong();
+    private final AtomicLong modifications=new AtomicLong();
+    private final AtomicLong nanos=new AtomicLong();
+
+    RewriteStats(String name)
+    {
+        this.name=name;
+    }
+
+    void count(long time,boolean modified)
+    {
+        calls.incrementAndGet();
+        nanos.addAndGet(time);
+        if (modified) {
+            modifications.incrementAndGet();
+        }
+    }
+
+    void reset()
+    {
+        calls.set(0);
+        modifications.set(0);
+        nanos.set(0);
+    }
+
+    /** @return der Name des Rewriter-Moduls (so wie in <code>kernel.rewriter</code>) */
+    public String getName()
+    {
+        return name;
+    }
+
+    /** @return Anzahl der Aufrufe des Moduls */
+    public long getCalls()
+    {
+        return calls.get();
+    }
+
+    /** @return Anzahl der Aufrufe, bei denen das Modul die Nachricht verändert hat */
+    public long getModifications()
+    {
+        return modifications.get();
+    }
+
+    /** @return insgesamt in dem Modul verbrachte Zeit in Nanosekunden */
+    public long getTime()
+    {
+        return nanos.get();
+    }
+
+    public String toString()
+    {
+        return name+": calls="+getCalls()+", modified="+getModifications()+", time="+(getTime()/1000000)+"ms";
+    }
+}
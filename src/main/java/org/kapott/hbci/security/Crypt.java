@@ -36,9 +36,8 @@ import org.kapott.hbci.protocol.MSG;
 import org.kapott.hbci.protocol.MultipleSEGs;
 import org.kapott.hbci.protocol.MultipleSyntaxElements;
 import org.kapott.hbci.protocol.SEG;
+import org.kapott.hbci.protocol.SyntaxDef;
 import org.kapott.hbci.protocol.SyntaxElement;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
 
 public final class Crypt
 {
@@ -132,10 +131,9 @@ public final class Crypt
         if (passport.hasInstEncKey()) {
             String msgName = msg.getName();
             MsgGen gen=handlerdata.getMsgGen();
-            Node msgNode = msg.getSyntaxDef(msgName, gen.getSyntax());
-            String dontcryptAttr = ((Element)msgNode).getAttribute("dontcrypt");
+            SyntaxDef msgDef = msg.getSyntaxDef(msgName, gen.getSyntaxSpec());
 
-            if (dontcryptAttr.length() == 0) {
+            if (!msgDef.isDontCrypt()) {
                 try {
                     setParam("secfunc",passport.getCryptFunction());
                     setParam("keytype",passport.getCryptKeyType());
@@ -333,7 +331,7 @@ public final class Crypt
                         append(new String(plainMsg,0,plainMsg.length-padLength,Comm.ENCODING)).
                         append(msgtail.toString(0));
                     
-                    HBCIUtils.log("decrypted message: "+ret,HBCIUtils.LOG_DEBUG2);
+                    HBCIUtils.log("decrypted message: ",ret,HBCIUtils.LOG_DEBUG2);
                 } catch (Exception ex) {
                     throw new HBCI_Exception("*** error while decrypting",ex);
                 }
@@ -39,10 +39,9 @@ import org.kapott.hbci.protocol.MSG;
 import org.kapott.hbci.protocol.MultipleSEGs;
 import org.kapott.hbci.protocol.MultipleSyntaxElements;
 import org.kapott.hbci.protocol.SEG;
+import org.kapott.hbci.protocol.SyntaxDef;
 import org.kapott.hbci.protocol.SyntaxElement;
 import org.kapott.hbci.protocol.factory.SEGFactory;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
 
 public final class Sig
 {
@@ -245,17 +244,16 @@ public final class Sig
         if (mainPassport.hasMySigKey()) {
             String msgName = msg.getName();
             MsgGen gen=handlerdata.getMsgGen();
-            Node   msgNode = msg.getSyntaxDef(msgName, gen.getSyntax());
-            String dontsignAttr = ((Element)msgNode).getAttribute("dontsign");
+            SyntaxDef msgDef = msg.getSyntaxDef(msgName, gen.getSyntaxSpec());
 
-            if (dontsignAttr.length()==0) {
+            if (!msgDef.isDontSign()) {
                 try {
                     int numOfPassports=passports.size();
                     
                     // create an empty sighead and sigtail segment for each required signature
                     for (int idx=0;idx<numOfPassports;idx++) {
-                        SEG sighead=SEGFactory.getInstance().createSEG("SigHeadUser","SigHead",msgName,numOfPassports-1-idx,gen.getSyntax());
-                        SEG sigtail=SEGFactory.getInstance().createSEG("SigTailUser","SigTail",msgName,idx,gen.getSyntax());
+                        SEG sighead=SEGFactory.getInstance().createSEG("SigHeadUser","SigHead",msgName,numOfPassports-1-idx,gen.getSyntaxSpec());
+                        SEG sigtail=SEGFactory.getInstance().createSEG("SigTailUser","SigTail",msgName,idx,gen.getSyntaxSpec());
                         
                         List<MultipleSyntaxElements> msgelements=msg.getChildContainers();
                         List<SyntaxElement> sigheads=((MultipleSEGs)(msgelements.get(1))).getElements();
@@ -270,6 +268,8 @@ public final class Sig
                             }
                         }
                         sigheads.set(numOfPassports-1-idx,sighead);
+                        sighead.setParent(msgelements.get(1));
+                        msg.addToIndex(sighead);
                         
                         // insert sigtail segment in message
                         if (idx<sigtails.size()) {
@@ -280,6 +280,8 @@ public final class Sig
                             }
                         }
                         sigtails.set(idx,sigtail);
+                        sigtail.setParent(msgelements.get(msgelements.size()-2));
+                        msg.addToIndex(sigtail);
                     }
                     
                     // fill all sighead and sigtail segments
@@ -511,10 +513,9 @@ public final class Sig
         if (mainPassport.hasInstSigKey()) {
             String msgName = msg.getName();
             MsgGen gen=handlerdata.getMsgGen();
-            Node msgNode = msg.getSyntaxDef(msgName, gen.getSyntax());
-            String dontsignAttr = ((Element)msgNode).getAttribute("dontsign");
+            SyntaxDef msgDef = msg.getSyntaxDef(msgName, gen.getSyntaxSpec());
 
-            if (dontsignAttr.length()==0) {
+            if (!msgDef.isDontSign()) {
                 if (hasSig()) {
                     readSigHead();
                     try {
@@ -30,15 +30,22 @@ import org.kapott.hbci.tools.ObjectFactory;
 public class CryptFactory 
     extends ObjectFactory 
 {
-    private static CryptFactory instance;
+    private static volatile CryptFactory instance;
     
-    public static synchronized CryptFactory getInstance()
+    public static CryptFactory getInstance()
     {
-        if (instance==null) {
-            HBCIUtils.log("creating new crypt factory",HBCIUtils.LOG_DEBUG);
-            instance=new CryptFactory();
+        // nur beim ersten aufruf synchronisieren
+        CryptFactory ret=instance;
+        if (ret==null) {
+            synchronized (CryptFactory.class) {
+                ret=instance;
+                if (ret==null) {
+                    HBCIUtils.log("creating new crypt factory",HBCIUtils.LOG_DEBUG);
+                    instance=ret=new CryptFactory();
+                }
+            }
         }
-        return instance;
+        return ret;
     }
     
     private CryptFactory()
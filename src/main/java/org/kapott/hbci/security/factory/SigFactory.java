@@ -31,13 +31,10 @@ import org.kapott.hbci.tools.ObjectFactory;
 public class SigFactory 
     extends ObjectFactory 
 {
-    private static SigFactory instance;
+    private final static SigFactory instance=new SigFactory();
     
     public static SigFactory getInstance()
     {
-        if (instance==null) {
-            instance=new SigFactory();
-        }
         return instance;
     }
     
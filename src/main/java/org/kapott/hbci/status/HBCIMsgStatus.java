@@ -23,8 +23,10 @@ package org.kapott.hbci.status;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
 import org.kapott.hbci.manager.HBCIUtilsInternal;
@@ -49,8 +51,19 @@ public final class HBCIMsgStatus
         einzelne Segmente der gesendeten Nachricht beziehen. */
     public HBCIStatus segStatus;
     
+    /* zusätzliche daten */
     private Properties data;
-    
+    /* werte der gesendeten nachricht (pfad -> wert) und element-referenzen
+       (2:3,1 -> pfad); die "orig_"-einträge werden erst bei bedarf erzeugt */
+    private Hashtable<String,String> sentValues;
+    private Properties               sentPaths;
+    /* strukturierte daten der empfangenen nachricht */
+    private ResultNode result;
+    /* flache darstellung aller daten, wird erst bei bedarf erzeugt */
+    private Properties view;
+    /* aus den flachen daten erzeugter baum, falls kein result gesetzt wurde */
+    private ResultNode built;
+
     public HBCIMsgStatus()
     {
         this.globStatus=new HBCIStatus();
@@ -68,21 +81,67 @@ public final class HBCIMsgStatus
     public void setData(Properties data)
     {
         this.data=data;
+        this.result=null;
+        this.view=null;
+        this.built=null;
         extractStatusData();
     }
-    
+
     /** Wird von der <em>HBCI4Java</em>-Dialog-Engine aufgerufen */
     public void addData(Properties _data)
     {
         this.data.putAll(_data);
+        if (view!=null)
+            view.putAll(_data);
+        this.built=null;
+        extractStatusData();
+    }
+
+    /** Wird von der <em>HBCI4Java</em>-Dialog-Engine aufgerufen */
+    public void setSentData(Hashtable<String,String> values,Properties paths)
+    {
+        this.sentValues=values;
+        this.sentPaths=paths;
+        this.view=null;
+        this.built=null;
+        extractStatusData();
+    }
+
+    /** Wird von der <em>HBCI4Java</em>-Dialog-Engine aufgerufen */
+    public void setResult(ResultNode result)
+    {
+        this.result=result;
+        this.view=null;
+        this.built=null;
         extractStatusData();
     }
-     
+
     private void extractStatusData()
     {
         this.globStatus=new HBCIStatus();
         this.segStatus=new HBCIStatus();
 
+        // für die auswertung der return-codes werden nur die entsprechenden
+        // segmente der antwort benötigt (plus die element-referenzen der
+        // gesendeten nachricht aus "data")
+        Properties data=this.data;
+        if (view!=null) {
+            data=view;
+        } else if (result!=null) {
+            data=new Properties(this.data);
+            for (Iterator<ResultNode> i=result.getChildren().iterator();i.hasNext();) {
+                ResultNode child=i.next();
+                String     name=child.getName();
+                if (name.startsWith("RetGlob") || name.startsWith("RetSeg")) {
+                    child.fillProperties(data);
+                }
+            }
+        }
+        if (view==null && (sentValues!=null || sentPaths!=null)) {
+            // element-referenzen und "orig_"-werte direkt nachschlagen
+            data=new SentLookup(data);
+        }
+
         // globale return-codes extrahieren
         for (int i=0;true;i++) {
             HBCIRetVal rv=null;
@@ -125,10 +184,100 @@ public final class HBCIMsgStatus
         <em>values</em> enthalten jeweils den Wert des entsprechenden Datenelementes.
         Die Bezeichnungen der Datenelemente der <em>gesendeten</em> Nachricht tragen
         zur Unterscheidung mit den Datenelementen der empfangenen Nachricht das
-        Prefix "<code>orig_</code>".</p> */
+        Prefix "<code>orig_</code>".</p>
+        <p>Die flache Darstellung wird erst beim ersten Aufruf dieser Methode
+        erzeugt. Für den Zugriff auf die Daten der empfangenen Nachricht sollten
+        statt dessen besser {@link #getResult()} bzw. {@link #getProperty(String)}
+        benutzt werden.</p> */
     public Properties getData()
     {
-        return data;
+        if (result==null && sentValues==null && sentPaths==null)
+            return data;
+
+        if (view==null) {
+            Properties p=new Properties();
+            if (sentPaths!=null)
+                p.putAll(sentPaths);
+            if (sentValues!=null) {
+                for (Map.Entry<String,String> e:sentValues.entrySet()) {
+                    p.setProperty("orig_"+e.getKey(),e.getValue());
+                }
+            }
+            p.putAll(data);
+            if (result!=null)
+                result.fillProperties(p);
+            view=p;
+        }
+        return view;
+    }
+
+    /** <p>Gibt die Daten der empfangenen Nachricht als Baum zurück. Die Wurzel
+        des Baumes ist die Nachricht selbst, die Pfade der einzelnen Elemente
+        entsprechen den Schlüsseln in {@link #getData()}.</p>
+        <p>Wurden die Daten nur über {@link #setData(Properties)} bzw.
+        {@link #addData(Properties)} gesetzt, wird der Baum beim ersten Aufruf
+        einmalig aus diesen Daten erzeugt.</p>
+        <p>Maßgeblich sind die Daten des Baumes - Änderungen an der von
+        {@link #getData()} gelieferten flachen Darstellung wirken sich auf
+        den Baum nicht aus.</p>
+        @return die Daten der empfangenen Nachricht; niemals <code>null</code> */
+    public ResultNode getResult()
+    {
+        if (result!=null)
+            return result;
+
+        if (built==null)
+            built=ResultNode.create("",getData());
+        return built;
+    }
+
+    /** @param path Pfad eines Elementes der empfangenen Nachricht (z.B.
+                <code>GVRes.SaldoRes5</code>)
+        @return das entsprechende Element oder <code>null</code>, wenn es nicht
+                existiert */
+    public ResultNode getResult(String path)
+    {
+        return getResult().getElement(path);
+    }
+
+    /** Gibt den Wert eines einzelnen Datenelementes zurück, ohne dafür
+        die komplette flache Darstellung {@link #getData()} erzeugen zu müssen.
+        @param key Schlüssel des Datenelementes (siehe {@link #getData()})
+        @return der Wert oder <code>null</code> */
+    public String getProperty(String key)
+    {
+        String ret=(result!=null)?result.getValue(key):null;
+        if (ret==null)
+            ret=data.getProperty(key);
+        return (ret!=null)?ret:getSentProperty(key);
+    }
+    
+    /* sucht einen wert der gesendeten nachricht ("orig_"-präfix) bzw. den
+       pfad zu einer element-referenz */
+    private String getSentProperty(String key)
+    {
+        if (key.startsWith("orig_"))
+            return (sentValues!=null)?sentValues.get(key.substring(5)):null;
+        return (sentPaths!=null)?sentPaths.getProperty(key):null;
+    }
+    
+    /* liefert beim lesen zusätzlich die daten der gesendeten nachricht,
+       ohne sie in die flache darstellung zu kopieren */
+    private final class SentLookup
+        extends Properties
+    {
+        private static final long serialVersionUID=1L;
+
+        SentLookup(Properties defaults)
+        {
+            super(defaults);
+        }
+
+        public String getProperty(String key)
+        {
+            String ret=super.getProperty(key);
+            return (ret!=null)?ret:getSentProperty(key);
+        }
     }
     
     /** Gibt zurück, ob bei der Ausführung eines Nachrichtenaustauschs Exceptions
@@ -202,6 +351,23 @@ public final class HBCIMsgStatus
         return ret.toString().trim();
     }
     
+    /** Gibt zurück, ob der HBCI-Server die Nachricht wegen eines vorübergehenden
+        Fehlers abgelehnt hat (siehe {@link HBCIRetVal#isTemporaryError()}).
+        Exceptions werden dabei nicht berücksichtigt.
+        @return <code>true</code>, wenn eine Wiederholung sinnvoll sein kann */
+    public boolean isTemporaryError()
+    {
+        List<HBCIRetVal> retvals=new ArrayList<HBCIRetVal>(Arrays.asList(globStatus.getErrors()));
+        retvals.addAll(Arrays.asList(segStatus.getErrors()));
+        
+        for (HBCIRetVal ret:retvals) {
+            if (ret.isTemporaryError()) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
     /** 
      * Gibt zurück, ob der Fehler "PIN ungültig" zurückgemeldet wurde
      * @return <code>true</code> oder <code>false</code> */
@@ -26,6 +26,7 @@ import java.util.ArrayList;
 import java.util.Properties;
 
 import org.kapott.hbci.exceptions.HBCI_Exception;
+import org.kapott.hbci.manager.HBCIUtils;
 import org.kapott.hbci.manager.HBCIUtilsInternal;
 
 /** <p>Repräsentation eines HBCI-Statuscodes. Objekte dieser Klasse
@@ -174,6 +175,15 @@ public final class HBCIRetVal
         return (code!=null) && (code.charAt(0)=='9');
     }
     
+    /** Gibt zurück, ob dieser Rückgabewert eine Fehlermeldung ist, die auf
+        einen vorübergehenden Fehler beim HBCI-Server hinweist (z.B. Überlastung),
+        d.h. ob der Code im Kernel-Parameter <code>client.retry.codes</code>
+        aufgeführt ist. */
+    public boolean isTemporaryError()
+    {
+        return isError() && HBCIUtils.getConfig().getRetryCodes().contains(code);
+    }
+    
     public boolean equals(Object o)
     {
         boolean ret;
@@ -0,0 +1,329 @@
+/*  This file is part of HBCI4Java
+    Copyright (C) 2001-2008  Stefan Palme
+
+    HBCI4Java is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    HBCI4Java is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package org.kapott.hbci.status;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+
+import org.kapott.hbci.manager.HBCIUtilsInternal;
+import org.kapott.hbci.protocol.DE;
+import org.kapott.hbci.protocol.MSG;
+import org.kapott.hbci.protocol.MultipleSyntaxElements;
+import org.kapott.hbci.protocol.SyntaxElement;
+
+/** <p>Element der strukturierten Daten einer empfangenen Nachricht (Segmentfolge,
+    Segment, DEG oder DE). Die Elemente bilden einen Baum, dessen Wurzel die
+    Nachricht selbst ist. Jedes Element hat einen Namen (den letzten Teil seines
+    Pfades inkl. Zähler, z.B. <code>GVRes_2</code>), Datenelemente zusätzlich einen
+    Wert.</p>
+    <p>Im Gegensatz zu der flachen Darstellung als <code>Properties</code>
+    (siehe {@link HBCIMsgStatus#getData()}) können die Daten eines Segmentes
+    hier direkt adressiert werden, ohne alle Schlüssel der Nachricht durchsuchen
+    zu müssen. Die Pfade sind dabei die gleichen wie die Schlüssel in der
+    <code>Properties</code>-Darstellung.</p>
+    <p>Der Baum ist eine Kopie der Daten - er bleibt also auch dann gültig, wenn
+    die Nachricht selbst nicht mehr existiert.</p> */
+public final class ResultNode
+{
+    /* ab dieser anzahl von unterelementen wird für die suche nach namen eine
+     * hashtable angelegt */
+    private final static int MAP_THRESHOLD=8;
+
+    private final String name;
+    private final String value;
+    private ResultNode   parent;
+
+    private List<ResultNode>        children;
+    private Map<String,ResultNode>  childrenByName;
+
+    private ResultNode(String name,String value)
+    {
+        this.name=name;
+        this.value=value;
+    }
+
+    /** Erzeugt den Ergebnisbaum für die Nachricht <code>msg</code>. Enthalten sind
+        (wie bei {@link MSG#getData()}) alle gültigen Datenelemente. */
+    public static ResultNode create(MSG msg)
+    {
+        ResultNode root=new ResultNode(msg.getName(),null);
+        addChildren(root,msg);
+        return root;
+    }
+
+    private static void addChildren(ResultNode node,SyntaxElement elem)
+    {
+        int skip=elem.getPath().length()+1;
+
+        for (Iterator<MultipleSyntaxElements> i=elem.getChildContainers().iterator();i.hasNext();) {
+            MultipleSyntaxElements container=i.next();
+            if (container==null)
+                continue;
+
+            for (Iterator<SyntaxElement> j=container.getElements().iterator();j.hasNext();) {
+                SyntaxElement child=j.next();
+                if (child==null)
+                    continue;
+
+                // der pfad eines unterelementes kann mehrere ebenen umfassen
+                // (z.B. "KTV.KIK.blz" als direktes unterelement von "KTV")
+                String path=child.getPath().substring(skip);
+                int    dot=path.lastIndexOf('.');
+                String name=path.substring(dot+1);
+
+                ResultNode childNode;
+                if (child instanceof DE) {
+                    if (!child.isValid())
+                        continue;
+                    childNode=new ResultNode(name,((DE)child).getValue().toString());
+                } else {
+                    childNode=new ResultNode(name,null);
+                    addChildren(childNode,child);
+
+                    // elemente ohne (gültige) daten werden nicht übernommen
+                    if (childNode.children==null)
+                        continue;
+                }
+
+                ResultNode target=node;
+                if (dot!=-1) {
+                    target=node.getOrCreate(path.substring(0,dot));
+                }
+                target.addChild(childNode);
+            }
+        }
+    }
+
+    /** Erzeugt einen Ergebnisbaum aus der flachen Darstellung <code>data</code>
+        (Pfad -> Wert). Die Unterelemente eines Elementes sind dabei nach ihren
+        Namen sortiert. */
+    public static ResultNode create(String name,Properties data)
+    {
+        ResultNode root=new ResultNode(name,null);
+
+        for (Iterator<String> i=new TreeSet<String>(data.stringPropertyNames()).iterator();i.hasNext();) {
+            String     key=i.next();
+            int        dot=key.lastIndexOf('.');
+            ResultNode node=(dot==-1)?root:root.getOrCreate(key.substring(0,dot));
+            node.addChild(new ResultNode(key.substring(dot+1),data.getProperty(key)));
+        }
+
+        return root;
+    }
+
+    /* liefert das element mit dem (relativen) pfad "path", fehlende
+     * zwischenelemente werden dabei angelegt */
+    private ResultNode getOrCreate(String path)
+    {
+        ResultNode node=this;
+        int        start=0;
+
+        while (true) {
+            int        dot=path.indexOf('.',start);
+            String     part=(dot==-1)?path.substring(start):path.substring(start,dot);
+            ResultNode child=node.getChild(part);
+
+            if (child==null) {
+                child=new ResultNode(part,null);
+                node.addChild(child);
+            }
+            if (dot==-1)
+                return child;
+
+            node=child;
+            start=dot+1;
+        }
+    }
+
+    private void addChild(ResultNode child)
+    {
+        if (children==null) {
+            children=new ArrayList<ResultNode>(4);
+        }
+        children.add(child);
+        child.parent=this;
+
+        if (childrenByName!=null) {
+            if (!childrenByName.containsKey(child.name))
+                childrenByName.put(child.name,child);
+        } else if (children.size()>MAP_THRESHOLD) {
+            childrenByName=new HashMap<String,ResultNode>();
+            for (int i=children.size()-1;i>=0;i--) {
+                ResultNode c=children.get(i);
+                childrenByName.put(c.name,c);
+            }
+        }
+    }
+
+    /** @return der Name dieses Elementes (inkl. Zähler, z.B. <code>RetVal_3</code>) */
+    public String getName()
+    {
+        return name;
+    }
+
+    /** @return der Wert dieses Elementes, wenn es sich um ein Datenelement handelt,
+                sonst <code>null</code> */
+    public String getValue()
+    {
+        return value;
+    }
+
+    /** @return das übergeordnete Element oder <code>null</code> für die Nachricht selbst */
+    public ResultNode getParent()
+    {
+        return parent;
+    }
+
+    /** @return der Pfad dieses Elementes relativ zur Nachricht (entspricht dem
+                Schlüssel in {@link HBCIMsgStatus#getData()}); für die Nachricht
+                selbst ein leerer String */
+    public String getPath()
+    {
+        if (parent==null)
+            return "";
+
+        String parentPath=parent.getPath();
+        return (parentPath.length()==0)?name:parentPath+"."+name;
+    }
+
+    /** @return alle Unterelemente in der Reihenfolge ihres Auftretens in der
+                Nachricht; niemals <code>null</code> */
+    public List<ResultNode> getChildren()
+    {
+        if (children==null)
+            return Collections.emptyList();
+        return Collections.unmodifiableList(children);
+    }
+
+    /** @param name Name des Unterelementes (inkl. Zähler)
+        @return das direkte Unterelement mit dem angegebenen Namen oder
+                <code>null</code>, falls es nicht existiert */
+    public ResultNode getChild(String name)
+    {
+        if (childrenByName!=null)
+            return childrenByName.get(name);
+
+        if (children!=null) {
+            for (int i=0;i<children.size();i++) {
+                ResultNode c=children.get(i);
+                if (c.name.equals(name))
+                    return c;
+            }
+        }
+        return null;
+    }
+
+    /** @param name Name des Unterelementes (ohne Zähler)
+        @param idx Index des Unterelementes (bei 0 beginnend)
+        @return das <code>idx</code>-te Unterelement mit dem Namen <code>name</code>
+                oder <code>null</code> */
+    public ResultNode getChild(String name,int idx)
+    {
+        return getChild(HBCIUtilsInternal.withCounter(name,idx));
+    }
+
+    /** @param path Pfad des gesuchten Elementes relativ zu diesem Element
+                (z.B. <code>KTV.KIK.blz</code>)
+        @return das Element oder <code>null</code>, falls es nicht existiert */
+    public ResultNode getElement(String path)
+    {
+        ResultNode node=this;
+        int        start=0;
+
+        while (node!=null) {
+            int dot=path.indexOf('.',start);
+            if (dot==-1) {
+                return node.getChild(path.substring(start));
+            }
+            node=node.getChild(path.substring(start,dot));
+            start=dot+1;
+        }
+        return null;
+    }
+
+    /** @param path Pfad des Datenelementes relativ zu diesem Element
+        @return der Wert des Datenelementes oder <code>null</code> */
+    public String getValue(String path)
+    {
+        ResultNode node=getElement(path);
+        return (node!=null)?node.value:null;
+    }
+
+    /** wie {@link #getValue(String)}, liefert aber <code>def</code>, wenn das
+        Datenelement nicht existiert */
+    public String getValue(String path,String def)
+    {
+        String ret=getValue(path);
+        return (ret!=null)?ret:def;
+    }
+
+    /** Durchläuft dieses Element und alle Unterelemente mit dem Besucher
+        <code>visitor</code>. */
+    public void accept(ResultVisitor visitor)
+    {
+        if (visitor.visit(this) && children!=null) {
+            for (int i=0;i<children.size();i++) {
+                children.get(i).accept(visitor);
+            }
+        }
+    }
+
+    /** Trägt die Werte aller Datenelemente unterhalb dieses Elementes in
+        <code>p</code> ein. Als Schlüssel werden die Pfade relativ zur
+        Nachricht verwendet. */
+    public void fillProperties(Properties p)
+    {
+        String path=getPath();
+        if (value!=null) {
+            p.setProperty(path,value);
+        } else if (children!=null) {
+            StringBuffer prefix=new StringBuffer(128).append(path);
+            if (prefix.length()!=0)
+                prefix.append('.');
+            fillProperties(p,prefix);
+        }
+    }
+
+    private void fillProperties(Properties p,StringBuffer prefix)
+    {
+        int len=prefix.length();
+        for (int i=0;i<children.size();i++) {
+            ResultNode c=children.get(i);
+            prefix.append(c.name);
+            if (c.value!=null) {
+                p.setProperty(prefix.toString(),c.value);
+            } else if (c.children!=null) {
+                prefix.append('.');
+                c.fillProperties(p,prefix);
+            }
+            prefix.setLength(len);
+        }
+    }
+
+    public String toString()
+    {
+        return (value!=null)?getPath()+"="+value:getPath();
+    }
+}
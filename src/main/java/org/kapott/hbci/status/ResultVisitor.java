@@ -0,0 +1,31 @@
+/*  This file is part of HBCI4Java
+    Copyright (C) 2001-2008  Stefan Palme
+
+    HBCI4Java is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    HBCI4Java is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package org.kapott.hbci.status;
+
+/** Besucher für die Elemente einer empfangenen Nachricht, siehe
+    {@link ResultNode#accept(ResultVisitor)}. */
+public interface ResultVisitor
+{
+    /** Wird für jedes Element der Nachricht aufgerufen - übergeordnete
+        Elemente vor ihren Unterelementen.
+        @param node das aktuelle Element
+        @return <code>true</code>, wenn auch die Unterelemente von <code>node</code>
+                besucht werden sollen */
+    public boolean visit(ResultNode node);
+}
@@ -23,14 +23,41 @@ package org.kapott.hbci.tools;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.kapott.hbci.manager.HBCIUtils;
+
+/** <p>Object-Pool für häufig benutzte Objekte (Nachrichten, Segmente, Datenelemente
+    usw.). Die Pools werden von allen Threads gemeinsam benutzt und arbeiten
+    deshalb ohne globale Sperre: die freien Objekte liegen in mehreren
+    lock-freien Listen ("stripes"), von denen jeder Thread zuerst die ihm
+    zugeordnete benutzt. Die gerade benutzten Objekte werden anhand ihrer
+    Identität verwaltet, so dass das Zurückgeben eines Objektes
+    ({@link #unuseObject(Object)}) unabhängig von der Poolgröße ist.</p>
+    <p>Die gepoolten Klassen dürfen deshalb <code>equals()</code> und
+    <code>hashCode()</code> nicht überschreiben.</p>
+    <p>Die maximale Poolgröße wird pro Objekttyp über die Parameter
+    <code>kernel.objpool.*</code> festgelegt. Mit <code>kernel.objpool.enabled=no</code>
+    wird das Pooling komplett abgeschaltet, es werden dann immer neue Objekte
+    erzeugt (z.B. um Pooling und Neuerzeugung vergleichen zu können).</p> */
 public class ObjectFactory 
 {
-    protected final Collection<Object> freeObjects;
-    protected final Collection<Object> usedObjects;
-    private   final int        maxPoolSize;
-    protected int              currentPoolSize;
-    
+    private final static int STRIPES=stripes();
+
+    private final List<ConcurrentLinkedDeque<Object>> freeObjects;
+    private final ConcurrentMap<Object,Boolean>  usedObjects;
+    private final int                             maxPoolSize;
+    private final AtomicInteger                   currentPoolSize;
+
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+
     public ObjectFactory()
     {
     	this(10);
@@ -38,83 +65,135 @@ public class ObjectFactory
     
     public ObjectFactory(int maxPoolSize)
     {
-        this.freeObjects=new ArrayList<Object>();
-        this.usedObjects=new ArrayList<Object>();
-        this.maxPoolSize=maxPoolSize;
-        this.currentPoolSize=0;
+        this.maxPoolSize=isPoolingEnabled()?Math.max(maxPoolSize,0):0;
+        this.freeObjects=new ArrayList<ConcurrentLinkedDeque<Object>>(STRIPES);
+        for (int i=0;i<STRIPES;i++) {
+            this.freeObjects.add(new ConcurrentLinkedDeque<Object>());
+        }
+        this.usedObjects=new ConcurrentHashMap<Object,Boolean>(Math.min(this.maxPoolSize,1024)*4/3+1,0.75f,STRIPES);
+        this.currentPoolSize=new AtomicInteger();
+        this.hits=new AtomicLong();
+        this.misses=new AtomicLong();
+    }
+
+    /* anzahl der stripes: nächste zweierpotenz >= anzahl der prozessoren */
+    private static int stripes()
+    {
+        int cpus=Runtime.getRuntime().availableProcessors();
+        int ret=1;
+        while (ret<cpus) {
+            ret<<=1;
+        }
+        return ret;
+    }
+
+    private static boolean isPoolingEnabled()
+    {
+        return !HBCIUtils.getParam("kernel.objpool.enabled","yes").equals("no");
+    }
+
+    /* der dem aktuellen thread zugeordnete stripe */
+    private static int stripe()
+    {
+        return (int)Thread.currentThread().getId()&(STRIPES-1);
+    }
+
+    /* erhöht die poolgröße um eins, falls die maximale größe noch nicht
+     * erreicht ist */
+    private boolean reserve()
+    {
+        for (;;) {
+            int current=currentPoolSize.get();
+            if (current>=maxPoolSize) {
+                return false;
+            }
+            if (currentPoolSize.compareAndSet(current,current+1)) {
+                return true;
+            }
+        }
     }
     
-    public synchronized Object getFreeObject()
+    public Object getFreeObject()
     {
-    	if (freeObjects.isEmpty()) {
-    	    return null;
+        if (maxPoolSize==0) {
+            return null;
         }
-        
-    	Object ret=freeObjects.iterator().next();
-    	freeObjects.remove(ret);
-    	currentPoolSize--;
-    	// HBCIUtils.log("returning unused object, new: "+toString(),HBCIUtils.LOG_DEBUG);
-    	return ret;
+
+        // zuerst im eigenen stripe suchen, dann in den anderen
+        int start=stripe();
+        for (int i=0;i<STRIPES;i++) {
+            Object ret=freeObjects.get((start+i)&(STRIPES-1)).pollFirst();
+            if (ret!=null) {
+                currentPoolSize.decrementAndGet();
+                hits.incrementAndGet();
+                return ret;
+            }
+        }
+
+        misses.incrementAndGet();
+    	return null;
     }
     
-    public synchronized void addToUsedPool(Object o)
+    public void addToUsedPool(Object o)
     {
-    	// HBCIUtils.log("trying to add object to used pool",HBCIUtils.LOG_DEBUG);
-    	if (o!=null && currentPoolSize<maxPoolSize) {
-    		usedObjects.add(o);
-    		currentPoolSize++;
-    		// HBCIUtils.log("ok; new: "+toString(),HBCIUtils.LOG_DEBUG);
+    	if (o!=null && reserve()) {
+    		usedObjects.put(o,Boolean.TRUE);
     	}
     }
     
-    public synchronized void addToFreePool(Object o)
+    public void addToFreePool(Object o)
     {
-    	// HBCIUtils.log("trying to add object to free pool",HBCIUtils.LOG_DEBUG);
-    	if (o!=null && currentPoolSize<maxPoolSize) {
-    		freeObjects.add(o);
-    		currentPoolSize++;
-    		// HBCIUtils.log("ok; new: "+toString(),HBCIUtils.LOG_DEBUG);
+    	if (o!=null && reserve()) {
+    		freeObjects.get(stripe()).addFirst(o);
     	}
     }
     
-    public synchronized void unuseObject(Object o)
+    public void unuseObject(Object o)
     {
-    	if (usedObjects.remove(o)) {
-    		freeObjects.add(o);
-    		// HBCIUtils.log("removed an object from used pool; new: "+toString(),HBCIUtils.LOG_DEBUG);
+        // nur objekte, die vorher über addToUsedPool() registriert wurden,
+        // kommen zurück in den pool
+    	if (o!=null && usedObjects.remove(o)!=null) {
+    		freeObjects.get(stripe()).addFirst(o);
     	}
     }
+
+    /** Gibt die Anzahl der Anforderungen zurück, die aus dem Pool bedient
+        werden konnten. */
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    /** Gibt die Anzahl der Anforderungen zurück, für die ein neues Objekt
+        erzeugt werden musste. */
+    public long getMisses()
+    {
+        return misses.get();
+    }
     
     public String toString()
     {
         StringBuffer ret=new StringBuffer();
         
-        ret.append("used:").append(usedObjects.size()).append(" free:").append(freeObjects.size()).append(" maxsize:").append(maxPoolSize);
-        
-        /*
-        for (Iterator i=usedObjects.iterator();i.hasNext();) {
-            ret.append(System.getProperty("line.separator"));
-            
-            Object o=i.next();
-            if (o instanceof SyntaxElement)
-                ret.append("used: "+((SyntaxElement)o).toString(0));
-            else if (o instanceof MultipleSyntaxElements)
-                ret.append("used: "+((MultipleSyntaxElements)o).toString(0));
-            else 
-                ret.append("used: "+o.toString());
-        }
-        */
+        ret.append("used:").append(usedObjects.size()).append(" free:").append(getFreeObjects().size()).append(" maxsize:").append(maxPoolSize);
+        ret.append(" hits:").append(hits.get()).append(" misses:").append(misses.get());
         
         return ret.toString();
     }
     
-    public synchronized Collection<Object> getUsedObjects() 
+    /** gibt eine (nicht veränderbare) sicht auf die gerade benutzten objekte zurück */
+    public Collection<Object> getUsedObjects() 
     {
-        return usedObjects;
+        return Collections.unmodifiableSet(usedObjects.keySet());
     }
     
-    public synchronized Collection<Object> getFreeObjects()
+    /** gibt eine momentaufnahme der freien objekte zurück */
+    public Collection<Object> getFreeObjects()
     {
-        return freeObjects;
+        List<Object> ret=new ArrayList<Object>();
+        for (ConcurrentLinkedDeque<Object> stripe:freeObjects) {
+            ret.addAll(stripe);
+        }
+        return ret;
     }
 }
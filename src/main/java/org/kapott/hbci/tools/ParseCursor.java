@@ -0,0 +1,124 @@
+/*  This file is part of HBCI4Java
+    Copyright (C) 2001-2008  Stefan Palme
+
+    HBCI4Java is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    HBCI4Java is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package org.kapott.hbci.tools;
+
+/** <p>Lesezeiger auf eine zu parsende HBCI-Nachricht. Die Nachricht selbst
+    wird nie verändert oder kopiert - beim Parsen wird nur die aktuelle
+    Position weitergeschoben. Soll ein Parse-Versuch rückgängig gemacht
+    werden, so wird einfach die vorher gemerkte Position wiederhergestellt
+    ({@link #getPosition()}/{@link #setPosition(int)}).</p>
+    <p>Alle Index-Angaben in {@link #charAt(int)}, {@link #substring(int, int)},
+    {@link #indexOf(char, int)} und {@link #length()} sind relativ zur aktuellen
+    Position, d.h. aus Sicht des Parsers verhält sich ein <code>ParseCursor</code>
+    wie der noch nicht geparste "Reststring" der Nachricht.</p>
+    <p>Objekte dieser Klasse sind nicht threadsicher; jeder Parse-Vorgang
+    benutzt seinen eigenen Cursor.</p> */
+public final class ParseCursor
+{
+    /* maximale anzahl von zeichen des reststrings, die in fehlermeldungen
+     * ausgegeben werden */
+    private final static int PREVIEW_LEN=256;
+
+    private final CharSequence data;
+    private final int          end;
+    private int                pos;
+
+    /** Erzeugt einen Cursor, der am Anfang der übergebenen Nachricht steht.
+        Die Daten dürfen während des Parsens nicht verändert werden. */
+    public ParseCursor(CharSequence data)
+    {
+        this.data=data;
+        this.end=data.length();
+        this.pos=0;
+    }
+
+    /** absolute position in der nachricht */
+    public int getPosition()
+    {
+        return pos;
+    }
+
+    /** setzt den cursor auf die absolute position <code>pos</code> (z.b.
+        eine vorher mit {@link #getPosition()} gemerkte position) */
+    public void setPosition(int pos)
+    {
+        if (pos<0 || pos>end)
+            throw new StringIndexOutOfBoundsException(pos);
+        this.pos=pos;
+    }
+
+    /** schiebt den cursor um <code>count</code> zeichen weiter */
+    public void skip(int count)
+    {
+        setPosition(pos+count);
+    }
+
+    /** anzahl der noch nicht geparsten zeichen */
+    public int length()
+    {
+        return end-pos;
+    }
+
+    /** zeichen an der (relativen) position <code>index</code> */
+    public char charAt(int index)
+    {
+        if (index<0 || index>=end-pos)
+            throw new StringIndexOutOfBoundsException(index);
+        return data.charAt(pos+index);
+    }
+
+    /** teilstring zwischen den (relativen) positionen <code>start</code>
+        (inklusive) und <code>stop</code> (exklusive) */
+    public String substring(int start,int stop)
+    {
+        if (start<0 || stop>end-pos || start>stop)
+            throw new StringIndexOutOfBoundsException("start "+start+", end "+stop+", length "+(end-pos));
+        return data.subSequence(pos+start,pos+stop).toString();
+    }
+
+    /** (relative) position des nächsten vorkommens von <code>ch</code> ab
+        der (relativen) position <code>from</code> oder <code>-1</code> */
+    public int indexOf(char ch,int from)
+    {
+        for (int i=pos+from;i<end;i++) {
+            if (data.charAt(i)==ch) {
+                return i-pos;
+            }
+        }
+        return -1;
+    }
+
+    /** gibt höchstens die ersten 256 zeichen des reststrings zurück - für
+        fehlermeldungen, damit bei großen nachrichten nicht bei jedem
+        fehlgeschlagenen parse-versuch der komplette reststring kopiert wird */
+    public String preview()
+    {
+        int len=end-pos;
+        if (len<=PREVIEW_LEN) {
+            return substring(0,len);
+        }
+        return substring(0,PREVIEW_LEN)+"...";
+    }
+
+    /** gibt den kompletten (noch nicht geparsten) reststring zurück */
+    public String toString()
+    {
+        return substring(0,end-pos);
+    }
+}
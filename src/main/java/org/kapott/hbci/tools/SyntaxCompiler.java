@@ -0,0 +1,240 @@
+/*  This file is part of HBCI4Java
+    Copyright (C) 2001-2008  Stefan Palme
+
+    HBCI4Java is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    HBCI4Java is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package org.kapott.hbci.tools;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.kapott.hbci.manager.SyntaxRegistry;
+import org.kapott.hbci.protocol.SyntaxDef;
+import org.kapott.hbci.protocol.SyntaxRef;
+import org.kapott.hbci.protocol.SyntaxSpec;
+
+/** <p>Erzeugt beim Build aus den Syntax-Spezifikationen <code>hbci-*.xml</code>
+    Java-Klassen, welche den Graph aus {@link SyntaxDef}- und {@link SyntaxRef}-Objekten
+    direkt aufbauen. Zur Laufzeit muss damit für die mitgelieferten HBCI-Versionen
+    kein XML mehr geparst und validiert werden.</p>
+    <p>Der Aufruf erfolgt durch
+    <pre>java org.kapott.hbci.tools.SyntaxCompiler outputdir hbciversion...</pre>
+    Für jede angegebene HBCI-Version wird die Datei
+    <code>outputdir/org/kapott/hbci/protocol/CompiledSyntax_<em>hbciversion</em>.java</code>
+    erzeugt. Die Syntax-Spezifikationen werden aus dem Classpath geladen.</p>
+    <p>Die erzeugten Klassen werden von {@link SyntaxRegistry} automatisch
+    benutzt, solange kein eigener <code>kernel.kernel.xmlpath</code> gesetzt ist.</p> */
+public final class SyntaxCompiler
+{
+    private final static String PACKAGE="org.kapott.hbci.protocol";
+
+    /* maximale anzahl von definitionen bzw. referenzen pro erzeugter methode
+     * - damit die methoden nicht zu groß werden (64KB-grenze) */
+    private final static int MAX_DEFS_PER_METHOD=50;
+    private final static int MAX_REFS_PER_METHOD=250;
+
+    private final static String[] KINDS={"SyntaxRef.KIND_DE","SyntaxRef.KIND_DEG",
+                                         "SyntaxRef.KIND_SEG","SyntaxRef.KIND_SF"};
+
+    public static void main(String[] args)
+        throws IOException
+    {
+        if (args.length<2) {
+            System.err.println("usage: java "+SyntaxCompiler.class.getName()+" outputdir hbciversion...");
+            System.exit(1);
+        }
+
+        File outdir=new File(args[0],PACKAGE.replace('.',File.separatorChar));
+        if (!outdir.isDirectory() && !outdir.mkdirs()) {
+            throw new IOException("can not create directory "+outdir);
+        }
+
+        for (int i=1;i<args.length;i++) {
+            String version=args[i];
+            String filename="hbci-"+version+".xml";
+
+            InputStream syntaxStream=SyntaxCompiler.class.getClassLoader().getResourceAsStream(filename);
+            if (syntaxStream==null) {
+                throw new IOException("can not find "+filename+" in classpath");
+            }
+            SyntaxSpec spec=new SyntaxSpec(SyntaxRegistry.parseSyntax(syntaxStream));
+
+            File   outfile=new File(outdir,getClassName(version)+".java");
+            Writer out=new OutputStreamWriter(new FileOutputStream(outfile),"UTF-8");
+            try {
+                generate(spec,version,filename,out);
+            } finally {
+                out.close();
+            }
+            System.out.println("generated "+outfile+" ("+spec.getDefs().size()+" definitions)");
+        }
+    }
+
+    /** Gibt den Namen der für die HBCI-Version erzeugten Klasse (ohne Package) zurück. */
+    public static String getClassName(String hbciversion)
+    {
+        return "CompiledSyntax_"+hbciversion;
+    }
+
+    /** Schreibt den Java-Quelltext der Klasse für die übergebene Spezifikation. */
+    public static void generate(SyntaxSpec spec,String hbciversion,String filename,Writer out)
+        throws IOException
+    {
+        String classname=getClassName(hbciversion);
+
+        // sortieren, damit die erzeugten quelltexte reproduzierbar sind
+        List<SyntaxDef> defs=new ArrayList<SyntaxDef>(spec.getDefs());
+        Collections.sort(defs,new Comparator<SyntaxDef>() {
+            public int compare(SyntaxDef d1,SyntaxDef d2)
+            {
+                return d1.getId().compareTo(d2.getId());
+            }
+        });
+
+        // aufteilen der definitionen auf mehrere methoden
+        List<List<SyntaxDef>> chunks=new ArrayList<List<SyntaxDef>>();
+        List<SyntaxDef>       chunk=null;
+        int                   refs=0;
+        for (SyntaxDef def:defs) {
+            int size=def.getChildren().length+def.getValueCount()+def.getValidsCount()+1;
+            if (chunk==null || chunk.size()>=MAX_DEFS_PER_METHOD || refs+size>MAX_REFS_PER_METHOD) {
+                chunk=new ArrayList<SyntaxDef>();
+                chunks.add(chunk);
+                refs=0;
+            }
+            chunk.add(def);
+            refs+=size;
+        }
+
+        out.write("/* automatisch erzeugt von "+SyntaxCompiler.class.getName()+" aus "+filename+"\n");
+        out.write(" * - nicht von hand bearbeiten */\n\n");
+        out.write("package "+PACKAGE+";\n\n");
+        out.write("import java.util.HashMap;\n");
+        out.write("import java.util.Map;\n\n");
+        out.write("public final class "+classname+"\n{\n");
+        out.write("    private "+classname+"()\n    {\n    }\n\n");
+
+        out.write("    public static SyntaxSpec create()\n    {\n");
+        out.write("        Map<String,SyntaxDef> defs=new HashMap<String,SyntaxDef>("+(defs.size()*4/3+1)+");\n");
+        for (int i=0;i<chunks.size();i++) {
+            out.write("        defs"+i+"(defs);\n");
+        }
+        out.write("        return new SyntaxSpec(defs,"+quote(filename)+");\n");
+        out.write("    }\n");
+
+        for (int i=0;i<chunks.size();i++) {
+            out.write("\n    private static void defs"+i+"(Map<String,SyntaxDef> defs)\n    {\n");
+            for (SyntaxDef def:chunks.get(i)) {
+                writeDef(def,out);
+            }
+            out.write("    }\n");
+        }
+
+        out.write("}\n");
+    }
+
+    private static void writeDef(SyntaxDef def,Writer out)
+        throws IOException
+    {
+        out.write("        defs.put("+quote(def.getId())+",new SyntaxDef(");
+        out.write(quote(def.getId())+","+quote(def.getDefType())+",");
+        out.write(def.needsRequestTag()+","+def.isDontSign()+","+def.isDontCrypt()+",\n");
+
+        SyntaxRef[] children=def.getChildren();
+        if (children.length==0) {
+            out.write("            SyntaxDef.NO_REFS,\n");
+        } else {
+            out.write("            new SyntaxRef[] {\n");
+            for (SyntaxRef ref:children) {
+                out.write("                new SyntaxRef("+KINDS[ref.getKind()]+","+quote(ref.getType())+","+quote(ref.getName())+",");
+                out.write(ref.getMinNum()+","+ref.getMaxNum()+","+ref.getMinSize()+","+ref.getMaxSize()+",");
+                out.write(ref.getSyntaxIdx()+"),\n");
+            }
+            out.write("            },\n");
+        }
+
+        int valueCount=def.getValueCount();
+        String[] paths=new String[valueCount];
+        String[] values=new String[valueCount];
+        for (int i=0;i<valueCount;i++) {
+            paths[i]=def.getValuePath(i);
+            values[i]=def.getValue(i);
+        }
+        out.write("            "+stringArray(paths)+","+stringArray(values)+",\n");
+
+        int validsCount=def.getValidsCount();
+        String[] validPaths=new String[validsCount];
+        for (int i=0;i<validsCount;i++) {
+            validPaths[i]=def.getValidsPath(i);
+        }
+        out.write("            "+stringArray(validPaths)+",");
+        if (validsCount==0) {
+            out.write("new String[0][]));\n");
+        } else {
+            out.write("new String[][] {\n");
+            for (int i=0;i<validsCount;i++) {
+                out.write("                "+stringArray(def.getValidValues(i))+",\n");
+            }
+            out.write("            }));\n");
+        }
+    }
+
+    private static String stringArray(String[] values)
+    {
+        if (values.length==0) {
+            return "SyntaxDef.NO_STRINGS";
+        }
+
+        StringBuffer ret=new StringBuffer("new String[] {");
+        for (int i=0;i<values.length;i++) {
+            if (i!=0) {
+                ret.append(",");
+            }
+            ret.append(quote(values[i]));
+        }
+        ret.append("}");
+        return ret.toString();
+    }
+
+    /* erzeugt ein java-string-literal; alle nicht-ascii-zeichen werden als
+     * unicode-escape geschrieben, damit das encoding der quelltexte keine
+     * rolle spielt */
+    private static String quote(String st)
+    {
+        StringBuffer ret=new StringBuffer(st.length()+2);
+        ret.append('"');
+        for (int i=0;i<st.length();i++) {
+            char ch=st.charAt(i);
+            if (ch=='"' || ch=='\\') {
+                ret.append('\\').append(ch);
+            } else if (ch<0x20 || ch>0x7e) {
+                ret.append(String.format("\\u%04x",(int)ch));
+            } else {
+                ret.append(ch);
+            }
+        }
+        ret.append('"');
+        return ret.toString();
+    }
+}
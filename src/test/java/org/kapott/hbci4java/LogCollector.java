@@ -0,0 +1,56 @@
+package org.kapott.hbci4java;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.kapott.hbci.callback.HBCICallbackConsole;
+import org.kapott.hbci.manager.LogDispatcher;
+
+/**
+ * Callback fuer Tests, der die Log-Meldungen sammelt statt sie auszugeben.
+ */
+public class LogCollector extends HBCICallbackConsole
+{
+  /**
+   * Die Log-Meldungen in der Reihenfolge der Ausgabe.
+   */
+  public final List<String> messages = Collections.synchronizedList(new ArrayList<String>());
+
+  /**
+   * Die Aufrufer zu den Log-Meldungen.
+   */
+  public final List<StackTraceElement> traces = Collections.synchronizedList(new ArrayList<StackTraceElement>());
+
+  /**
+   * Die Threads, aus denen die Log-Meldungen stammen.
+   */
+  public final List<Thread> threads = Collections.synchronizedList(new ArrayList<Thread>());
+
+  /**
+   * Optional: vor jeder Ausgabe wird auf diesen Latch gewartet.
+   */
+  public volatile CountDownLatch latch = null;
+
+  /**
+   * @see org.kapott.hbci.callback.HBCICallbackIOStreams#log(java.lang.String, int, java.util.Date, java.lang.StackTraceElement)
+   */
+  public void log(String msg, int level, Date date, StackTraceElement trace)
+  {
+    try
+    {
+      CountDownLatch l = latch;
+      if (l != null)
+        l.await();
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+    }
+    messages.add(msg);
+    traces.add(trace);
+    threads.add(LogDispatcher.getSourceThread());
+  }
+}
@@ -0,0 +1,70 @@
+package org.kapott.hbci4java;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.kapott.hbci.callback.HBCICallback;
+import org.kapott.hbci.passport.HBCIPassport;
+
+/**
+ * Callback fuer Dialoge mit der {@link MockBankTransport Test-Bank}.
+ * Beantwortet die Abfrage von PIN und PIN/TAN-Verfahren, merkt sich alle
+ * Callbacks und unterdrueckt die Status-Ausgaben.
+ */
+public class MockBankCallback extends LogCollector
+{
+  /**
+   * Die zurueckgelieferte PIN.
+   */
+  public volatile String pin = "12345";
+
+  /**
+   * Das zurueckgelieferte PIN/TAN-Verfahren.
+   */
+  public volatile String secmech = "999";
+
+  /**
+   * Die Gruende der Callbacks in der Reihenfolge des Aufrufs.
+   */
+  public final List<Integer> reasons = Collections.synchronizedList(new ArrayList<Integer>());
+
+  /**
+   * Die Threads, aus denen die Callbacks kamen.
+   */
+  public final List<Thread> callbackThreads = Collections.synchronizedList(new ArrayList<Thread>());
+
+  /**
+   * @see org.kapott.hbci.callback.HBCICallbackIOStreams#callback(org.kapott.hbci.passport.HBCIPassport, int, java.lang.String, int, java.lang.StringBuffer)
+   */
+  public void callback(HBCIPassport passport, int reason, String msg, int datatype, StringBuffer retData)
+  {
+    reasons.add(reason);
+    callbackThreads.add(Thread.currentThread());
+
+    if (reason == HBCICallback.NEED_PT_PIN)
+      retData.replace(0, retData.length(), pin);
+    else if (reason == HBCICallback.NEED_PT_SECMECH)
+      retData.replace(0, retData.length(), secmech);
+  }
+
+  /**
+   * @see org.kapott.hbci.callback.HBCICallbackIOStreams#status(org.kapott.hbci.passport.HBCIPassport, int, java.lang.Object[])
+   */
+  public void status(HBCIPassport passport, int statusTag, Object[] o)
+  {
+  }
+
+  /**
+   * Liefert die Anzahl der Callbacks mit dem angegebenen Grund.
+   * @param reason der Grund.
+   * @return die Anzahl.
+   */
+  public int count(int reason)
+  {
+    synchronized (reasons)
+    {
+      return Collections.frequency(reasons, reason);
+    }
+  }
+}
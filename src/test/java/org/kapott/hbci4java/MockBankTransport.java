@@ -0,0 +1,145 @@
+package org.kapott.hbci4java;
+
+import java.net.URL;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.kapott.hbci.comm.Transport;
+import org.kapott.hbci.exceptions.HBCI_Exception;
+import org.kapott.hbci.passport.AbstractPinTanPassport;
+import org.kapott.hbci.passport.HBCIPassportPinTanMemory;
+import org.kapott.hbci.protocol.MsgBuffer;
+
+/**
+ * Transport fuer Tests, der statt einer Bank antwortet.
+ * Beantwortet werden Dialog-Initialisierung und Dialog-Ende (verschluesselt,
+ * wie bei PIN/TAN ueblich), jeweils mit einer positiven Rueckmeldung. Die
+ * Dialog-ID wird aus der Kunden-ID gebildet, damit die Ergebnisse
+ * reproduzierbar sind.
+ * Ein passendes Passport liefert {@link #createPassport()}.
+ */
+public class MockBankTransport extends Transport
+{
+  /**
+   * Anzahl der insgesamt beantworteten Nachrichten.
+   */
+  public final static AtomicInteger MESSAGES = new AtomicInteger();
+
+  /**
+   * Erzeugt ein PIN/TAN-Passport mit BPD und UPD, das ueber diesen Transport
+   * mit der Test-Bank kommuniziert. Beim Erzeugen des HBCIHandlers wird
+   * daher keine Nachricht gesendet.
+   * Im aktuellen HBCIContext muss "client.passport.PinTan.init=0" gesetzt sein.
+   * @return das Passport.
+   */
+  public static HBCIPassportPinTanMemory createPassport()
+  {
+    HBCIPassportPinTanMemory passport = new HBCIPassportPinTanMemory(null);
+    passport.setCountry("DE");
+    passport.setBLZ("12345678");
+    passport.setHost("localhost/fints");
+    passport.setPort(443);
+    passport.setFilterType("None");
+    passport.setUserId("user");
+    passport.setCustomerId("user");
+    passport.setSysId("sysid");
+    passport.setHBCIVersion("300");
+    passport.setTransport(MockBankTransport.class.getName());
+
+    Properties bpd = new Properties();
+    bpd.setProperty("BPA.version", "1");
+    bpd.setProperty("BPA.SuppVersions.version", "300");
+    bpd.setProperty("Params_1.PinTanPar1.SegHead.code", "HIPINS");
+    bpd.setProperty("Params_1.PinTanPar1.ParPinTan.PinTanGV.segcode", "HKSAL");
+    bpd.setProperty("Params_1.PinTanPar1.ParPinTan.PinTanGV.needtan", "N");
+    bpd.setProperty("_hbciversion", "300");
+    bpd.setProperty("_lastupdate", Long.toString(System.currentTimeMillis()));
+    passport.setBPD(bpd);
+
+    Properties upd = new Properties();
+    upd.setProperty("UPA.version", "1");
+    upd.setProperty("_hbciversion", "300");
+    upd.setProperty("_fetchedMetaInfo", "mock");
+    passport.setUPD(upd);
+    return passport;
+  }
+
+  /**
+   * ct.
+   * @param passport das Passport.
+   * @param url die URL.
+   */
+  public MockBankTransport(AbstractPinTanPassport passport, URL url)
+  {
+    super(passport, url);
+  }
+
+  /**
+   * @see org.kapott.hbci.comm.Transport#send(org.kapott.hbci.protocol.MsgBuffer)
+   */
+  public MsgBuffer send(MsgBuffer request)
+  {
+    try
+    {
+      String msg = new String(request.toByteArray(), "ISO-8859-1");
+
+      // Nachrichtenkopf: HNHBK:1:3+groesse+version+dialogid+msgnum'
+      String[] head = msg.substring(0, msg.indexOf('\'')).split("\\+");
+      String version = head[2];
+      String dialogid = head[3];
+      String msgnum = head[4];
+
+      // Verschluesselungskopf unveraendert zurueckschicken
+      int cryptHead = msg.indexOf("'HNVSK:") + 1;
+      int cryptData = msg.indexOf("'HNVSD:") + 1;
+      if (cryptHead == 0 || cryptData == 0)
+        throw new HBCI_Exception("message not encrypted");
+      String vsk = msg.substring(cryptHead, cryptData);
+
+      // Klartext aus HNVSD:999:1+@laenge@...
+      int at = msg.indexOf('@', cryptData);
+      int at2 = msg.indexOf('@', at + 1);
+      int len = Integer.parseInt(msg.substring(at + 1, at2));
+      String plain = msg.substring(at2 + 1, at2 + 1 + len);
+
+      String refSeg = "3";
+      String newDialogid = dialogid;
+      if (dialogid.equals("0"))
+      {
+        // Dialog-Initialisierung: HKIDN:n:2+280:blz+kundenid+sysid+status'
+        int idn = plain.indexOf("HKIDN:");
+        if (idn == -1)
+          throw new HBCI_Exception("unexpected message " + plain);
+        String[] idnData = plain.substring(idn, plain.indexOf('\'', idn)).split("\\+");
+        newDialogid = "D" + idnData[2];
+        refSeg = idnData[0].split(":")[1];
+      }
+
+      StringBuilder inner = new StringBuilder();
+      inner.append("HIRMG:2:2+0010::Nachricht entgegengenommen.'");
+      inner.append("HIRMS:3:2:").append(refSeg).append("+0020::Auftrag ausgefuehrt.'");
+
+      StringBuilder body = new StringBuilder();
+      body.append(vsk);
+      body.append("HNVSD:999:1+@").append(inner.length()).append("@").append(inner).append("'");
+      body.append("HNHBS:4:1+").append(msgnum).append("'");
+
+      String tail = "+" + version + "+" + newDialogid + "+" + msgnum + "+" + dialogid + ":" + msgnum + "'";
+      int size = "HNHBK:1:3+".length() + 12 + tail.length() + body.length();
+      String sizeStr = String.valueOf(size);
+      while (sizeStr.length() < 12)
+        sizeStr = "0" + sizeStr;
+
+      MESSAGES.incrementAndGet();
+      return new MsgBuffer(("HNHBK:1:3+" + sizeStr + tail + body).getBytes("ISO-8859-1"));
+    }
+    catch (HBCI_Exception e)
+    {
+      throw e;
+    }
+    catch (Exception e)
+    {
+      throw new HBCI_Exception("mock bank failed", e);
+    }
+  }
+}
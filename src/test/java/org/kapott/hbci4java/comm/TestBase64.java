@@ -0,0 +1,109 @@
+package org.kapott.hbci4java.comm;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kapott.hbci.comm.Base64Codec;
+import org.kapott.hbci.comm.Filter;
+import org.kapott.hbci.protocol.MsgBuffer;
+import org.kapott.hbci4java.AbstractTest;
+
+/**
+ * Testet die Base64-Kodierung und die Stream-Varianten der Filter.
+ */
+public class TestBase64 extends AbstractTest
+{
+  /**
+   * Testvektoren aus RFC 4648.
+   */
+  private final static String[][] VECTORS = new String[][] {
+    {"", ""},
+    {"f", "Zg=="},
+    {"fo", "Zm8="},
+    {"foo", "Zm9v"},
+    {"foob", "Zm9vYg=="},
+    {"fooba", "Zm9vYmE="},
+    {"foobar", "Zm9vYmFy"}
+  };
+
+  /**
+   * Testet Kodierung und Dekodierung anhand der Testvektoren.
+   * @throws Exception
+   */
+  @Test
+  public void test001() throws Exception
+  {
+    for (String[] v : VECTORS)
+    {
+      byte[] plain = v[0].getBytes("ISO-8859-1");
+      Assert.assertEquals(v[1], new String(Base64Codec.encode(plain, 0, plain.length), "ISO-8859-1"));
+      Assert.assertEquals(v[1].length(), Base64Codec.encodedLength(plain.length));
+
+      byte[] enc = v[1].getBytes("ISO-8859-1");
+      Assert.assertEquals(v[0], new String(Base64Codec.decode(enc, 0, enc.length), "ISO-8859-1"));
+
+      // mit Zeilenumbruch und Daten hinter dem Fuellzeichen
+      byte[] wrapped = ("\r\n" + v[1] + "\r\n=Zm9v").getBytes("ISO-8859-1");
+      Assert.assertEquals(v[0], new String(Base64Codec.decode(wrapped, 0, wrapped.length), "ISO-8859-1"));
+    }
+  }
+
+  /**
+   * Testet, dass die Streams dasselbe liefern wie die Puffer-Methoden - auch
+   * wenn die Daten in ungeraden Stuecken geschrieben und gelesen werden.
+   * @throws Exception
+   */
+  @Test
+  public void test002() throws Exception
+  {
+    Random random = new Random(4711);
+    Filter[] filters = new Filter[] {Filter.getInstance("Base64"), Filter.getInstance("None")};
+
+    for (int size : new int[] {0, 1, 2, 3, 100, 3071, 3072, 3073, 100000})
+    {
+      byte[] data = new byte[size];
+      random.nextBytes(data);
+
+      for (Filter filter : filters)
+      {
+        byte[] expected = filter.encode(new MsgBuffer(data.clone())).toByteArray();
+
+        // kodieren
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        OutputStream out = filter.encode(bos);
+        int pos = 0;
+        while (pos < data.length)
+        {
+          int len = Math.min(data.length - pos, 1 + random.nextInt(5000));
+          if (len == 1)
+            out.write(data[pos]);
+          else
+            out.write(data, pos, len);
+          pos += len;
+        }
+        out.close();
+        Assert.assertArrayEquals(expected, bos.toByteArray());
+
+        // dekodieren
+        InputStream in = filter.decode(new ByteArrayInputStream(expected));
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+        byte[] b = new byte[1 + random.nextInt(5000)];
+        int c = in.read();
+        if (c != -1)
+        {
+          decoded.write(c);
+          int num;
+          while ((num = in.read(b)) != -1)
+            decoded.write(b, 0, num);
+        }
+        in.close();
+        Assert.assertArrayEquals(data, decoded.toByteArray());
+      }
+    }
+  }
+}
@@ -0,0 +1,116 @@
+package org.kapott.hbci4java.comm;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Properties;
+
+import javax.net.ssl.SSLSocket;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kapott.hbci.callback.HBCICallbackConsole;
+import org.kapott.hbci.comm.PinTanConnectionPool;
+import org.kapott.hbci.comm.PinTanSSLContext;
+import org.kapott.hbci.comm.PinTanSSLSocketFactory;
+import org.kapott.hbci.manager.HBCIContext;
+import org.kapott.hbci4java.AbstractTest;
+
+/**
+ * Testet die gemeinsame Nutzung der Socket-Factories je Server.
+ */
+public class TestConnectionPool extends AbstractTest
+{
+  /**
+   * Testet, dass alle Verbindungen zu einem Server dieselbe Factory verwenden.
+   * @throws Exception
+   */
+  @Test
+  public void test001() throws Exception
+  {
+    PinTanConnectionPool pool = PinTanConnectionPool.getInstance("Pool.Example.COM");
+    Assert.assertSame(pool, PinTanConnectionPool.getInstance("pool.example.com"));
+    Assert.assertSame(pool, PinTanConnectionPool.getInstances().get("pool.example.com"));
+    Assert.assertNotSame(pool, PinTanConnectionPool.getInstance("other.example.com"));
+
+    PinTanSSLSocketFactory checked = pool.getSocketFactory(true);
+    PinTanSSLSocketFactory unchecked = pool.getSocketFactory(false);
+    Assert.assertSame(checked, pool.getSocketFactory(true));
+    Assert.assertSame(unchecked, pool.getSocketFactory(false));
+    Assert.assertNotSame(checked, unchecked);
+    Assert.assertSame(pool.getHostnameVerifier(), PinTanConnectionPool.getInstance("other.example.com").getHostnameVerifier());
+  }
+
+  /**
+   * Testet die Zaehler.
+   * @throws Exception
+   */
+  @Test
+  public void test002() throws Exception
+  {
+    PinTanConnectionPool pool = PinTanConnectionPool.getInstance("counter.example.com");
+    Assert.assertEquals(0d, pool.getHitRate(), 0d);
+
+    ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+    try
+    {
+      Socket plain = new Socket(InetAddress.getLoopbackAddress(), server.getLocalPort());
+      Socket accepted = server.accept();
+      try
+      {
+        Socket ssl = pool.getSocketFactory(false).createSocket(plain, "localhost", server.getLocalPort(), true);
+        Assert.assertTrue(ssl instanceof SSLSocket);
+        ssl.close();
+      }
+      finally
+      {
+        accepted.close();
+      }
+    }
+    finally
+    {
+      server.close();
+    }
+    Assert.assertEquals(1, pool.getConnections());
+    Assert.assertEquals(0, pool.getHandshakes());
+  }
+
+  /**
+   * Testet, dass sich die Factories aller Server einen SSL-Kontext je
+   * Trust-Konfiguration teilen.
+   * @throws Exception
+   */
+  @Test
+  public void test003() throws Exception
+  {
+    PinTanSSLSocketFactory a = PinTanConnectionPool.getInstance("a.example.com").getSocketFactory(false);
+    PinTanSSLSocketFactory b = PinTanConnectionPool.getInstance("b.example.com").getSocketFactory(false, "/gibtsnicht");
+    Assert.assertNotSame(a, b);
+    Assert.assertSame(a.getContext(), b.getContext());
+    Assert.assertSame(a.getContext(), PinTanSSLContext.getInstance(false, null));
+    Assert.assertSame(a.getContext(), PinTanSSLContext.getInstances().get(a.getContext().getKey()));
+
+    PinTanSSLContext system = PinTanConnectionPool.getInstance("a.example.com").getSocketFactory(true).getContext();
+    Assert.assertNotSame(a.getContext(), system);
+    Assert.assertSame(system, PinTanSSLContext.getInstance(true, ""));
+    Assert.assertNull(system.getSessionContext());
+    Assert.assertEquals(-1, system.getCachedSessions());
+    Assert.assertTrue(a.getContext().getCachedSessions() >= 0);
+
+    long sockets = a.getContext().getSockets();
+    b.createSocket().close();
+    Assert.assertEquals(sockets + 1, a.getContext().getSockets());
+
+    Properties props = new Properties();
+    props.setProperty("client.passport.PinTan.checkcert", "0");
+    HBCIContext old = new HBCIContext(props, new HBCICallbackConsole()).bind();
+    try
+    {
+      Assert.assertSame(a.getContext(), PinTanSSLContext.warmUp());
+    }
+    finally
+    {
+      HBCIContext.restore(old);
+    }
+  }
+}
@@ -0,0 +1,193 @@
+package org.kapott.hbci4java.comm;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kapott.hbci.callback.HBCICallbackConsole;
+import org.kapott.hbci.comm.Filter;
+import org.kapott.hbci.comm.TransportHttp;
+import org.kapott.hbci.exceptions.HBCI_Exception;
+import org.kapott.hbci.manager.HBCIContext;
+import org.kapott.hbci.manager.HBCIUtils;
+import org.kapott.hbci.passport.AbstractPinTanPassport;
+import org.kapott.hbci.passport.HBCIPassportPinTanMemory;
+import org.kapott.hbci.protocol.MsgBuffer;
+import org.kapott.hbci4java.AbstractTest;
+
+/**
+ * Testet das Einlesen und Dekodieren der Antworten.
+ */
+public class TestResponseReader extends AbstractTest
+{
+  /**
+   * Macht die Lese-Methode fuer den Test zugreifbar.
+   */
+  private static class Reader extends TransportHttp
+  {
+    private Reader(AbstractPinTanPassport passport) throws Exception
+    {
+      super(passport, new URL("https://localhost/fints"));
+    }
+
+    private MsgBuffer readAll(InputStream i, int msgsize) throws Exception
+    {
+      return read(i, msgsize);
+    }
+  }
+
+  /**
+   * Liefert zufaellige Testdaten.
+   * @param size Anzahl der Bytes.
+   * @return die Testdaten.
+   */
+  private byte[] data(int size)
+  {
+    byte[] b = new byte[size];
+    new Random(size).nextBytes(b);
+    return b;
+  }
+
+  /**
+   * Testet das Lesen mit und ohne bekannte Laenge.
+   * @throws Exception
+   */
+  @Test
+  public void test001() throws Exception
+  {
+    byte[] data = data(100000);
+
+    MsgBuffer buf = new MsgBuffer(data.length);
+    Assert.assertEquals(data.length, buf.readFrom(new ByteArrayInputStream(data), data.length));
+    Assert.assertEquals(data.length, buf.capacity());
+    Assert.assertArrayEquals(data, buf.toByteArray());
+
+    // unbekannte Laenge - der Puffer waechst
+    buf = new MsgBuffer(16);
+    Assert.assertEquals(data.length, buf.readFrom(new ByteArrayInputStream(data), -1));
+    Assert.assertArrayEquals(data, buf.toByteArray());
+
+    // nur einen Teil lesen
+    buf = new MsgBuffer(16);
+    Assert.assertEquals(1000, buf.readFrom(new ByteArrayInputStream(data), 1000));
+    Assert.assertArrayEquals(Arrays.copyOf(data, 1000), buf.toByteArray());
+  }
+
+  /**
+   * Testet die maximale Groesse und die Begrenzung der Vorab-Allokation.
+   * @throws Exception
+   */
+  @Test
+  public void test002() throws Exception
+  {
+    byte[] data = data(300000);
+
+    Properties props = new Properties();
+    props.setProperty("client.passport.PinTan.init", "0");
+    props.setProperty("client.passport.PinTan.maxresponsesize", "200000");
+    HBCIContext old = new HBCIContext(props, new HBCICallbackConsole()).bind();
+    try
+    {
+      Reader reader = new Reader(new HBCIPassportPinTanMemory(null));
+
+      // unbekannte Laenge - der Puffer waechst
+      MsgBuffer buf = reader.readAll(new ByteArrayInputStream(data, 0, 150000), -1);
+      Assert.assertArrayEquals(Arrays.copyOf(data, 150000), buf.toByteArray());
+
+      // bekannte Laenge - der Puffer passt genau
+      buf = reader.readAll(new ByteArrayInputStream(data, 0, 150000), 150000);
+      Assert.assertArrayEquals(Arrays.copyOf(data, 150000), buf.toByteArray());
+      Assert.assertEquals(150000, buf.capacity());
+
+      // zu gross - mit und ohne bekannte Laenge
+      try
+      {
+        reader.readAll(new ByteArrayInputStream(data), -1);
+        Assert.fail("response too large");
+      }
+      catch (HBCI_Exception e)
+      {
+        // erwartet
+      }
+      try
+      {
+        reader.readAll(new ByteArrayInputStream(data), data.length);
+        Assert.fail("response too large");
+      }
+      catch (HBCI_Exception e)
+      {
+        // erwartet
+      }
+    }
+    finally
+    {
+      HBCIContext.restore(old);
+    }
+  }
+
+  /**
+   * Testet, dass das Dekodieren im Puffer dasselbe liefert wie die bisherige Implementierung.
+   * @throws Exception
+   */
+  @Test
+  public void test003() throws Exception
+  {
+    Filter filter = Filter.getInstance("Base64");
+    for (int size = 0; size < 70; size++)
+    {
+      byte[] data = data(size * 37);
+      String encoded = HBCIUtils.encodeBase64(data);
+
+      // mit Zeilenumbruechen, wie sie manche Server senden
+      StringBuilder wrapped = new StringBuilder();
+      for (int i = 0; i < encoded.length(); i += 76)
+      {
+        wrapped.append(encoded, i, Math.min(i + 76, encoded.length())).append("\r\n");
+      }
+
+      for (String s : new String[] {encoded, wrapped.toString()})
+      {
+        MsgBuffer buf = new MsgBuffer(s.getBytes("ISO-8859-1"));
+        byte[] decoded = filter.decode(buf).toByteArray();
+        Assert.assertArrayEquals(data, decoded);
+        Assert.assertArrayEquals(HBCIUtils.decodeBase64(s), decoded);
+      }
+    }
+  }
+
+  /**
+   * Testet, dass eine falsche Laengenangabe nicht zu einer riesigen Allokation fuehrt.
+   * @throws Exception
+   */
+  @Test
+  public void test004() throws Exception
+  {
+    byte[] data = data(3000000);
+
+    Properties props = new Properties();
+    props.setProperty("client.passport.PinTan.init", "0");
+    HBCIContext old = new HBCIContext(props, new HBCICallbackConsole()).bind();
+    try
+    {
+      Reader reader = new Reader(new HBCIPassportPinTanMemory(null));
+
+      MsgBuffer buf = reader.readAll(new ByteArrayInputStream(data, 0, 5000), Integer.MAX_VALUE - 16);
+      Assert.assertArrayEquals(Arrays.copyOf(data, 5000), buf.toByteArray());
+      Assert.assertTrue(buf.capacity() <= 1024 * 1024);
+
+      // groesser als die Vorab-Allokation - der Puffer waechst bis zur angegebenen Laenge
+      buf = reader.readAll(new ByteArrayInputStream(data), data.length);
+      Assert.assertArrayEquals(data, buf.toByteArray());
+      Assert.assertEquals(data.length, buf.capacity());
+    }
+    finally
+    {
+      HBCIContext.restore(old);
+    }
+  }
+}
@@ -0,0 +1,145 @@
+package org.kapott.hbci4java.comm;
+
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.kapott.hbci.callback.HBCICallbackConsole;
+import org.kapott.hbci.comm.Backoff;
+import org.kapott.hbci.comm.CircuitBreaker;
+import org.kapott.hbci.exceptions.HBCI_Exception;
+import org.kapott.hbci.manager.HBCIConfig;
+import org.kapott.hbci.manager.HBCIContext;
+import org.kapott.hbci.manager.HBCIUtils;
+import org.kapott.hbci.status.HBCIMsgStatus;
+import org.kapott.hbci.status.HBCIRetVal;
+import org.kapott.hbci4java.AbstractTest;
+
+/**
+ * Testet die Einstufung voruebergehender Fehler, das Backoff und den Circuit-Breaker.
+ */
+public class TestRetry extends AbstractTest
+{
+  private HBCIContext previous = null;
+
+  /**
+   * Aktiviert einen Kontext mit den Test-Parametern.
+   */
+  @Before
+  public void before()
+  {
+    Properties props = new Properties();
+    props.setProperty("client.retry.delay", "100");
+    props.setProperty("client.retry.maxdelay", "1000");
+    props.setProperty("client.retry.codes", "9800, 9999");
+    props.setProperty("client.retry.breaker.threshold", "2");
+    props.setProperty("client.retry.breaker.timeout", "60");
+    previous = new HBCIContext(props, new HBCICallbackConsole()).bind();
+  }
+
+  /**
+   * Stellt den vorherigen Kontext wieder her.
+   */
+  @After
+  public void after()
+  {
+    HBCIContext.restore(previous);
+  }
+
+  /**
+   * Testet die Wartezeiten.
+   * @throws Exception
+   */
+  @Test
+  public void test001() throws Exception
+  {
+    HBCIConfig config = new HBCIContext(null, new HBCICallbackConsole()).getConfig();
+    Assert.assertEquals(2, config.getRetryMax());
+    Assert.assertTrue(config.getRetryCodes().isEmpty());
+
+    config = HBCIUtils.getConfig();
+    long[] max = {100, 200, 400, 800, 1000, 1000};
+    for (int attempt = 0; attempt < max.length; attempt++)
+    {
+      for (int i = 0; i < 100; i++)
+      {
+        long delay = Backoff.getDelay(config, attempt);
+        Assert.assertTrue("attempt " + attempt + ": " + delay, delay >= max[attempt] / 2 && delay <= max[attempt]);
+      }
+    }
+  }
+
+  /**
+   * Testet die Einstufung von Exceptions und Rueckmeldungscodes.
+   * @throws Exception
+   */
+  @Test
+  public void test002() throws Exception
+  {
+    HBCI_Exception e = new HBCI_Exception("send");
+    Assert.assertFalse(e.isRetryable());
+    e.setRetryable(true);
+    Assert.assertTrue(new HBCI_Exception("wrapper", e).isRetryable());
+    Assert.assertFalse(new HBCI_Exception("other", new Exception("x")).isRetryable());
+
+    Assert.assertTrue(new HBCIRetVal(null, null, null, "9800", "abgebrochen", null).isTemporaryError());
+    Assert.assertFalse(new HBCIRetVal(null, null, null, "9942", "PIN falsch", null).isTemporaryError());
+    Assert.assertFalse(new HBCIRetVal(null, null, null, "3800", "Warnung", null).isTemporaryError());
+
+    HBCIMsgStatus status = new HBCIMsgStatus();
+    status.globStatus.addRetVal(new HBCIRetVal(null, null, null, "9942", "PIN falsch", null));
+    Assert.assertFalse(status.isTemporaryError());
+    status.segStatus.addRetVal(new HBCIRetVal("3", null, null, "9999", "Systemfehler", null));
+    Assert.assertTrue(status.isTemporaryError());
+  }
+
+  /**
+   * Testet die Zustaende des Circuit-Breakers.
+   * @throws Exception
+   */
+  @Test
+  public void test003() throws Exception
+  {
+    CircuitBreaker breaker = CircuitBreaker.getInstance("Test003.Example.COM");
+    Assert.assertSame(breaker, CircuitBreaker.getInstance("test003.example.com"));
+    Assert.assertSame(breaker, CircuitBreaker.getInstances().get("test003.example.com"));
+
+    breaker.checkRequest();
+    breaker.failure();
+    Assert.assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    breaker.success();
+    breaker.failure();
+    Assert.assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    breaker.failure();
+    Assert.assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+    try
+    {
+      breaker.checkRequest();
+      Assert.fail("request accepted while open");
+    }
+    catch (HBCI_Exception ex)
+    {
+      Assert.assertTrue(ex.isFatal());
+      Assert.assertFalse(ex.isRetryable());
+    }
+    Assert.assertEquals(1, breaker.getRejected());
+    Assert.assertEquals(3, breaker.getFailures());
+    Assert.assertEquals(1, breaker.getSuccesses());
+
+    // ohne Wartezeit wird sofort genau eine Probe zugelassen
+    HBCIUtils.setParam("client.retry.breaker.timeout", "0");
+    breaker.checkRequest();
+    Assert.assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+    breaker.failure();
+    Assert.assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    Assert.assertEquals(2, breaker.getOpened());
+
+    breaker.checkRequest();
+    breaker.success();
+    Assert.assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    Assert.assertEquals(0, breaker.getConsecutiveFailures());
+  }
+}
@@ -0,0 +1,99 @@
+package org.kapott.hbci4java.comm;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.util.Properties;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kapott.hbci.callback.HBCICallbackConsole;
+import org.kapott.hbci.comm.Transport;
+import org.kapott.hbci.comm.TransportHttp;
+import org.kapott.hbci.exceptions.HBCI_Exception;
+import org.kapott.hbci.manager.HBCIContext;
+import org.kapott.hbci.passport.HBCIPassportPinTanMemory;
+import org.kapott.hbci.protocol.MsgBuffer;
+import org.kapott.hbci4java.AbstractTest;
+
+/**
+ * Testet die Auswahl des Transports und die Fehlermeldung bei der Uebertragung.
+ */
+public class TestTransport extends AbstractTest
+{
+  /**
+   * Testet die Auswahl des Transports je Passport.
+   * @throws Exception
+   */
+  @Test
+  public void test001() throws Exception
+  {
+    Properties props = new Properties();
+    props.setProperty("client.passport.PinTan.init", "0");
+    props.setProperty("client.passport.PinTan.transport", TransportHttp.class.getName());
+    HBCIContext old = new HBCIContext(props, new HBCICallbackConsole()).bind();
+    try
+    {
+      HBCIPassportPinTanMemory passport = new HBCIPassportPinTanMemory(null);
+      Assert.assertEquals(TransportHttp.class.getName(), passport.getTransport());
+      URL url = new URL("https://localhost/fints");
+      Transport t = Transport.getInstance(passport.getTransport(), passport, url);
+      Assert.assertEquals(TransportHttp.class, t.getClass());
+
+      passport.setTransport("Http");
+      t = Transport.getInstance(passport.getTransport(), passport, url);
+      Assert.assertEquals(TransportHttp.class, t.getClass());
+
+      try
+      {
+        Transport.getInstance("Gibtsnicht", passport, url);
+        Assert.fail("unknown transport created");
+      }
+      catch (HBCI_Exception e)
+      {
+        // erwartet
+      }
+    }
+    finally
+    {
+      HBCIContext.restore(old);
+    }
+  }
+
+  /**
+   * Testet, dass ein Verbindungsfehler direkt beim Senden und als wiederholbar gemeldet wird.
+   * @throws Exception
+   */
+  @Test
+  public void test002() throws Exception
+  {
+    // freien Port ermitteln, auf dem dann niemand lauscht
+    ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+    int port = server.getLocalPort();
+    server.close();
+
+    Properties props = new Properties();
+    props.setProperty("client.passport.PinTan.init", "0");
+    props.setProperty("client.retry.breaker.threshold", "0");
+    HBCIContext old = new HBCIContext(props, new HBCICallbackConsole()).bind();
+    try
+    {
+      HBCIPassportPinTanMemory passport = new HBCIPassportPinTanMemory(null);
+      Transport t = new TransportHttp(passport, new URL("https", "127.0.0.1", port, "/fints"));
+      try
+      {
+        t.send(new MsgBuffer("HNHBK:1:3+000000000100+300+0+1'".getBytes("ISO-8859-1")));
+        Assert.fail("connection succeeded");
+      }
+      catch (HBCI_Exception e)
+      {
+        Assert.assertTrue(e.isRetryable());
+        Assert.assertTrue(e.isFatal());
+      }
+    }
+    finally
+    {
+      HBCIContext.restore(old);
+    }
+  }
+}
@@ -0,0 +1,175 @@
+package org.kapott.hbci4java.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kapott.hbci.callback.HBCICallbackConsole;
+import org.kapott.hbci.concurrent.HBCIBatchScheduler;
+import org.kapott.hbci.concurrent.HBCIFuture;
+import org.kapott.hbci.concurrent.HBCIPassportFactory;
+import org.kapott.hbci.concurrent.HBCIRunnable;
+import org.kapott.hbci.passport.HBCIPassport;
+import org.kapott.hbci4java.AbstractTest;
+
+/**
+ * Testet die Einhaltung der Grenzen im {@link HBCIBatchScheduler}.
+ */
+public class TestBatchScheduler extends AbstractTest
+{
+  private final static HBCIPassportFactory NO_PASSPORT = new HBCIPassportFactory() {
+    public HBCIPassport createPassport() throws Exception
+    {
+      return null;
+    }
+  };
+
+  private final AtomicInteger total = new AtomicInteger();
+  private final AtomicInteger maxTotal = new AtomicInteger();
+  private final Map<String, AtomicInteger> current = new ConcurrentHashMap<String, AtomicInteger>();
+  private final Map<String, AtomicInteger> max = new ConcurrentHashMap<String, AtomicInteger>();
+
+  /**
+   * Simuliert einen Dialog und merkt sich die maximale Parallelitaet
+   * insgesamt, je Server und je Benutzer.
+   */
+  private class Task extends HBCIRunnable
+  {
+    private final String host;
+    private final String user;
+    private final boolean fail;
+
+    private Task(String host, String user, boolean fail)
+    {
+      super(new Properties(), new HBCICallbackConsole(), NO_PASSPORT);
+      this.host = host;
+      this.user = user;
+      this.fail = fail;
+    }
+
+    protected void execute() throws Exception
+    {
+      String[] keys = {host, host + "/" + user};
+      update(total, maxTotal);
+      for (String key : keys)
+        update(counter(current, key), counter(max, key));
+      try
+      {
+        Thread.sleep(20L);
+        if (fail)
+          throw new Exception("simulierter Fehler");
+      }
+      finally
+      {
+        total.decrementAndGet();
+        for (String key : keys)
+          counter(current, key).decrementAndGet();
+      }
+    }
+  }
+
+  private static AtomicInteger counter(Map<String, AtomicInteger> map, String key)
+  {
+    synchronized (map)
+    {
+      AtomicInteger i = map.get(key);
+      if (i == null)
+      {
+        i = new AtomicInteger();
+        map.put(key, i);
+      }
+      return i;
+    }
+  }
+
+  private static void update(AtomicInteger value, AtomicInteger max)
+  {
+    int v = value.incrementAndGet();
+    int m;
+    while ((m = max.get()) < v && !max.compareAndSet(m, v))
+      ;
+  }
+
+  /**
+   * Testet die Grenzen und die Statistik.
+   * @throws Exception
+   */
+  @Test
+  public void test001() throws Exception
+  {
+    HBCIBatchScheduler scheduler = new HBCIBatchScheduler(6, 2);
+    List<HBCIFuture<Void>> futures = new ArrayList<HBCIFuture<Void>>();
+    String[] hosts = {"bank-a", "bank-b", "bank-c", "bank-d"};
+    for (int i = 0; i < 40; i++)
+    {
+      String host = hosts[i % hosts.length];
+      String user = "user" + (i % 3);
+      futures.add(scheduler.submit(new Task(host, user, i % 10 == 0), host, user));
+    }
+
+    scheduler.shutdown();
+    Assert.assertTrue(scheduler.awaitTermination(60000L));
+    for (HBCIFuture<Void> f : futures)
+      Assert.assertTrue(f.isDone());
+
+    Assert.assertTrue(maxTotal.get() <= 6);
+    for (String host : hosts)
+    {
+      Assert.assertTrue(max.get(host).get() <= 2);
+      for (int i = 0; i < 3; i++)
+        Assert.assertEquals(1, max.get(host + "/user" + i).get());
+    }
+
+    Map<String, HBCIBatchScheduler.Statistics> stats = scheduler.getStatistics();
+    Assert.assertEquals(hosts.length, stats.size());
+    for (HBCIBatchScheduler.Statistics s : stats.values())
+    {
+      Assert.assertEquals(10, s.getCompleted());
+      Assert.assertEquals(0, s.getQueued());
+      Assert.assertEquals(0, s.getRunning());
+    }
+
+    HBCIBatchScheduler.Statistics t = scheduler.getTotalStatistics();
+    Assert.assertEquals(40, t.getCompleted());
+    Assert.assertEquals(4, t.getFailed());
+    Assert.assertTrue(t.getAverageRunTime() >= 20L);
+    Assert.assertEquals(0, scheduler.getQueueDepth());
+    Assert.assertEquals(0, scheduler.getRunning());
+
+    try
+    {
+      scheduler.submit(new Task("bank-a", "user0", false), "bank-a", "user0");
+      Assert.fail("submit after shutdown accepted");
+    }
+    catch (RejectedExecutionException e)
+    {
+      // erwartet
+    }
+  }
+
+  /**
+   * Testet den Abbruch wartender Auftraege.
+   * @throws Exception
+   */
+  @Test
+  public void test002() throws Exception
+  {
+    HBCIBatchScheduler scheduler = new HBCIBatchScheduler(1, 1);
+    List<HBCIFuture<Void>> futures = new ArrayList<HBCIFuture<Void>>();
+    for (int i = 0; i < 5; i++)
+      futures.add(scheduler.submit(new Task("bank", "user", false), "bank", "user"));
+
+    Assert.assertEquals(1, scheduler.getRunning());
+    Assert.assertEquals(4, scheduler.getQueueDepth());
+    Assert.assertEquals(4, scheduler.shutdownNow());
+    Assert.assertTrue(scheduler.awaitTermination(10000L));
+    for (int i = 1; i < futures.size(); i++)
+      Assert.assertTrue(futures.get(i).isCancelled());
+  }
+}
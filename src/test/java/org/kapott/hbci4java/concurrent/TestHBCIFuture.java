@@ -0,0 +1,133 @@
+package org.kapott.hbci4java.concurrent;
+
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kapott.hbci.callback.HBCICallbackConsole;
+import org.kapott.hbci.concurrent.HBCIFuture;
+import org.kapott.hbci.manager.HBCIContext;
+import org.kapott.hbci4java.AbstractTest;
+
+/**
+ * Testet den Aufruf der Listener im {@link HBCIFuture}.
+ */
+public class TestHBCIFuture extends AbstractTest
+{
+  private final static Callable<String> TASK = new Callable<String>() {
+    public String call()
+    {
+      return "ok";
+    }
+  };
+
+  /**
+   * Fuehrt das Future in einem Thread aus, der weder einen gebundenen Kontext
+   * noch eine initialisierte ThreadGroup hat - wie in einem Thread-Pool.
+   * @param future das Future.
+   * @param uncaught hier werden die nicht gefangenen Exceptions gesammelt.
+   * @return die Exception, die aus run() herausgefallen ist oder null.
+   * @throws Exception
+   */
+  private Throwable runWithoutContext(final HBCIFuture<String> future, final List<Throwable> uncaught) throws Exception
+  {
+    final List<Throwable> escaped = new CopyOnWriteArrayList<Throwable>();
+    Thread t = new Thread(new ThreadGroup("no-context"), new Runnable() {
+      public void run()
+      {
+        Assert.assertNull(HBCIContext.current());
+        try
+        {
+          future.run();
+        }
+        catch (Throwable e)
+        {
+          escaped.add(e);
+        }
+      }
+    });
+    t.setUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+      public void uncaughtException(Thread t, Throwable e)
+      {
+        uncaught.add(e);
+      }
+    });
+    t.start();
+    t.join(10000L);
+    return escaped.isEmpty() ? null : escaped.get(0);
+  }
+
+  /**
+   * Testet, dass ein fehlerhafter Listener ohne Kontext die anderen nicht verhindert.
+   * @throws Exception
+   */
+  @Test
+  public void test001() throws Exception
+  {
+    final List<String> called = new CopyOnWriteArrayList<String>();
+    HBCIFuture<String> future = new HBCIFuture<String>(TASK, null);
+    future.addListener(new Runnable() {
+      public void run()
+      {
+        called.add("first");
+        throw new IllegalStateException("simulierter Fehler");
+      }
+    });
+    future.addListener(new Runnable() {
+      public void run()
+      {
+        called.add("second");
+      }
+    });
+
+    List<Throwable> uncaught = new CopyOnWriteArrayList<Throwable>();
+    Assert.assertNull(runWithoutContext(future, uncaught));
+    Assert.assertEquals("ok", future.get());
+    Assert.assertEquals(2, called.size());
+    Assert.assertEquals("second", called.get(1));
+
+    // der Fehler wurde wie eine nicht gefangene Exception gemeldet
+    Assert.assertEquals(1, uncaught.size());
+    Assert.assertTrue(uncaught.get(0) instanceof IllegalStateException);
+  }
+
+  /**
+   * Testet, dass die Listener mit dem Kontext des Futures aufgerufen werden.
+   * @throws Exception
+   */
+  @Test
+  public void test002() throws Exception
+  {
+    Properties props = new Properties();
+    props.setProperty("log.loglevel.default", "0");
+    final HBCIContext context = new HBCIContext(props, new HBCICallbackConsole());
+
+    final List<HBCIContext> seen = new CopyOnWriteArrayList<HBCIContext>();
+    HBCIFuture<String> future = new HBCIFuture<String>(TASK, context);
+    future.addListener(new Runnable() {
+      public void run()
+      {
+        seen.add(HBCIContext.current());
+        throw new IllegalStateException("simulierter Fehler");
+      }
+    });
+    future.addListener(new Runnable() {
+      public void run()
+      {
+        seen.add(HBCIContext.current());
+      }
+    });
+
+    List<Throwable> uncaught = new CopyOnWriteArrayList<Throwable>();
+    Assert.assertNull(runWithoutContext(future, uncaught));
+    Assert.assertEquals(2, seen.size());
+    Assert.assertSame(context, seen.get(0));
+    Assert.assertSame(context, seen.get(1));
+
+    // der Fehler wurde ueber den Kontext geloggt
+    Assert.assertTrue(uncaught.isEmpty());
+  }
+}
@@ -0,0 +1,166 @@
+package org.kapott.hbci4java.manager;
+
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kapott.hbci.callback.HBCICallback;
+import org.kapott.hbci.callback.HBCICallbackAsync;
+import org.kapott.hbci.callback.HBCICallbackConsole;
+import org.kapott.hbci.concurrent.HBCIFuture;
+import org.kapott.hbci.concurrent.HBCIVirtualThreadFactory;
+import org.kapott.hbci.exceptions.HBCI_Exception;
+import org.kapott.hbci.manager.HBCIContext;
+import org.kapott.hbci.passport.HBCIPassport;
+import org.kapott.hbci4java.AbstractTest;
+
+/**
+ * Testet die asynchrone Beantwortung von Callbacks und {@link HBCIFuture}.
+ */
+public class TestAsyncCallback extends AbstractTest
+{
+  /**
+   * Callback, der TAN-Abfragen asynchron behandeln will.
+   */
+  private static class TanCallback extends HBCICallbackConsole
+  {
+    /**
+     * @see org.kapott.hbci.callback.AbstractHBCICallback#useThreadedCallback(org.kapott.hbci.passport.HBCIPassport, int, java.lang.String, int, java.lang.StringBuffer)
+     */
+    public boolean useThreadedCallback(HBCIPassport passport, int reason, String msg, int datatype, StringBuffer retData)
+    {
+      return reason == NEED_PT_TAN;
+    }
+
+    /**
+     * @see org.kapott.hbci.callback.HBCICallbackIOStreams#callback(org.kapott.hbci.passport.HBCIPassport, int, java.lang.String, int, java.lang.StringBuffer)
+     */
+    public void callback(HBCIPassport passport, int reason, String msg, int datatype, StringBuffer retData)
+    {
+      retData.replace(0, retData.length(), "sync");
+    }
+  }
+
+  /**
+   * Testet die Beantwortung eines Callbacks aus einem anderen Thread.
+   * @throws Exception
+   */
+  @Test
+  public void test001() throws Exception
+  {
+    final BlockingQueue<HBCICallbackAsync.Request> requests = new LinkedBlockingQueue<HBCICallbackAsync.Request>();
+    final HBCICallbackAsync callback = new HBCICallbackAsync(new TanCallback()) {
+      protected void callbackAsync(Request request)
+      {
+        requests.add(request);
+      }
+    };
+
+    Properties props = new Properties();
+    props.setProperty("kernel.threaded.maxwaittime", "10");
+    final HBCIContext ctx = new HBCIContext(props, callback);
+
+    ExecutorService executor = Executors.newCachedThreadPool(new HBCIVirtualThreadFactory());
+    try
+    {
+      HBCIFuture<String> future = new HBCIFuture<String>(new Callable<String>() {
+        public String call() throws Exception
+        {
+          HBCIContext old = ctx.bind();
+          try
+          {
+            // nicht interaktiv -> synchron
+            StringBuffer sb = new StringBuffer();
+            callback.callback(null, HBCICallback.NEED_COUNTRY, "land", HBCICallback.TYPE_TEXT, sb);
+            Assert.assertEquals("sync", sb.toString());
+
+            sb = new StringBuffer("challenge");
+            callback.callback(null, HBCICallback.NEED_PT_TAN, "tan", HBCICallback.TYPE_TEXT, sb);
+            return sb.toString();
+          }
+          finally
+          {
+            HBCIContext.restore(old);
+          }
+        }
+      });
+
+      final AtomicInteger notified = new AtomicInteger();
+      final CountDownLatch listener = new CountDownLatch(1);
+      future.addListener(new Runnable() {
+        public void run()
+        {
+          notified.incrementAndGet();
+          listener.countDown();
+        }
+      });
+      executor.execute(future);
+
+      HBCICallbackAsync.Request request = requests.poll(10, TimeUnit.SECONDS);
+      Assert.assertNotNull(request);
+      Assert.assertEquals(HBCICallback.NEED_PT_TAN, request.getReason());
+      Assert.assertEquals("challenge", request.getData());
+      Assert.assertFalse(future.isDone());
+
+      request.complete("123456");
+      request.complete("ignoriert");
+      Assert.assertEquals("123456", future.get(10, TimeUnit.SECONDS));
+
+      // get() kann schon vor den Listenern zurueckkehren
+      Assert.assertTrue(listener.await(10, TimeUnit.SECONDS));
+      Assert.assertEquals(1, notified.get());
+
+      // Listener nach Abschluss werden sofort ausgefuehrt
+      future.addListener(new Runnable() {
+        public void run()
+        {
+          notified.incrementAndGet();
+        }
+      });
+      Assert.assertEquals(2, notified.get());
+    }
+    finally
+    {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Testet den Timeout, wenn keine Antwort kommt.
+   * @throws Exception
+   */
+  @Test
+  public void test002() throws Exception
+  {
+    HBCICallbackAsync callback = new HBCICallbackAsync(new TanCallback()) {
+      protected void callbackAsync(Request request)
+      {
+        // keine Antwort
+      }
+    };
+    Properties props = new Properties();
+    props.setProperty("kernel.threaded.maxwaittime", "0");
+    HBCIContext old = new HBCIContext(props, callback).bind();
+    try
+    {
+      callback.callback(null, HBCICallback.NEED_PT_TAN, "tan", HBCICallback.TYPE_TEXT, new StringBuffer());
+      Assert.fail("timeout expected");
+    }
+    catch (HBCI_Exception e)
+    {
+      // erwartet
+    }
+    finally
+    {
+      HBCIContext.restore(old);
+    }
+  }
+}
@@ -0,0 +1,242 @@
+package org.kapott.hbci4java.manager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kapott.hbci.concurrent.HBCIPassportFactory;
+import org.kapott.hbci.concurrent.HBCIRunnable;
+import org.kapott.hbci.concurrent.HBCIVirtualThreadFactory;
+import org.kapott.hbci.manager.HBCIContext;
+import org.kapott.hbci.manager.HBCIUtils;
+import org.kapott.hbci.manager.LogFilter;
+import org.kapott.hbci.manager.ThreadSyncer;
+import org.kapott.hbci.passport.HBCIPassport;
+import org.kapott.hbci.status.HBCIExecStatus;
+import org.kapott.hbci4java.AbstractTest;
+import org.kapott.hbci4java.LogCollector;
+import org.kapott.hbci4java.MockBankCallback;
+import org.kapott.hbci4java.MockBankTransport;
+
+/**
+ * Testet viele parallele Sitzungen mit eigenem {@link HBCIContext} auf den
+ * Threads der {@link HBCIVirtualThreadFactory}.
+ */
+public class TestConcurrentSessions extends AbstractTest
+{
+  /**
+   * Testet das Aufwecken per ThreadSyncer.
+   * @throws Exception
+   */
+  @Test
+  public void test001() throws Exception
+  {
+    final ThreadSyncer syncer = new ThreadSyncer("test");
+
+    // Aufwecken vor dem Warten
+    syncer.stopWaiting();
+    syncer.startWaiting(1, "timeout");
+
+    // Aufwecken aus einem anderen Thread
+    Thread t = new HBCIVirtualThreadFactory().newThread(new Runnable() {
+      public void run()
+      {
+        try
+        {
+          Thread.sleep(50L);
+        }
+        catch (InterruptedException e)
+        {
+          // ignorieren
+        }
+        syncer.stopWaiting();
+      }
+    });
+    t.start();
+    syncer.startWaiting(10, "timeout");
+    t.join();
+
+    // 0 wartet wie bisher ohne Timeout
+    final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+    t = new HBCIVirtualThreadFactory().newThread(new Runnable() {
+      public void run()
+      {
+        try
+        {
+          syncer.startWaiting(0, "timeout");
+        }
+        catch (Throwable e)
+        {
+          errors.add(e);
+        }
+      }
+    });
+    t.start();
+    Thread.sleep(200L);
+    Assert.assertTrue(t.isAlive());
+    syncer.stopWaiting();
+    t.join(10000L);
+    Assert.assertFalse(t.isAlive());
+    Assert.assertTrue(errors.isEmpty());
+
+    // Timeout
+    try
+    {
+      syncer.startWaiting(1, "timeout");
+      Assert.fail("wait should time out");
+    }
+    catch (RuntimeException e)
+    {
+      Assert.assertEquals("test: timeout", e.getCause().getMessage());
+    }
+    try
+    {
+      syncer.stopWaiting();
+      Assert.fail("timeouted wait can not be awaked");
+    }
+    catch (RuntimeException e)
+    {
+      // erwartet
+    }
+  }
+
+  /**
+   * Testet, dass parallele Sitzungen ihre Parameter, Callbacks und geheimen
+   * Daten nicht gegenseitig sehen.
+   * @throws Exception
+   */
+  @Test
+  public void test002() throws Exception
+  {
+    final int count = Boolean.getBoolean(SYSPROP_PERFORMANCE) ? 10000 : 500;
+    final CountDownLatch start = new CountDownLatch(1);
+    final List<LogCollector> collectors = new ArrayList<LogCollector>();
+    List<Callable<String>> tasks = new ArrayList<Callable<String>>();
+
+    for (int i = 0; i < count; i++)
+    {
+      final String id = Integer.toString(i);
+      LogCollector c = new LogCollector();
+      collectors.add(c);
+
+      Properties props = new Properties();
+      props.setProperty("log.loglevel.default", Integer.toString(HBCIUtils.LOG_INFO));
+      props.setProperty("log.filter", "1");
+      props.setProperty("session.id", id);
+      final HBCIContext ctx = new HBCIContext(props, c);
+
+      tasks.add(new Callable<String>() {
+        public String call() throws Exception
+        {
+          start.await();
+          HBCIContext old = ctx.bind();
+          try
+          {
+            LogFilter.getInstance().addSecretData("PIN" + id, "X", LogFilter.FILTER_SECRETS);
+            HBCIUtils.log("session " + HBCIUtils.getParam("session.id") + " PIN" + id, HBCIUtils.LOG_INFO);
+            return HBCIUtils.getParam("session.id");
+          }
+          finally
+          {
+            HBCIContext.restore(old);
+          }
+        }
+      });
+    }
+
+    ExecutorService executor = Executors.newCachedThreadPool(new HBCIVirtualThreadFactory());
+    try
+    {
+      List<Future<String>> results = new ArrayList<Future<String>>();
+      for (Callable<String> task : tasks)
+        results.add(executor.submit(task));
+      start.countDown();
+
+      for (int i = 0; i < count; i++)
+      {
+        String id = Integer.toString(i);
+        Assert.assertEquals(id, results.get(i).get(60, TimeUnit.SECONDS));
+
+        StringBuffer masked = new StringBuffer();
+        for (int k = 0; k < id.length() + 3; k++)
+          masked.append('X');
+        Assert.assertEquals(Collections.singletonList("session " + id + " " + masked), collectors.get(i).messages);
+      }
+    }
+    finally
+    {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Lasttest: fuehrt viele {@link HBCIRunnable}s mit je einem Dialog bei der
+   * Test-Bank parallel aus und gibt den Durchsatz aus.
+   * @throws Exception
+   */
+  @Test
+  public void test003() throws Exception
+  {
+    final int count = Boolean.getBoolean(SYSPROP_PERFORMANCE) ? 5000 : 200;
+    final List<HBCIExecStatus> results = Collections.synchronizedList(new ArrayList<HBCIExecStatus>());
+    List<HBCIRunnable> runnables = new ArrayList<HBCIRunnable>();
+
+    for (int i = 0; i < count; i++)
+    {
+      final String id = Integer.toString(i);
+      Properties props = new Properties();
+      props.setProperty("client.passport.PinTan.init", "0");
+      props.setProperty("log.loglevel.default", Integer.toString(HBCIUtils.LOG_ERR));
+
+      runnables.add(new HBCIRunnable(props, new MockBankCallback(), new HBCIPassportFactory() {
+        public HBCIPassport createPassport() throws Exception
+        {
+          return MockBankTransport.createPassport();
+        }
+      }) {
+        protected void execute() throws Exception
+        {
+          handler.createEmptyDialog("kunde" + id);
+          results.add(handler.execute());
+        }
+      });
+    }
+
+    int messages = MockBankTransport.MESSAGES.get();
+    ExecutorService executor = Executors.newFixedThreadPool(32, new HBCIVirtualThreadFactory());
+    try
+    {
+      long start = System.nanoTime();
+      List<Future<?>> futures = new ArrayList<Future<?>>();
+      for (HBCIRunnable r : runnables)
+        futures.add(executor.submit(r));
+      for (Future<?> f : futures)
+        f.get(60, TimeUnit.SECONDS);
+      long used = System.nanoTime() - start;
+
+      System.out.println(count + " sessions in " + TimeUnit.NANOSECONDS.toMillis(used) + " millis: " + (count * 1000000000L / Math.max(used, 1L)) + " sessions/s");
+    }
+    finally
+    {
+      executor.shutdownNow();
+    }
+
+    for (HBCIRunnable r : runnables)
+      Assert.assertNull(r.getException());
+    Assert.assertEquals(count, results.size());
+    for (HBCIExecStatus status : results)
+      Assert.assertTrue(status.toString(), status.isOK());
+
+    // Dialog-Initialisierung und Dialog-Ende je Sitzung
+    Assert.assertEquals(count * 2, MockBankTransport.MESSAGES.get() - messages);
+  }
+}
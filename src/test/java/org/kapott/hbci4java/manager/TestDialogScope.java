@@ -0,0 +1,213 @@
+package org.kapott.hbci4java.manager;
+
+import java.util.Properties;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kapott.hbci.callback.HBCICallback;
+import org.kapott.hbci.callback.HBCICallbackConsole;
+import org.kapott.hbci.exceptions.HBCI_Exception;
+import org.kapott.hbci.manager.HBCIContext;
+import org.kapott.hbci.manager.HBCIHandler;
+import org.kapott.hbci.passport.HBCIPassportPinTanMemory;
+import org.kapott.hbci.status.HBCIExecStatus;
+import org.kapott.hbci4java.AbstractTest;
+import org.kapott.hbci4java.MockBankCallback;
+import org.kapott.hbci4java.MockBankTransport;
+
+/**
+ * Testet die Dialog-Sicht auf ein Passport, wie sie fuer parallel
+ * ausgefuehrte Dialoge verwendet wird.
+ */
+public class TestDialogScope extends AbstractTest
+{
+  /**
+   * Testet, dass jeder Thread seine eigene Kunden-ID sieht.
+   * @throws Exception
+   */
+  @Test
+  public void test001() throws Exception
+  {
+    Properties props = new Properties();
+    props.setProperty("client.passport.PinTan.init", "0");
+    props.setProperty("client.dialogs.parallel", "4");
+    HBCIContext ctx = new HBCIContext(props, new HBCICallbackConsole());
+    Assert.assertEquals(4, ctx.getConfig().getParallelDialogs());
+
+    HBCIContext old = ctx.bind();
+    try
+    {
+      final HBCIPassportPinTanMemory passport = new HBCIPassportPinTanMemory(null);
+      Assert.assertTrue(passport.supportsParallelDialogs());
+      passport.setUserId("user");
+      passport.setCustomerId("main");
+
+      final String[] result = new String[4];
+      Thread[] threads = new Thread[2];
+      for (int i = 0; i < threads.length; i++)
+      {
+        final int idx = i;
+        threads[i] = new Thread(ctx.wrap(new Runnable() {
+          public void run()
+          {
+            passport.beginDialogScope("kunde" + idx);
+            try
+            {
+              result[idx * 2] = passport.getCustomerId();
+              passport.setCustomerId("geaendert" + idx);
+              result[idx * 2 + 1] = passport.getCustomerId();
+            }
+            finally
+            {
+              passport.endDialogScope();
+            }
+          }
+        }));
+        threads[i].start();
+      }
+      for (Thread t : threads)
+        t.join();
+
+      Assert.assertEquals("kunde0", result[0]);
+      Assert.assertEquals("geaendert0", result[1]);
+      Assert.assertEquals("kunde1", result[2]);
+      Assert.assertEquals("geaendert1", result[3]);
+
+      // die Kunden-ID des Passports selbst bleibt unveraendert
+      Assert.assertEquals("main", passport.getCustomerId());
+      Assert.assertEquals("main", passport.getStoredCustomerId());
+
+      // leere Kunden-ID in der Dialog-Sicht -> User-ID
+      passport.beginDialogScope("");
+      try
+      {
+        Assert.assertEquals("user", passport.getCustomerId());
+        try
+        {
+          passport.beginDialogScope("nochmal");
+          Assert.fail("nested dialog scope accepted");
+        }
+        catch (HBCI_Exception e)
+        {
+          // erwartet
+        }
+      }
+      finally
+      {
+        passport.endDialogScope();
+      }
+      Assert.assertEquals("main", passport.getCustomerId());
+    }
+    finally
+    {
+      HBCIContext.restore(old);
+    }
+  }
+
+  /**
+   * Testet, dass parallel ausgefuehrte Dialoge die PIN nur einmal abfragen
+   * und dasselbe Ergebnis in derselben Reihenfolge liefern wie nacheinander
+   * ausgefuehrte.
+   * @throws Exception
+   */
+  @Test
+  public void test002() throws Exception
+  {
+    MockBankCallback seq = new MockBankCallback();
+    HBCIExecStatus expected = execute(1, seq, null);
+    Assert.assertTrue(expected.toString(), expected.isOK());
+    Assert.assertEquals(6, expected.getCustomerIds().size());
+    Assert.assertEquals(1, seq.count(HBCICallback.NEED_PT_PIN));
+
+    MockBankCallback par = new MockBankCallback();
+    HBCIExecStatus status = execute(4, par, null);
+    Assert.assertEquals(expected.getCustomerIds(), status.getCustomerIds());
+    Assert.assertEquals(expected.toString(), status.toString());
+
+    // die PIN wurde einmal vor dem Start der Dialoge abgefragt
+    Assert.assertEquals(1, par.count(HBCICallback.NEED_PT_PIN));
+    Assert.assertSame(Thread.currentThread(), par.callbackThreads.get(par.reasons.indexOf(HBCICallback.NEED_PT_PIN)));
+
+    // die Dialoge selbst liefen in anderen Threads
+    Assert.assertEquals(6, par.count(HBCICallback.NEED_CONNECTION));
+    Assert.assertNotSame(Thread.currentThread(), par.callbackThreads.get(par.reasons.indexOf(HBCICallback.NEED_CONNECTION)));
+  }
+
+  /**
+   * Testet, dass parallel ausgefuehrte Dialoge das PIN/TAN-Verfahren nur
+   * einmal abfragen.
+   * @throws Exception
+   */
+  @Test
+  public void test003() throws Exception
+  {
+    // Auswahl schon vor dem Start der Dialoge, da bereits ein Dialog lief
+    MockBankCallback c = new MockBankCallback();
+    c.secmech = "910";
+    HBCIExecStatus status = execute(4, c, Boolean.TRUE);
+    Assert.assertTrue(status.toString(), status.isOK());
+    Assert.assertEquals(1, c.count(HBCICallback.NEED_PT_SECMECH));
+    Assert.assertSame(Thread.currentThread(), c.callbackThreads.get(c.reasons.indexOf(HBCICallback.NEED_PT_SECMECH)));
+
+    // Auswahl erst nach der ersten Dialog-Initialisierung - die Dialoge, die
+    // noch mit dem alten Verfahren begonnen haben, starten danach neu
+    c = new MockBankCallback();
+    c.secmech = "910";
+    int messages = MockBankTransport.MESSAGES.get();
+    status = execute(4, c, Boolean.FALSE);
+    Assert.assertTrue(status.toString(), status.isOK());
+    Assert.assertEquals(1, c.count(HBCICallback.NEED_PT_SECMECH));
+    messages = MockBankTransport.MESSAGES.get() - messages;
+    Assert.assertTrue(messages > 6 * 2 && messages <= 6 * 3);
+  }
+
+  /**
+   * Fuehrt leere Dialoge fuer 6 Kunden-IDs bei der Test-Bank aus.
+   * @param parallel Anzahl der parallelen Dialoge.
+   * @param callback der Callback.
+   * @param authed wenn nicht null, werden zwei Zwei-Schritt-Verfahren
+   * angeboten. Bei true ist im Passport schon "_authed_dialog_executed" gesetzt.
+   * @return das Ergebnis.
+   */
+  private HBCIExecStatus execute(int parallel, MockBankCallback callback, Boolean authed)
+  {
+    Properties props = new Properties();
+    props.setProperty("client.passport.PinTan.init", "0");
+    props.setProperty("client.dialogs.parallel", Integer.toString(parallel));
+    HBCIContext ctx = new HBCIContext(props, callback);
+
+    HBCIContext old = ctx.bind();
+    try
+    {
+      HBCIPassportPinTanMemory passport = MockBankTransport.createPassport();
+      if (authed != null)
+      {
+        Properties bpd = passport.getBPD();
+        bpd.setProperty("Params_2.TAN2StepPar4.ParTAN2Step.can1step", "N");
+        bpd.setProperty("Params_2.TAN2StepPar4.ParTAN2Step.TAN2StepParams.secfunc", "900");
+        bpd.setProperty("Params_2.TAN2StepPar4.ParTAN2Step.TAN2StepParams.name", "iTAN");
+        bpd.setProperty("Params_2.TAN2StepPar4.ParTAN2Step.TAN2StepParams_2.secfunc", "910");
+        bpd.setProperty("Params_2.TAN2StepPar4.ParTAN2Step.TAN2StepParams_2.name", "chipTAN");
+        passport.setBPD(bpd);
+        if (authed.booleanValue())
+          passport.setPersistentData("_authed_dialog_executed", authed);
+      }
+
+      HBCIHandler handler = new HBCIHandler(passport.getHBCIVersion(), passport, ctx);
+      try
+      {
+        for (int i = 0; i < 6; i++)
+          handler.createEmptyDialog("kunde" + i);
+        return handler.execute();
+      }
+      finally
+      {
+        handler.close();
+      }
+    }
+    finally
+    {
+      HBCIContext.restore(old);
+    }
+  }
+}
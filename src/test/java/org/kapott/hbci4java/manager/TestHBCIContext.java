@@ -0,0 +1,195 @@
+package org.kapott.hbci4java.manager;
+
+import java.util.Collections;
+import java.util.Properties;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kapott.hbci.exceptions.HBCI_Exception;
+import org.kapott.hbci.manager.HBCIConfig;
+import org.kapott.hbci.manager.HBCIContext;
+import org.kapott.hbci.manager.HBCIUtils;
+import org.kapott.hbci.manager.LogFilter;
+import org.kapott.hbci4java.AbstractTest;
+import org.kapott.hbci4java.LogCollector;
+
+/**
+ * Testet die explizite Uebergabe von Kernel-Parametern und Callback per {@link HBCIContext}.
+ */
+public class TestHBCIContext extends AbstractTest
+{
+  /**
+   * Erzeugt einen Kontext.
+   * @param c der Callback.
+   * @param value Wert des Parameters "test.value".
+   * @return der Kontext.
+   */
+  private HBCIContext create(LogCollector c, String value)
+  {
+    Properties props = new Properties();
+    props.setProperty("log.loglevel.default", Integer.toString(HBCIUtils.LOG_INFO));
+    props.setProperty("log.filter", "1");
+    props.setProperty("test.value", value);
+    return new HBCIContext(props, c);
+  }
+
+  /**
+   * Fuehrt den Task in einem Thread einer eigenen, nicht initialisierten ThreadGroup aus.
+   * @param task der Task.
+   * @throws Exception
+   */
+  private void runInNewGroup(final Runnable task) throws Exception
+  {
+    final Throwable[] error = new Throwable[1];
+    Thread t = new Thread(new ThreadGroup("context-test"), new Runnable() {
+      public void run()
+      {
+        try
+        {
+          task.run();
+        }
+        catch (Throwable e)
+        {
+          error[0] = e;
+        }
+      }
+    });
+    t.start();
+    t.join();
+    if (error[0] instanceof Error)
+      throw (Error) error[0];
+    if (error[0] != null)
+      throw new Exception(error[0]);
+  }
+
+  /**
+   * Testet Parameter, Callback und Locale eines explizit aktivierten Kontextes.
+   * @throws Exception
+   */
+  @Test
+  public void test001() throws Exception
+  {
+    final LogCollector c1 = new LogCollector();
+    final LogCollector c2 = new LogCollector();
+    final HBCIContext ctx1 = create(c1, "1");
+    final HBCIContext ctx2 = create(c2, "2");
+
+    runInNewGroup(new Runnable() {
+      public void run()
+      {
+        Assert.assertNull(HBCIContext.current());
+        try
+        {
+          HBCIUtils.getParam("test.value");
+          Assert.fail("thread is not initialized");
+        }
+        catch (HBCI_Exception e)
+        {
+          // erwartet
+        }
+
+        HBCIContext old = ctx1.bind();
+        try
+        {
+          Assert.assertSame(ctx1, HBCIContext.current());
+          Assert.assertEquals("1", HBCIUtils.getParam("test.value"));
+          Assert.assertNotNull(HBCIUtils.getParam("kernel.rewriter"));
+          Assert.assertNotNull(HBCIUtils.getLocale());
+          HBCIUtils.log("eins", HBCIUtils.LOG_INFO);
+
+          // verschachtelt
+          HBCIContext inner = ctx2.bind();
+          HBCIUtils.setParam("test.value", "3");
+          HBCIUtils.log("zwei", HBCIUtils.LOG_INFO);
+          HBCIContext.restore(inner);
+
+          Assert.assertEquals("1", HBCIUtils.getParam("test.value"));
+        }
+        finally
+        {
+          HBCIContext.restore(old);
+        }
+        Assert.assertNull(HBCIContext.current());
+      }
+    });
+
+    Assert.assertEquals("3", ctx2.getParam("test.value"));
+    Assert.assertEquals(Collections.singletonList("eins"), c1.messages);
+    Assert.assertEquals(Collections.singletonList("zwei"), c2.messages);
+
+    // ohne explizit aktivierten Kontext gilt wie bisher der Kontext der ThreadGroup
+    Assert.assertNotNull(HBCIContext.current());
+    Assert.assertNull(HBCIUtils.getParam("test.value"));
+  }
+
+  /**
+   * Testet, dass die geheimen Daten je Kontext verwaltet werden.
+   * @throws Exception
+   */
+  @Test
+  public void test002() throws Exception
+  {
+    final LogCollector c1 = new LogCollector();
+    final LogCollector c2 = new LogCollector();
+    final HBCIContext ctx1 = create(c1, "1");
+    final HBCIContext ctx2 = create(c2, "2");
+
+    runInNewGroup(ctx1.wrap(new Runnable() {
+      public void run()
+      {
+        LogFilter.getInstance().addSecretData("4711", "X", LogFilter.FILTER_SECRETS);
+        HBCIUtils.log("PIN 4711", HBCIUtils.LOG_INFO);
+      }
+    }));
+    runInNewGroup(ctx2.wrap(new Runnable() {
+      public void run()
+      {
+        HBCIUtils.log("PIN 4711", HBCIUtils.LOG_INFO);
+      }
+    }));
+
+    Assert.assertEquals("PIN XXXX", c1.messages.get(0));
+    Assert.assertEquals("PIN 4711", c2.messages.get(0));
+  }
+
+  /**
+   * Testet, dass Aenderungen der Parameter einen neuen Stand erzeugen.
+   * @throws Exception
+   */
+  @Test
+  public void test003() throws Exception
+  {
+    HBCIContext ctx = create(new LogCollector(), "1");
+    HBCIConfig config = ctx.getConfig();
+    Assert.assertEquals(HBCIUtils.LOG_INFO, config.getLogLevel());
+    Assert.assertEquals(300, config.getMaxWaitTime());
+    Assert.assertFalse(config.isSepaSchemaValidation());
+    Assert.assertSame(config.getRewriteChain(), config.getRewriteChain());
+
+    ctx.setParam("kernel.threaded.maxwaittime", "10");
+    ctx.setParam("test.value", null);
+
+    // der alte Stand bleibt unveraendert
+    Assert.assertEquals(300, config.getMaxWaitTime());
+    Assert.assertEquals("1", config.getParam("test.value"));
+    Assert.assertEquals(10, ctx.getConfig().getMaxWaitTime());
+    Assert.assertNull(ctx.getParam("test.value"));
+
+    // die Properties sind nur eine Kopie - fuer jeden Aufrufer eine eigene
+    ctx.getParams().setProperty("test.value", "2");
+    Assert.assertNull(ctx.getParam("test.value"));
+    Assert.assertNull(ctx.getParams().getProperty("test.value"));
+    Assert.assertNotSame(config.getParams(), config.getParams());
+
+    try
+    {
+      ctx.setParam("log.loglevel.default", "viel");
+      Assert.fail("invalid log level accepted");
+    }
+    catch (HBCI_Exception e)
+    {
+      // erwartet
+    }
+    Assert.assertEquals(HBCIUtils.LOG_INFO, ctx.getConfig().getLogLevel());
+  }
+}
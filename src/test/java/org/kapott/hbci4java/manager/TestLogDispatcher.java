@@ -0,0 +1,248 @@
+package org.kapott.hbci4java.manager;
+
+import java.util.Date;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.kapott.hbci.callback.HBCICallbackConsole;
+import org.kapott.hbci.manager.HBCIUtils;
+import org.kapott.hbci.manager.LogDispatcher;
+import org.kapott.hbci4java.AbstractTest;
+import org.kapott.hbci4java.LogCollector;
+
+/**
+ * Testet die (asynchrone) Ausgabe der Log-Meldungen.
+ */
+public class TestLogDispatcher extends AbstractTest
+{
+  /**
+   * Initialisiert den aktuellen Thread mit dem LogCollector neu.
+   * @param props die Kernel-Parameter.
+   * @return der LogCollector.
+   */
+  private LogCollector init(Properties props)
+  {
+    HBCIUtils.doneThread();
+    props.setProperty("log.loglevel.default", Integer.toString(HBCIUtils.LOG_INFO));
+    props.setProperty("log.filter", "0");
+    LogCollector c = new LogCollector();
+    HBCIUtils.initThread(props, c);
+    return c;
+  }
+
+  /**
+   * Stellt die urspruengliche Initialisierung wieder her.
+   * @throws Exception
+   */
+  @After
+  public void after() throws Exception
+  {
+    LogDispatcher.shutdown();
+    HBCIUtils.doneThread();
+    Properties props = new Properties();
+    props.put("log.loglevel.default", "" + HBCIUtils.LOG_DEBUG2);
+    HBCIUtils.initThread(props, new HBCICallbackConsole());
+  }
+
+  /**
+   * Testet die synchrone Ausgabe mit Log-Level und Aufrufer.
+   * @throws Exception
+   */
+  @Test
+  public void test001() throws Exception
+  {
+    LogCollector c = init(new Properties());
+    HBCIUtils.log("info", HBCIUtils.LOG_INFO);
+    HBCIUtils.log("debug", HBCIUtils.LOG_DEBUG);
+    Assert.assertEquals(1, c.messages.size());
+    Assert.assertEquals("info", c.messages.get(0));
+    Assert.assertEquals(getClass().getName(), c.traces.get(0).getClassName());
+    Assert.assertSame(Thread.currentThread(), c.threads.get(0));
+
+    // Aenderung des Log-Levels muss sofort wirken
+    HBCIUtils.setParam("log.loglevel.default", Integer.toString(HBCIUtils.LOG_DEBUG));
+    HBCIUtils.setParam("log.caller", "0");
+    HBCIUtils.log("debug", HBCIUtils.LOG_DEBUG);
+    Assert.assertEquals(2, c.messages.size());
+    Assert.assertNull(c.traces.get(1));
+  }
+
+  /**
+   * Testet die asynchrone Ausgabe.
+   * @throws Exception
+   */
+  @Test
+  public void test002() throws Exception
+  {
+    Properties props = new Properties();
+    props.setProperty("log.async", "1");
+    LogCollector c = init(props);
+
+    for (int i = 0; i < 1000; i++)
+    {
+      HBCIUtils.log("msg " + i, HBCIUtils.LOG_INFO);
+    }
+    LogDispatcher.getInstance().flush();
+
+    Assert.assertEquals(1000, c.messages.size());
+    for (int i = 0; i < 1000; i++)
+    {
+      Assert.assertEquals("msg " + i, c.messages.get(i));
+      Assert.assertSame(Thread.currentThread(), c.threads.get(i));
+    }
+    Assert.assertEquals(0, LogDispatcher.getInstance().getDropped());
+  }
+
+  /**
+   * Testet das Verwerfen von Meldungen bei vollem Puffer.
+   * @throws Exception
+   */
+  @Test
+  public void test003() throws Exception
+  {
+    LogDispatcher.shutdown();
+
+    Properties props = new Properties();
+    props.setProperty("log.async", "1");
+    props.setProperty("log.async.size", "4");
+    props.setProperty("log.async.overflow", "drop");
+    LogCollector c = init(props);
+
+    // Ausgabe blockieren, bis alle Meldungen erzeugt sind
+    c.latch = new CountDownLatch(1);
+    LogDispatcher dispatcher = LogDispatcher.getInstance();
+    Assert.assertEquals(4, dispatcher.getCapacity());
+
+    for (int i = 0; i < 20; i++)
+    {
+      HBCIUtils.log("msg " + i, HBCIUtils.LOG_INFO);
+    }
+    c.latch.countDown();
+    dispatcher.flush();
+
+    long dropped = dispatcher.getDropped();
+    Assert.assertTrue(dropped > 0);
+    Assert.assertEquals(dropped, dispatcher.getOverflows());
+    Assert.assertEquals(20, c.messages.size() + dropped);
+    Assert.assertEquals("msg 0", c.messages.get(0));
+  }
+
+  /**
+   * Testet, dass Log-Meldungen nur bei Bedarf erzeugt werden.
+   * @throws Exception
+   */
+  @Test
+  public void test004() throws Exception
+  {
+    LogCollector c = init(new Properties());
+    final int[] calls = new int[1];
+    Object payload = new Object() {
+      public String toString()
+      {
+        calls[0]++;
+        return "payload";
+      }
+    };
+
+    Assert.assertTrue(HBCIUtils.isLogEnabled(HBCIUtils.LOG_INFO));
+    Assert.assertFalse(HBCIUtils.isLogEnabled(HBCIUtils.LOG_DEBUG2));
+
+    HBCIUtils.log("message: ", payload, HBCIUtils.LOG_DEBUG2);
+    Assert.assertEquals(0, calls[0]);
+    Assert.assertEquals(0, c.messages.size());
+
+    HBCIUtils.log("message: ", payload, HBCIUtils.LOG_INFO);
+    Assert.assertEquals(1, calls[0]);
+    Assert.assertEquals("message: payload", c.messages.get(0));
+    Assert.assertEquals(getClass().getName(), c.traces.get(0).getClassName());
+  }
+
+  /**
+   * Testet, dass beim Beenden keine Meldungen verloren gehen, die parallel
+   * noch eingestellt werden.
+   * @throws Exception
+   */
+  @Test
+  public void test005() throws Exception
+  {
+    Properties props = new Properties();
+    props.setProperty("log.async", "1");
+    final LogCollector c = init(props);
+
+    for (int round = 0; round < 20; round++)
+    {
+      LogDispatcher.shutdown();
+      c.messages.clear();
+
+      final LogDispatcher dispatcher = LogDispatcher.getInstance();
+      final CountDownLatch start = new CountDownLatch(1);
+      Thread[] threads = new Thread[4];
+      for (int i = 0; i < threads.length; i++)
+      {
+        threads[i] = new Thread(new Runnable() {
+          public void run()
+          {
+            try
+            {
+              start.await();
+            }
+            catch (InterruptedException e)
+            {
+              return;
+            }
+            for (int j = 0; j < 500; j++)
+            {
+              dispatcher.dispatch(c, "msg " + j, HBCIUtils.LOG_INFO, new Date(), null, LogDispatcher.OVERFLOW_BLOCK);
+            }
+          }
+        });
+        threads[i].start();
+      }
+
+      // mitten in die Ausgabe hinein beenden
+      start.countDown();
+      Thread.sleep(round % 3);
+      LogDispatcher.shutdown();
+
+      for (Thread t : threads)
+        t.join(10000L);
+      Assert.assertEquals("round " + round, 4 * 500, c.messages.size());
+    }
+  }
+
+  /**
+   * Testet, dass Fehler im Callback gezaehlt werden und die Zustellung
+   * fortgesetzt wird.
+   * @throws Exception
+   */
+  @Test
+  public void test006() throws Exception
+  {
+    Properties props = new Properties();
+    props.setProperty("log.async", "1");
+    LogCollector c = init(props);
+
+    LogDispatcher dispatcher = LogDispatcher.getInstance();
+    dispatcher.resetCounters();
+    HBCICallbackConsole broken = new HBCICallbackConsole() {
+      public void log(String msg, int level, Date date, StackTraceElement trace)
+      {
+        throw new IllegalStateException("simulierter Fehler");
+      }
+    };
+
+    dispatcher.dispatch(broken, "kaputt", HBCIUtils.LOG_INFO, new Date(), null, LogDispatcher.OVERFLOW_BLOCK);
+    HBCIUtils.log("ok", HBCIUtils.LOG_INFO);
+    dispatcher.flush();
+
+    Assert.assertEquals(1, dispatcher.getFailed());
+    Assert.assertEquals(1, c.messages.size());
+    Assert.assertEquals("ok", c.messages.get(0));
+
+    dispatcher.resetCounters();
+    Assert.assertEquals(0, dispatcher.getFailed());
+  }
+}
@@ -0,0 +1,216 @@
+package org.kapott.hbci4java.manager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.kapott.hbci.manager.LogFilter;
+import org.kapott.hbci4java.AbstractTest;
+
+/**
+ * Testet das Filtern geheimer Daten aus den Log-Ausgaben.
+ */
+public class TestLogFilter extends AbstractTest
+{
+  /**
+   * Entfernt die registrierten Daten wieder.
+   * @throws Exception
+   */
+  @After
+  public void after() throws Exception
+  {
+    LogFilter.getInstance().clearSecretData();
+  }
+
+  /**
+   * Testet die Ersetzung abhaengig vom Filter-Level.
+   * @throws Exception
+   */
+  @Test
+  public void test001() throws Exception
+  {
+    LogFilter filter = LogFilter.getInstance();
+    filter.addSecretData("12345", "X", LogFilter.FILTER_SECRETS);
+    filter.addSecretData("1234567890", "*", LogFilter.FILTER_IDS);
+    filter.addSecretData("37020500", "[BLZ]", LogFilter.FILTER_MOST);
+
+    String line = "PIN 12345, Konto 1234567890, BLZ 37020500";
+    Assert.assertEquals(line, filter.filterLine(line, LogFilter.FILTER_NONE));
+    Assert.assertEquals("PIN XXXXX, Konto XXXXX67890, BLZ 37020500", filter.filterLine(line, LogFilter.FILTER_SECRETS));
+    Assert.assertEquals("PIN XXXXX, Konto **********, BLZ 37020500", filter.filterLine(line, LogFilter.FILTER_IDS));
+    Assert.assertEquals("PIN XXXXX, Konto **********, BLZ [BLZ]", filter.filterLine(line, LogFilter.FILTER_MOST));
+
+    // ohne Treffer wird die Zeile unveraendert zurueckgeliefert
+    String other = "nichts geheimes";
+    Assert.assertSame(other, filter.filterLine(other, LogFilter.FILTER_MOST));
+    Assert.assertNull(filter.filterLine(null, LogFilter.FILTER_MOST));
+  }
+
+  /**
+   * Testet ueberlappende und verschachtelte Secrets.
+   * @throws Exception
+   */
+  @Test
+  public void test002() throws Exception
+  {
+    LogFilter filter = LogFilter.getInstance();
+    filter.addSecretData("abcd", "1", LogFilter.FILTER_SECRETS);
+    filter.addSecretData("bc", "2", LogFilter.FILTER_SECRETS);
+    filter.addSecretData("cdef", "3", LogFilter.FILTER_SECRETS);
+    filter.addSecretData("aab", "4", LogFilter.FILTER_SECRETS);
+
+    Assert.assertEquals("1111ef", filter.filterLine("abcdef", LogFilter.FILTER_SECRETS));
+    Assert.assertEquals("x22x3333", filter.filterLine("xbcxcdef", LogFilter.FILTER_SECRETS));
+    Assert.assertEquals("a444cd", filter.filterLine("aaabcd", LogFilter.FILTER_SECRETS));
+
+    // erneutes Registrieren mit niedrigerem Level
+    filter.addSecretData("geheim", "X", LogFilter.FILTER_MOST);
+    Assert.assertEquals("geheim", filter.filterLine("geheim", LogFilter.FILTER_SECRETS));
+    filter.addSecretData("geheim", "X", LogFilter.FILTER_SECRETS);
+    Assert.assertEquals("XXXXXX", filter.filterLine("geheim", LogFilter.FILTER_SECRETS));
+  }
+
+  /**
+   * Testet, dass ohne Kontext registrierte Daten unabhaengig von der
+   * ThreadGroup des loggenden Threads gefiltert werden.
+   * @throws Exception
+   */
+  @Test
+  public void test003() throws Exception
+  {
+    final LogFilter filter = LogFilter.getInstance();
+    filter.addSecretData("parent", "X", LogFilter.FILTER_SECRETS);
+
+    final String[] result = new String[2];
+    Thread t1 = new Thread(new ThreadGroup("tenant1"), new Runnable() {
+      public void run()
+      {
+        filter.addSecretData("child", "X", LogFilter.FILTER_SECRETS);
+        result[0] = filter.filterLine("parent child", LogFilter.FILTER_SECRETS);
+      }
+    });
+    t1.start();
+    t1.join();
+
+    // ein Thread einer anderen ThreadGroup, z.B. aus einem Thread-Pool
+    Thread t2 = new Thread(new ThreadGroup("tenant2"), new Runnable() {
+      public void run()
+      {
+        result[1] = filter.filterLine("parent child", LogFilter.FILTER_SECRETS);
+      }
+    });
+    t2.start();
+    t2.join();
+
+    Assert.assertEquals("XXXXXX XXXXX", result[0]);
+    Assert.assertEquals("XXXXXX XXXXX", result[1]);
+    Assert.assertEquals("XXXXXX XXXXX", filter.filterLine("parent child", LogFilter.FILTER_SECRETS));
+  }
+
+  /**
+   * Filtert die Zeile auf die naive Art: an jeder Position wird das laengste
+   * dort beginnende Secret ersetzt.
+   * @param line die Zeile.
+   * @param secrets die Secrets.
+   * @return die gefilterte Zeile.
+   */
+  private String naive(String line, List<String> secrets)
+  {
+    StringBuilder sb = new StringBuilder();
+    int posi = 0;
+    while (posi < line.length())
+    {
+      String found = null;
+      for (String secret : secrets)
+      {
+        if (line.startsWith(secret, posi) && (found == null || found.length() < secret.length()))
+          found = secret;
+      }
+      if (found != null)
+      {
+        for (int i = 0; i < found.length(); i++)
+          sb.append('X');
+        posi += found.length();
+      }
+      else
+      {
+        sb.append(line.charAt(posi++));
+      }
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Vergleicht das Ergebnis mit dem naiven Filtern, waehrend zwischen dem
+   * Registrieren immer wieder gefiltert wird.
+   * @throws Exception
+   */
+  @Test
+  public void test004() throws Exception
+  {
+    LogFilter filter = LogFilter.getInstance();
+    Random random = new Random(4711);
+    List<String> secrets = new ArrayList<String>();
+    for (int i = 0; i < 300; i++)
+    {
+      // kleines Alphabet, damit sich die Secrets oft ueberlappen
+      String secret = random(random, 1 + random.nextInt(6));
+      filter.addSecretData(secret, "X", LogFilter.FILTER_SECRETS);
+      if (!secrets.contains(secret))
+        secrets.add(secret);
+
+      if (random.nextInt(4) == 0)
+      {
+        String line = random(random, random.nextInt(80));
+        Assert.assertEquals(naive(line, secrets), filter.filterLine(line, LogFilter.FILTER_SECRETS));
+      }
+    }
+  }
+
+  /**
+   * Testet, dass das Registrieren vieler Secrets nicht quadratisch waechst -
+   * auch wenn zwischendurch gefiltert wird.
+   * @throws Exception
+   */
+  @Test
+  public void test005() throws Exception
+  {
+    long[] used = new long[2];
+    int[] counts = new int[] {2000, 8000};
+    for (int i = 0; i < counts.length; i++)
+    {
+      LogFilter filter = LogFilter.getInstance();
+      filter.clearSecretData();
+
+      long start = System.currentTimeMillis();
+      for (int k = 0; k < counts[i]; k++)
+      {
+        filter.addSecretData("DE" + (1000000000L + k * 7919L), "X", LogFilter.FILTER_IDS);
+        filter.addSecretData("PIN" + k, "X", LogFilter.FILTER_SECRETS);
+        Assert.assertEquals("Konto XXXXXXXXXXXX", filter.filterLine("Konto DE" + (1000000000L + k * 7919L), LogFilter.FILTER_IDS));
+      }
+      used[i] = System.currentTimeMillis() - start;
+      System.out.println(counts[i] + " secrets: " + used[i] + " millis");
+    }
+
+    // bei quadratischer Laufzeit waere der Faktor 16
+    Assert.assertTrue("Laufzeit waechst nicht linear: " + used[0] + " / " + used[1] + " millis", used[1] < Math.max(used[0], 100) * 10);
+  }
+
+  /**
+   * Liefert einen zufaelligen String aus den Buchstaben a-c.
+   * @param random der Zufallsgenerator.
+   * @param len die Laenge.
+   * @return der String.
+   */
+  private String random(Random random, int len)
+  {
+    char[] c = new char[len];
+    for (int i = 0; i < len; i++)
+      c[i] = (char) ('a' + random.nextInt(3));
+    return new String(c);
+  }
+}
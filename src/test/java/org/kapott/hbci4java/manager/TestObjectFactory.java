@@ -0,0 +1,139 @@
+package org.kapott.hbci4java.manager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kapott.hbci.manager.HBCIUtils;
+import org.kapott.hbci.tools.ObjectFactory;
+import org.kapott.hbci4java.AbstractTest;
+
+/**
+ * Testet die Object-Pools.
+ */
+public class TestObjectFactory extends AbstractTest
+{
+  /**
+   * Objekt, welches merkt, ob es gerade benutzt wird.
+   */
+  private static class Pooled
+  {
+    private final AtomicBoolean inUse = new AtomicBoolean(false);
+  }
+
+  /**
+   * Testet das Entnehmen und Zurueckgeben von Objekten.
+   */
+  @Test
+  public void test001()
+  {
+    ObjectFactory factory = new ObjectFactory(2);
+    Assert.assertNull(factory.getFreeObject());
+
+    Object o1 = new Object();
+    Object o2 = new Object();
+    Object o3 = new Object();
+    factory.addToUsedPool(o1);
+    factory.addToUsedPool(o2);
+    factory.addToUsedPool(o3); // Pool ist voll
+    Assert.assertEquals(2, factory.getUsedObjects().size());
+
+    // Nicht registrierte Objekte kommen nicht in den Pool
+    factory.unuseObject(o3);
+    factory.unuseObject(new Object());
+    Assert.assertEquals(0, factory.getFreeObjects().size());
+
+    factory.unuseObject(o1);
+    factory.unuseObject(o1); // doppelte Rueckgabe wird ignoriert
+    Assert.assertEquals(1, factory.getUsedObjects().size());
+    Assert.assertEquals(1, factory.getFreeObjects().size());
+
+    Assert.assertSame(o1, factory.getFreeObject());
+    Assert.assertNull(factory.getFreeObject());
+
+    // Nach dem Entnehmen ist wieder Platz im Pool
+    factory.addToUsedPool(o3);
+    Assert.assertEquals(2, factory.getUsedObjects().size());
+    Assert.assertEquals(1, factory.getHits());
+    Assert.assertEquals(2, factory.getMisses());
+  }
+
+  /**
+   * Testet das Abschalten des Poolings.
+   */
+  @Test
+  public void test002()
+  {
+    HBCIUtils.setParam("kernel.objpool.enabled", "no");
+    try
+    {
+      ObjectFactory factory = new ObjectFactory(10);
+      Object o = new Object();
+      factory.addToUsedPool(o);
+      factory.unuseObject(o);
+      Assert.assertNull(factory.getFreeObject());
+      Assert.assertEquals(0, factory.getUsedObjects().size());
+      Assert.assertEquals(0, factory.getFreeObjects().size());
+    }
+    finally
+    {
+      HBCIUtils.setParam("kernel.objpool.enabled", null);
+    }
+  }
+
+  /**
+   * Testet, dass bei parallelem Zugriff kein Objekt an zwei Threads
+   * gleichzeitig ausgegeben wird und die Poolgroesse nicht ueberschritten wird.
+   * @throws Exception
+   */
+  @Test
+  public void test003() throws Exception
+  {
+    final int max = 64;
+    final ObjectFactory factory = new ObjectFactory(max);
+    final AtomicInteger errors = new AtomicInteger();
+
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int i = 0; i < 16; i++)
+    {
+      Thread t = new Thread()
+      {
+        public void run()
+        {
+          List<Pooled> mine = new ArrayList<Pooled>();
+          for (int j = 0; j < 20000; j++)
+          {
+            Pooled p = (Pooled) factory.getFreeObject();
+            if (p == null)
+              p = new Pooled();
+            if (!p.inUse.compareAndSet(false, true))
+              errors.incrementAndGet();
+            factory.addToUsedPool(p);
+            mine.add(p);
+
+            if (mine.size() == 8)
+            {
+              for (Pooled q : mine)
+              {
+                q.inUse.set(false);
+                factory.unuseObject(q);
+              }
+              mine.clear();
+            }
+          }
+        }
+      };
+      threads.add(t);
+      t.start();
+    }
+    for (Thread t : threads)
+      t.join();
+
+    Assert.assertEquals(0, errors.get());
+    Assert.assertTrue(factory.toString(), factory.getUsedObjects().size() + factory.getFreeObjects().size() <= max);
+    Assert.assertTrue(factory.toString(), factory.getHits() > 0);
+  }
+}
@@ -0,0 +1,94 @@
+package org.kapott.hbci4java.manager;
+
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kapott.hbci.manager.HBCIKernelImpl;
+import org.kapott.hbci.manager.SyntaxRegistry;
+import org.kapott.hbci.protocol.MSG;
+import org.kapott.hbci.protocol.factory.MSGFactory;
+import org.kapott.hbci4java.AbstractTest;
+
+/**
+ * Testet die gemeinsame Benutzung der Syntax-Spezifikation durch mehrere Kernel.
+ */
+public class TestSyntaxRegistry extends AbstractTest {
+
+    /**
+     * Testet, dass zwei Kernel mit der gleichen HBCI-Version das gleiche
+     * Syntax-Dokument benutzen, aber getrennte Nachrichtendaten haben.
+     */
+    @Test
+    public void test001() {
+        SyntaxRegistry registry = SyntaxRegistry.getInstance();
+        registry.clear();
+
+        HBCIKernelImpl k1 = new HBCIKernelImpl(null,"300");
+        HBCIKernelImpl k2 = new HBCIKernelImpl(null,"300");
+
+        Assert.assertSame("Syntax nicht gemeinsam benutzt",k1.getMsgGen().getSyntax(),k2.getMsgGen().getSyntax());
+        Assert.assertNotSame("MsgGen gemeinsam benutzt",k1.getMsgGen(),k2.getMsgGen());
+        Assert.assertEquals("Spezifikation mehrfach geladen",1,registry.getMisses());
+        Assert.assertEquals("Cache-Treffer falsch",1,registry.getHits());
+        Assert.assertTrue("Ladezeit fehlt",registry.getLoadTime(null,"300") >= 0);
+        Assert.assertEquals("Ladezeit fuer nicht geladene Version",-1,registry.getLoadTime(null,"plus"));
+
+        k1.rawNewMsg("DialogInit");
+        k1.rawSet("Idn.KIK.blz","12345678");
+        Assert.assertEquals("12345678",k1.getMsgGen().get("DialogInit.Idn.KIK.blz"));
+        Assert.assertNull("Daten zwischen Kerneln vermischt",k2.getMsgGen().get("DialogInit.Idn.KIK.blz"));
+    }
+
+    /**
+     * Testet das parallele Parsen von Nachrichten mit der gemeinsamen Syntax.
+     * @throws Exception
+     */
+    @Test
+    public void test002() throws Exception {
+        final String data = getFile("/org/kapott/hbci4java/msg/TestMultipleDEGs-01.txt");
+
+        // Referenz-Ergebnis single-threaded ermitteln
+        final Hashtable<String,String> expected = parse(data);
+
+        final List<Throwable> errors = new ArrayList<Throwable>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i=0;i<4;i++) {
+            Thread t = new Thread() {
+                public void run() {
+                    try {
+                        for (int j=0;j<5;j++) {
+                            Assert.assertEquals(expected,parse(data));
+                        }
+                    } catch (Throwable e) {
+                        synchronized (errors) {
+                            errors.add(e);
+                        }
+                    }
+                }
+            };
+            threads.add(t);
+            t.start();
+        }
+        for (Thread t:threads) {
+            t.join();
+        }
+        Assert.assertEquals("Fehler beim parallelen Parsen: "+errors,0,errors.size());
+    }
+
+    /**
+     * Parst die Nachricht mit einem neuen Kernel.
+     * @param data die Nachricht.
+     * @return die geparsten Daten.
+     */
+    private Hashtable<String,String> parse(String data) {
+        HBCIKernelImpl kernel = new HBCIKernelImpl(null,"300");
+        kernel.rawNewMsg("DialogInit");
+        MSG msg = MSGFactory.getInstance().createMSG("DialogInitRes",data,data.length(),kernel.getMsgGen());
+        Hashtable<String,String> ht = new Hashtable<String,String>();
+        msg.extractValues(ht);
+        return ht;
+    }
+}
@@ -0,0 +1,47 @@
+package org.kapott.hbci4java.msg;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kapott.hbci.comm.Comm;
+import org.kapott.hbci.manager.HBCIKernelImpl;
+import org.kapott.hbci.manager.MsgGen;
+import org.kapott.hbci4java.AbstractTest;
+
+/**
+ * Testet das Erkennen verschluesselter Antwortnachrichten anhand der Segmentcodes.
+ */
+public class TestCryptedDetection extends AbstractTest
+{
+  /**
+   * Testet die Erkennung fuer verschiedene Nachrichten.
+   * @throws Exception
+   */
+  @Test
+  public void test001() throws Exception
+  {
+    MsgGen gen = new HBCIKernelImpl(null, "300").getMsgGen();
+
+    String crypted = "HNHBK:1:3+000000000200+300+abc+1'" +
+                     "HNVSK:998:3+PIN:1+998+1+2::0+1:20200101:120000+2:2:13:@8@00000000:5:1+280:12345678:user:S:0:0+0'" +
+                     "HNVSD:999:1+@5@abcde''" +
+                     "HNHBS:5:1+1'";
+    Assert.assertTrue(Comm.isCrypted(crypted, gen));
+
+    // Maskierte Delimiter im Nachrichtenkopf
+    Assert.assertTrue(Comm.isCrypted("HNHBK:1:3+000000000200+300+a?'b?+c+1'HNVSK:998:3+PIN:1'", gen));
+
+    // Unverschluesselte Nachricht
+    String clear = "HNHBK:1:3+000000000200+300+abc+1'" +
+                   "HIRMG:2:2+0010::Nachricht entgegengenommen'" +
+                   "HNVSK:998:3+PIN:1'" +
+                   "HNHBS:3:1+1'";
+    Assert.assertFalse(Comm.isCrypted(clear, gen));
+
+    // Unvollstaendige und fremde Nachrichten
+    Assert.assertFalse(Comm.isCrypted("", gen));
+    Assert.assertFalse(Comm.isCrypted("HNHBK", gen));
+    Assert.assertFalse(Comm.isCrypted("HNHBK:1:3+000000000200", gen));
+    Assert.assertFalse(Comm.isCrypted("HNHBK:1:3+000000000200+300+abc+1'HNVSK", gen));
+    Assert.assertFalse(Comm.isCrypted("<html>Fehler</html>", gen));
+  }
+}
@@ -0,0 +1,114 @@
+package org.kapott.hbci4java.msg;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Hashtable;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kapott.hbci.comm.Filter;
+import org.kapott.hbci.manager.HBCIKernelImpl;
+import org.kapott.hbci.manager.HBCIUtils;
+import org.kapott.hbci.protocol.MSG;
+import org.kapott.hbci.protocol.MsgBuffer;
+import org.kapott.hbci.protocol.factory.MSGFactory;
+import org.kapott.hbci4java.AbstractTest;
+
+/**
+ * Testet das Erzeugen der Uebertragungsform von Nachrichten.
+ */
+public class TestMsgBuffer extends AbstractTest
+{
+  /**
+   * Erzeugt eine Nachricht.
+   * @param prodName Produktname in der Nachricht.
+   * @return die Nachricht.
+   */
+  private MSG createMessage(String prodName)
+  {
+    HBCIKernelImpl kernel = new HBCIKernelImpl(null, "300");
+    Hashtable<String, String> values = new Hashtable<String, String>();
+    values.put("DialogInitAnon.Idn.KIK.country", "DE");
+    values.put("DialogInitAnon.Idn.KIK.blz", "12345678");
+    values.put("DialogInitAnon.ProcPrep.BPD", "0");
+    values.put("DialogInitAnon.ProcPrep.UPD", "0");
+    values.put("DialogInitAnon.ProcPrep.lang", "0");
+    values.put("DialogInitAnon.ProcPrep.prodName", prodName);
+    values.put("DialogInitAnon.ProcPrep.prodVersion", "2.5");
+    return MSGFactory.getInstance().createMSG("DialogInitAnon", kernel.getMsgGen(), values);
+  }
+
+  /**
+   * Testet, dass die Uebertragungsform der String-Darstellung entspricht
+   * und die Nachrichtengroesse korrekt gesetzt wird.
+   * @throws Exception
+   */
+  @Test
+  public void test001() throws Exception
+  {
+    MSG msg = createMessage("HBCI4Java");
+    try
+    {
+      String expected = "HNHBK:1:3+000000000111+300+0+1'HKIDN:2:2+280:12345678+9999999999+0+0'HKVVB:3:3+0+0+0+HBCI4Java+2.5'HNHBS:4:1+1'";
+      Assert.assertEquals(expected, msg.toString(0));
+
+      MsgBuffer raw = msg.toBytes();
+      Assert.assertEquals(expected.length(), raw.length());
+      Assert.assertArrayEquals(expected.getBytes("ISO-8859-1"), raw.toByteArray());
+      Assert.assertEquals(expected, raw.toString());
+
+      // Der Puffer wird wiederverwendet
+      Assert.assertSame(raw, msg.toBytes());
+      Assert.assertEquals(expected.length(), raw.length());
+
+      ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      raw.writeTo(bos);
+      Assert.assertArrayEquals(raw.toByteArray(), bos.toByteArray());
+    }
+    finally
+    {
+      MSGFactory.getInstance().unuseObject(msg);
+    }
+  }
+
+  /**
+   * Testet die Kodierung der Nachricht durch die Filter.
+   * @throws Exception
+   */
+  @Test
+  public void test002() throws Exception
+  {
+    MSG msg = createMessage("HBCI4Java");
+    try
+    {
+      MsgBuffer raw = msg.toBytes();
+
+      // Ohne Filter werden die Daten nicht kopiert
+      Assert.assertSame(raw, Filter.getInstance("None").encode(raw));
+
+      MsgBuffer encoded = Filter.getInstance("Base64").encode(raw);
+      Assert.assertArrayEquals(raw.toByteArray(), HBCIUtils.decodeBase64(encoded.toString()));
+    }
+    finally
+    {
+      MSGFactory.getInstance().unuseObject(msg);
+    }
+  }
+
+  /**
+   * Testet die Behandlung von Zeichen ausserhalb von ISO-8859-1.
+   * @throws Exception
+   */
+  @Test
+  public void test003() throws Exception
+  {
+    MsgBuffer buf = new MsgBuffer(1);
+    buf.append("Grüße").append('+').append("€");
+    Assert.assertArrayEquals("Grüße+€".getBytes("ISO-8859-1"), buf.toByteArray());
+    Assert.assertEquals("Grüße+?", buf.toString());
+
+    buf.setLength(2);
+    Assert.assertEquals("Gr", buf.toString());
+    buf.reset();
+    Assert.assertEquals(0, buf.length());
+  }
+}
@@ -0,0 +1,142 @@
+package org.kapott.hbci4java.msg;
+
+import java.util.Hashtable;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kapott.hbci.exceptions.NoSuchPathException;
+import org.kapott.hbci.manager.HBCIKernelImpl;
+import org.kapott.hbci.protocol.DE;
+import org.kapott.hbci.protocol.MSG;
+import org.kapott.hbci.protocol.MultipleSyntaxElements;
+import org.kapott.hbci.protocol.SEG;
+import org.kapott.hbci.protocol.SyntaxElement;
+import org.kapott.hbci.protocol.factory.MSGFactory;
+import org.kapott.hbci.protocol.factory.SEGFactory;
+import org.kapott.hbci4java.AbstractTest;
+
+/**
+ * Testet den Pfad-Index der Nachrichten.
+ */
+public class TestMsgIndex extends AbstractTest
+{
+  private HBCIKernelImpl kernel = new HBCIKernelImpl(null, "300");
+
+  /**
+   * Erzeugt eine Nachricht.
+   * @return die Nachricht.
+   */
+  private MSG createMessage()
+  {
+    Hashtable<String, String> values = new Hashtable<String, String>();
+    values.put("DialogInitAnon.Idn.KIK.country", "DE");
+    values.put("DialogInitAnon.Idn.KIK.blz", "12345678");
+    values.put("DialogInitAnon.ProcPrep.BPD", "0");
+    values.put("DialogInitAnon.ProcPrep.UPD", "0");
+    values.put("DialogInitAnon.ProcPrep.lang", "0");
+    values.put("DialogInitAnon.ProcPrep.prodName", "HBCI4Java");
+    values.put("DialogInitAnon.ProcPrep.prodVersion", "2.5");
+    return MSGFactory.getInstance().createMSG("DialogInitAnon", kernel.getMsgGen(), values);
+  }
+
+  /**
+   * Testet das Lesen und Schreiben ueber den Index.
+   * @throws Exception
+   */
+  @Test
+  public void test001() throws Exception
+  {
+    MSG msg = createMessage();
+    try
+    {
+      SyntaxElement elem = msg.getElement("DialogInitAnon.ProcPrep.prodName");
+      Assert.assertTrue(elem instanceof DE);
+      Assert.assertEquals("DialogInitAnon.ProcPrep.prodName", elem.getPath());
+      Assert.assertSame(msg, msg.getElement("DialogInitAnon"));
+      Assert.assertNull(msg.getElement("DialogInitAnon.ProcPrep.gibtsnicht"));
+
+      Assert.assertEquals("HBCI4Java", msg.getValueOfDE("DialogInitAnon.ProcPrep.prodName"));
+      Assert.assertEquals("12345678", msg.getValueOfDE("DialogInitAnon.Idn.KIK.blz"));
+
+      Assert.assertTrue(msg.propagateValue("DialogInitAnon.ProcPrep.prodName", "Test", SyntaxElement.DONT_TRY_TO_CREATE, SyntaxElement.ALLOW_OVERWRITE));
+      Assert.assertEquals("Test", msg.getValueOfDE("DialogInitAnon.ProcPrep.prodName"));
+      Assert.assertFalse(msg.propagateValue("DialogInitAnon.ProcPrep.gibtsnicht", "Test", SyntaxElement.DONT_TRY_TO_CREATE, SyntaxElement.ALLOW_OVERWRITE));
+
+      try
+      {
+        msg.getValueOfDE("DialogInitAnon.ProcPrep");
+        Assert.fail("NoSuchPathException erwartet");
+      }
+      catch (NoSuchPathException e)
+      {
+        // erwartet
+      }
+    }
+    finally
+    {
+      MSGFactory.getInstance().unuseObject(msg);
+    }
+  }
+
+  /**
+   * Testet, dass mit TRY_TO_CREATE nachtraeglich erzeugte Elemente gefunden werden.
+   * @throws Exception
+   */
+  @Test
+  public void test002() throws Exception
+  {
+    MSG msg = createMessage();
+    try
+    {
+      Assert.assertNull(msg.getElement("DialogInitAnon.Idn_2.KIK.blz"));
+      Assert.assertTrue(msg.propagateValue("DialogInitAnon.Idn_2.KIK.blz", "87654321", SyntaxElement.TRY_TO_CREATE, SyntaxElement.DONT_ALLOW_OVERWRITE));
+
+      SyntaxElement elem = msg.getElement("DialogInitAnon.Idn_2.KIK.blz");
+      Assert.assertNotNull(elem);
+      Assert.assertEquals("87654321", msg.getValueOfDE("DialogInitAnon.Idn_2.KIK.blz"));
+      Assert.assertEquals("12345678", msg.getValueOfDE("DialogInitAnon.Idn.KIK.blz"));
+
+      // Die vorgegebenen Werte des neuen Segments sind ebenfalls erreichbar
+      Assert.assertEquals("9999999999", msg.getValueOfDE("DialogInitAnon.Idn.customerid"));
+      Assert.assertNotNull(msg.getElement("DialogInitAnon.Idn_2.SegHead.code"));
+    }
+    finally
+    {
+      MSGFactory.getInstance().unuseObject(msg);
+    }
+  }
+
+  /**
+   * Testet, dass direkt im Baum ersetzte Elemente nicht mehr ueber den Index gefunden werden.
+   * @throws Exception
+   */
+  @Test
+  public void test003() throws Exception
+  {
+    MSG msg = createMessage();
+    try
+    {
+      Assert.assertEquals("HBCI4Java", msg.getValueOfDE("DialogInitAnon.ProcPrep.prodName"));
+
+      // Segment an den Methoden der Nachricht vorbei ersetzen
+      MultipleSyntaxElements container = msg.getChildContainers().get(2);
+      List<SyntaxElement> segs = container.getElements();
+      SEG seg = SEGFactory.getInstance().createSEG("ProcPrep", "ProcPrep", "DialogInitAnon", 0, kernel.getMsgGen().getSyntaxSpec());
+      seg.propagateValue("DialogInitAnon.ProcPrep.prodName", "Neu", SyntaxElement.DONT_TRY_TO_CREATE, SyntaxElement.DONT_ALLOW_OVERWRITE);
+      SEGFactory.getInstance().unuseObject(segs.get(0));
+      segs.set(0, seg);
+      seg.setParent(container);
+
+      Assert.assertEquals("Neu", msg.getValueOfDE("DialogInitAnon.ProcPrep.prodName"));
+      Assert.assertSame(seg, msg.getElement("DialogInitAnon.ProcPrep"));
+
+      msg.rebuildIndex();
+      Assert.assertEquals("Neu", msg.getValueOfDE("DialogInitAnon.ProcPrep.prodName"));
+    }
+    finally
+    {
+      MSGFactory.getInstance().unuseObject(msg);
+    }
+  }
+}
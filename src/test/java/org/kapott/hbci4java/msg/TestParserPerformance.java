@@ -0,0 +1,124 @@
+package org.kapott.hbci4java.msg;
+
+import java.util.Hashtable;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.kapott.hbci.manager.HBCIKernelImpl;
+import org.kapott.hbci.protocol.MSG;
+import org.kapott.hbci.protocol.factory.MSGFactory;
+import org.kapott.hbci4java.AbstractTest;
+
+/**
+ * Benchmark fuer das Parsen grosser Nachrichten. Die Nachrichten enthalten
+ * (wie z.Bsp. bei einem Umsatzabruf) viele HIKAZ-Segmente mit MT940-Daten.
+ */
+public class TestParserPerformance extends AbstractTest
+{
+  /**
+   * Groesse der MT940-Daten pro Segment.
+   */
+  private final static int SEGMENT_SIZE = 50 * 1024;
+
+  /**
+   * Deaktiviert den Test, wenn das System-Property nicht auf "true" steht.
+   * @throws Exception
+   */
+  @BeforeClass
+  public static void beforeClass() throws Exception
+  {
+      Assume.assumeTrue(Boolean.valueOf(System.getProperty(AbstractTest.SYSPROP_PERFORMANCE,Boolean.TRUE.toString())));
+  }
+
+  /**
+   * Parst Nachrichten mit 1, 5 und 20 MB.
+   * @throws Exception
+   */
+  @Test
+  public void test() throws Exception
+  {
+    String mt940 = createMT940(SEGMENT_SIZE);
+
+    long[] used = new long[3];
+    int[] sizes = new int[] {1, 5, 20};
+    for (int i = 0; i < sizes.length; i++)
+    {
+      int count = sizes[i] * 1024 * 1024 / SEGMENT_SIZE;
+      String msg = createMessage(mt940, count);
+
+      long start = System.currentTimeMillis();
+      Hashtable<String, String> ht = parse(msg);
+      used[i] = System.currentTimeMillis() - start;
+      System.out.println(sizes[i] + " MB (" + msg.length() + " chars, " + count + " segments): " + used[i] + " millis");
+
+      Assert.assertEquals("0010", ht.get("CustomMsgRes.RetGlob.RetVal.code"));
+      Assert.assertEquals(mt940, ht.get("CustomMsgRes.GVRes.KUmsZeitRes5.booked"));
+      Assert.assertEquals(mt940, ht.get("CustomMsgRes.GVRes_" + count + ".KUmsZeitRes5.booked"));
+      Assert.assertEquals(Integer.toString(count + 4), ht.get("CustomMsgRes.GVRes_" + count + ".KUmsZeitRes5.SegHead.seq"));
+      Assert.assertNull(ht.get("CustomMsgRes.GVRes_" + (count + 1) + ".KUmsZeitRes5.booked"));
+      Assert.assertEquals("1", ht.get("CustomMsgRes.MsgTail.msgnum"));
+    }
+
+    // Die Laufzeit muss (annaehernd) linear mit der Groesse wachsen. Bei
+    // quadratischer Laufzeit waere der Faktor zwischen 1 und 20 MB 400.
+    Assert.assertTrue("Laufzeit waechst nicht linear: " + used[0] + " / " + used[2] + " millis", used[2] < Math.max(used[0], 100) * 100);
+  }
+
+  /**
+   * Parst die Nachricht.
+   * @param data die Nachricht.
+   * @return die geparsten Daten.
+   */
+  private Hashtable<String, String> parse(String data)
+  {
+    HBCIKernelImpl kernel = new HBCIKernelImpl(null, "300");
+    kernel.rawNewMsg("CustomMsg");
+    MSG msg = MSGFactory.getInstance().createMSG("CustomMsgRes", data, data.length(), kernel.getMsgGen());
+    Hashtable<String, String> ht = new Hashtable<String, String>();
+    msg.extractValues(ht);
+    return ht;
+  }
+
+  /**
+   * Erzeugt MT940-Daten der angegebenen Mindestgroesse.
+   * @param size die Mindestgroesse in Zeichen.
+   * @return die MT940-Daten.
+   */
+  private String createMT940(int size)
+  {
+    StringBuilder sb = new StringBuilder(size + 256);
+    sb.append(":20:STARTUMS\r\n:25:10020030/1234567890\r\n:28C:0\r\n:60F:C150101EUR1000,00\r\n");
+    for (int i = 0; sb.length() < size; i++)
+    {
+      sb.append(":61:1501020102D12,34NMSCNONREF\r\n");
+      sb.append(":86:005?00LASTSCHRIFT?20Buchung ").append(i).append("?30?31?32Empfaenger+Name?34000\r\n");
+    }
+    sb.append(":62F:C150131EUR987,66\r\n-");
+    return sb.toString();
+  }
+
+  /**
+   * Erzeugt eine Nachricht mit der angegebenen Anzahl von HIKAZ-Segmenten.
+   * @param mt940 die MT940-Daten pro Segment.
+   * @param count die Anzahl der Segmente.
+   * @return die Nachricht.
+   */
+  private String createMessage(String mt940, int count)
+  {
+    StringBuilder sb = new StringBuilder(count * (mt940.length() + 32) + 1024);
+    sb.append("HNHBK:1:3+000000000000+300+0000000000=0000000000000000=+1+0000000000=0000000000000000=:1'");
+    sb.append("HNSHK:2:4+PIN:2+911+0000000000+1+1+2::AAAAAAAAAAAAAAAAAAAA+1+1:00000000:000000+1:999:1+6:10:16+280:00000000:XXXXXXXX:S:0:0'");
+    sb.append("HIRMG:3:2+0010::Nachricht entgegengenommen.'");
+    sb.append("HIRMS:4:2:3+0020::Der Auftrag wurde ausgefuehrt.'");
+    int seg = 5;
+    for (int i = 0; i < count; i++)
+    {
+      sb.append("HIKAZ:").append(seg++).append(":5:3+@").append(mt940.length()).append("@").append(mt940).append("'");
+    }
+    sb.append("HNSHA:").append(seg++).append(":2+0000000000'");
+    sb.append("HNHBS:").append(seg++).append(":1+1'");
+    return sb.toString();
+  }
+}
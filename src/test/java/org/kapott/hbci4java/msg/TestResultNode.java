@@ -0,0 +1,277 @@
+package org.kapott.hbci4java.msg;
+
+import java.util.Hashtable;
+import java.util.Properties;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kapott.hbci.manager.HBCIKernelImpl;
+import org.kapott.hbci.protocol.MSG;
+import org.kapott.hbci.protocol.factory.MSGFactory;
+import org.kapott.hbci.status.HBCIMsgStatus;
+import org.kapott.hbci.status.ResultNode;
+import org.kapott.hbci.status.ResultVisitor;
+import org.kapott.hbci4java.AbstractTest;
+
+/**
+ * Testet die strukturierte Darstellung der empfangenen Nachrichten.
+ */
+public class TestResultNode extends AbstractTest
+{
+  /**
+   * Parst eine Antwortnachricht.
+   * @return die Nachricht.
+   * @throws Exception
+   */
+  private MSG parse() throws Exception
+  {
+    String data = getFile("TestMultipleDEGs-01.txt");
+    HBCIKernelImpl kernel = new HBCIKernelImpl(null, "300");
+    kernel.rawNewMsg("DialogInit");
+    return MSGFactory.getInstance().createMSG("DialogInitRes", data, data.length(), kernel.getMsgGen());
+  }
+
+  /**
+   * Vergleicht den Baum mit der flachen Darstellung der Nachricht.
+   * @throws Exception
+   */
+  @Test
+  public void test001() throws Exception
+  {
+    MSG msg = parse();
+    try
+    {
+      Properties expected = msg.getData();
+      ResultNode root = ResultNode.create(msg);
+
+      Properties p = new Properties();
+      root.fillProperties(p);
+      Assert.assertEquals(expected, p);
+
+      for (String key : expected.stringPropertyNames())
+      {
+        ResultNode node = root.getElement(key);
+        Assert.assertNotNull(key, node);
+        Assert.assertEquals(key, node.getPath());
+        Assert.assertEquals(key, expected.getProperty(key), node.getValue());
+      }
+
+      ResultNode info = root.getChild("UPD").getChild("KInfo", 1);
+      Assert.assertNotNull(info);
+      Assert.assertSame(info, root.getElement("UPD.KInfo_2"));
+      Assert.assertEquals(expected.getProperty("UPD.KInfo_2.KTV.KIK.blz"), info.getValue("KTV.KIK.blz"));
+      Assert.assertEquals("DE", info.getValue("gibtsnicht", "DE"));
+      Assert.assertNull(root.getElement("UPD.KInfo_2.gibtsnicht.number"));
+    }
+    finally
+    {
+      MSGFactory.getInstance().unuseObject(msg);
+    }
+  }
+
+  /**
+   * Testet den Besucher.
+   * @throws Exception
+   */
+  @Test
+  public void test002() throws Exception
+  {
+    MSG msg = parse();
+    try
+    {
+      final Properties expected = msg.getData();
+      ResultNode root = ResultNode.create(msg);
+
+      final int[] count = new int[1];
+      root.accept(new ResultVisitor() {
+        public boolean visit(ResultNode node)
+        {
+          if (node.getValue() != null)
+            count[0]++;
+          return true;
+        }
+      });
+      Assert.assertEquals(expected.size(), count[0]);
+
+      // Unterelemente von KInfo ueberspringen
+      count[0] = 0;
+      root.accept(new ResultVisitor() {
+        public boolean visit(ResultNode node)
+        {
+          if (node.getValue() != null)
+          {
+            Assert.assertFalse(node.getPath().startsWith("UPD.KInfo"));
+            count[0]++;
+          }
+          return !node.getName().startsWith("KInfo");
+        }
+      });
+      Assert.assertTrue(count[0] > 0 && count[0] < expected.size());
+    }
+    finally
+    {
+      MSGFactory.getInstance().unuseObject(msg);
+    }
+  }
+
+  /**
+   * Testet, dass der Status mit Baum die gleichen Daten liefert wie bisher.
+   * @throws Exception
+   */
+  @Test
+  public void test003() throws Exception
+  {
+    MSG msg = parse();
+    try
+    {
+      Properties expected = msg.getData();
+
+      HBCIMsgStatus legacy = new HBCIMsgStatus();
+      legacy.addData(expected);
+
+      HBCIMsgStatus status = new HBCIMsgStatus();
+      status.setResult(ResultNode.create(msg));
+      Properties extra = new Properties();
+      extra.setProperty("_msg", "test");
+      status.addData(extra);
+
+      Assert.assertEquals(legacy.toString(), status.toString());
+      Assert.assertEquals("test", status.getProperty("_msg"));
+      Assert.assertEquals(expected.getProperty("RetGlob.RetVal.code"), status.getProperty("RetGlob.RetVal.code"));
+      Assert.assertEquals(expected.getProperty("UPD.KInfo.KTV.number"), status.getResult("UPD.KInfo").getValue("KTV.number"));
+
+      Properties all = status.getData();
+      Assert.assertEquals(expected.size() + 1, all.size());
+      Assert.assertSame(all, status.getData());
+
+      // massgeblich ist der Baum - Aenderungen an der flachen Darstellung
+      // wirken sich nicht aus
+      all.setProperty("UPD.KInfo.KTV.number", "4711");
+      Assert.assertEquals(expected.getProperty("UPD.KInfo.KTV.number"), status.getProperty("UPD.KInfo.KTV.number"));
+      Assert.assertEquals(expected.getProperty("UPD.KInfo.KTV.number"), status.getResult("UPD.KInfo").getValue("KTV.number"));
+    }
+    finally
+    {
+      MSGFactory.getInstance().unuseObject(msg);
+    }
+  }
+
+  /**
+   * Testet das Erzeugen eines Baumes aus der flachen Darstellung.
+   * @throws Exception
+   */
+  @Test
+  public void test004() throws Exception
+  {
+    Properties p = new Properties();
+    p.setProperty("a.b.c", "1");
+    p.setProperty("a.b.d", "2");
+    p.setProperty("a.e", "3");
+    p.setProperty("f", "4");
+
+    ResultNode root = ResultNode.create("", p);
+    Assert.assertEquals(2, root.getChildren().size());
+    Assert.assertEquals("a.b", root.getElement("a.b").getPath());
+    Assert.assertEquals("2", root.getValue("a.b.d"));
+    Assert.assertEquals("4", root.getChild("f").getValue());
+    Assert.assertNull(root.getValue("a.b"));
+
+    Properties copy = new Properties();
+    root.fillProperties(copy);
+    Assert.assertEquals(p, copy);
+  }
+
+  /**
+   * Testet, dass der Baum einer Nachricht mit vielen Auftraegen auch nach
+   * dem Abruf der flachen Darstellung nur einmal erzeugt wird.
+   * @throws Exception
+   */
+  @Test
+  public void test005() throws Exception
+  {
+    // 50 Auftraege verschiedener Art
+    String[] types = new String[] {"SaldoRes5", "KUmsZeitRes5", "UebSEPARes1", "DauerSEPAListRes1", "TermUebSEPAListRes1"};
+    Properties p = new Properties();
+    p.setProperty("RetGlob.RetVal.code", "0010");
+    p.setProperty("RetGlob.RetVal.text", "ok");
+    for (int i = 0; i < 50; i++)
+    {
+      String gv = "GVRes_" + (i + 1) + "." + types[i % types.length];
+      p.setProperty(gv + ".SegHead.seq", Integer.toString(i + 3));
+      p.setProperty(gv + ".KTV.number", "12345" + i);
+    }
+
+    // Baum aus dem Parser
+    HBCIMsgStatus status = new HBCIMsgStatus();
+    ResultNode tree = ResultNode.create("", p);
+    status.setResult(tree);
+    Assert.assertEquals(p.size(), status.getData().size());
+    for (int i = 0; i < 50; i++)
+    {
+      Assert.assertSame(tree, status.getResult());
+      Assert.assertEquals("12345" + i, status.getResult("GVRes_" + (i + 1)).getValue(types[i % types.length] + ".KTV.number"));
+    }
+
+    // nur flache Daten - der Baum wird einmal erzeugt und danach wiederverwendet
+    HBCIMsgStatus legacy = new HBCIMsgStatus();
+    legacy.setData(p);
+    ResultNode built = legacy.getResult();
+    legacy.getData();
+    for (int i = 0; i < 50; i++)
+      Assert.assertSame(built, legacy.getResult());
+
+    // neue Daten verwerfen den erzeugten Baum
+    Properties extra = new Properties();
+    extra.setProperty("GVRes_51.SaldoRes5.KTV.number", "4711");
+    legacy.addData(extra);
+    Assert.assertNotSame(built, legacy.getResult());
+    Assert.assertEquals("4711", legacy.getResult().getValue("GVRes_51.SaldoRes5.KTV.number"));
+  }
+
+  /**
+   * Testet, dass die Daten der gesendeten Nachricht erst bei Bedarf
+   * nachgeschlagen werden und die gleichen Ergebnisse liefern wie bisher.
+   * @throws Exception
+   */
+  @Test
+  public void test006() throws Exception
+  {
+    Hashtable<String, String> values = new Hashtable<String, String>();
+    values.put("CustomMsg.MsgHead.dialogid", "4711");
+    values.put("CustomMsg.MsgHead.msgnum", "2");
+    values.put("CustomMsg.GV.SaldoUeb5.KTV.number", "1234567890");
+
+    Properties paths = new Properties();
+    paths.setProperty("1", "CustomMsg.MsgHead");
+    paths.setProperty("3", "CustomMsg.GV.SaldoUeb5");
+    paths.setProperty("3:2", "CustomMsg.GV.SaldoUeb5.KTV.number");
+
+    Properties p = new Properties();
+    p.setProperty("RetGlob.RetVal.code", "0010");
+    p.setProperty("RetGlob.RetVal.text", "ok");
+    p.setProperty("RetSeg.SegHead.ref", "3");
+    p.setProperty("RetSeg.RetVal.code", "9010");
+    p.setProperty("RetSeg.RetVal.ref", "2");
+    p.setProperty("RetSeg.RetVal.text", "Konto unbekannt");
+
+    // bisher: alles in die flachen Daten kopiert
+    HBCIMsgStatus legacy = new HBCIMsgStatus();
+    legacy.addData(paths);
+    Properties origs = new Properties();
+    for (String key : values.keySet())
+      origs.setProperty("orig_" + key, values.get(key));
+    legacy.addData(origs);
+    legacy.addData(p);
+
+    HBCIMsgStatus status = new HBCIMsgStatus();
+    status.setSentData(values, paths);
+    status.setResult(ResultNode.create("", p));
+
+    Assert.assertEquals(legacy.toString(), status.toString());
+    Assert.assertEquals("CustomMsg.GV.SaldoUeb5.KTV.number=1234567890", status.segStatus.getErrors()[0].element);
+    Assert.assertEquals("CustomMsg.MsgHead", status.getProperty("1"));
+    Assert.assertEquals("4711", status.getProperty("orig_CustomMsg.MsgHead.dialogid"));
+    Assert.assertNull(status.getProperty("orig_CustomMsg.MsgHead.gibtsnicht"));
+    Assert.assertEquals(legacy.getData(), status.getData());
+  }
+}
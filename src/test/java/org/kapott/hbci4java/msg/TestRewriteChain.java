@@ -0,0 +1,78 @@
+package org.kapott.hbci4java.msg;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kapott.hbci.exceptions.HBCI_Exception;
+import org.kapott.hbci.rewrite.RewriteChain;
+import org.kapott.hbci.rewrite.RewriteStats;
+import org.kapott.hbci4java.AbstractTest;
+
+/**
+ * Testet die Rewriter-Kette.
+ */
+public class TestRewriteChain extends AbstractTest
+{
+  /**
+   * Sucht die Statistik eines Rewriters.
+   * @param name Name des Rewriters.
+   * @return die Statistik.
+   */
+  private RewriteStats getStats(String name)
+  {
+    for (RewriteStats s : RewriteChain.getStatistics())
+    {
+      if (s.getName().equals(name))
+        return s;
+    }
+    return null;
+  }
+
+  /**
+   * Testet, dass die Kette pro Konfiguration nur einmal erzeugt wird.
+   * @throws Exception
+   */
+  @Test
+  public void test001() throws Exception
+  {
+    RewriteChain chain = RewriteChain.getInstance("SigIdLeadingZero, KUmsDelimiters");
+    Assert.assertSame(chain, RewriteChain.getInstance("SigIdLeadingZero, KUmsDelimiters"));
+    Assert.assertNotSame(chain, RewriteChain.getInstance("SigIdLeadingZero"));
+    Assert.assertArrayEquals(new String[]{"SigIdLeadingZero", "KUmsDelimiters"}, chain.getNames());
+
+    // Die mitgelieferten Rewriter sind zustandslos
+    Assert.assertSame(chain, chain.forMessage());
+  }
+
+  /**
+   * Testet die Statistik.
+   * @throws Exception
+   */
+  @Test
+  public void test002() throws Exception
+  {
+    RewriteChain chain = RewriteChain.getInstance("SigIdLeadingZero");
+    RewriteChain.resetStatistics();
+
+    String unchanged = "HNHBK:1:3+000000000100+300+0+1'HNHBS:2:1+1'";
+    Assert.assertEquals(unchanged, chain.incomingClearText(unchanged, null));
+
+    String changed = chain.incomingClearText("HNSHK:2:4+a+b+c+d+e+007+g'", null);
+    Assert.assertEquals("HNSHK:2:4+a+b+c+d+e+7+g'", changed);
+
+    RewriteStats stats = getStats("SigIdLeadingZero");
+    Assert.assertNotNull(stats);
+    Assert.assertEquals(2, stats.getCalls());
+    Assert.assertEquals(1, stats.getModifications());
+    Assert.assertTrue(stats.getTime() > 0);
+  }
+
+  /**
+   * Testet die Fehlerbehandlung bei unbekannten Rewritern.
+   * @throws Exception
+   */
+  @Test(expected = HBCI_Exception.class)
+  public void test003() throws Exception
+  {
+    RewriteChain.getInstance("GibtsNicht");
+  }
+}
@@ -0,0 +1,158 @@
+package org.kapott.hbci4java.msg;
+
+import java.io.InputStream;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import org.kapott.hbci.manager.HBCIKernelImpl;
+import org.kapott.hbci.manager.SyntaxRegistry;
+import org.kapott.hbci.protocol.SyntaxDef;
+import org.kapott.hbci.protocol.SyntaxRef;
+import org.kapott.hbci.protocol.SyntaxSpec;
+import org.kapott.hbci4java.AbstractTest;
+
+/**
+ * Testet die kompilierte Form der Syntax-Spezifikation.
+ */
+public class TestSyntaxSpec extends AbstractTest
+{
+  /**
+   * Testet die Referenzen und vorgegebenen Werte eines Segments.
+   */
+  @Test
+  public void test001()
+  {
+    SyntaxSpec spec = new HBCIKernelImpl(null, "300").getMsgGen().getSyntaxSpec();
+
+    SyntaxDef def = spec.getDef("MsgHeadUser");
+    Assert.assertNotNull(def);
+    Assert.assertEquals("SEGdef", def.getDefType());
+    Assert.assertEquals("HNHBK", def.getSegCode());
+    Assert.assertEquals("3", def.getSegVersion());
+
+    SyntaxRef[] children = def.getChildren();
+    Assert.assertEquals(5, children.length);
+
+    SyntaxRef seghead = children[0];
+    Assert.assertTrue(seghead.isDEG());
+    Assert.assertEquals("SegHead", seghead.getName());
+    Assert.assertSame(spec.getDef("SegHeadUser"), seghead.getDef());
+
+    SyntaxRef msgsize = def.getChild("msgsize");
+    Assert.assertTrue(msgsize.isDE());
+    Assert.assertEquals("Dig", msgsize.getType());
+    Assert.assertEquals(12, msgsize.getMinSize());
+    Assert.assertEquals(12, msgsize.getMaxSize());
+    Assert.assertEquals(1, msgsize.getSyntaxIdx());
+    Assert.assertNull(msgsize.getDef());
+
+    Assert.assertEquals(1, def.getChild("dialogid").getMinSize());
+    Assert.assertEquals(0, def.getChild("dialogid").getMaxSize());
+  }
+
+  /**
+   * Testet Kardinalitaeten und Nachrichten-Attribute.
+   */
+  @Test
+  public void test002()
+  {
+    SyntaxSpec spec = new HBCIKernelImpl(null, "300").getMsgGen().getSyntaxSpec();
+
+    SyntaxDef def = spec.getDef("DialogInitRes");
+    Assert.assertEquals("MSGdef", def.getDefType());
+    Assert.assertFalse(def.isDontSign());
+    Assert.assertFalse(def.isDontCrypt());
+
+    SyntaxRef retseg = def.getChild("RetSeg");
+    Assert.assertTrue(retseg.isSEG());
+    Assert.assertEquals(0, retseg.getMinNum());
+    Assert.assertEquals(0, retseg.getMaxNum());
+
+    SyntaxRef bpd = def.getChild("BPD");
+    Assert.assertTrue(bpd.isSF());
+    Assert.assertEquals(0, bpd.getMinNum());
+    Assert.assertEquals(1, bpd.getMaxNum());
+
+    SyntaxDef anon = spec.getDef("DialogInitAnon");
+    Assert.assertTrue(anon.isDontSign());
+    Assert.assertTrue(anon.isDontCrypt());
+
+    Assert.assertNull(spec.getDef("DoesNotExist"));
+  }
+
+  /**
+   * Vergleicht die beim Build erzeugte Form der Spezifikationen mit der
+   * aus dem XML erzeugten.
+   * @throws Exception
+   */
+  @Test
+  public void test003() throws Exception
+  {
+    String[] versions = new String[] {"201", "210", "220", "300", "plus"};
+    for (String version : versions)
+    {
+      Class<?> c = null;
+      try
+      {
+        c = Class.forName("org.kapott.hbci.protocol.CompiledSyntax_" + version);
+      }
+      catch (ClassNotFoundException e)
+      {
+        // Build ohne Code-Generierung
+        Assume.assumeTrue(false);
+      }
+      SyntaxSpec compiled = (SyntaxSpec) c.getMethod("create").invoke(null);
+
+      InputStream is = getClass().getClassLoader().getResourceAsStream("hbci-" + version + ".xml");
+      SyntaxSpec xml = new SyntaxSpec(SyntaxRegistry.parseSyntax(is));
+
+      Assert.assertEquals(xml.getDefs().size(), compiled.getDefs().size());
+      for (SyntaxDef expected : xml.getDefs())
+      {
+        SyntaxDef actual = compiled.getDef(expected.getId());
+        Assert.assertNotNull(expected.getId(), actual);
+        Assert.assertEquals(expected.toString(), actual.toString());
+        Assert.assertEquals(expected.getDefType(), actual.getDefType());
+        Assert.assertEquals(expected.needsRequestTag(), actual.needsRequestTag());
+        Assert.assertEquals(expected.isDontSign(), actual.isDontSign());
+        Assert.assertEquals(expected.isDontCrypt(), actual.isDontCrypt());
+        Assert.assertEquals(expected.getSegCode(), actual.getSegCode());
+        Assert.assertEquals(expected.getSegVersion(), actual.getSegVersion());
+
+        SyntaxRef[] e = expected.getChildren();
+        SyntaxRef[] a = actual.getChildren();
+        Assert.assertEquals(e.length, a.length);
+        for (int i = 0; i < e.length; i++)
+        {
+          Assert.assertEquals(e[i].getKind(), a[i].getKind());
+          Assert.assertEquals(e[i].getType(), a[i].getType());
+          Assert.assertEquals(e[i].getName(), a[i].getName());
+          Assert.assertEquals(e[i].getMinNum(), a[i].getMinNum());
+          Assert.assertEquals(e[i].getMaxNum(), a[i].getMaxNum());
+          Assert.assertEquals(e[i].getMinSize(), a[i].getMinSize());
+          Assert.assertEquals(e[i].getMaxSize(), a[i].getMaxSize());
+          Assert.assertEquals(e[i].getSyntaxIdx(), a[i].getSyntaxIdx());
+          Assert.assertSame(a[i].getDef(), e[i].getDef() == null ? null : compiled.getDef(e[i].getDef().getId()));
+        }
+
+        Assert.assertEquals(expected.getValueCount(), actual.getValueCount());
+        for (int i = 0; i < expected.getValueCount(); i++)
+        {
+          Assert.assertEquals(expected.getValuePath(i), actual.getValuePath(i));
+          Assert.assertEquals(expected.getValue(i), actual.getValue(i));
+        }
+
+        Assert.assertEquals(expected.getValidsCount(), actual.getValidsCount());
+        for (int i = 0; i < expected.getValidsCount(); i++)
+        {
+          Assert.assertEquals(expected.getValidsPath(i), actual.getValidsPath(i));
+          Assert.assertArrayEquals(expected.getValidValues(i), actual.getValidValues(i));
+        }
+      }
+
+      // Das XML-Dokument wird bei Bedarf nachgeladen
+      Assert.assertNotNull(compiled.getDocument().getDocumentElement());
+    }
+  }
+}